@@ -41,9 +41,29 @@ public interface Bookie {
 
     // TODO: replace callback with futures
     // TODO: replace ackBeforeSync with flags
-    void addEntry(ByteBuf entry, boolean ackBeforeSync, WriteCallback cb, Object ctx, byte[] masterKey)
+    default void addEntry(ByteBuf entry, boolean ackBeforeSync, WriteCallback cb, Object ctx, byte[] masterKey)
+            throws IOException, BookieException, InterruptedException {
+        addEntry(entry, ackBeforeSync, false, cb, ctx, masterKey);
+    }
+    default void recoveryAddEntry(ByteBuf entry, WriteCallback cb, Object ctx, byte[] masterKey)
+            throws IOException, BookieException, InterruptedException {
+        recoveryAddEntry(entry, false, cb, ctx, masterKey);
+    }
+
+    /**
+     * Add an entry. {@code crc32cDigest} is set when the client declared the entry to be protected by
+     * a CRC32C digest, which the bookie can then verify.
+     */
+    void addEntry(ByteBuf entry, boolean ackBeforeSync, boolean crc32cDigest, WriteCallback cb, Object ctx,
+                  byte[] masterKey)
             throws IOException, BookieException, InterruptedException;
-    void recoveryAddEntry(ByteBuf entry, WriteCallback cb, Object ctx, byte[] masterKey)
+
+    /**
+     * Add an entry even if the ledger is fenced.
+     *
+     * @see #addEntry(ByteBuf, boolean, boolean, WriteCallback, Object, byte[])
+     */
+    void recoveryAddEntry(ByteBuf entry, boolean crc32cDigest, WriteCallback cb, Object ctx, byte[] masterKey)
             throws IOException, BookieException, InterruptedException;
     void forceLedger(long ledgerId, WriteCallback cb, Object ctx);
     void setExplicitLac(ByteBuf entry, WriteCallback writeCallback, Object ctx, byte[] masterKey)
@@ -57,6 +77,9 @@ public interface Bookie {
     // TODO: Shouldn't this be async?
     ByteBuf readEntry(long ledgerId, long entryId)
             throws IOException, NoLedgerException, BookieException;
+    long readEntries(long ledgerId, long firstEntryId, long lastEntryId, long maxSize,
+                     LedgerStorage.EntryConsumer consumer)
+            throws IOException, NoLedgerException, BookieException;
     long readLastAddConfirmed(long ledgerId) throws IOException, BookieException;
     PrimitiveIterator.OfLong getListOfEntriesOfLedger(long ledgerId) throws IOException, NoLedgerException;
 
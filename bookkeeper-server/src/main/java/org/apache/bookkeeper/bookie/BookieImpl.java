@@ -27,10 +27,12 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.LD_LEDGER_SCOPE
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
+import com.scurrilous.circe.checksum.Crc32cIntChecksum;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
@@ -47,9 +49,14 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.PrimitiveIterator.OfLong;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import org.apache.bookkeeper.bookie.BookieException.DiskPartitionDuplicationException;
@@ -58,6 +65,7 @@ import org.apache.bookkeeper.bookie.Journal.JournalScanner;
 import org.apache.bookkeeper.bookie.LedgerDirsManager.LedgerDirsListener;
 import org.apache.bookkeeper.bookie.LedgerDirsManager.NoWritableLedgerDirException;
 import org.apache.bookkeeper.bookie.stats.BookieStats;
+import org.apache.bookkeeper.bookie.stats.JournalStats;
 import org.apache.bookkeeper.bookie.storage.ldb.DbLedgerStorage;
 import org.apache.bookkeeper.common.util.Watcher;
 import org.apache.bookkeeper.conf.ServerConfiguration;
@@ -66,7 +74,9 @@ import org.apache.bookkeeper.discover.RegistrationManager;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.net.BookieSocketAddress;
 import org.apache.bookkeeper.net.DNS;
+import org.apache.bookkeeper.proto.BookieProtocol;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.proto.checksum.DigestManager;
 import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.stats.ThreadRegistry;
@@ -75,6 +85,7 @@ import org.apache.bookkeeper.util.DiskChecker;
 import org.apache.bookkeeper.util.IOUtils;
 import org.apache.bookkeeper.util.MathUtils;
 import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.mutable.MutableBoolean;
 
@@ -95,6 +106,7 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
     final LedgerStorage ledgerStorage;
     final RegistrationManager registrationManager;
     final List<Journal> journals;
+    private final LoadAwareJournalSelector journalSelector;
 
     final HandleFactory handles;
     final boolean entryLogPerLedgerEnabled;
@@ -103,6 +115,7 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
     public static final long METAENTRY_ID_FENCE_KEY  = -0x2000;
     public static final long METAENTRY_ID_FORCE_LEDGER  = -0x4000;
     static final long METAENTRY_ID_LEDGER_EXPLICITLAC  = -0x8000;
+    static final long METAENTRY_ID_DEFERRED_ENTRY  = -0x10000;
 
     private final LedgerDirsManager ledgerDirsManager;
     protected final Supplier<BookieServiceInfo> bookieServiceInfoProvider;
@@ -123,6 +136,12 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
     private final ByteBufAllocator allocator;
 
     private final boolean writeDataToJournal;
+    private final boolean skipDeferredSyncData;
+    // for the ledgers with deferred sync entries that may not be flushed yet, the number of ledger storage
+    // flushes started before their last deferred sync entry was added
+    private final ConcurrentLongLongHashMap unflushedDeferredSyncLedgers =
+            ConcurrentLongLongHashMap.newBuilder().build();
+    private final boolean verifyEntryDigest;
 
     // Write Callback do nothing
     static class NopWriteCallback implements WriteCallback {
@@ -398,6 +417,8 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
         this.ledgerDirsManager = ledgerDirsManager;
         this.indexDirsManager = indexDirsManager;
         this.writeDataToJournal = conf.getJournalWriteData();
+        this.skipDeferredSyncData = conf.getJournalSkipDeferredSyncData();
+        this.verifyEntryDigest = conf.isEntryDigestVerificationEnabled();
         this.allocator = allocator;
         this.registrationManager = registrationManager;
         stateManager = initializeStateManager();
@@ -480,6 +501,16 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
 
         handles = new HandleFactoryImpl(ledgerStorage);
 
+        if (conf.isJournalLoadAwareSelectionEnabled() && journals.size() > 1) {
+            journalSelector = new LoadAwareJournalSelector(journals);
+            ledgerStorage.registerLedgerDeletionListener(journalSelector);
+        } else {
+            journalSelector = null;
+        }
+        if (skipDeferredSyncData) {
+            ledgerStorage.registerLedgerDeletionListener(unflushedDeferredSyncLedgers::remove);
+        }
+
         // Expose Stats
         this.bookieStats = new BookieStats(statsLogger, journalDirectories.size(), conf.getJournalQueueSize());
     }
@@ -551,6 +582,13 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
                             throw new IOException("Invalid journal. Contains explicitLAC " + " but layout version ("
                                     + journalVersion + ") is too old to hold this");
                         }
+                    } else if (entryId == METAENTRY_ID_DEFERRED_ENTRY) {
+                        // the payload of a deferred sync entry is persisted by the ledger storage only,
+                        // an entry which was not flushed before the crash was not forced and can be lost
+                        if (LOG.isDebugEnabled()) {
+                            LOG.debug("Skip replaying deferred sync entry {} of ledger {}.",
+                                    recBuff.getLong(), ledgerId);
+                        }
                     } else if (entryId < 0) {
                         /*
                          * this is possible if bookie code binary is rolledback
@@ -583,8 +621,37 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
             }
         };
 
-        for (Journal journal : journals) {
-            replay(journal, scanner);
+        if (journals.size() > 1) {
+            // ledgers are spread across the journals, so the journals can be replayed independently
+            ExecutorService replayExecutor = Executors.newFixedThreadPool(journals.size(),
+                    new DefaultThreadFactory("bookie-journal-replay"));
+            try {
+                CompletionService<Void> replays = new ExecutorCompletionService<>(replayExecutor);
+                for (Journal journal : journals) {
+                    replays.submit(() -> {
+                        replay(journal, scanner);
+                        return null;
+                    });
+                }
+                // wait for the replays as they complete, so that the first failure stops the other replays
+                for (int i = 0; i < journals.size(); i++) {
+                    replays.take().get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while replaying journals", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("Failed to replay journals", e.getCause());
+            } finally {
+                replayExecutor.shutdownNow();
+            }
+        } else {
+            for (Journal journal : journals) {
+                replay(journal, scanner);
+            }
         }
         long elapsedTs = System.currentTimeMillis() - startTs;
         LOG.info("Finished replaying journal in {} ms.", elapsedTs);
@@ -609,20 +676,66 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
             }
         }
 
-        // TODO: When reading in the journal logs that need to be synced, we
-        // should use BufferedChannels instead to minimize the amount of
-        // system calls done.
-        for (Long id : logs) {
-            long logPosition = 0L;
-            if (id == markedLog.getLogFileId()) {
-                logPosition = markedLog.getLogFileOffset();
+        JournalStats journalStats = journal.getJournalStats();
+        LongAdder replayedEntries = new LongAdder();
+        LongAdder replayedBytes = new LongAdder();
+        JournalScanner countingScanner = (journalVersion, offset, entry) -> {
+            replayedEntries.increment();
+            replayedBytes.add(entry.remaining());
+            scanner.process(journalVersion, offset, entry);
+        };
+        int replayQueueSize = conf.getJournalReplayQueueSize();
+        PipelinedJournalScanner pipeline = replayQueueSize > 0
+                ? new PipelinedJournalScanner(countingScanner, replayQueueSize,
+                        "bookie-journal-replay-" + journal.getJournalDirectory().getName())
+                : null;
+        JournalScanner replayScanner = pipeline != null ? pipeline : countingScanner;
+
+        long startTime = MathUtils.nowInNano();
+        boolean success = false;
+        try {
+            // TODO: When reading in the journal logs that need to be synced, we
+            // should use BufferedChannels instead to minimize the amount of
+            // system calls done.
+            long lastLogId = -1L;
+            long lastScanOffset = 0L;
+            for (Long id : logs) {
+                long logPosition = 0L;
+                if (id == markedLog.getLogFileId()) {
+                    logPosition = markedLog.getLogFileOffset();
+                }
+                LOG.info("Replaying journal {} from position {}", id, logPosition);
+                lastScanOffset = journal.scanJournal(id, logPosition, replayScanner);
+                lastLogId = id;
+            }
+            if (pipeline != null) {
+                pipeline.finish();
+            }
+            if (lastLogId >= 0) {
+                // Update LastLogMark after completely replaying journal
+                // scanOffset will point to EOF position
+                // After LedgerStorage flush, SyncThread should persist this to disk
+                journal.setLastLogMark(lastLogId, lastScanOffset);
+            }
+            success = true;
+        } finally {
+            if (pipeline != null) {
+                pipeline.close();
             }
-            LOG.info("Replaying journal {} from position {}", id, logPosition);
-            long scanOffset = journal.scanJournal(id, logPosition, scanner);
-            // Update LastLogMark after completely replaying journal
-            // scanOffset will point to EOF position
-            // After LedgerStorage flush, SyncThread should persist this to disk
-            journal.setLastLogMark(id, scanOffset);
+            long elapsedNanos = MathUtils.elapsedNanos(startTime);
+            long entries = replayedEntries.sum();
+            long bytes = replayedBytes.sum();
+            journalStats.getJournalReplayEntries().add(entries);
+            journalStats.getJournalReplayBytes().add(bytes);
+            if (success) {
+                journalStats.getJournalReplayStats().registerSuccessfulEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+            } else {
+                journalStats.getJournalReplayStats().registerFailedEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+            }
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+            LOG.info("Replayed {} records ({} MB) of journal {} in {} ms ({} MB/s)", entries, bytes / (1024 * 1024),
+                    journal.getJournalDirectory(), elapsedMs,
+                    String.format("%.2f", elapsedMs > 0 ? bytes * 1000.0 / elapsedMs / (1024 * 1024) : 0.0));
         }
     }
 
@@ -894,6 +1007,9 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
     }
 
     private Journal getJournal(long ledgerId) {
+        if (journalSelector != null) {
+            return journalSelector.getJournal(ledgerId);
+        }
         return journals.get(MathUtils.signSafeMod(ledgerId, journals.size()));
     }
 
@@ -934,21 +1050,75 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
         if (LOG.isTraceEnabled()) {
             LOG.trace("Adding {}@{}", entryId, ledgerId);
         }
+        if (ackBeforeSync && skipDeferredSyncData) {
+            // the payload is made durable by the ledger storage on forceLedger, only journal a metadata record
+            unflushedDeferredSyncLedgers.put(ledgerId, syncThread.getStartedLedgerStorageFlushes());
+            ByteBuf deferredEntry = createDeferredEntry(ledgerId, entryId);
+            try {
+                getJournal(ledgerId).logAddEntry(ledgerId, entryId, deferredEntry, true /* ackBeforeSync */,
+                        cb, ctx);
+            } finally {
+                deferredEntry.release();
+            }
+            return;
+        }
         getJournal(ledgerId).logAddEntry(entry, ackBeforeSync, cb, ctx);
     }
 
+    private ByteBuf createDeferredEntry(long ledgerId, long entryId) {
+        ByteBuf bb = allocator.directBuffer(8 + 8 + 8);
+        bb.writeLong(ledgerId);
+        bb.writeLong(METAENTRY_ID_DEFERRED_ENTRY);
+        bb.writeLong(entryId);
+        return bb;
+    }
+
+    /**
+     * Verify the CRC32C digest of an entry, computed by the client over the entry metadata and the payload.
+     * The digest of the entries that the client did not declare to be CRC32C is not verified, since the
+     * bookie does not know their digest type.
+     */
+    private void verifyEntryDigest(ByteBuf entry, boolean crc32cDigest) throws IOException {
+        if (!crc32cDigest) {
+            bookieStats.getUnverifiedEntryDigestCounter().inc();
+            return;
+        }
+        long startTime = MathUtils.nowInNano();
+        int readerIndex = entry.readerIndex();
+        int payloadIndex = readerIndex + DigestManager.METADATA_LENGTH + Integer.BYTES;
+        boolean matches = false;
+        if (entry.writerIndex() >= payloadIndex) {
+            int digest = Crc32cIntChecksum.resumeChecksum(0,
+                    entry.slice(readerIndex, DigestManager.METADATA_LENGTH));
+            digest = Crc32cIntChecksum.resumeChecksum(digest,
+                    entry.slice(payloadIndex, entry.writerIndex() - payloadIndex));
+            matches = digest == entry.getInt(readerIndex + DigestManager.METADATA_LENGTH);
+        }
+        long elapsedNanos = MathUtils.elapsedNanos(startTime);
+        if (matches) {
+            bookieStats.getVerifyEntryDigestStats().registerSuccessfulEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+        } else {
+            bookieStats.getVerifyEntryDigestStats().registerFailedEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+            throw new IOException("Digest mismatch for entry " + entry.getLong(readerIndex + 8) + " of ledger "
+                    + entry.getLong(readerIndex));
+        }
+    }
+
     /**
      * Add entry to a ledger, even if the ledger has previous been fenced. This should only
      * happen in bookie recovery or ledger recovery cases, where entries are being replicates
      * so that they exist on a quorum of bookies. The corresponding client side call for this
      * is not exposed to users.
      */
-    public void recoveryAddEntry(ByteBuf entry, WriteCallback cb, Object ctx, byte[] masterKey)
+    public void recoveryAddEntry(ByteBuf entry, boolean crc32cDigest, WriteCallback cb, Object ctx, byte[] masterKey)
             throws IOException, BookieException, InterruptedException {
         long requestNanos = MathUtils.nowInNano();
         boolean success = false;
         int entrySize = 0;
         try {
+            if (verifyEntryDigest) {
+                verifyEntryDigest(entry, crc32cDigest);
+            }
             LedgerDescriptor handle = getLedgerForEntry(entry, masterKey);
             synchronized (handle) {
                 entrySize = entry.readableBytes();
@@ -1019,19 +1189,41 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
             LOG.trace("Forcing ledger {}", ledgerId);
         }
         Journal journal = getJournal(ledgerId);
-        journal.forceLedger(ledgerId, cb, ctx);
+        long startedFlushes = skipDeferredSyncData ? unflushedDeferredSyncLedgers.get(ledgerId) : -1;
+        if (startedFlushes >= 0 && !syncThread.isLedgerStorageFlushedAfter(startedFlushes)) {
+            // the payload of deferred sync entries was not journaled, persist it in the ledger storage first.
+            // Only the ledgers with deferred sync entries added since the last flush need one.
+            syncThread.requestLedgerStorageFlush().whenComplete((ignore, cause) -> {
+                if (cause != null) {
+                    LOG.error("Failed to flush ledger storage while forcing ledger {}", ledgerId, cause);
+                    cb.writeComplete(BookieProtocol.EIO, ledgerId, METAENTRY_ID_FORCE_LEDGER, null, ctx);
+                } else {
+                    unflushedDeferredSyncLedgers.remove(ledgerId, startedFlushes);
+                    journal.forceLedger(ledgerId, cb, ctx);
+                }
+            });
+        } else {
+            if (startedFlushes >= 0) {
+                unflushedDeferredSyncLedgers.remove(ledgerId, startedFlushes);
+            }
+            journal.forceLedger(ledgerId, cb, ctx);
+        }
         bookieStats.getForceLedgerOps().inc();
     }
 
     /**
      * Add entry to a ledger.
      */
-    public void addEntry(ByteBuf entry, boolean ackBeforeSync, WriteCallback cb, Object ctx, byte[] masterKey)
+    public void addEntry(ByteBuf entry, boolean ackBeforeSync, boolean crc32cDigest, WriteCallback cb, Object ctx,
+                         byte[] masterKey)
             throws IOException, BookieException, InterruptedException {
         long requestNanos = MathUtils.nowInNano();
         boolean success = false;
         int entrySize = 0;
         try {
+            if (verifyEntryDigest) {
+                verifyEntryDigest(entry, crc32cDigest);
+            }
             LedgerDescriptor handle = getLedgerForEntry(entry, masterKey);
             synchronized (handle) {
                 if (handle.isFenced()) {
@@ -1100,6 +1292,26 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
         }
     }
 
+    /**
+     * Read the consecutive entries of a ledger from <i>firstEntryId</i> to <i>lastEntryId</i>, stopping at
+     * the first entry not stored on this bookie.
+     *
+     * @see LedgerStorage#scanEntries(long, long, long, long, LedgerStorage.EntryConsumer)
+     */
+    public long readEntries(long ledgerId, long firstEntryId, long lastEntryId, long maxSize,
+                            LedgerStorage.EntryConsumer consumer)
+            throws IOException, NoLedgerException, BookieException {
+        LedgerDescriptor handle = handles.getReadOnlyHandle(ledgerId);
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Reading {}..{}@{}", firstEntryId, lastEntryId, ledgerId);
+        }
+        return handle.scanEntries(firstEntryId, lastEntryId, maxSize, (entryId, entry) -> {
+            bookieStats.getReadBytes().add(entry.readableBytes());
+            bookieStats.getReadBytesStats().registerSuccessfulValue(entry.readableBytes());
+            return consumer.accept(entryId, entry);
+        });
+    }
+
     public long readLastAddConfirmed(long ledgerId) throws IOException, BookieException {
         LedgerDescriptor handle = handles.getReadOnlyHandle(ledgerId);
         return handle.getLastAddConfirmed();
@@ -0,0 +1,404 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import com.sun.jna.Memory;
+import io.netty.util.concurrent.FastThreadLocal;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import org.apache.bookkeeper.util.NativeIO;
+
+/**
+ * A {@link FileChannel} doing O_DIRECT reads and writes, bypassing the file system page cache.
+ *
+ * <p>O_DIRECT requires the offsets, the lengths and the memory addresses of all the I/O to be aligned to the
+ * logical block size of the device, so the data is copied through aligned native buffers. A write that does
+ * not start or end on a block boundary reads back the partial blocks it overlaps and writes them whole.
+ * The partial block at the end of the file is kept in memory, so appending to a file, which is how the
+ * buffered channels write entry logs and journals, never reads from the device. The padding of the last
+ * block stays in the file until it is forced or closed, when the file is truncated back to its logical size,
+ * so that appending does not need to change the size of the file on every write.
+ *
+ * <p>Reads can be done concurrently with each other and with writes. Writes are serialized.
+ */
+class DirectIOFileChannel extends FileChannel {
+
+    /**
+     * Alignment of the I/O, large enough for devices with 512 bytes and 4KB logical blocks.
+     */
+    static final int ALIGNMENT = 4096;
+
+    /**
+     * Read buffers up to this size are kept by the reading threads for the next reads.
+     */
+    private static final int MAX_CACHED_READ_BUFFER_SIZE = 1024 * 1024;
+
+    private static final FastThreadLocal<AlignedBuffer> readBuffers = new FastThreadLocal<AlignedBuffer>() {
+        @Override
+        protected AlignedBuffer initialValue() {
+            return new AlignedBuffer(ALIGNMENT);
+        }
+    };
+
+    private final String path;
+    private final int fd;
+    private final boolean readOnly;
+
+    private long position;
+    // logical size of the file, the size on the device can be bigger because of the padding of the last block
+    private volatile long size;
+    private long paddedSize;
+
+    private AlignedBuffer writeBuffer;
+    // copy of the last, partially written, block of the file
+    private final AlignedBuffer lastBlock = new AlignedBuffer(ALIGNMENT);
+    private long lastBlockOffset = -1;
+
+    private DirectIOFileChannel(String path, int fd, boolean readOnly) throws IOException {
+        this.path = path;
+        this.fd = fd;
+        this.readOnly = readOnly;
+        this.size = NativeIO.size(fd, path);
+        this.paddedSize = size;
+        this.writeBuffer = readOnly ? null : new AlignedBuffer(ALIGNMENT);
+    }
+
+    /**
+     * Open a file for direct I/O.
+     *
+     * @param readOnly whether the file is only read, otherwise it is created if missing
+     */
+    static DirectIOFileChannel open(File file, boolean readOnly) throws IOException {
+        String path = file.getPath();
+        int fd = NativeIO.openDirect(path, readOnly);
+        try {
+            return new DirectIOFileChannel(path, fd, readOnly);
+        } catch (IOException e) {
+            NativeIO.close(fd, path);
+            throw e;
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        synchronized (this) {
+            int read = read(dst, position);
+            if (read > 0) {
+                position += read;
+            }
+            return read;
+        }
+    }
+
+    @Override
+    public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+        long total = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int read = read(dsts[i]);
+            if (read < 0) {
+                return total == 0 ? -1 : total;
+            }
+            total += read;
+            if (dsts[i].hasRemaining()) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long pos) throws IOException {
+        ensureOpen();
+        long fileSize = size;
+        if (pos >= fileSize) {
+            return -1;
+        }
+        int length = (int) Math.min(dst.remaining(), fileSize - pos);
+        if (length == 0) {
+            return 0;
+        }
+
+        long start = alignDown(pos);
+        int alignedLength = (int) (alignUp(pos + length) - start);
+        AlignedBuffer buffer = alignedLength <= MAX_CACHED_READ_BUFFER_SIZE
+                ? readBuffers.get().ensureCapacity(alignedLength) : new AlignedBuffer(alignedLength);
+
+        int read = readFully(buffer, 0, alignedLength, start);
+        int available = (int) Math.min(read - (pos - start), length);
+        if (available <= 0) {
+            return -1;
+        }
+        dst.put(buffer.slice((int) (pos - start), available));
+        return available;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        synchronized (this) {
+            int written = write(src, position);
+            position += written;
+            return written;
+        }
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        long total = 0;
+        for (int i = offset; i < offset + length; i++) {
+            total += write(srcs[i]);
+        }
+        return total;
+    }
+
+    @Override
+    public synchronized int write(ByteBuffer src, long pos) throws IOException {
+        ensureOpen();
+        if (readOnly) {
+            throw new NonWritableChannelException();
+        }
+        int length = src.remaining();
+        if (length == 0) {
+            return 0;
+        }
+
+        long end = pos + length;
+        long start = alignDown(pos);
+        long alignedEnd = alignUp(end);
+        int alignedLength = (int) (alignedEnd - start);
+        writeBuffer = writeBuffer.ensureCapacity(alignedLength);
+
+        // fill the parts of the partial first and last blocks that are not overwritten
+        if (pos != start) {
+            readBlock(writeBuffer, 0, start);
+        }
+        if (end != alignedEnd && (alignedEnd - ALIGNMENT != start || pos == start)) {
+            readBlock(writeBuffer, alignedLength - ALIGNMENT, alignedEnd - ALIGNMENT);
+        }
+        writeBuffer.slice((int) (pos - start), length).put(src);
+
+        long offset = 0;
+        while (offset < alignedLength) {
+            long written = NativeIO.pwrite(fd, writeBuffer.memory.share(offset), alignedLength - offset,
+                    start + offset, path);
+            if (written <= 0) {
+                throw new IOException("Short write on " + path + " at " + (start + offset));
+            }
+            offset += written;
+        }
+
+        long newSize = Math.max(size, end);
+        long tailBlockOffset = alignDown(newSize);
+        if (lastBlockOffset >= start && lastBlockOffset < alignedEnd) {
+            // the cached block has been overwritten
+            lastBlockOffset = -1;
+        }
+        if (newSize != tailBlockOffset && tailBlockOffset >= start && tailBlockOffset < alignedEnd) {
+            lastBlock.slice(0, ALIGNMENT).put(writeBuffer.slice((int) (tailBlockOffset - start), ALIGNMENT));
+            lastBlockOffset = tailBlockOffset;
+        }
+        paddedSize = Math.max(paddedSize, alignedEnd);
+        size = newSize;
+        return length;
+    }
+
+    /**
+     * Drop the padding of the last block written by the appends, if any.
+     */
+    private void truncatePadding() throws IOException {
+        if (paddedSize > size) {
+            NativeIO.truncate(fd, size, path);
+        }
+        paddedSize = size;
+    }
+
+    /**
+     * Copy the block of the file at the given offset in the buffer. The block is served from memory if it is
+     * the cached last block of the file, and the parts of the block after the end of the file are zeroed.
+     */
+    private void readBlock(AlignedBuffer buffer, int bufferOffset, long blockOffset) throws IOException {
+        if (blockOffset == lastBlockOffset) {
+            buffer.slice(bufferOffset, ALIGNMENT).put(lastBlock.slice(0, ALIGNMENT));
+            return;
+        }
+        int read = blockOffset < size ? readFully(buffer, bufferOffset, ALIGNMENT, blockOffset) : 0;
+        if (read < ALIGNMENT) {
+            buffer.memory.setMemory(bufferOffset + read, ALIGNMENT - read, (byte) 0);
+        }
+    }
+
+    /**
+     * Read into the buffer until the given length or the end of the file is reached.
+     *
+     * @return the number of bytes read
+     */
+    private int readFully(AlignedBuffer buffer, int bufferOffset, int length, long pos) throws IOException {
+        int read = 0;
+        while (read < length) {
+            long r = NativeIO.pread(fd, buffer.memory.share(bufferOffset + read), length - read, pos + read, path);
+            if (r <= 0) {
+                break;
+            }
+            read += r;
+        }
+        return read;
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public synchronized FileChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Negative position " + newPosition);
+        }
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return size;
+    }
+
+    @Override
+    public synchronized FileChannel truncate(long newSize) throws IOException {
+        ensureOpen();
+        if (readOnly) {
+            throw new NonWritableChannelException();
+        }
+        if (newSize < size) {
+            NativeIO.truncate(fd, newSize, path);
+            size = newSize;
+            paddedSize = newSize;
+            if (lastBlockOffset >= alignDown(newSize)) {
+                lastBlockOffset = -1;
+            }
+        }
+        position = Math.min(position, newSize);
+        return this;
+    }
+
+    @Override
+    public void force(boolean metaData) throws IOException {
+        ensureOpen();
+        synchronized (this) {
+            truncatePadding();
+        }
+        // the data is already on the device, the sync persists the file size and the device write cache
+        if (metaData) {
+            NativeIO.sync(fd, path);
+        } else {
+            NativeIO.syncData(fd, path);
+        }
+    }
+
+    @Override
+    public long transferTo(long position, long count, WritableByteChannel target) {
+        throw new UnsupportedOperationException("transferTo is not supported with direct I/O");
+    }
+
+    @Override
+    public long transferFrom(ReadableByteChannel src, long position, long count) {
+        throw new UnsupportedOperationException("transferFrom is not supported with direct I/O");
+    }
+
+    @Override
+    public MappedByteBuffer map(MapMode mode, long position, long size) {
+        throw new UnsupportedOperationException("map is not supported with direct I/O");
+    }
+
+    @Override
+    public FileLock lock(long position, long size, boolean shared) {
+        throw new UnsupportedOperationException("lock is not supported with direct I/O");
+    }
+
+    @Override
+    public FileLock tryLock(long position, long size, boolean shared) {
+        throw new UnsupportedOperationException("tryLock is not supported with direct I/O");
+    }
+
+    @Override
+    protected void implCloseChannel() throws IOException {
+        try {
+            synchronized (this) {
+                truncatePadding();
+            }
+        } finally {
+            NativeIO.close(fd, path);
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (!isOpen()) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    private static long alignDown(long pos) {
+        return pos & ~((long) ALIGNMENT - 1);
+    }
+
+    private static long alignUp(long pos) {
+        return alignDown(pos + ALIGNMENT - 1);
+    }
+
+    /**
+     * Native memory aligned for direct I/O.
+     */
+    private static class AlignedBuffer {
+        final Memory memory;
+        final int capacity;
+
+        AlignedBuffer(int capacity) {
+            this.capacity = capacity;
+            this.memory = (Memory) new Memory(capacity + ALIGNMENT).align(ALIGNMENT);
+        }
+
+        AlignedBuffer ensureCapacity(int length) {
+            if (length <= capacity) {
+                return this;
+            }
+            AlignedBuffer buffer = new AlignedBuffer(Math.max(length, capacity * 2));
+            if (this == readBuffers.get() && buffer.capacity <= MAX_CACHED_READ_BUFFER_SIZE) {
+                readBuffers.set(buffer);
+            }
+            return buffer;
+        }
+
+        ByteBuffer slice(int offset, int length) {
+            return memory.getByteBuffer(offset, length);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.util.NativeIO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A FileChannelProvider opening the files with O_DIRECT, so that their data does not go through the file
+ * system page cache. It falls back to the {@link DefaultFileChannelProvider} when direct I/O is not
+ * available on the platform.
+ */
+public class DirectIOFileChannelProvider implements FileChannelProvider {
+    private static final Logger LOG = LoggerFactory.getLogger(DirectIOFileChannelProvider.class);
+
+    private final DefaultFileChannelProvider fallback;
+
+    public DirectIOFileChannelProvider() {
+        if (NativeIO.isDirectIOSupported()) {
+            fallback = null;
+        } else {
+            LOG.warn("Direct I/O is not supported on this platform, falling back to page cache I/O");
+            fallback = new DefaultFileChannelProvider();
+        }
+    }
+
+    @Override
+    public BookieFileChannel open(File file, ServerConfiguration configuration) throws IOException {
+        if (fallback != null) {
+            return fallback.open(file, configuration);
+        }
+        return new DirectIOBookieFileChannel(file);
+    }
+
+    @Override
+    public FileChannel openForRead(File file, ServerConfiguration configuration) throws IOException {
+        if (fallback != null) {
+            return fallback.openForRead(file, configuration);
+        }
+        if (!file.exists()) {
+            throw new FileNotFoundException(file.getPath());
+        }
+        return DirectIOFileChannel.open(file, true);
+    }
+
+    @Override
+    public void close(BookieFileChannel bookieFileChannel) throws IOException {
+        bookieFileChannel.close();
+    }
+
+    @Override
+    public void close() {
+
+    }
+
+    private static class DirectIOBookieFileChannel implements BookieFileChannel {
+        private final File file;
+        private DirectIOFileChannel fileChannel;
+
+        DirectIOBookieFileChannel(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public synchronized FileChannel getFileChannel() throws IOException {
+            if (fileChannel == null) {
+                fileChannel = DirectIOFileChannel.open(file, false);
+            }
+            return fileChannel;
+        }
+
+        @Override
+        public boolean fileExists(File file) {
+            return file.exists();
+        }
+
+        @Override
+        public FileDescriptor getFD() {
+            // there are no pages of this file in the page cache to drop
+            return new FileDescriptor();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (fileChannel != null) {
+                fileChannel.close();
+            }
+        }
+    }
+}
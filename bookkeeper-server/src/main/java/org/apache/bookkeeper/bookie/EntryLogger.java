@@ -40,7 +40,6 @@ import java.io.FileNotFoundException;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.AsynchronousCloseException;
 import java.nio.channels.FileChannel;
@@ -219,6 +218,13 @@ public class EntryLogger {
     final EntryLoggerAllocator entryLoggerAllocator;
     private final EntryLogManager entryLogManager;
 
+    /**
+     * Mappings of the rotated entry logs, null if the entry logs are only read through their file channels.
+     */
+    private final MappedEntryLogCache mappedEntryLogs;
+
+    private final FileChannelProvider channelProvider;
+
     private final CopyOnWriteArrayList<EntryLogListener> listeners = new CopyOnWriteArrayList<EntryLogListener>();
 
     private static final int HEADER_V0 = 0; // Old log file format (no ledgers map index)
@@ -346,6 +352,9 @@ public class EntryLogger {
         this.ledgerDirsManager = ledgerDirsManager;
         this.conf = conf;
         entryLogPerLedgerEnabled = conf.isEntryLogPerLedgerEnabled();
+        this.mappedEntryLogs = conf.isEntryLogMmapReadEnabled()
+                ? new MappedEntryLogCache(conf.getEntryLogMmapCacheSize()) : null;
+        this.channelProvider = FileChannelProvider.newProvider(conf.getEntryLogChannelProvider());
         if (listener != null) {
             addListener(listener);
         }
@@ -373,7 +382,7 @@ public class EntryLogger {
         }
         this.recentlyCreatedEntryLogsStatus = new RecentEntryLogsStatus(logId + 1);
         this.entryLoggerAllocator = new EntryLoggerAllocator(conf, ledgerDirsManager, recentlyCreatedEntryLogsStatus,
-                logId, allocator);
+                logId, allocator, channelProvider);
         if (entryLogPerLedgerEnabled) {
             this.entryLogManager = new EntryLogManagerForEntryLogPerLedger(conf, ledgerDirsManager,
                     entryLoggerAllocator, listeners, recentlyCreatedEntryLogsStatus, statsLogger);
@@ -458,6 +467,9 @@ public class EntryLogger {
      * @param logId
      */
     public void removeFromChannelsAndClose(long logId) {
+        if (mappedEntryLogs != null) {
+            mappedEntryLogs.invalidate(logId);
+        }
         FileChannel fileChannel = logid2FileChannel.remove(logId);
         if (null != fileChannel) {
             try {
@@ -839,6 +851,12 @@ public class EntryLogger {
         long entryLogId = logIdForOffset(location);
         long pos = posForOffset(location);
 
+        if (mappedEntryLogs != null) {
+            ByteBuf data = readMappedEntry(ledgerId, entryId, entryLogId, pos, validateEntry);
+            if (data != null) {
+                return data;
+            }
+        }
 
         BufferedReadChannel fc = null;
         int entrySize = -1;
@@ -877,10 +895,174 @@ public class EntryLogger {
         return data;
     }
 
+    /**
+     * Read an entry from the mapping of its entry log, if the entry log has been rotated and flushed.
+     *
+     * @return a slice of the mapping holding the entry, or null if the entry has to be read through the
+     *         file channel of the entry log
+     */
+    private ByteBuf readMappedEntry(long ledgerId, long entryId, long entryLogId, long pos, boolean validateEntry)
+            throws IOException {
+        if (!recentlyCreatedEntryLogsStatus.isFlushedEntryLog(entryLogId)
+                || entryLogManager.getCurrentLogIfPresent(entryLogId) != null) {
+            return null;
+        }
+
+        ByteBuf mapping;
+        try {
+            mapping = mappedEntryLogs.getMapping(entryLogId, findFile(entryLogId));
+        } catch (FileNotFoundException e) {
+            throw new IOException(
+                    new EntryLookupException.MissingLogFileException(ledgerId, entryId, entryLogId, pos).toString());
+        }
+
+        long entrySizePos = pos - 4;
+        if (entrySizePos < 0 || entrySizePos + 4 + 8 + 8 > mapping.capacity()) {
+            // not mapped, or past the end of the mapping
+            return null;
+        }
+        int entrySize = mapping.getInt((int) entrySizePos);
+        if (validateEntry) {
+            try {
+                validateEntry(ledgerId, entryId, entryLogId, pos, mapping.slice((int) entrySizePos, 4 + 8 + 8));
+            } catch (EntryLookupException e) {
+                throw new IOException(e.toString());
+            }
+        }
+        if (entrySize < 0 || pos + entrySize > mapping.capacity()) {
+            return null;
+        }
+        return mapping.retainedSlice((int) pos, entrySize);
+    }
+
     public ByteBuf readEntry(long ledgerId, long entryId, long location) throws IOException, Bookie.NoEntryException {
         return internalReadEntry(ledgerId, entryId, location, true /* validateEntry */);
     }
 
+    /**
+     * Stream the entries of a ledger that are stored one after the other in an entry log, starting
+     * with <i>firstEntryId</i> at the given location.
+     *
+     * <p>The entry log is read in chunks of at most <i>readBufferSize</i> bytes, bypassing the small per-thread
+     * read buffers used for random reads. The chunk and each read are sized from what is left to scan: the
+     * remaining entries of the range and <i>maxSize</i>, estimated with the size of the last entry read, so
+     * that a short scan does not read a full chunk. The scan stops after <i>lastEntryId</i>, at the first entry
+     * that is not the next entry of the ledger, at the end of the entry log, or when the consumer asks to stop.
+     *
+     * @param maxSize the total size of the entries the consumer is expected to accept, the consumer still
+     *                decides when to stop
+     * @return the number of entries passed to the consumer, 0 if the entry at the given location is not
+     *         <i>firstEntryId</i>
+     */
+    public long readSequentialEntries(long ledgerId, long firstEntryId, long lastEntryId, long location,
+                                      int readBufferSize, long maxSize, LedgerStorage.EntryConsumer consumer)
+            throws IOException {
+        long entryLogId = logIdForOffset(location);
+        // position of the size header of the next entry
+        long pos = posForOffset(location) - 4;
+        long entryId = firstEntryId;
+        long sizeLeft = maxSize;
+        // size of the last entry read, unknown until the first header is read
+        int entrySize = -1;
+
+        BufferedReadChannel fc = getChannelForLogId(entryLogId);
+        // the chunk grows up to readBufferSize as the reads need it
+        ByteBuf chunk = allocator.directBuffer(Math.min(readBufferSize, 4 + 16), readBufferSize);
+        try {
+            while (entryId <= lastEntryId) {
+                if (chunk.readableBytes() < 4 + 16 && !fillChunk(entryLogId, fc, chunk, pos, 4 + 16,
+                        bytesToRead(lastEntryId - entryId + 1, sizeLeft, entrySize, readBufferSize))) {
+                    break;
+                }
+
+                int headerIdx = chunk.readerIndex();
+                entrySize = chunk.getInt(headerIdx);
+                if (entrySize < MIN_SANE_ENTRY_SIZE
+                        || chunk.getLong(headerIdx + 4) != ledgerId
+                        || chunk.getLong(headerIdx + 12) != entryId) {
+                    break;
+                }
+
+                ByteBuf data;
+                if (4 + entrySize > chunk.maxCapacity()) {
+                    // entry larger than the read buffer, read it on its own
+                    data = internalReadEntry(ledgerId, entryId, (entryLogId << 32L) | (pos + 4), false);
+                    chunk.clear();
+                } else if (chunk.readableBytes() < 4 + entrySize && !fillChunk(entryLogId, fc, chunk, pos,
+                        4 + entrySize, bytesToRead(lastEntryId - entryId + 1, sizeLeft, entrySize, readBufferSize))) {
+                    break;
+                } else {
+                    data = allocator.buffer(entrySize, entrySize);
+                    data.writeBytes(chunk, chunk.readerIndex() + 4, entrySize);
+                    chunk.skipBytes(4 + entrySize);
+                }
+
+                pos += 4 + entrySize;
+                sizeLeft -= entrySize;
+                entryId++;
+                if (!consumer.accept(entryId - 1, data)) {
+                    break;
+                }
+            }
+        } catch (BufferedChannelBase.BufferedChannelClosedException | AsynchronousCloseException e) {
+            // the entry log was removed while scanning, let the caller fall back to the index
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Entry log {} closed while scanning ledger {}", entryLogId, ledgerId);
+            }
+        } finally {
+            chunk.release();
+        }
+        return entryId - firstEntryId;
+    }
+
+    /**
+     * Estimate the number of bytes a sequential scan still needs from the entry log, assuming the next
+     * entries have the size of the last entry read. The consumer can accept one entry beyond <i>sizeLeft</i>
+     * before stopping the scan, so that entry is included.
+     *
+     * @return the bytes to read, capped to <i>readBufferSize</i>, or only a header if no entry was read yet
+     */
+    private static int bytesToRead(long entriesLeft, long sizeLeft, int entrySize, int readBufferSize) {
+        if (entrySize < 0) {
+            return 4 + 16;
+        }
+        long entryBytes = 4L + entrySize;
+        long rangeBytes = entriesLeft > readBufferSize ? readBufferSize : entriesLeft * entryBytes;
+        long budgetBytes = Math.max(0, Math.min(sizeLeft, readBufferSize)) + entryBytes;
+        return (int) Math.min(readBufferSize, Math.min(rangeBytes, budgetBytes));
+    }
+
+    /**
+     * Refill the chunk with the data of the entry log that follows its readable bytes, which start at
+     * position <i>pos</i> in the entry log. The data is read straight from the file, so the part of
+     * the current entry log that is still in its write buffer is not visible and ends the scan.
+     *
+     * <p>The chunk is filled up to <i>wantedBytes</i> readable bytes when possible, growing it if needed
+     * within its max capacity, and each read is limited to the missing bytes.
+     *
+     * @return true if at least <i>minReadableBytes</i> are readable in the chunk after the refill
+     */
+    private boolean fillChunk(long entryLogId, BufferedReadChannel fc, ByteBuf chunk, long pos, int minReadableBytes,
+                              int wantedBytes) throws IOException {
+        chunk.discardReadBytes();
+        int targetBytes = Math.min(chunk.maxCapacity(), Math.max(minReadableBytes, wantedBytes));
+        if (chunk.capacity() < targetBytes) {
+            chunk.capacity(targetBytes);
+        }
+        long readPos = pos + chunk.readableBytes();
+        FileChannel fileChannel = fc.validateAndGetFileChannel();
+        while (chunk.readableBytes() < minReadableBytes && chunk.writerIndex() < targetBytes) {
+            int read = fileChannel.read(chunk.nioBuffer(chunk.writerIndex(), targetBytes - chunk.writerIndex()),
+                    readPos);
+            if (read <= 0) {
+                break;
+            }
+            chunk.writerIndex(chunk.writerIndex() + read);
+            readPos += read;
+        }
+        return chunk.readableBytes() >= minReadableBytes;
+    }
+
     /**
      * Read the header of an entry log.
      */
@@ -916,7 +1098,7 @@ public class EntryLogger {
         File file = findFile(entryLogId);
         // get channel is used to open an existing entry log file
         // it would be better to open using read mode
-        FileChannel newFc = new RandomAccessFile(file, "r").getChannel();
+        FileChannel newFc = channelProvider.openForRead(file, conf);
         FileChannel oldFc = logid2FileChannel.putIfAbsent(entryLogId, newFc);
         if (null != oldFc) {
             newFc.close();
@@ -1209,6 +1391,9 @@ public class EntryLogger {
             }
             // clear the mapping, so we don't need to go through the channels again in finally block in normal case.
             logid2FileChannel.clear();
+            if (mappedEntryLogs != null) {
+                mappedEntryLogs.invalidateAll();
+            }
             entryLogManager.close();
             synchronized (compactionLogLock) {
                 if (compactionLogChannel != null) {
@@ -1231,6 +1416,7 @@ public class EntryLogger {
         }
         // shutdown the pre-allocation thread
         entryLoggerAllocator.stop();
+        IOUtils.close(LOG, channelProvider);
     }
 
     protected LedgerDirsManager getLedgerDirsManager() {
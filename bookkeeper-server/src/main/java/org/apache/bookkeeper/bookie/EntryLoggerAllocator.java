@@ -33,7 +33,6 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
-import java.io.RandomAccessFile;
 import java.nio.channels.FileChannel;
 import java.util.List;
 import java.util.concurrent.CancellationException;
@@ -64,12 +63,21 @@ class EntryLoggerAllocator {
     private final EntryLogger.RecentEntryLogsStatus recentlyCreatedEntryLogsStatus;
     private final boolean entryLogPreAllocationEnabled;
     private final ByteBufAllocator byteBufAllocator;
+    private final FileChannelProvider channelProvider;
     final ByteBuf logfileHeader = Unpooled.buffer(EntryLogger.LOGFILE_HEADER_SIZE);
 
     EntryLoggerAllocator(ServerConfiguration conf, LedgerDirsManager ledgerDirsManager,
             EntryLogger.RecentEntryLogsStatus recentlyCreatedEntryLogsStatus, long logId,
             ByteBufAllocator byteBufAllocator) {
+        this(conf, ledgerDirsManager, recentlyCreatedEntryLogsStatus, logId, byteBufAllocator,
+                new DefaultFileChannelProvider());
+    }
+
+    EntryLoggerAllocator(ServerConfiguration conf, LedgerDirsManager ledgerDirsManager,
+            EntryLogger.RecentEntryLogsStatus recentlyCreatedEntryLogsStatus, long logId,
+            ByteBufAllocator byteBufAllocator, FileChannelProvider channelProvider) {
         this.conf = conf;
+        this.channelProvider = channelProvider;
         this.byteBufAllocator = byteBufAllocator;
         this.ledgerDirsManager = ledgerDirsManager;
         this.preallocatedLogId = logId;
@@ -164,7 +172,7 @@ class EntryLoggerAllocator {
         } while (testLogFile == null);
 
         File newLogFile = new File(dirForNextEntryLog, logFileName);
-        FileChannel channel = new RandomAccessFile(newLogFile, "rw").getChannel();
+        FileChannel channel = channelProvider.open(newLogFile, conf).getFileChannel();
 
         BufferedLogChannel logChannel = new BufferedLogChannel(byteBufAllocator, channel, conf.getWriteBufferBytes(),
                 conf.getReadBufferBytes(), preallocatedLogId, newLogFile, conf.getFlushIntervalInBytes());
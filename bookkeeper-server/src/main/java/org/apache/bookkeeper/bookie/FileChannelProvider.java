@@ -22,6 +22,8 @@ package org.apache.bookkeeper.bookie;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 
 /**
@@ -54,6 +56,18 @@ public interface FileChannelProvider extends Closeable {
      */
     BookieFileChannel open(File file, ServerConfiguration configuration) throws IOException;
 
+    /**
+     * Open a read only FileChannel on an existing file.
+     *
+     * @param file File path related to bookie.
+     * @param configuration Server configuration.
+     * @return FileChannel to read the file.
+     * @throws IOException Possible IOException, i.e. FileNotFoundException if the file does not exist.
+     */
+    default FileChannel openForRead(File file, ServerConfiguration configuration) throws IOException {
+        return new RandomAccessFile(file, "r").getChannel();
+    }
+
     /**
      * Close bookieFileChannel.
      * @param bookieFileChannel The bookieFileChannel to be closed.
@@ -31,6 +31,7 @@ import io.netty.buffer.Unpooled;
 import io.netty.buffer.UnpooledByteBufAllocator;
 import io.netty.util.Recycler;
 import io.netty.util.Recycler.Handle;
+import io.netty.util.concurrent.DefaultThreadFactory;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -38,15 +39,21 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
 
 import org.apache.bookkeeper.bookie.LedgerDirsManager.NoWritableLedgerDirException;
 import org.apache.bookkeeper.bookie.stats.JournalStats;
@@ -357,6 +364,44 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         }
     }
 
+    /**
+     * Callbacks of journal entries completed in order by a single callback task.
+     */
+    static class CallbackBatch implements Runnable {
+        private final QueueEntry[] entries;
+        private int size = 0;
+
+        CallbackBatch(int maxSize) {
+            this.entries = new QueueEntry[maxSize];
+        }
+
+        /**
+         * Add an entry to the batch.
+         *
+         * @return true if the batch is full
+         */
+        boolean add(QueueEntry qe) {
+            entries[size++] = qe;
+            return size == entries.length;
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < size; i++) {
+                QueueEntry qe = entries[i];
+                entries[i] = null;
+                long ledgerId = qe.ledgerId;
+                long entryId = qe.entryId;
+                try {
+                    qe.run();
+                } catch (Throwable t) {
+                    // a failing callback must not prevent the next entries of the batch from being acknowledged
+                    LOG.error("Failed to run the callback of entry {}@{}", entryId, ledgerId, t);
+                }
+            }
+        }
+    }
+
     /**
      * Token which represents the need to force a write to the Journal.
      */
@@ -371,41 +416,73 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         private long enqueueTime;
 
         public int process(boolean shouldForceWrite) throws IOException {
-            journalStats.getForceWriteQueueSize().dec();
-            journalStats.getFwEnqueueTimeStats()
-                .registerSuccessfulEvent(MathUtils.elapsedNanos(enqueueTime), TimeUnit.NANOSECONDS);
+            dequeued();
 
             if (isMarker) {
                 return 0;
             }
 
-            long startTime = MathUtils.nowInNano();
             try {
                 if (shouldForceWrite) {
-                    this.logFile.forceWrite(false);
-                    journalStats.getJournalSyncStats()
-                        .registerSuccessfulEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+                    forceWrite();
                 }
-                lastLogMark.setCurLogMark(this.logId, this.lastFlushedPosition);
+                return complete();
+            } finally {
+                closeFileIfNecessary();
+            }
+        }
 
-                // Notify the waiters that the force write succeeded
-                for (int i = 0; i < forceWriteWaiters.size(); i++) {
-                    QueueEntry qe = forceWriteWaiters.get(i);
-                    if (qe != null) {
-                        cbThreadPool.execute(qe);
-                    }
-                }
+        private void dequeued() {
+            journalStats.getForceWriteQueueSize().dec();
+            journalStats.getFwEnqueueTimeStats()
+                .registerSuccessfulEvent(MathUtils.elapsedNanos(enqueueTime), TimeUnit.NANOSECONDS);
+        }
 
-                return forceWriteWaiters.size();
+        private void forceWrite() throws IOException {
+            long startTime = MathUtils.nowInNano();
+            try {
+                this.logFile.forceWrite(false);
+                long syncNanos = MathUtils.elapsedNanos(startTime);
+                journalStats.getJournalSyncStats().registerSuccessfulEvent(syncNanos, TimeUnit.NANOSECONDS);
+                updateForceWriteLatency(syncNanos);
             } catch (IOException e) {
                 journalStats.getJournalSyncStats()
                         .registerFailedEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
                 throw e;
-            } finally {
-                closeFileIfNecessary();
             }
         }
 
+        /**
+         * Move the log mark and notify the waiters, once the data of the request is persisted.
+         *
+         * @return the number of waiters
+         */
+        private int complete() {
+            if (syncData && groupCommitController != null) {
+                for (int i = 0; i < forceWriteWaiters.size(); i++) {
+                    QueueEntry qe = forceWriteWaiters.get(i);
+                    if (qe != null) {
+                        // the oldest entry of the group
+                        groupCommitController.onAcknowledged(MathUtils.elapsedNanos(qe.enqueueTime));
+                        break;
+                    }
+                }
+            }
+            lastLogMark.setCurLogMark(this.logId, this.lastFlushedPosition);
+
+            // Notify the waiters that the force write succeeded
+            CallbackBatch callbacks = null;
+            for (int i = 0; i < forceWriteWaiters.size(); i++) {
+                QueueEntry qe = forceWriteWaiters.get(i);
+                if (qe != null) {
+                    callbacks = executeCallback(callbacks, qe);
+                }
+            }
+            executeCallbacks(callbacks);
+
+            return forceWriteWaiters.size();
+        }
+
         public void closeFileIfNecessary() {
             // Close if shouldClose is set
             if (shouldClose) {
@@ -463,6 +540,28 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                 }
             };
 
+    /**
+     * A force write request being processed by the pipelined force write thread.
+     */
+    private static class PendingForceWrite {
+        final ForceWriteRequest req;
+        // the file of the request, kept as the request is recycled once completed
+        final JournalChannel logFile;
+        // marker posted before the force write of the request, null if the request is grouped or not grouping
+        ForceWriteRequest marker;
+        // the requests queued before the marker, which are persisted by the force write of this request
+        List<PendingForceWrite> grouped;
+        // whether the data of the request has been persisted
+        boolean persisted;
+        // whether the force write of the request is over
+        boolean done;
+
+        PendingForceWrite(ForceWriteRequest req) {
+            this.req = req;
+            this.logFile = req.logFile;
+        }
+    }
+
     /**
      * ForceWriteThread is a background thread which makes the journal durable periodically.
      *
@@ -474,13 +573,19 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         Thread threadToNotifyOnEx;
         // should we group force writes
         private final boolean enableGroupForceWrites;
+        // max number of force writes running concurrently
+        private final int maxInFlightForceWrites;
+        // whether a pipelined force write failed, guarded by the pending requests
+        private boolean forceWriteFailed = false;
         private final Counter forceWriteThreadTime;
         public ForceWriteThread(Thread threadToNotifyOnEx,
                                 boolean enableGroupForceWrites,
+                                int maxInFlightForceWrites,
                                 StatsLogger statsLogger) {
             super("ForceWriteThread");
             this.threadToNotifyOnEx = threadToNotifyOnEx;
             this.enableGroupForceWrites = enableGroupForceWrites;
+            this.maxInFlightForceWrites = maxInFlightForceWrites;
             this.forceWriteThreadTime = statsLogger.getThreadScopedCounter("force-write-thread-time");
         }
         @Override
@@ -496,6 +601,12 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                 }
             }
 
+            if (maxInFlightForceWrites > 1) {
+                runPipelined();
+                threadToNotifyOnEx.interrupt();
+                return;
+            }
+
             boolean shouldForceWrite = true;
             int numReqInLastForceWrite = 0;
             long busyStartTime = System.nanoTime();
@@ -580,6 +691,190 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
             // of exiting else we will have write requests hang
             threadToNotifyOnEx.interrupt();
         }
+
+        /**
+         * Run the force writes of up to {@link #maxInFlightForceWrites} requests concurrently, and complete the
+         * requests in order.
+         *
+         * <p>The data of a request is written to the journal file before the request is queued, so a force write
+         * also persists the data of all the previous requests on the same file. These requests are considered
+         * persisted when it completes. When grouping force writes, a marker is posted before issuing a force write,
+         * and the requests on the same file dequeued before the marker wait for that force write instead of
+         * issuing their own.
+         */
+        private void runPipelined() {
+            ExecutorService syncExecutor = Executors.newFixedThreadPool(maxInFlightForceWrites,
+                    new DefaultThreadFactory("ForceWriteThread-sync"));
+            Semaphore inFlight = new Semaphore(maxInFlightForceWrites);
+            Deque<PendingForceWrite> pending = new ArrayDeque<>();
+            // the force write that the requests dequeued before its marker are grouped into
+            PendingForceWrite groupingForceWrite = null;
+            boolean interrupted = false;
+            long busyStartTime = System.nanoTime();
+            try {
+                while (running) {
+                    forceWriteThreadTime.add(MathUtils.elapsedNanos(busyStartTime));
+                    ForceWriteRequest req = forceWriteRequests.take();
+                    busyStartTime = System.nanoTime();
+                    req.dequeued();
+                    if (req.isMarker) {
+                        // the requests after the marker may have been written after the force write started
+                        if (groupingForceWrite != null && groupingForceWrite.marker == req) {
+                            groupingForceWrite = null;
+                        }
+                        req.recycle();
+                        continue;
+                    }
+                    PendingForceWrite pfw = new PendingForceWrite(req);
+                    if (groupingForceWrite != null && groupingForceWrite.logFile == pfw.logFile) {
+                        synchronized (pending) {
+                            pending.add(pfw);
+                            if (groupingForceWrite.done) {
+                                // the request is persisted if the force write succeeded
+                                pfw.done = true;
+                                pfw.persisted = groupingForceWrite.persisted;
+                                completePersisted(pending);
+                            } else {
+                                groupingForceWrite.grouped.add(pfw);
+                            }
+                        }
+                        continue;
+                    }
+
+                    inFlight.acquire();
+                    groupingForceWrite = null;
+                    if (enableGroupForceWrites) {
+                        // any request already in the queue will benefit from this force write
+                        ForceWriteRequest marker = createForceWriteRequest(req.logFile, 0, 0, null, false, true);
+                        if (forceWriteRequests.offer(marker)) {
+                            pfw.marker = marker;
+                            pfw.grouped = new ArrayList<>();
+                            groupingForceWrite = pfw;
+                        } else {
+                            marker.recycle();
+                            Counter failures = journalStats.getForceWriteGroupingFailures();
+                            failures.inc();
+                            LOG.error("Fail to send force write grouping marker,"
+                                    + " Journal.forceWriteRequests queue(capacity {}) is full,"
+                                    + " current failure counter is {}.",
+                                    conf.getJournalQueueSize(), failures.get());
+                        }
+                    }
+                    synchronized (pending) {
+                        pending.add(pfw);
+                    }
+                    syncExecutor.execute(() -> {
+                        try {
+                            forceWrite(pfw, pending);
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                }
+            } catch (InterruptedException e) {
+                // the interrupt flag is restored once the in-flight force writes are over, as the files are
+                // closed after them
+                interrupted = true;
+                LOG.info("ForceWrite thread interrupted");
+            } finally {
+                running = false;
+                syncExecutor.shutdown();
+                try {
+                    if (!syncExecutor.awaitTermination(1, TimeUnit.MINUTES)) {
+                        LOG.warn("Timed out waiting for the in-flight journal force writes");
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+                synchronized (pending) {
+                    // close is idempotent
+                    PendingForceWrite last = pending.peekLast();
+                    if (last != null) {
+                        last.req.shouldClose = true;
+                    }
+                    for (PendingForceWrite pfw : pending) {
+                        pfw.req.closeFileIfNecessary();
+                        pfw.req.recycle();
+                    }
+                    pending.clear();
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        private void forceWrite(PendingForceWrite pfw, Deque<PendingForceWrite> pending) {
+            boolean persisted;
+            synchronized (pending) {
+                // without grouping, every request issues its own force write
+                persisted = pfw.persisted && enableGroupForceWrites;
+            }
+            if (!persisted && running) {
+                try {
+                    pfw.req.forceWrite();
+                    persisted = true;
+                } catch (IOException ioe) {
+                    LOG.error("I/O exception in ForceWrite thread", ioe);
+                    synchronized (pending) {
+                        forceWriteFailed = true;
+                    }
+                    running = false;
+                    this.interrupt();
+                }
+            }
+
+            synchronized (pending) {
+                pfw.done = true;
+                if (persisted) {
+                    // the previous requests on the same file are persisted as well
+                    for (PendingForceWrite previous : pending) {
+                        if (previous.logFile == pfw.logFile) {
+                            previous.persisted = true;
+                        }
+                        if (previous == pfw) {
+                            break;
+                        }
+                    }
+                }
+                if (pfw.grouped != null) {
+                    int numReqInForceWrite = pfw.req.forceWriteWaiters.size();
+                    for (PendingForceWrite grouped : pfw.grouped) {
+                        grouped.done = true;
+                        grouped.persisted = persisted;
+                        numReqInForceWrite += grouped.req.forceWriteWaiters.size();
+                    }
+                    if (persisted) {
+                        journalStats.getForceWriteGroupingCountStats().registerSuccessfulValue(numReqInForceWrite);
+                    }
+                    pfw.grouped = null;
+                }
+                completePersisted(pending);
+            }
+        }
+
+        /**
+         * Complete the requests in order, as the log mark moves forward. Must be called with the lock of
+         * <i>pending</i> held.
+         *
+         * <p>Once a force write failed, the data written before it may have been dropped even if a later force
+         * write succeeds, so no request is completed anymore.
+         */
+        private void completePersisted(Deque<PendingForceWrite> pending) {
+            if (forceWriteFailed) {
+                return;
+            }
+            while (!pending.isEmpty() && pending.peekFirst().done && pending.peekFirst().persisted) {
+                ForceWriteRequest req = pending.pollFirst().req;
+                try {
+                    req.complete();
+                } finally {
+                    req.closeFileIfNecessary();
+                    req.recycle();
+                }
+            }
+        }
+
         // shutdown sync thread
         void shutdown() throws InterruptedException {
             running = false;
@@ -601,6 +896,9 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
     }
 
     static final int PADDING_MASK = -0x100;
+    static final int COMPRESSED_BATCH_MASK = -0x200;
+    // mask, codec, uncompressed length, compressed length, checksum
+    static final int COMPRESSED_BATCH_HEADER_SIZE = 20;
 
     static void writePaddingBytes(JournalChannel jc, ByteBuf paddingBuffer, int journalAlignSize)
             throws IOException {
@@ -642,6 +940,9 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
     final ForceWriteThread forceWriteThread;
     final FileChannelProvider fileChannelProvider;
 
+    // zeroed files to reuse for the new journal files, null if the journal files are not reused
+    private final JournalFilePool filePool;
+
     // Time after which we will stop grouping and issue the flush
     private final long maxGroupWaitInNanos;
     // Threshold after which we flush any buffered journal entries
@@ -653,6 +954,10 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
     // should we hint the filesystem to remove pages from cache after force write
     private final boolean removePagesFromCache;
     private final int journalFormatVersionToWrite;
+    // codec compressing the batches of entries, null if the entries are not compressed
+    private final JournalCompressionCodec compressionCodec;
+    // checksum of the compressed batches, only used by the journal thread
+    private final CRC32 compressionChecksum = new CRC32();
     private final int journalAlignmentSize;
     // control PageCache flush interval when syncData disabled to reduce disk io util
     private final long journalPageCacheFlushIntervalMSec;
@@ -662,6 +967,12 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
 
     private final LastLogMark lastLogMark = new LastLogMark(0, 0);
 
+    // exponentially weighted moving average of the force write latency
+    private final AtomicLong avgForceWriteLatencyNanos = new AtomicLong(0);
+
+    // adjusts the group wait to a target latency, null if the group wait is fixed
+    private final JournalGroupCommitController groupCommitController;
+
     private static final String LAST_MARK_DEFAULT_NAME = "lastMark";
 
     private final String lastMarkFileName;
@@ -670,6 +981,7 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
      * The thread pool used to handle callback.
      */
     private final ExecutorService cbThreadPool;
+    private final int callbackBatchSize;
 
     private final Counter callbackTime;
     private final Counter journalTime;
@@ -721,13 +1033,22 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         this.syncData = conf.getJournalSyncData();
         this.maxBackupJournals = conf.getMaxBackupJournals();
         this.forceWriteThread = new ForceWriteThread(this, conf.getJournalAdaptiveGroupWrites(),
-                journalStatsLogger);
+                conf.getJournalMaxInFlightForceWrites(), journalStatsLogger);
         this.maxGroupWaitInNanos = TimeUnit.MILLISECONDS.toNanos(conf.getJournalMaxGroupWaitMSec());
         this.bufferedWritesThreshold = conf.getJournalBufferedWritesThreshold();
         this.bufferedEntriesThreshold = conf.getJournalBufferedEntriesThreshold();
+        JournalCompressionCodec codec = JournalCompressionCodec.valueOf(
+                conf.getJournalCompressionType().toUpperCase(Locale.ROOT));
+        this.compressionCodec = codec != JournalCompressionCodec.NONE ? codec : null;
         this.journalFormatVersionToWrite = conf.getJournalFormatVersionToWrite();
+        // the compressed batches of entries are only understood from V7
+        if (compressionCodec != null && journalFormatVersionToWrite < JournalChannel.V7) {
+            throw new IllegalArgumentException("Journal compression " + codec + " writes the journal format version "
+                    + JournalChannel.V7 + ", journalFormatVersionToWrite is " + journalFormatVersionToWrite);
+        }
         this.journalAlignmentSize = conf.getJournalAlignmentSize();
         this.journalPageCacheFlushIntervalMSec = conf.getJournalPageCacheFlushIntervalMSec();
+        this.callbackBatchSize = Math.max(1, conf.getJournalCallbackBatchSize());
         if (conf.getNumJournalCallbackThreads() > 0) {
             this.cbThreadPool = Executors.newFixedThreadPool(conf.getNumJournalCallbackThreads(),
                                                         new CbThreadFactory());
@@ -739,6 +1060,11 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
 
         this.journalTime = journalStatsLogger.getThreadScopedCounter("journal-thread-time");
 
+        long targetAddLatencyMicros = conf.getJournalTargetAddLatencyMicros();
+        this.groupCommitController = targetAddLatencyMicros > 0
+                ? new JournalGroupCommitController(TimeUnit.MICROSECONDS.toNanos(targetAddLatencyMicros))
+                : null;
+
         // Unless there is a cap on the max wait (which requires group force writes)
         // we cannot skip flushing for queue empty
         this.flushWhenQueueEmpty = maxGroupWaitInNanos <= 0 || conf.getJournalFlushWhenQueueEmpty();
@@ -762,9 +1088,15 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
             throw new RuntimeException(e);
         }
 
+        this.filePool = conf.getJournalReuseFilesCount() > 0
+                ? new JournalFilePool(journalDirectory, conf.getJournalReuseFilesCount())
+                : null;
+
         // Expose Stats
         this.journalStats = new JournalStats(journalStatsLogger, journalMaxMemory,
-                () -> memoryLimitController.currentUsage());
+                () -> memoryLimitController.currentUsage(),
+                () -> TimeUnit.NANOSECONDS.toMicros(groupCommitController != null
+                        ? groupCommitController.getWindowNanos() : maxGroupWaitInNanos));
     }
 
     JournalStats getJournalStats() {
@@ -824,7 +1156,9 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                     // make sure the journal id is smaller than marked journal id
                     if (id < mark.getCurMark().getLogFileId()) {
                         File journalFile = new File(journalDirectory, Long.toHexString(id) + ".txn");
-                        if (!journalFile.delete()) {
+                        if (filePool != null) {
+                            filePool.release(journalFile);
+                        } else if (!journalFile.delete()) {
                             LOG.warn("Could not delete old journal file {}", journalFile);
                         }
                         LOG.info("garbage collected journal " + journalFile.getName());
@@ -873,7 +1207,13 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                 }
                 boolean isPaddingRecord = false;
                 if (len < 0) {
-                    if (len == PADDING_MASK && journalVersion >= JournalChannel.V5) {
+                    if (len == COMPRESSED_BATCH_MASK && journalVersion >= JournalChannel.V7) {
+                        if (!scanCompressedBatch(recLog, journalVersion, offset, scanner)) {
+                            // the journal ends before the incomplete or corrupted batch
+                            return offset;
+                        }
+                        continue;
+                    } else if (len == PADDING_MASK && journalVersion >= JournalChannel.V5) {
                         // skip padding bytes
                         lenBuff.clear();
                         fullRead(recLog, lenBuff);
@@ -967,6 +1307,56 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         return queue.size();
     }
 
+    /**
+     * Get the number of pending force write requests.
+     *
+     * @return length of the force write queue.
+     */
+    int getForceWriteQueueLength() {
+        return forceWriteRequests.size();
+    }
+
+    /**
+     * Get the moving average of the latency of the force writes of the journal files.
+     *
+     * @return the average force write latency in nanoseconds, 0 if no force write has been done yet.
+     */
+    long getAvgForceWriteLatencyNanos() {
+        return avgForceWriteLatencyNanos.get();
+    }
+
+    private void updateForceWriteLatency(long latencyNanos) {
+        // called concurrently by the sync threads when the force writes are pipelined
+        avgForceWriteLatencyNanos.updateAndGet(avg -> avg == 0 ? latencyNanos : avg + (latencyNanos - avg) / 8);
+    }
+
+    /**
+     * Hand the callback of an acknowledged entry to the callback threads, in batches of up to
+     * callbackBatchSize entries.
+     *
+     * @return the batch still being filled, to pass to the next call
+     */
+    private CallbackBatch executeCallback(CallbackBatch callbacks, QueueEntry qe) {
+        if (callbackBatchSize == 1) {
+            cbThreadPool.execute(qe);
+            return null;
+        }
+        if (callbacks == null) {
+            callbacks = new CallbackBatch(callbackBatchSize);
+        }
+        if (callbacks.add(qe)) {
+            cbThreadPool.execute(callbacks);
+            return null;
+        }
+        return callbacks;
+    }
+
+    private void executeCallbacks(CallbackBatch callbacks) {
+        if (callbacks != null) {
+            cbThreadPool.execute(callbacks);
+        }
+    }
+
     /**
      * A thread used for persisting journal entries to journal files.
      *
@@ -1000,6 +1390,8 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         ByteBuf lenBuff = Unpooled.buffer(4);
         ByteBuf paddingBuff = Unpooled.buffer(2 * conf.getJournalAlignmentSize());
         paddingBuff.writeZero(paddingBuff.capacity());
+        // entries of the current batch, written compressed when the batch is flushed
+        ByteBuf compressionBatch = compressionCodec != null ? Unpooled.buffer(journalWriteBufferSize) : null;
 
         BufferedChannel bc = null;
         JournalChannel logFile = null;
@@ -1028,10 +1420,12 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                     logId = logId + 1;
 
                     journalCreationWatcher.reset().start();
+                    boolean reused = filePool != null
+                            && filePool.acquire(new File(journalDirectory, Long.toHexString(logId) + ".txn"));
                     logFile = new JournalChannel(journalDirectory, logId, journalPreAllocSize, journalWriteBufferSize,
                                         journalAlignmentSize, removePagesFromCache,
                                         journalFormatVersionToWrite, getBufferedChannelBuilder(),
-                                        conf, fileChannelProvider);
+                                        conf, fileChannelProvider, reused);
 
                     journalStats.getJournalCreationStats().registerSuccessfulEvent(
                             journalCreationWatcher.stop().elapsed(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
@@ -1055,10 +1449,19 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                         journalStats.getJournalQueueSize().dec();
                         journalStats.getJournalQueueStats()
                             .registerSuccessfulEvent(MathUtils.elapsedNanos(qe.enqueueTime), TimeUnit.NANOSECONDS);
+                        if (groupCommitController != null) {
+                            groupCommitController.onArrival(qe.enqueueTime);
+                        }
                     } else {
-                        long pollWaitTimeNanos = maxGroupWaitInNanos
+                        long groupWaitNanos = maxGroupWaitInNanos;
+                        boolean flushOnEmptyQueue = flushWhenQueueEmpty;
+                        if (groupCommitController != null) {
+                            groupWaitNanos = groupCommitController.getWindowNanos();
+                            flushOnEmptyQueue = groupWaitNanos <= 0;
+                        }
+                        long pollWaitTimeNanos = groupWaitNanos
                                 - MathUtils.elapsedNanos(toFlush.get(0).enqueueTime);
-                        if (flushWhenQueueEmpty || pollWaitTimeNanos < 0) {
+                        if (flushOnEmptyQueue || pollWaitTimeNanos < 0) {
                             pollWaitTimeNanos = 0;
                         }
                         qe = queue.poll(pollWaitTimeNanos, TimeUnit.NANOSECONDS);
@@ -1068,17 +1471,20 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                             journalStats.getJournalQueueSize().dec();
                             journalStats.getJournalQueueStats()
                                 .registerSuccessfulEvent(MathUtils.elapsedNanos(qe.enqueueTime), TimeUnit.NANOSECONDS);
+                            if (groupCommitController != null) {
+                                groupCommitController.onArrival(qe.enqueueTime);
+                            }
                         }
 
                         boolean shouldFlush = false;
                         // We should issue a forceWrite if any of the three conditions below holds good
                         // 1. If the oldest pending entry has been pending for longer than the max wait time
-                        if (maxGroupWaitInNanos > 0 && !groupWhenTimeout && (MathUtils
-                                .elapsedNanos(toFlush.get(0).enqueueTime) > maxGroupWaitInNanos)) {
+                        if (groupWaitNanos > 0 && !groupWhenTimeout && (MathUtils
+                                .elapsedNanos(toFlush.get(0).enqueueTime) > groupWaitNanos)) {
                             groupWhenTimeout = true;
-                        } else if (maxGroupWaitInNanos > 0 && groupWhenTimeout
+                        } else if (groupWaitNanos > 0 && groupWhenTimeout
                             && (qe == null // no entry to group
-                                || MathUtils.elapsedNanos(qe.enqueueTime) < maxGroupWaitInNanos)) {
+                                || MathUtils.elapsedNanos(qe.enqueueTime) < groupWaitNanos)) {
                             // when group timeout, it would be better to look forward, as there might be lots of
                             // entries already timeout
                             // due to a previous slow write (writing to filesystem which impacted by force write).
@@ -1090,12 +1496,13 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                             journalStats.getFlushMaxWaitCounter().inc();
                         } else if (qe != null
                                 && ((bufferedEntriesThreshold > 0 && toFlush.size() > bufferedEntriesThreshold)
-                                || (bc.position() > lastFlushPosition + bufferedWritesThreshold))) {
+                                || ((compressionBatch != null ? batchSize : bc.position() - lastFlushPosition)
+                                        > bufferedWritesThreshold))) {
                             // 2. If we have buffered more than the buffWriteThreshold or bufferedEntriesThreshold
                             groupWhenTimeout = false;
                             shouldFlush = true;
                             journalStats.getFlushMaxOutstandingBytesCounter().inc();
-                        } else if (qe == null && flushWhenQueueEmpty) {
+                        } else if (qe == null && flushOnEmptyQueue) {
                             // We should get here only if we flushWhenQueueEmpty is true else we would wait
                             // for timeout that would put is past the maxWait threshold
                             // 3. If the queue is empty i.e. no benefit of grouping. This happens when we have one
@@ -1107,20 +1514,34 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
 
                         // toFlush is non null and not empty so should be safe to access getFirst
                         if (shouldFlush) {
+                            if (compressionBatch != null && compressionBatch.isReadable()) {
+                                writeCompressedBatch(logFile, compressionBatch);
+                            }
                             if (journalFormatVersionToWrite >= JournalChannel.V5) {
                                 writePaddingBytes(logFile, paddingBuff, journalAlignmentSize);
                             }
                             journalFlushWatcher.reset().start();
                             bc.flush();
 
+                            if (groupCommitController != null) {
+                                if (!syncData) {
+                                    // the entries are acknowledged once flushed
+                                    groupCommitController.onAcknowledged(
+                                            MathUtils.elapsedNanos(toFlush.get(0).enqueueTime));
+                                }
+                                groupCommitController.update(syncData ? avgForceWriteLatencyNanos.get() : 0);
+                            }
+
+                            CallbackBatch callbacks = null;
                             for (int i = 0; i < toFlush.size(); i++) {
                                 QueueEntry entry = toFlush.get(i);
                                 if (entry != null && (!syncData || entry.ackBeforeSync)) {
                                     toFlush.set(i, null);
                                     numEntriesToFlush--;
-                                    cbThreadPool.execute(entry);
+                                    callbacks = executeCallback(callbacks, entry);
                                 }
                             }
+                            executeCallbacks(callbacks);
 
                             lastFlushPosition = bc.position();
                             journalStats.getJournalFlushStats().registerSuccessfulEvent(
@@ -1199,14 +1620,19 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
 
                     batchSize += (4 + entrySize);
 
-                    lenBuff.clear();
-                    lenBuff.writeInt(entrySize);
+                    if (compressionBatch != null) {
+                        compressionBatch.writeInt(entrySize);
+                        compressionBatch.writeBytes(qe.entry, qe.entry.readerIndex(), entrySize);
+                    } else {
+                        lenBuff.clear();
+                        lenBuff.writeInt(entrySize);
 
-                    // preAlloc based on size
-                    logFile.preAllocIfNeeded(4 + entrySize);
+                        // preAlloc based on size
+                        logFile.preAllocIfNeeded(4 + entrySize);
 
-                    bc.write(lenBuff);
-                    bc.write(qe.entry);
+                        bc.write(lenBuff);
+                        bc.write(qe.entry);
+                    }
                     memoryLimitController.releaseMemory(qe.entry.readableBytes());
                     qe.entry.release();
                 }
@@ -1231,6 +1657,90 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         LOG.info("Journal exited loop!");
     }
 
+    /**
+     * Write a batch of entries as a compressed record, and clear the batch.
+     *
+     * <p>The batch is compressed right after the space of the header in a pooled buffer, which is released once
+     * copied in the write buffer of the journal file.
+     */
+    private void writeCompressedBatch(JournalChannel logFile, ByteBuf batch) throws IOException {
+        int length = batch.readableBytes();
+        int maxCompressedLength = compressionCodec.maxCompressedLength(length);
+        ByteBuf record = allocator.heapBuffer(COMPRESSED_BATCH_HEADER_SIZE + maxCompressedLength);
+        try {
+            long startTime = MathUtils.nowInNano();
+            int dataOffset = record.arrayOffset() + COMPRESSED_BATCH_HEADER_SIZE;
+            int compressedLength = compressionCodec.compress(batch.array(), batch.arrayOffset() + batch.readerIndex(),
+                    length, record.array(), dataOffset, maxCompressedLength);
+            compressionChecksum.reset();
+            compressionChecksum.update(record.array(), dataOffset, compressedLength);
+            journalStats.getJournalCompressionStats()
+                    .registerSuccessfulEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+
+            record.writeInt(COMPRESSED_BATCH_MASK);
+            record.writeInt(compressionCodec.getId());
+            record.writeInt(length);
+            record.writeInt(compressedLength);
+            record.writeInt((int) compressionChecksum.getValue());
+            record.writerIndex(COMPRESSED_BATCH_HEADER_SIZE + compressedLength);
+
+            logFile.preAllocIfNeeded(record.readableBytes());
+            logFile.getBufferedChannel().write(record);
+
+            journalStats.getJournalCompressedBytes().add(record.readableBytes());
+            journalStats.getJournalCompressionRatioStats().registerSuccessfulValue(100L * compressedLength / length);
+        } finally {
+            record.release();
+        }
+        batch.clear();
+    }
+
+    /**
+     * Read a compressed batch of entries and pass its entries to the scanner.
+     *
+     * @return false if the batch is incomplete or corrupted, i.e. this is where the journal left off writing
+     */
+    private static boolean scanCompressedBatch(JournalChannel recLog, int journalVersion, long offset,
+                                               JournalScanner scanner) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(COMPRESSED_BATCH_HEADER_SIZE - 4);
+        if (fullRead(recLog, header) != header.capacity()) {
+            return false;
+        }
+        header.flip();
+        int codecId = header.getInt();
+        int length = header.getInt();
+        int compressedLength = header.getInt();
+        int expectedChecksum = header.getInt();
+        if (length <= 0 || compressedLength <= 0) {
+            return false;
+        }
+        ByteBuffer compressed = ByteBuffer.allocate(compressedLength);
+        if (fullRead(recLog, compressed) != compressedLength) {
+            return false;
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(compressed.array(), 0, compressedLength);
+        if ((int) checksum.getValue() != expectedChecksum) {
+            LOG.info("Checksum mismatch of the compressed batch at {}, assuming the journal ended there", offset);
+            return false;
+        }
+
+        byte[] data = new byte[length];
+        JournalCompressionCodec.fromId(codecId).decompress(compressed.array(), compressedLength, data, length);
+        ByteBuffer entries = ByteBuffer.wrap(data);
+        while (entries.hasRemaining()) {
+            int len = entries.remaining() >= 4 ? entries.getInt() : -1;
+            if (len <= 0 || len > entries.remaining()) {
+                throw new IOException("Invalid record of length " + len + " in the compressed batch at " + offset);
+            }
+            ByteBuffer entry = entries.slice();
+            entry.limit(len);
+            scanner.process(journalVersion, offset, entry);
+            entries.position(entries.position() + len);
+        }
+        return true;
+    }
+
     public BufferedChannelBuilder getBufferedChannelBuilder() {
         return (FileChannel fc, int capacity) -> new BufferedChannel(allocator, fc, capacity);
     }
@@ -1249,6 +1759,9 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
             }
 
             forceWriteThread.shutdown();
+            if (filePool != null) {
+                filePool.shutdown();
+            }
             cbThreadPool.shutdown();
             if (!cbThreadPool.awaitTermination(5, TimeUnit.SECONDS)) {
                 LOG.warn("Couldn't shutdown journal callback thread gracefully. Forcing");
@@ -73,18 +73,21 @@ class JournalChannel implements Closeable {
     static final int V5 = 5;
     // Adding explicitlac entry
     public static final int V6 = 6;
+    // Adding compressed batches of entries
+    public static final int V7 = 7;
 
     static final int HEADER_SIZE = SECTOR_SIZE; // align header to sector size
     static final int VERSION_HEADER_SIZE = 8; // 4byte magic word, 4 byte version
     static final int MIN_COMPAT_JOURNAL_FORMAT_VERSION = V1;
-    static final int CURRENT_JOURNAL_FORMAT_VERSION = V6;
+    static final int CURRENT_JOURNAL_FORMAT_VERSION = V7;
 
     private final long preAllocSize;
     private final int journalAlignSize;
     private final boolean fRemoveFromPageCache;
     public final ByteBuffer zeros;
 
-    // The position of the file channel's last drop position
+    // The position of the file channel's last drop position, guarded by the channel when the force writes of the
+    // journal are done concurrently
     private long lastDropPosition = 0L;
 
     final ServerConfiguration configuration;
@@ -108,7 +111,7 @@ class JournalChannel implements Closeable {
                    FileChannelProvider provider) throws IOException {
          this(journalDirectory, logId, preAllocSize, writeBufferSize, SECTOR_SIZE,
                  position, false, V5, Journal.BufferedChannelBuilder.DEFAULT_BCBUILDER,
-             conf, provider);
+             conf, provider, false);
     }
 
     // Open journal to write
@@ -126,7 +129,17 @@ class JournalChannel implements Closeable {
                    Journal.BufferedChannelBuilder bcBuilder, ServerConfiguration conf,
                    FileChannelProvider provider) throws IOException {
         this(journalDirectory, logId, preAllocSize, writeBufferSize, journalAlignSize,
-                START_OF_FILE, fRemoveFromPageCache, formatVersionToWrite, bcBuilder, conf, provider);
+                START_OF_FILE, fRemoveFromPageCache, formatVersionToWrite, bcBuilder, conf, provider, false);
+    }
+
+    // Open journal to write, in a zeroed file reused from a previous journal if reused is set
+    JournalChannel(File journalDirectory, long logId,
+                   long preAllocSize, int writeBufferSize, int journalAlignSize,
+                   boolean fRemoveFromPageCache, int formatVersionToWrite,
+                   Journal.BufferedChannelBuilder bcBuilder, ServerConfiguration conf,
+                   FileChannelProvider provider, boolean reused) throws IOException {
+        this(journalDirectory, logId, preAllocSize, writeBufferSize, journalAlignSize,
+                START_OF_FILE, fRemoveFromPageCache, formatVersionToWrite, bcBuilder, conf, provider, reused);
     }
 
     /**
@@ -149,6 +162,8 @@ class JournalChannel implements Closeable {
      *          whether to remove cached pages from page cache.
      * @param formatVersionToWrite
      *          format version to write
+     * @param reused
+     *          whether the file is a zeroed file to write, reused from a previous journal
      * @throws IOException
      */
     private JournalChannel(File journalDirectory, long logId,
@@ -156,7 +171,7 @@ class JournalChannel implements Closeable {
                            long position, boolean fRemoveFromPageCache,
                            int formatVersionToWrite, Journal.BufferedChannelBuilder bcBuilder,
                            ServerConfiguration conf,
-                           FileChannelProvider provider) throws IOException {
+                           FileChannelProvider provider, boolean reused) throws IOException {
         this.journalAlignSize = journalAlignSize;
         this.zeros = ByteBuffer.allocate(journalAlignSize);
         this.preAllocSize = preAllocSize - preAllocSize % journalAlignSize;
@@ -171,8 +186,8 @@ class JournalChannel implements Closeable {
         }
 
         LOG.info("Opening journal {}", fn);
-        if (!channel.fileExists(fn)) { // new file, write version
-            if (!fn.createNewFile()) {
+        if (reused || !channel.fileExists(fn)) { // new file, write version
+            if (!reused && !fn.createNewFile()) {
                 LOG.error("Journal file {}, that shouldn't exist, already exists. "
                           + " is there another bookie process running?", fn);
                 throw new IOException("File " + fn
@@ -302,10 +317,13 @@ class JournalChannel implements Closeable {
         //
         if (fRemoveFromPageCache) {
             long newDropPos = newForceWritePosition - cacheDropLagBytes;
-            if (lastDropPosition < newDropPos) {
-                NativeIO.bestEffortRemoveFromPageCache(fd, lastDropPosition, newDropPos - lastDropPosition);
+            synchronized (this) {
+                // A force write that completes after a later one must not move the drop position back
+                if (lastDropPosition < newDropPos) {
+                    NativeIO.bestEffortRemoveFromPageCache(fd, lastDropPosition, newDropPos - lastDropPosition);
+                    this.lastDropPosition = newDropPos;
+                }
             }
-            this.lastDropPosition = newDropPos;
         }
     }
 
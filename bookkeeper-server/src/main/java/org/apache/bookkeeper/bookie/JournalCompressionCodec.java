@@ -0,0 +1,164 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import org.xerial.snappy.Snappy;
+
+/**
+ * Codecs compressing the batches of entries written to the journal.
+ *
+ * <p>The id of a codec is written with each compressed batch, so that the journal files written with any codec
+ * can be read whatever codec is configured.
+ */
+enum JournalCompressionCodec {
+
+    NONE(0) {
+        @Override
+        int maxCompressedLength(int length) {
+            return length;
+        }
+
+        @Override
+        int compress(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLength) {
+            System.arraycopy(src, srcOffset, dst, dstOffset, srcLength);
+            return srcLength;
+        }
+
+        @Override
+        void decompress(byte[] src, int srcLength, byte[] dst, int dstLength) throws IOException {
+            if (srcLength != dstLength) {
+                throw new IOException("Invalid uncompressed batch length " + srcLength + ", expected " + dstLength);
+            }
+            System.arraycopy(src, 0, dst, 0, srcLength);
+        }
+    },
+
+    SNAPPY(1) {
+        @Override
+        int maxCompressedLength(int length) {
+            return Snappy.maxCompressedLength(length);
+        }
+
+        @Override
+        int compress(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLength)
+                throws IOException {
+            return Snappy.compress(src, srcOffset, srcLength, dst, dstOffset);
+        }
+
+        @Override
+        void decompress(byte[] src, int srcLength, byte[] dst, int dstLength) throws IOException {
+            if (!Snappy.isValidCompressedBuffer(src, 0, srcLength)
+                    || Snappy.uncompressedLength(src, 0, srcLength) != dstLength) {
+                throw new IOException("Invalid snappy compressed batch");
+            }
+            Snappy.uncompress(src, 0, srcLength, dst, 0);
+        }
+    },
+
+    DEFLATE(2) {
+        @Override
+        int maxCompressedLength(int length) {
+            // zlib bound for the stored blocks of incompressible data, plus the stream header and trailer
+            return length + (length >>> 12) + (length >>> 14) + (length >>> 25) + 13 + 6;
+        }
+
+        @Override
+        int compress(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLength)
+                throws IOException {
+            Deflater deflater = Deflaters.DEFLATER.get();
+            deflater.reset();
+            deflater.setInput(src, srcOffset, srcLength);
+            deflater.finish();
+            int length = deflater.deflate(dst, dstOffset, dstLength);
+            if (!deflater.finished()) {
+                throw new IOException("Deflated batch larger than " + dstLength + " bytes");
+            }
+            return length;
+        }
+
+        @Override
+        void decompress(byte[] src, int srcLength, byte[] dst, int dstLength) throws IOException {
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(src, 0, srcLength);
+                if (inflater.inflate(dst, 0, dstLength) != dstLength || !inflater.finished()) {
+                    throw new IOException("Invalid deflated batch");
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Invalid deflated batch", e);
+            } finally {
+                inflater.end();
+            }
+        }
+    };
+
+    private final int id;
+
+    JournalCompressionCodec(int id) {
+        this.id = id;
+    }
+
+    int getId() {
+        return id;
+    }
+
+    /**
+     * @return the max length of the compressed data of the given length
+     */
+    abstract int maxCompressedLength(int length);
+
+    /**
+     * Compress data in a buffer of at least {@link #maxCompressedLength(int)} bytes.
+     *
+     * @param dstLength the space available in the destination buffer from <i>dstOffset</i>
+     * @return the length of the compressed data
+     */
+    abstract int compress(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLength)
+            throws IOException;
+
+    /**
+     * Decompress data whose uncompressed length is known.
+     *
+     * @throws IOException if the data is not valid compressed data of the given length
+     */
+    abstract void decompress(byte[] src, int srcLength, byte[] dst, int dstLength) throws IOException;
+
+    /**
+     * Deflaters reused by the journal threads, since allocating one is expensive.
+     */
+    private static class Deflaters {
+        static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+    }
+
+    static JournalCompressionCodec fromId(int id) throws IOException {
+        for (JournalCompressionCodec codec : values()) {
+            if (codec.id == id) {
+                return codec;
+            }
+        }
+        throw new IOException("Unknown journal compression codec " + id);
+    }
+}
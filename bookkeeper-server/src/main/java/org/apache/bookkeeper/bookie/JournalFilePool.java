@@ -0,0 +1,187 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A pool of zeroed journal files, reused for the new journal files instead of creating them.
+ *
+ * <p>The journal files that are garbage collected are renamed out of the journal files, zeroed in the background
+ * and made available for the new journal files, up to the pool size. A new journal file then overwrites blocks that
+ * are already allocated, so creating the file and syncing the allocation of its blocks are not on the write path.
+ * Since the journal is scanned until the first zeroed record, a reused file must be entirely zeroed before being
+ * written again.
+ *
+ * <p>The files being zeroed and the zeroed files are named with the {@value #ZEROING_SUFFIX} and
+ * {@value #FREE_SUFFIX} suffixes, so that they are never scanned as journal files. A file is renamed as free only
+ * once its zeros are persisted, and the files left being zeroed by a crash are deleted on startup.
+ */
+class JournalFilePool {
+    private static final Logger LOG = LoggerFactory.getLogger(JournalFilePool.class);
+
+    static final String ZEROING_SUFFIX = ".txn.zeroing";
+    static final String FREE_SUFFIX = ".txn.free";
+
+    private static final int ZERO_BUFFER_SIZE = 1024 * 1024;
+
+    private final File journalDirectory;
+    private final int maxPooledFiles;
+    private final ConcurrentLinkedQueue<File> freeFiles = new ConcurrentLinkedQueue<>();
+    // free files and files being zeroed
+    private final AtomicInteger pooledFiles = new AtomicInteger();
+    private final ExecutorService zeroingExecutor;
+
+    JournalFilePool(File journalDirectory, int maxPooledFiles) {
+        this.journalDirectory = journalDirectory;
+        this.maxPooledFiles = maxPooledFiles;
+        this.zeroingExecutor = Executors.newSingleThreadExecutor(new DefaultThreadFactory("JournalFilePool"));
+
+        File[] files = journalDirectory.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (f.getName().endsWith(FREE_SUFFIX) && pooledFiles.get() < maxPooledFiles) {
+                    freeFiles.add(f);
+                    pooledFiles.incrementAndGet();
+                } else if (f.getName().endsWith(FREE_SUFFIX) || f.getName().endsWith(ZEROING_SUFFIX)) {
+                    if (!f.delete()) {
+                        LOG.warn("Could not delete journal file {}", f);
+                    }
+                }
+            }
+        }
+        LOG.info("Found {} reusable journal files in {}", freeFiles.size(), journalDirectory);
+    }
+
+    /**
+     * Move a free file to the given journal file.
+     *
+     * @return whether a free file has been moved, otherwise the journal file has to be created
+     */
+    boolean acquire(File journalFile) throws IOException {
+        if (journalFile.exists()) {
+            // the rename would overwrite it, leave it to the journal as without the pool
+            return false;
+        }
+        File free = freeFiles.poll();
+        if (free == null) {
+            return false;
+        }
+        pooledFiles.decrementAndGet();
+        if (!free.renameTo(journalFile)) {
+            LOG.warn("Could not rename journal file {} to {}, creating a new file", free, journalFile);
+            if (!free.delete()) {
+                LOG.warn("Could not delete journal file {}", free);
+            }
+            return false;
+        }
+        // persist the new name of the file before any entry is acknowledged from it
+        syncDirectory();
+        return true;
+    }
+
+    /**
+     * Take a garbage collected journal file in the pool, or delete it if the pool is full.
+     */
+    void release(File journalFile) {
+        if (pooledFiles.incrementAndGet() > maxPooledFiles) {
+            pooledFiles.decrementAndGet();
+            if (!journalFile.delete()) {
+                LOG.warn("Could not delete old journal file {}", journalFile);
+            }
+            return;
+        }
+        File zeroing = new File(journalDirectory, journalFile.getName() + ".zeroing");
+        if (!journalFile.renameTo(zeroing)) {
+            pooledFiles.decrementAndGet();
+            LOG.warn("Could not rename old journal file {} to {}", journalFile, zeroing);
+            if (!journalFile.delete()) {
+                LOG.warn("Could not delete old journal file {}", journalFile);
+            }
+            return;
+        }
+        try {
+            zeroingExecutor.execute(() -> zero(zeroing));
+        } catch (RejectedExecutionException e) {
+            // shut down
+            pooledFiles.decrementAndGet();
+            if (!zeroing.delete()) {
+                LOG.warn("Could not delete old journal file {}", zeroing);
+            }
+        }
+    }
+
+    private void zero(File zeroing) {
+        File free = new File(journalDirectory, zeroing.getName().replace(ZEROING_SUFFIX, FREE_SUFFIX));
+        try {
+            try (RandomAccessFile raf = new RandomAccessFile(zeroing, "rw")) {
+                FileChannel fc = raf.getChannel();
+                ByteBuffer zeros = ByteBuffer.allocateDirect(ZERO_BUFFER_SIZE);
+                long size = fc.size();
+                long position = 0;
+                while (position < size) {
+                    zeros.clear();
+                    zeros.limit((int) Math.min(ZERO_BUFFER_SIZE, size - position));
+                    position += fc.write(zeros, position);
+                }
+                fc.force(false);
+            }
+            if (!zeroing.renameTo(free)) {
+                throw new IOException("Could not rename " + zeroing + " to " + free);
+            }
+            freeFiles.add(free);
+        } catch (IOException e) {
+            LOG.warn("Failed to zero old journal file {}, deleting it", zeroing, e);
+            pooledFiles.decrementAndGet();
+            if (!zeroing.delete()) {
+                LOG.warn("Could not delete old journal file {}", zeroing);
+            }
+        }
+    }
+
+    private void syncDirectory() throws IOException {
+        try (FileChannel dir = FileChannel.open(journalDirectory.toPath(), StandardOpenOption.READ)) {
+            dir.force(true);
+        }
+    }
+
+    void shutdown() throws InterruptedException {
+        zeroingExecutor.shutdown();
+        if (!zeroingExecutor.awaitTermination(1, TimeUnit.MINUTES)) {
+            LOG.warn("Timed out zeroing old journal files in {}", journalDirectory);
+        }
+    }
+}
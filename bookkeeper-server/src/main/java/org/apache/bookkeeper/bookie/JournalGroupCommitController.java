@@ -0,0 +1,103 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+/**
+ * Chooses how long the journal thread waits to group entries before flushing them, so that the add latency
+ * stays close to a target.
+ *
+ * <p>The window is bounded by the part of the target latency that is not spent syncing the journal. Waiting
+ * is pointless when the next entry is not expected to arrive within that bound, so the window is closed when
+ * the average time between arrivals exceeds it. Otherwise the window grows additively while the measured add
+ * latency is under the target, and is halved when the target is exceeded.
+ *
+ * <p>The arrivals and the window are updated by the journal thread, the add latencies by the thread that
+ * acknowledges the entries.
+ */
+class JournalGroupCommitController {
+
+    // number of increments for the window to grow from 0 to its bound
+    private static final int WINDOW_INCREMENTS = 16;
+
+    private final long targetLatencyNanos;
+
+    private volatile long windowNanos;
+    // averages are negative until the first sample
+    private volatile long avgAddLatencyNanos = -1;
+
+    private boolean arrived;
+    private long lastArrivalNanos;
+    private long avgInterArrivalNanos = -1;
+
+    JournalGroupCommitController(long targetLatencyNanos) {
+        this.targetLatencyNanos = targetLatencyNanos;
+        this.windowNanos = targetLatencyNanos / 2;
+    }
+
+    /**
+     * Record the arrival of an entry in the journal thread.
+     */
+    void onArrival(long nowNanos) {
+        if (arrived) {
+            // entries enqueued concurrently may be dequeued out of order
+            avgInterArrivalNanos = ewma(avgInterArrivalNanos, Math.max(nowNanos - lastArrivalNanos, 0));
+        }
+        lastArrivalNanos = nowNanos;
+        arrived = true;
+    }
+
+    /**
+     * Record the latency of an entry, from its arrival in the journal queue to its acknowledgement.
+     */
+    void onAcknowledged(long addLatencyNanos) {
+        avgAddLatencyNanos = ewma(avgAddLatencyNanos, addLatencyNanos);
+    }
+
+    /**
+     * Adjust the window after a flush.
+     *
+     * @param syncLatencyNanos the average latency of syncing the journal
+     */
+    void update(long syncLatencyNanos) {
+        long bound = Math.max(targetLatencyNanos - syncLatencyNanos, 0);
+        long window = windowNanos;
+        if (avgInterArrivalNanos < 0 || avgInterArrivalNanos > bound) {
+            window = 0;
+        } else if (avgAddLatencyNanos > targetLatencyNanos) {
+            window = window / 2;
+        } else {
+            window = window + Math.max(bound / WINDOW_INCREMENTS, 1);
+        }
+        windowNanos = Math.min(window, bound);
+    }
+
+    /**
+     * @return the time the oldest entry of a group can wait for other entries before the group is flushed
+     */
+    long getWindowNanos() {
+        return windowNanos;
+    }
+
+    private static long ewma(long avg, long sample) {
+        return avg < 0 ? sample : avg + (sample - avg) / 8;
+    }
+}
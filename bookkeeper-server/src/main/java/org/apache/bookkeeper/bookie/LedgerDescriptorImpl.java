@@ -161,6 +161,12 @@ public class LedgerDescriptorImpl extends LedgerDescriptor {
         return ledgerStorage.getEntry(ledgerId, entryId);
     }
 
+    @Override
+    long scanEntries(long firstEntryId, long lastEntryId, long maxSize, LedgerStorage.EntryConsumer consumer)
+            throws IOException, BookieException {
+        return ledgerStorage.scanEntries(ledgerId, firstEntryId, lastEntryId, maxSize, consumer);
+    }
+
     @Override
     long getLastAddConfirmed() throws IOException, BookieException {
         return ledgerStorage.getLastAddConfirmed(ledgerId);
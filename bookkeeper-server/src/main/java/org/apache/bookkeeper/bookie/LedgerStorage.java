@@ -145,6 +145,55 @@ public interface LedgerStorage {
      */
     ByteBuf getEntry(long ledgerId, long entryId) throws IOException, BookieException;
 
+    /**
+     * Consumer of the entries returned by {@link #scanEntries(long, long, long, long, EntryConsumer)}.
+     */
+    interface EntryConsumer {
+        /**
+         * Accept the next entry of the scan. The consumer takes the ownership of the entry buffer
+         * and is responsible for releasing it.
+         *
+         * @return true to continue the scan, false to stop it after this entry
+         */
+        boolean accept(long entryId, ByteBuf entry) throws IOException;
+    }
+
+    /**
+     * Read the consecutive entries of a ledger from <i>firstEntryId</i> to <i>lastEntryId</i> (inclusive),
+     * passing them in order to the consumer. The scan stops at the first entry that is not stored in this
+     * ledger storage, or when the consumer asks to stop.
+     *
+     * <p>Implementations can override this method to avoid the per-entry lookups of {@link #getEntry(long, long)}
+     * when the entries are stored sequentially.
+     *
+     * <p><i>maxSize</i> is the total size of the entries the consumer is expected to accept. Implementations
+     * can use it to bound how much data they read ahead, the consumer still decides when the scan stops.
+     *
+     * @return the number of entries passed to the consumer
+     * @throws Bookie.NoEntryException if <i>firstEntryId</i> is not stored in this ledger storage
+     */
+    default long scanEntries(long ledgerId, long firstEntryId, long lastEntryId, long maxSize,
+                             EntryConsumer consumer)
+            throws IOException, BookieException {
+        long entryId = firstEntryId;
+        while (entryId <= lastEntryId) {
+            ByteBuf entry;
+            try {
+                entry = getEntry(ledgerId, entryId);
+            } catch (Bookie.NoEntryException e) {
+                if (entryId == firstEntryId) {
+                    throw e;
+                }
+                break;
+            }
+            entryId++;
+            if (!consumer.accept(entryId - 1, entry)) {
+                break;
+            }
+        }
+        return entryId - firstEntryId;
+    }
+
     /**
      * Get last add confirmed.
      *
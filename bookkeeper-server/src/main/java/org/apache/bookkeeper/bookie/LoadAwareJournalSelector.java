@@ -0,0 +1,87 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import java.util.List;
+import org.apache.bookkeeper.bookie.LedgerStorage.LedgerDeletionListener;
+import org.apache.bookkeeper.util.MathUtils;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
+
+/**
+ * Assigns the ledgers to the least loaded journal when they are first written.
+ *
+ * <p>The load of a journal is estimated from the number of requests waiting to be written and synced and
+ * from the average latency of its syncs. A ledger then sticks to its journal until it is deleted, so that the
+ * records of a ledger are written, and replayed, in order. The ledgers written before a restart may be
+ * assigned to another journal after the restart: the journal replay is followed by a full flush of the
+ * ledger storage, which moves the log marks of all the journals past the replayed records, so the unflushed
+ * records of a ledger are always in a single journal.
+ *
+ * <p>When the journals are equally loaded, a ledger is assigned to the same journal as with the static
+ * assignment by ledger id.
+ */
+class LoadAwareJournalSelector implements LedgerDeletionListener {
+
+    private final List<Journal> journals;
+    private final ConcurrentLongLongHashMap ledgerJournals;
+
+    LoadAwareJournalSelector(List<Journal> journals) {
+        this.journals = journals;
+        this.ledgerJournals = ConcurrentLongLongHashMap.newBuilder()
+                .autoShrink(true)
+                .build();
+    }
+
+    Journal getJournal(long ledgerId) {
+        long index = ledgerJournals.get(ledgerId);
+        if (index < 0) {
+            index = ledgerJournals.computeIfAbsent(ledgerId, this::selectJournal);
+        }
+        return journals.get((int) index);
+    }
+
+    private long selectJournal(long ledgerId) {
+        int selected = MathUtils.signSafeMod(ledgerId, journals.size());
+        double selectedLoad = load(journals.get(selected));
+        for (int i = 0; i < journals.size(); i++) {
+            double load = load(journals.get(i));
+            if (load < selectedLoad) {
+                selected = i;
+                selectedLoad = load;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Rough estimate of the time for a new request to be synced: the pending requests times the average sync latency.
+     */
+    private static double load(Journal journal) {
+        long pending = journal.getJournalQueueLength() + journal.getForceWriteQueueLength();
+        return (pending + 1) * (double) Math.max(journal.getAvgForceWriteLatencyNanos(), 1);
+    }
+
+    @Override
+    public void ledgerDeleted(long ledgerId) {
+        ledgerJournals.remove(ledgerId);
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded cache of read-only memory mappings of entry logs that are not written anymore.
+ *
+ * <p>Entries are served as retained slices of the mapping. The mapping itself is never released: a mapping
+ * that is evicted from the cache, or invalidated when its entry log is removed, is unmapped by the garbage
+ * collector once the last slice pointing into it is unreachable. A reader can then never observe an unmapped
+ * region, and removing the entry log file while it is mapped is safe.
+ */
+class MappedEntryLogCache {
+    private static final Logger LOG = LoggerFactory.getLogger(MappedEntryLogCache.class);
+
+    /**
+     * Placeholder for the entry logs that can not be mapped, so that they are read through their file channel
+     * without trying to map them again on each read.
+     */
+    private static final ByteBuf NOT_MAPPED = Unpooled.EMPTY_BUFFER;
+
+    private final Cache<Long, ByteBuf> mappings;
+
+    MappedEntryLogCache(int maxMappedEntryLogs) {
+        this.mappings = CacheBuilder.newBuilder()
+                .maximumSize(maxMappedEntryLogs)
+                .build();
+    }
+
+    /**
+     * Get the mapping of the entry log stored in the given file, mapping it if needed.
+     *
+     * <p>The mapping covers the file as it was when it was mapped, callers must check the capacity of the
+     * returned buffer before reading from it.
+     *
+     * @return the mapping, or an empty buffer if the entry log can not be mapped
+     */
+    ByteBuf getMapping(long entryLogId, File entryLogFile) {
+        try {
+            return mappings.get(entryLogId, () -> map(entryLogId, entryLogFile));
+        } catch (ExecutionException e) {
+            LOG.warn("Failed to map entry log {}, reading it through its file channel", entryLogId, e.getCause());
+            mappings.put(entryLogId, NOT_MAPPED);
+            return NOT_MAPPED;
+        }
+    }
+
+    private static ByteBuf map(long entryLogId, File entryLogFile) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(entryLogFile, "r")) {
+            FileChannel fc = file.getChannel();
+            long size = fc.size();
+            if (size > Integer.MAX_VALUE) {
+                LOG.info("Entry log {} is too large to be mapped ({} bytes)", entryLogId, size);
+                return NOT_MAPPED;
+            }
+            // the mapping stays valid after the channel is closed
+            return Unpooled.wrappedBuffer(fc.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    /**
+     * Drop the mapping of an entry log, i.e. when it is removed after compaction.
+     */
+    void invalidate(long entryLogId) {
+        mappings.invalidate(entryLogId);
+    }
+
+    void invalidateAll() {
+        mappings.invalidateAll();
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import org.apache.bookkeeper.bookie.Journal.JournalScanner;
+
+/**
+ * A {@link JournalScanner} applying the records in a background thread, so that reading and decoding the
+ * journal files overlaps with adding the entries to the ledger storage.
+ *
+ * <p>The records are copied, since the journal reuses its read buffer, and handed to the applying thread
+ * through a bounded queue. The records are applied in the order they are read. A failure to apply a record
+ * stops the applying and is rethrown by the next call to {@link #process} or by {@link #finish()}.
+ */
+class PipelinedJournalScanner implements JournalScanner, AutoCloseable {
+
+    private static final Record END = new Record(0, 0, null);
+
+    private final JournalScanner scanner;
+    private final BlockingQueue<Record> records;
+    private final Thread applyThread;
+    private volatile Throwable failure;
+
+    PipelinedJournalScanner(JournalScanner scanner, int queueSize, String name) {
+        this.scanner = scanner;
+        this.records = new ArrayBlockingQueue<>(queueSize);
+        this.applyThread = new Thread(this::applyRecords, name);
+        this.applyThread.setDaemon(true);
+        this.applyThread.start();
+    }
+
+    @Override
+    public void process(int journalVersion, long offset, ByteBuffer entry) throws IOException {
+        checkFailure();
+        ByteBuffer copy = ByteBuffer.allocate(entry.remaining());
+        copy.put(entry);
+        copy.flip();
+        enqueue(new Record(journalVersion, offset, copy));
+    }
+
+    /**
+     * Wait until all the records have been applied.
+     *
+     * @throws IOException if a record could not be applied
+     */
+    void finish() throws IOException {
+        enqueue(END);
+        try {
+            applyThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while replaying journal", e);
+        }
+        checkFailure();
+    }
+
+    /**
+     * Stop applying the records, dropping the ones not applied yet, and wait for the record being applied.
+     */
+    @Override
+    public void close() {
+        applyThread.interrupt();
+        boolean interrupted = false;
+        while (applyThread.isAlive()) {
+            try {
+                applyThread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void enqueue(Record record) throws IOException {
+        try {
+            // the applying thread drains the queue even after a failure, so this never blocks forever
+            records.put(record);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while replaying journal", e);
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable t = failure;
+        if (t instanceof IOException) {
+            throw (IOException) t;
+        } else if (t != null) {
+            throw new IOException("Failed to replay journal", t);
+        }
+    }
+
+    private void applyRecords() {
+        try {
+            while (true) {
+                Record record = records.take();
+                if (record == END) {
+                    return;
+                }
+                if (failure == null) {
+                    try {
+                        scanner.process(record.journalVersion, record.offset, record.entry);
+                    } catch (Throwable t) {
+                        failure = t;
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            if (failure == null) {
+                failure = new IOException("Interrupted while replaying journal", e);
+            }
+        }
+    }
+
+    private static class Record {
+        final int journalVersion;
+        final long offset;
+        final ByteBuffer entry;
+
+        Record(int journalVersion, long offset, ByteBuffer entry) {
+            this.journalVersion = journalVersion;
+            this.offset = offset;
+            this.entry = entry;
+        }
+    }
+}
@@ -24,8 +24,10 @@ package org.apache.bookkeeper.bookie;
 import com.google.common.annotations.VisibleForTesting;
 import io.netty.util.concurrent.DefaultThreadFactory;
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
@@ -71,6 +73,13 @@ class SyncThread implements Checkpointer {
     private boolean suspended = false;
     private boolean disableCheckpoint = false;
     private final Counter syncExecutorTime;
+    private final Object flushRequestLock = new Object();
+    private CompletableFuture<Void> pendingFlushRequest = null;
+    private final long ledgerStorageFlushMinIntervalNanos;
+    // guarded by flushRequestLock
+    private long lastLedgerStorageFlushNanos;
+    private long startedLedgerStorageFlushes = 0;
+    private volatile long completedLedgerStorageFlushes = 0;
     private static String executorName = "SyncThread";
 
     public SyncThread(ServerConfiguration conf,
@@ -81,6 +90,9 @@ class SyncThread implements Checkpointer {
         this.dirsListener = dirsListener;
         this.ledgerStorage = ledgerStorage;
         this.checkpointSource = checkpointSource;
+        this.ledgerStorageFlushMinIntervalNanos =
+                TimeUnit.MILLISECONDS.toNanos(conf.getJournalDeferredSyncFlushMinIntervalMs());
+        this.lastLedgerStorageFlushNanos = MathUtils.nowInNano() - ledgerStorageFlushMinIntervalNanos;
         this.executor = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory(executorName));
         this.syncExecutorTime = statsLogger.getThreadScopedCounter("sync-thread-time");
         this.executor.submit(() -> ThreadRegistry.register(executorName, 0));
@@ -130,6 +142,73 @@ class SyncThread implements Checkpointer {
         });
     }
 
+    /**
+     * Flush the ledger storage without completing a checkpoint. Requests issued
+     * before a pending flush starts share that flush, and two flushes start at
+     * least {@code journalDeferredSyncFlushMinIntervalMs} apart.
+     *
+     * @return a future completed when all the entries added to the ledger storage
+     *         before this call are persisted
+     */
+    public CompletableFuture<Void> requestLedgerStorageFlush() {
+        synchronized (flushRequestLock) {
+            if (pendingFlushRequest != null) {
+                return pendingFlushRequest;
+            }
+            CompletableFuture<Void> request = new CompletableFuture<>();
+            long delayNanos = lastLedgerStorageFlushNanos + ledgerStorageFlushMinIntervalNanos - MathUtils.nowInNano();
+            try {
+                executor.schedule(() -> {
+                    long flushNumber;
+                    synchronized (flushRequestLock) {
+                        pendingFlushRequest = null;
+                        lastLedgerStorageFlushNanos = MathUtils.nowInNano();
+                        flushNumber = ++startedLedgerStorageFlushes;
+                    }
+                    long startTime = System.nanoTime();
+                    try {
+                        ledgerStorage.flush();
+                        // the flushes run one at a time on the executor
+                        completedLedgerStorageFlushes = flushNumber;
+                        request.complete(null);
+                    } catch (NoWritableLedgerDirException e) {
+                        log.error("No writeable ledger directories", e);
+                        dirsListener.allDisksFull(true);
+                        request.completeExceptionally(e);
+                    } catch (Throwable t) {
+                        log.error("Exception flushing ledger storage", t);
+                        request.completeExceptionally(t);
+                    } finally {
+                        syncExecutorTime.add(MathUtils.elapsedNanos(startTime));
+                    }
+                }, Math.max(0, delayNanos), TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                request.completeExceptionally(e);
+                return request;
+            }
+            pendingFlushRequest = request;
+            return request;
+        }
+    }
+
+    /**
+     * Get the number of ledger storage flushes started by {@link #requestLedgerStorageFlush()}.
+     * The entries added to the ledger storage before this call are persisted once
+     * {@link #isLedgerStorageFlushedAfter(long)} returns true for the returned value.
+     */
+    long getStartedLedgerStorageFlushes() {
+        synchronized (flushRequestLock) {
+            return startedLedgerStorageFlushes;
+        }
+    }
+
+    /**
+     * Whether a ledger storage flush started after the given number of started flushes completed successfully.
+     */
+    boolean isLedgerStorageFlushedAfter(long startedFlushes) {
+        return completedLedgerStorageFlushes > startedFlushes;
+    }
+
     private void flush() {
         Checkpoint checkpoint = checkpointSource.newCheckpoint();
         try {
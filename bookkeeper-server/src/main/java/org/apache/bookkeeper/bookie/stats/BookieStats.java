@@ -28,6 +28,8 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_READ_ENT
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_READ_ENTRY_BYTES;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_RECOVERY_ADD_ENTRY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_SCOPE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_UNVERIFIED_ENTRY_DIGEST;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_VERIFY_ENTRY_DIGEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.GET_LIST_OF_ENTRIES_OF_LEDGER;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_DIRS;
@@ -83,6 +85,16 @@ public class BookieStats {
             parent = GET_LIST_OF_ENTRIES_OF_LEDGER
     )
     private final OpStatsLogger getListOfEntriesOfLedgerStats;
+    @StatsDoc(
+        name = BOOKIE_VERIFY_ENTRY_DIGEST,
+        help = "operation stats of verifying the digest of added entries on a bookie, failed if it does not match"
+    )
+    private final OpStatsLogger verifyEntryDigestStats;
+    @StatsDoc(
+        name = BOOKIE_UNVERIFIED_ENTRY_DIGEST,
+        help = "number of added entries whose digest was not verified, since the client did not declare it as CRC32C"
+    )
+    private final Counter unverifiedEntryDigestCounter;
     // Bookie Operation Bytes Stats
     @StatsDoc(name = BOOKIE_ADD_ENTRY_BYTES, help = "bytes stats of AddEntry on a bookie")
     private final OpStatsLogger addBytesStats;
@@ -102,6 +114,8 @@ public class BookieStats {
         recoveryAddEntryStats = statsLogger.getOpStatsLogger(BOOKIE_RECOVERY_ADD_ENTRY);
         readEntryStats = statsLogger.getOpStatsLogger(BOOKIE_READ_ENTRY);
         getListOfEntriesOfLedgerStats = statsLogger.getOpStatsLogger(BOOKIE_GET_LIST_OF_ENTRIES_OF_LEDGER);
+        verifyEntryDigestStats = statsLogger.getOpStatsLogger(BOOKIE_VERIFY_ENTRY_DIGEST);
+        unverifiedEntryDigestCounter = statsLogger.getCounter(BOOKIE_UNVERIFIED_ENTRY_DIGEST);
         addBytesStats = statsLogger.getOpStatsLogger(BOOKIE_ADD_ENTRY_BYTES);
         readBytesStats = statsLogger.getOpStatsLogger(BOOKIE_READ_ENTRY_BYTES);
         journalDirsGauge = new Gauge<Integer>() {
@@ -40,7 +40,14 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_NUM_FLU
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_NUM_FLUSH_MAX_WAIT;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_PROCESS_TIME_LATENCY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_QUEUE_LATENCY;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_COMPRESSED_BYTES;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_COMPRESSION;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_COMPRESSION_RATIO;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_GROUP_WAIT_MICROS;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_QUEUE_SIZE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_REPLAY;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_REPLAY_BYTES;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_REPLAY_ENTRIES;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_SCOPE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_SYNC;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_WRITE_BYTES;
@@ -173,6 +180,21 @@ public class JournalStats {
         help = "The number of bytes appended to the journal"
     )
     private final Counter journalWriteBytes;
+    @StatsDoc(
+        name = JOURNAL_COMPRESSION,
+        help = "operation stats of compressing a batch of entries written to the journal"
+    )
+    private final OpStatsLogger journalCompressionStats;
+    @StatsDoc(
+        name = JOURNAL_COMPRESSION_RATIO,
+        help = "The size of the compressed batches of entries, in percent of their uncompressed size"
+    )
+    private final OpStatsLogger journalCompressionRatioStats;
+    @StatsDoc(
+        name = JOURNAL_COMPRESSED_BYTES,
+        help = "The number of bytes of compressed batches of entries written to the journal"
+    )
+    private final Counter journalCompressedBytes;
     @StatsDoc(
             name = JOURNAL_MEMORY_MAX,
             help = "The max amount of memory in bytes that can be used by the bookie journal"
@@ -183,9 +205,29 @@ public class JournalStats {
             help = "The actual amount of memory in bytes currently used by the bookie journal"
     )
     private final Gauge<Long> journalMemoryUsedStats;
+    @StatsDoc(
+            name = JOURNAL_GROUP_WAIT_MICROS,
+            help = "The time in microseconds the journal currently waits to group entries before flushing them"
+    )
+    private final Gauge<Long> journalGroupWaitStats;
+    @StatsDoc(
+        name = JOURNAL_REPLAY,
+        help = "operation stats of replaying a journal directory on startup"
+    )
+    private final OpStatsLogger journalReplayStats;
+    @StatsDoc(
+        name = JOURNAL_REPLAY_ENTRIES,
+        help = "The number of journal records replayed on startup"
+    )
+    private final Counter journalReplayEntries;
+    @StatsDoc(
+        name = JOURNAL_REPLAY_BYTES,
+        help = "The number of bytes of journal records replayed on startup"
+    )
+    private final Counter journalReplayBytes;
 
     public JournalStats(StatsLogger statsLogger, final long maxJournalMemoryBytes,
-                        Supplier<Long> currentJournalMemoryBytes) {
+                        Supplier<Long> currentJournalMemoryBytes, Supplier<Long> currentGroupWaitMicros) {
         journalAddEntryStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_ADD_ENTRY);
         journalForceLedgerStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_FORCE_LEDGER);
         journalSyncStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_SYNC);
@@ -208,6 +250,12 @@ public class JournalStats {
                 statsLogger.getCounter(BookKeeperServerStats.JOURNAL_NUM_FLUSH_MAX_OUTSTANDING_BYTES);
         flushEmptyQueueCounter = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_NUM_FLUSH_EMPTY_QUEUE);
         journalWriteBytes = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_WRITE_BYTES);
+        journalCompressionStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_COMPRESSION);
+        journalCompressionRatioStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_COMPRESSION_RATIO);
+        journalCompressedBytes = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_COMPRESSED_BYTES);
+        journalReplayStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_REPLAY);
+        journalReplayEntries = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_REPLAY_ENTRIES);
+        journalReplayBytes = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_REPLAY_BYTES);
 
         journalMemoryMaxStats = new Gauge<Long>() {
             @Override
@@ -234,6 +282,19 @@ public class JournalStats {
             }
         };
         statsLogger.registerGauge(JOURNAL_MEMORY_USED, journalMemoryUsedStats);
+
+        journalGroupWaitStats = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return -1L;
+            }
+
+            @Override
+            public Long getSample() {
+                return currentGroupWaitMicros.get();
+            }
+        };
+        statsLogger.registerGauge(JOURNAL_GROUP_WAIT_MICROS, journalGroupWaitStats);
     }
 
 }
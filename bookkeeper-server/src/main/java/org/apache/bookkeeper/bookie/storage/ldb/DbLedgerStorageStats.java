@@ -54,6 +54,11 @@ class DbLedgerStorageStats {
     private static final String READAHEAD_BATCH_COUNT = "readahead-batch-count";
     private static final String READAHEAD_BATCH_SIZE = "readahead-batch-size";
     private static final String READAHEAD_TIME = "readahead-time";
+    private static final String READAHEAD_HITS = "readahead-hits";
+    private static final String READAHEAD_WASTED = "readahead-wasted";
+    private static final String READAHEAD_WINDOW_SIZE = "readahead-window-size";
+    private static final String SCAN_ENTRIES = "scan-entries";
+    private static final String SCAN_SEQUENTIAL_RUN_COUNT = "scan-sequential-run-count";
     private static final String FLUSH = "flush";
     private static final String FLUSH_ENTRYLOG = "flush-entrylog";
     private static final String FLUSH_LOCATIONS_INDEX = "flush-locations-index";
@@ -133,6 +138,33 @@ class DbLedgerStorageStats {
             help = "Time spent on readahead operations"
     )
     private final Counter readAheadTime;
+    @StatsDoc(
+        name = READAHEAD_HITS,
+        help = "number of read cache hits on entries inserted by readahead",
+        parent = READ_CACHE_HITS
+    )
+    private final Counter readAheadHitCounter;
+    @StatsDoc(
+        name = READAHEAD_WASTED,
+        help = "number of entries read ahead that were evicted or skipped before being read"
+    )
+    private final Counter readAheadWastedCounter;
+    @StatsDoc(
+        name = READAHEAD_WINDOW_SIZE,
+        help = "the distribution of the adaptive readahead window size, in entries, on read cache misses"
+    )
+    private final OpStatsLogger readAheadWindowSizeStats;
+    @StatsDoc(
+        name = SCAN_ENTRIES,
+        help = "operation stats of scanning a range of entries from db ledger storage"
+    )
+    private final OpStatsLogger scanEntriesStats;
+    @StatsDoc(
+        name = SCAN_SEQUENTIAL_RUN_COUNT,
+        help = "the distribution of num of entries streamed from the entry log after a single locations index lookup",
+        parent = SCAN_ENTRIES
+    )
+    private final OpStatsLogger scanSequentialRunCountStats;
     @StatsDoc(
         name = FLUSH,
         help = "operation stats of flushing write cache to entry log files"
@@ -211,6 +243,11 @@ class DbLedgerStorageStats {
         readAheadBatchCountStats = stats.getOpStatsLogger(READAHEAD_BATCH_COUNT);
         readAheadBatchSizeStats = stats.getOpStatsLogger(READAHEAD_BATCH_SIZE);
         readAheadTime = stats.getThreadScopedCounter(READAHEAD_TIME);
+        readAheadHitCounter = stats.getCounter(READAHEAD_HITS);
+        readAheadWastedCounter = stats.getCounter(READAHEAD_WASTED);
+        readAheadWindowSizeStats = stats.getOpStatsLogger(READAHEAD_WINDOW_SIZE);
+        scanEntriesStats = stats.getThreadScopedOpStatsLogger(SCAN_ENTRIES);
+        scanSequentialRunCountStats = stats.getOpStatsLogger(SCAN_SEQUENTIAL_RUN_COUNT);
         flushStats = stats.getOpStatsLogger(FLUSH);
         flushEntryLogStats = stats.getOpStatsLogger(FLUSH_ENTRYLOG);
         flushLocationIndexStats = stats.getOpStatsLogger(FLUSH_LOCATIONS_INDEX);
@@ -47,6 +47,8 @@ import org.slf4j.LoggerFactory;
 public class EntryLocationIndex implements Closeable {
 
     private final KeyValueStorage locationsDb;
+    // Same as locationsDb, when the storage can be accessed without serializing keys and values
+    private final LongPairKeyValueStorage longPairLocationsDb;
     private final ConcurrentLongHashSet deletedLedgers = ConcurrentLongHashSet.newBuilder().build();
 
     private final EntryLocationIndexStats stats;
@@ -54,6 +56,8 @@ public class EntryLocationIndex implements Closeable {
     public EntryLocationIndex(ServerConfiguration conf, KeyValueStorageFactory storageFactory, String basePath,
             StatsLogger stats) throws IOException {
         locationsDb = storageFactory.newKeyValueStorage(basePath, "locations", DbConfigType.EntryLocation, conf);
+        longPairLocationsDb = locationsDb instanceof LongPairKeyValueStorage
+                ? (LongPairKeyValueStorage) locationsDb : null;
 
         this.stats = new EntryLocationIndexStats(
             stats,
@@ -71,7 +75,40 @@ public class EntryLocationIndex implements Closeable {
         locationsDb.close();
     }
 
+    /**
+     * Get the factory of the storage configured for the locations index.
+     */
+    static KeyValueStorageFactory getStorageFactory(ServerConfiguration conf) {
+        return getStorageFactory(conf, false);
+    }
+
+    /**
+     * Get the factory of the storage configured for the locations index, opening it in read-only mode to inspect the
+     * index of a running bookie.
+     */
+    static KeyValueStorageFactory getStorageFactory(ServerConfiguration conf, boolean readOnly) {
+        String storage = conf.getString(DbLedgerStorage.ENTRY_LOCATION_INDEX_STORAGE, ROCKSDB_STORAGE);
+        if (SORTED_RUNS_STORAGE.equalsIgnoreCase(storage)) {
+            return (basePath, subPath, dbConfigType, conf1) ->
+                    new KeyValueStorageSortedRuns(basePath, subPath, conf1, readOnly);
+        } else if (ROCKSDB_STORAGE.equalsIgnoreCase(storage)) {
+            // The read-only tools open the index with the default RocksDB configuration
+            return (basePath, subPath, dbConfigType, conf1) -> new KeyValueStorageRocksDB(basePath, subPath,
+                    readOnly ? DbConfigType.Default : dbConfigType, conf1, readOnly);
+        } else {
+            throw new IllegalArgumentException("Invalid locations index storage: " + storage);
+        }
+    }
+
     public long getLocation(long ledgerId, long entryId) throws IOException {
+        if (longPairLocationsDb != null) {
+            long location = longPairLocationsDb.getLong(ledgerId, entryId, 0L);
+            if (location == 0L && log.isDebugEnabled()) {
+                log.debug("Entry not found {}@{} in db index", ledgerId, entryId);
+            }
+            return location;
+        }
+
         LongPairWrapper key = LongPairWrapper.get(ledgerId, entryId);
         LongWrapper value = LongWrapper.get();
 
@@ -141,14 +178,27 @@ public class EntryLocationIndex implements Closeable {
         return locationsDb.newBatch();
     }
 
-    public void addLocation(Batch batch, long ledgerId, long entryId, long location) throws IOException {
-        LongPairWrapper key = LongPairWrapper.get(ledgerId, entryId);
-        LongWrapper value = LongWrapper.get(location);
+    /**
+     * Create a batch to add a large number of locations at once, which is more efficient than a regular batch
+     * for large flushes. The batch only supports {@link #addLocation(Batch, long, long, long)}.
+     */
+    public Batch newBulkLoadBatch() {
+        return locationsDb.newBulkLoadBatch();
+    }
 
+    public void addLocation(Batch batch, long ledgerId, long entryId, long location) throws IOException {
         if (log.isDebugEnabled()) {
             log.debug("Add location - ledger: {} -- entry: {} -- location: {}", ledgerId, entryId, location);
         }
 
+        if (batch instanceof LongPairKeyValueStorage.LongPairBatch) {
+            ((LongPairKeyValueStorage.LongPairBatch) batch).put(ledgerId, entryId, location);
+            return;
+        }
+
+        LongPairWrapper key = LongPairWrapper.get(ledgerId, entryId);
+        LongWrapper value = LongWrapper.get(location);
+
         try {
             batch.put(key.array, value.array);
         } finally {
@@ -272,5 +322,8 @@ public class EntryLocationIndex implements Closeable {
         }
     }
 
+    static final String ROCKSDB_STORAGE = "rocksdb";
+    static final String SORTED_RUNS_STORAGE = "sortedRuns";
+
     private static final Logger log = LoggerFactory.getLogger(EntryLocationIndex.class);
 }
@@ -155,6 +155,16 @@ public interface KeyValueStorage extends Closeable {
 
     Batch newBatch();
 
+    /**
+     * Create a batch to load a large number of keys at once. The batch only supports puts, which are applied when
+     * the batch is flushed and may bypass the regular write path of the storage.
+     *
+     * @return a batch that only supports {@link Batch#put(byte[], byte[])}
+     */
+    default Batch newBulkLoadBatch() {
+        return newBatch();
+    }
+
     /**
      * Interface for a batch to be written in the storage.
      */
@@ -20,28 +20,37 @@
  */
 package org.apache.bookkeeper.bookie.storage.ldb;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
+import static org.apache.bookkeeper.bookie.storage.ldb.LongPairRecords.RECORD_LONGS;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.File;
 import java.io.IOException;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.rocksdb.ColumnFamilyDescriptor;
 import org.rocksdb.ColumnFamilyHandle;
 import org.rocksdb.DBOptions;
 import org.rocksdb.Env;
+import org.rocksdb.EnvOptions;
+import org.rocksdb.IngestExternalFileOptions;
+import org.rocksdb.Options;
 import org.rocksdb.OptionsUtil;
 import org.rocksdb.ReadOptions;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
 import org.rocksdb.RocksIterator;
 import org.rocksdb.Slice;
+import org.rocksdb.SstFileWriter;
 import org.rocksdb.WriteBatch;
 import org.rocksdb.WriteOptions;
 import org.slf4j.Logger;
@@ -64,7 +73,13 @@ public class KeyValueStorageRocksDB implements KeyValueStorage {
     private final ReadOptions optionDontCache;
     private final WriteBatch emptyBatch;
 
+    // Directory of the database and options of its column family, to write the files of the bulk load batches
+    private final String dbPath;
+    private final Options bulkLoadOptions;
+    private final AtomicLong bulkLoadFileId = new AtomicLong();
+
     private static final String ROCKSDB_LOG_PATH = "dbStorage_rocksDB_logPath";
+    private static final String BULK_LOAD_FILE_PREFIX = "bulk-load-";
 
     public KeyValueStorageRocksDB(String basePath, String subPath, DbConfigType dbConfigType, ServerConfiguration conf)
             throws IOException {
@@ -109,6 +124,8 @@ public class KeyValueStorageRocksDB implements KeyValueStorage {
                 dbOptions.setDbLogDir(logPathSetting.toString());
             }
             String path = FileSystems.getDefault().getPath(basePath, subPath).toFile().toString();
+            dbPath = path;
+            bulkLoadOptions = new Options(dbOptions, cfDescs.get(0).getOptions());
 
             if (readOnly) {
                 db = RocksDB.openReadOnly(dbOptions, path, cfDescs, cfHandles);
@@ -124,6 +141,25 @@ public class KeyValueStorageRocksDB implements KeyValueStorage {
 
         optionCache.setFillCache(true);
         optionDontCache.setFillCache(false);
+
+        if (!readOnly) {
+            deleteBulkLoadFiles();
+        }
+    }
+
+    /**
+     * Delete the files left by bulk load batches whose flush did not complete.
+     */
+    private void deleteBulkLoadFiles() {
+        File[] files = new File(dbPath).listFiles((dir, name) -> name.startsWith(BULK_LOAD_FILE_PREFIX));
+        if (files != null) {
+            for (File file : files) {
+                log.info("Deleting incomplete bulk load file {}", file);
+                if (!file.delete()) {
+                    log.warn("Failed to delete {}", file);
+                }
+            }
+        }
     }
 
     @Override
@@ -134,6 +170,7 @@ public class KeyValueStorageRocksDB implements KeyValueStorage {
         optionCache.close();
         optionDontCache.close();
         emptyBatch.close();
+        bulkLoadOptions.close();
     }
 
     @Override
@@ -324,6 +361,11 @@ public class KeyValueStorageRocksDB implements KeyValueStorage {
         return new RocksDBBatch();
     }
 
+    @Override
+    public Batch newBulkLoadBatch() {
+        return new RocksDBBulkLoadBatch();
+    }
+
     private class RocksDBBatch implements Batch {
         private final WriteBatch writeBatch = new WriteBatch();
 
@@ -374,6 +416,97 @@ public class KeyValueStorageRocksDB implements KeyValueStorage {
         }
     }
 
+    /**
+     * Loads the records of pairs of longs keys, as used by the locations index, by writing them into a sorted SST
+     * file that is ingested into the database when the batch is flushed. The ingested file skips the memtable and is
+     * placed in the lowest level where it does not overlap with existing keys, which avoids most of the write
+     * amplification of the compactions. Keys of the file override the existing values of the same keys.
+     */
+    private class RocksDBBulkLoadBatch implements LongPairKeyValueStorage.LongPairBatch {
+        private long[] records = new long[RECORD_LONGS * 1024];
+        private int size = 0;
+
+        @Override
+        public void put(byte[] key, byte[] value) {
+            checkArgument(key.length == 16 && value.length == 8,
+                    "Bulk load batches need 16 bytes keys and 8 bytes values");
+            put(ArrayUtil.getLong(key, 0), ArrayUtil.getLong(key, 8), ArrayUtil.getLong(value, 0));
+        }
+
+        @Override
+        public void put(long keyFirst, long keySecond, long value) {
+            if (size + RECORD_LONGS > records.length) {
+                long[] newRecords = new long[records.length * 2];
+                System.arraycopy(records, 0, newRecords, 0, size);
+                records = newRecords;
+            }
+            // Flip the sign bits, so that the signed order of the records is the unsigned byte order of the keys
+            records[size] = keyFirst ^ Long.MIN_VALUE;
+            records[size + 1] = keySecond ^ Long.MIN_VALUE;
+            records[size + 2] = value;
+            size += RECORD_LONGS;
+        }
+
+        @Override
+        public void remove(byte[] key) {
+            throw new UnsupportedOperationException("Bulk load batches only support puts");
+        }
+
+        @Override
+        public void deleteRange(byte[] beginKey, byte[] endKey) {
+            throw new UnsupportedOperationException("Bulk load batches only support puts");
+        }
+
+        @Override
+        public void clear() {
+            size = 0;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (size == 0) {
+                return;
+            }
+
+            records = LongPairRecords.sort(records, size);
+
+            Path sstFile = FileSystems.getDefault().getPath(dbPath,
+                    BULK_LOAD_FILE_PREFIX + bulkLoadFileId.incrementAndGet() + ".sst");
+            byte[] key = new byte[16];
+            byte[] value = new byte[8];
+            try (EnvOptions envOptions = new EnvOptions();
+                 SstFileWriter writer = new SstFileWriter(envOptions, bulkLoadOptions);
+                 IngestExternalFileOptions ingestOptions = new IngestExternalFileOptions()) {
+                writer.open(sstFile.toString());
+                for (int i = 0; i < size; i += RECORD_LONGS) {
+                    int next = i + RECORD_LONGS;
+                    if (next < size && records[next] == records[i] && records[next + 1] == records[i + 1]) {
+                        // Only keep the last update of a key
+                        continue;
+                    }
+                    ArrayUtil.setLong(key, 0, records[i] ^ Long.MIN_VALUE);
+                    ArrayUtil.setLong(key, 8, records[i + 1] ^ Long.MIN_VALUE);
+                    ArrayUtil.setLong(value, 0, records[i + 2]);
+                    writer.put(key, value);
+                }
+                writer.finish();
+
+                ingestOptions.setMoveFiles(true);
+                db.ingestExternalFile(Collections.singletonList(sstFile.toString()), ingestOptions);
+            } catch (RocksDBException e) {
+                throw new IOException("Failed to bulk load RocksDB batch", e);
+            } finally {
+                Files.deleteIfExists(sstFile);
+            }
+        }
+
+        @Override
+        public void close() {
+            records = null;
+            size = 0;
+        }
+    }
+
     private static final class EntryWrapper implements Entry<byte[], byte[]> {
         // This is not final since the iterator will reuse the same EntryWrapper
         // instance at each step
@@ -0,0 +1,987 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.bookkeeper.bookie.storage.ldb.LongPairRecords.compare;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pure Java implementation of the KeyValueStorage, specialised for the fixed size records of the locations index:
+ * keys made of a pair of longs (16 bytes) and values made of a single long (8 bytes).
+ *
+ * <p>Records are stored in immutable files, or runs, holding records sorted by key. Each flushed batch becomes a new
+ * run, and a background compaction merges the runs in a log-structured way:
+ * <ul>
+ * <li>level 0 holds the runs of the flushed batches, which can overlap.</li>
+ * <li>when there are enough level 0 runs, they are merged in a single level 1 run.</li>
+ * <li>when there are enough level 1 runs, or when they are big enough compared to level 2, they are merged with the
+ * level 2 runs. Level 2 runs don't overlap and the deleted keys are dropped when writing them.</li>
+ * </ul>
+ *
+ * <p>Runs are memory mapped, so that a lookup is a binary search over off-heap memory, without JNI calls or
+ * allocations. The list of live runs is kept in a manifest file that is atomically replaced on every change, and
+ * iterators work on a snapshot of the runs. Runs that are compacted away are deleted right away and are unmapped once
+ * they are not referenced anymore.
+ *
+ * <p>Keys are compared as pairs of signed longs, which is the same order RocksDB uses for the non-negative ids stored
+ * in the locations index. The value {@link Long#MIN_VALUE} is reserved to mark the deleted keys.
+ */
+public class KeyValueStorageSortedRuns implements LongPairKeyValueStorage {
+
+    static KeyValueStorageFactory factory = (defaultBasePath, subPath, dbConfigType, conf) ->
+            new KeyValueStorageSortedRuns(defaultBasePath, subPath, conf, false);
+
+    static final String COMPACTION_TRIGGER = "dbStorage_sortedRunsCompactionTrigger";
+    static final String LEVEL_SIZE_RATIO = "dbStorage_sortedRunsLevelSizeRatio";
+    static final String MAX_RUN_SIZE_MB = "dbStorage_sortedRunsMaxRunSizeMb";
+
+    private static final int DEFAULT_COMPACTION_TRIGGER = 4;
+    private static final int DEFAULT_LEVEL_SIZE_RATIO = 10;
+    private static final int DEFAULT_MAX_RUN_SIZE_MB = 1024;
+
+    // Marks a deleted key
+    static final long DELETED = Long.MIN_VALUE;
+
+    private static final int MAGIC = 0x424b5352; // "BKSR"
+    private static final int VERSION = 1;
+
+    // Magic (4 bytes), version (4 bytes), number of records (8 bytes)
+    private static final int HEADER_SIZE = 16;
+    private static final int RECORD_SIZE = 24;
+    private static final int RECORD_LONGS = LongPairRecords.RECORD_LONGS;
+
+    private static final int WRITE_BUFFER_SIZE = 1024 * 1024;
+
+    private static final String MANIFEST = "MANIFEST";
+    private static final String RUN_SUFFIX = ".run";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private static final int BOTTOM_LEVEL = 2;
+
+    private final File dir;
+    private final boolean readOnly;
+    private final int compactionTrigger;
+    private final int levelSizeRatio;
+    private final int maxRecordsPerRun;
+
+    private final AtomicLong nextRunId;
+
+    // Live runs: level 0 and level 1 runs from the newest to the oldest, then level 2 runs in key order
+    private volatile List<SortedRun> runs;
+
+    private final ExecutorService compactionExecutor = Executors
+            .newSingleThreadExecutor(new DefaultThreadFactory("db-storage-sorted-runs-compaction"));
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean(false);
+
+    public KeyValueStorageSortedRuns(String basePath, String subPath, ServerConfiguration conf, boolean readOnly)
+            throws IOException {
+        this.dir = new File(basePath, subPath);
+        this.readOnly = readOnly;
+        this.compactionTrigger = Math.max(2, conf.getInt(COMPACTION_TRIGGER, DEFAULT_COMPACTION_TRIGGER));
+        this.levelSizeRatio = Math.max(1, conf.getInt(LEVEL_SIZE_RATIO, DEFAULT_LEVEL_SIZE_RATIO));
+        long maxRunSize = conf.getLong(MAX_RUN_SIZE_MB, DEFAULT_MAX_RUN_SIZE_MB) * 1024 * 1024;
+        this.maxRecordsPerRun = (int) Math.min((maxRunSize - HEADER_SIZE) / RECORD_SIZE,
+                (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE);
+        checkArgument(maxRecordsPerRun > 0, "Invalid max run size: %s", maxRunSize);
+
+        if (!dir.isDirectory() && (readOnly || !dir.mkdirs())) {
+            throw new IOException("Failed to create directory " + dir);
+        }
+
+        File manifest = new File(dir, MANIFEST);
+        List<SortedRun> loadedRuns = new ArrayList<>();
+        long maxRunId = 0;
+        if (manifest.exists()) {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(Files.newInputStream(manifest.toPath()), UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isEmpty()) {
+                        continue;
+                    }
+                    String[] parts = line.split(" ");
+                    if (parts.length != 2) {
+                        throw new IOException("Invalid line in " + manifest + ": " + line);
+                    }
+                    int level = Integer.parseInt(parts[0]);
+                    long runId = Long.parseLong(parts[1]);
+                    loadedRuns.add(SortedRun.open(runFile(runId), runId, level));
+                    maxRunId = Math.max(maxRunId, runId);
+                }
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid manifest " + manifest, e);
+            }
+        }
+
+        // Delete the runs that were not committed in the manifest, after a crash during a flush or a compaction
+        Set<String> liveFiles = new HashSet<>();
+        for (SortedRun run : loadedRuns) {
+            liveFiles.add(run.file.getName());
+        }
+        String[] files = dir.list();
+        if (files == null) {
+            throw new IOException("Failed to list directory " + dir);
+        }
+        for (String name : files) {
+            if (name.equals(MANIFEST) || liveFiles.contains(name)) {
+                continue;
+            } else if (name.endsWith(RUN_SUFFIX) || name.endsWith(TMP_SUFFIX)) {
+                if (readOnly) {
+                    // Might be written by the bookie right now
+                    continue;
+                }
+                log.info("Deleting uncommitted file {} in {}", name, dir);
+                Files.deleteIfExists(new File(dir, name).toPath());
+            } else if (!manifest.exists()) {
+                throw new IOException("Directory " + dir + " contains the data of a different key-value storage."
+                        + " The index needs to be rebuilt to switch to a different storage");
+            }
+        }
+
+        this.runs = Collections.unmodifiableList(loadedRuns);
+        this.nextRunId = new AtomicLong(maxRunId + 1);
+        log.info("Opened sorted runs storage at {} with {} runs and {} records", dir, loadedRuns.size(), count());
+    }
+
+    @Override
+    public void close() throws IOException {
+        compactionExecutor.shutdown();
+        try {
+            compactionExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for compaction to complete", e);
+        }
+
+        // The runs are unmapped once they are garbage collected
+        runs = Collections.emptyList();
+    }
+
+    @Override
+    public void put(byte[] key, byte[] value) throws IOException {
+        try (Batch batch = newBatch()) {
+            batch.put(key, value);
+            batch.flush();
+        }
+    }
+
+    @Override
+    public byte[] get(byte[] key) throws IOException {
+        checkKey(key);
+        long value = getLong(ArrayUtil.getLong(key, 0), ArrayUtil.getLong(key, 8), DELETED);
+        if (value == DELETED) {
+            return null;
+        }
+
+        byte[] res = new byte[8];
+        ArrayUtil.setLong(res, 0, value);
+        return res;
+    }
+
+    @Override
+    public int get(byte[] key, byte[] value) throws IOException {
+        checkKey(key);
+        long res = getLong(ArrayUtil.getLong(key, 0), ArrayUtil.getLong(key, 8), DELETED);
+        if (res == DELETED) {
+            return -1;
+        } else if (value.length < 8) {
+            throw new IOException("Value array is too small to fit the result");
+        }
+
+        ArrayUtil.setLong(value, 0, res);
+        return 8;
+    }
+
+    @Override
+    public long getLong(long keyFirst, long keySecond, long defaultValue) {
+        long value = getFromRuns(runs, keyFirst, keySecond);
+        return value == DELETED ? defaultValue : value;
+    }
+
+    /**
+     * Get the value of the most recent record for a key, or {@link #DELETED} if there's none.
+     */
+    private static long getFromRuns(List<SortedRun> runs, long keyFirst, long keySecond) {
+        for (int i = 0, size = runs.size(); i < size; i++) {
+            SortedRun run = runs.get(i);
+            if (!run.mayContain(keyFirst, keySecond)) {
+                continue;
+            }
+
+            int idx = run.lowerBound(keyFirst, keySecond);
+            if (idx < run.count && run.keyFirst(idx) == keyFirst && run.keySecond(idx) == keySecond) {
+                return run.value(idx);
+            }
+        }
+        return DELETED;
+    }
+
+    @Override
+    public Entry<byte[], byte[]> getFloor(byte[] key) throws IOException {
+        checkKey(key);
+        List<SortedRun> snapshot = runs;
+        long keyFirst = ArrayUtil.getLong(key, 0);
+        long keySecond = ArrayUtil.getLong(key, 8);
+
+        // Walk backward through all the runs at once, so that a sequence of deleted keys is skipped without searching
+        // the runs again for each of them
+        int[] positions = new int[snapshot.size()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = snapshot.get(i).lowerBound(keyFirst, keySecond) - 1;
+        }
+
+        while (true) {
+            // Find the biggest remaining key. When several runs have it, the first one holds the most recent record
+            int newest = -1;
+            long floorFirst = 0;
+            long floorSecond = 0;
+            for (int i = 0; i < positions.length; i++) {
+                int idx = positions[i];
+                if (idx < 0) {
+                    continue;
+                }
+
+                SortedRun run = snapshot.get(i);
+                if (newest < 0 || compare(run.keyFirst(idx), run.keySecond(idx), floorFirst, floorSecond) > 0) {
+                    floorFirst = run.keyFirst(idx);
+                    floorSecond = run.keySecond(idx);
+                    newest = i;
+                }
+            }
+
+            if (newest < 0) {
+                return null;
+            }
+
+            long value = snapshot.get(newest).value(positions[newest]);
+            if (value != DELETED) {
+                return newEntry(floorFirst, floorSecond, value);
+            }
+
+            // The key was deleted, move all the runs below it
+            for (int i = 0; i < positions.length; i++) {
+                int idx = positions[i];
+                if (idx >= 0 && snapshot.get(i).keyFirst(idx) == floorFirst
+                        && snapshot.get(i).keySecond(idx) == floorSecond) {
+                    positions[i] = idx - 1;
+                }
+            }
+        }
+    }
+
+    @Override
+    public Entry<byte[], byte[]> getCeil(byte[] key) throws IOException {
+        checkKey(key);
+        MergingCursor cursor = new MergingCursor(runs, ArrayUtil.getLong(key, 0), ArrayUtil.getLong(key, 8), null,
+                true /* skipDeleted */);
+        if (cursor.next()) {
+            return newEntry(cursor.keyFirst, cursor.keySecond, cursor.value);
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public void delete(byte[] key) throws IOException {
+        try (Batch batch = newBatch()) {
+            batch.remove(key);
+            batch.flush();
+        }
+    }
+
+    /**
+     * Merge all the runs into level 2, dropping the deleted keys. This is done for the whole key space, regardless of
+     * the specified range.
+     */
+    @Override
+    public void compact(byte[] firstKey, byte[] lastKey) throws IOException {
+        checkState(!readOnly, "Storage %s is opened in read-only mode", dir);
+        try {
+            compactionExecutor.submit(() -> {
+                List<SortedRun> snapshot = runs;
+                if (!snapshot.isEmpty()) {
+                    merge(snapshot, BOTTOM_LEVEL);
+                }
+                return null;
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compacting", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to compact " + dir, e.getCause());
+        }
+    }
+
+    @Override
+    public void sync() throws IOException {
+        // Runs and manifest are already synced when they're written
+    }
+
+    @Override
+    public CloseableIterator<byte[]> keys() {
+        return keys(null, null);
+    }
+
+    @Override
+    public CloseableIterator<byte[]> keys(byte[] firstKey, byte[] lastKey) {
+        final MergingCursor cursor = new MergingCursor(runs,
+                firstKey != null ? ArrayUtil.getLong(firstKey, 0) : Long.MIN_VALUE,
+                firstKey != null ? ArrayUtil.getLong(firstKey, 8) : Long.MIN_VALUE,
+                lastKey, true /* skipDeleted */);
+
+        return new CloseableIterator<byte[]>() {
+            private boolean hasNext = cursor.next();
+
+            @Override
+            public boolean hasNext() {
+                return hasNext;
+            }
+
+            @Override
+            public byte[] next() {
+                checkState(hasNext);
+                byte[] key = new byte[16];
+                ArrayUtil.setLong(key, 0, cursor.keyFirst);
+                ArrayUtil.setLong(key, 8, cursor.keySecond);
+                hasNext = cursor.next();
+                return key;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Override
+    public CloseableIterator<Entry<byte[], byte[]>> iterator() {
+        final MergingCursor cursor = new MergingCursor(runs, Long.MIN_VALUE, Long.MIN_VALUE, null,
+                true /* skipDeleted */);
+
+        return new CloseableIterator<Entry<byte[], byte[]>>() {
+            private boolean hasNext = cursor.next();
+
+            @Override
+            public boolean hasNext() {
+                return hasNext;
+            }
+
+            @Override
+            public Entry<byte[], byte[]> next() {
+                checkState(hasNext);
+                Entry<byte[], byte[]> entry = newEntry(cursor.keyFirst, cursor.keySecond, cursor.value);
+                hasNext = cursor.next();
+                return entry;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /**
+     * @return the number of records in all the runs, which includes overwritten and deleted keys not compacted yet
+     */
+    @Override
+    public long count() {
+        long count = 0;
+        for (SortedRun run : runs) {
+            count += run.count;
+        }
+        return count;
+    }
+
+    @Override
+    public Batch newBatch() {
+        checkState(!readOnly, "Storage %s is opened in read-only mode", dir);
+        return new SortedRunsBatch();
+    }
+
+    private class SortedRunsBatch implements LongPairBatch {
+        private long[] records = new long[RECORD_LONGS * 1024];
+        private int size = 0;
+
+        @Override
+        public void put(byte[] key, byte[] value) throws IOException {
+            checkKey(key);
+            checkArgument(value.length == 8, "Values need to be 8 bytes long");
+            put(ArrayUtil.getLong(key, 0), ArrayUtil.getLong(key, 8), ArrayUtil.getLong(value, 0));
+        }
+
+        @Override
+        public void put(long keyFirst, long keySecond, long value) {
+            checkArgument(value != DELETED, "Value %s is reserved", value);
+            add(keyFirst, keySecond, value);
+        }
+
+        @Override
+        public void remove(byte[] key) throws IOException {
+            checkKey(key);
+            add(ArrayUtil.getLong(key, 0), ArrayUtil.getLong(key, 8), DELETED);
+        }
+
+        /**
+         * Delete all the keys in the range that are in the storage or in the batch when this method is called.
+         */
+        @Override
+        public void deleteRange(byte[] beginKey, byte[] endKey) throws IOException {
+            checkKey(beginKey);
+            checkKey(endKey);
+            long beginFirst = ArrayUtil.getLong(beginKey, 0);
+            long beginSecond = ArrayUtil.getLong(beginKey, 8);
+            long endFirst = ArrayUtil.getLong(endKey, 0);
+            long endSecond = ArrayUtil.getLong(endKey, 8);
+
+            for (int i = 0, batchSize = size; i < batchSize; i += RECORD_LONGS) {
+                if (compare(records[i], records[i + 1], beginFirst, beginSecond) >= 0
+                        && compare(records[i], records[i + 1], endFirst, endSecond) < 0) {
+                    add(records[i], records[i + 1], DELETED);
+                }
+            }
+
+            MergingCursor cursor = new MergingCursor(runs, beginFirst, beginSecond, endKey, true /* skipDeleted */);
+            while (cursor.next()) {
+                add(cursor.keyFirst, cursor.keySecond, DELETED);
+            }
+        }
+
+        private void add(long keyFirst, long keySecond, long value) {
+            if (size + RECORD_LONGS > records.length) {
+                long[] newRecords = new long[records.length * 2];
+                System.arraycopy(records, 0, newRecords, 0, size);
+                records = newRecords;
+            }
+            records[size] = keyFirst;
+            records[size + 1] = keySecond;
+            records[size + 2] = value;
+            size += RECORD_LONGS;
+        }
+
+        @Override
+        public void clear() {
+            size = 0;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (size == 0) {
+                return;
+            }
+
+            records = LongPairRecords.sort(records, size);
+
+            List<SortedRun> newRuns;
+            try (RunWriter writer = new RunWriter(0)) {
+                for (int i = 0; i < size; i += RECORD_LONGS) {
+                    int next = i + RECORD_LONGS;
+                    if (next < size && records[next] == records[i] && records[next + 1] == records[i + 1]) {
+                        // Only keep the last update of a key
+                        continue;
+                    }
+                    writer.append(records[i], records[i + 1], records[i + 2]);
+                }
+                newRuns = writer.finish();
+            }
+
+            addRuns(newRuns);
+        }
+
+        @Override
+        public void close() {
+            records = null;
+            size = 0;
+        }
+    }
+
+    private synchronized void addRuns(List<SortedRun> newRuns) throws IOException {
+        List<SortedRun> updatedRuns = new ArrayList<>(runs.size() + newRuns.size());
+        // Runs of the same batch don't overlap, their order doesn't matter
+        updatedRuns.addAll(newRuns);
+        updatedRuns.addAll(runs);
+        writeManifest(updatedRuns);
+        runs = Collections.unmodifiableList(updatedRuns);
+
+        int level0Runs = 0;
+        for (SortedRun run : updatedRuns) {
+            if (run.level == 0) {
+                level0Runs++;
+            }
+        }
+
+        if (level0Runs >= compactionTrigger && compactionScheduled.compareAndSet(false, true)) {
+            compactionExecutor.execute(this::runCompaction);
+        }
+    }
+
+    private synchronized void replaceRuns(List<SortedRun> oldRuns, List<SortedRun> newRuns) throws IOException {
+        List<SortedRun> currentRuns = runs;
+        int idx = currentRuns.indexOf(oldRuns.get(0));
+        checkState(idx >= 0 && currentRuns.subList(idx, idx + oldRuns.size()).equals(oldRuns),
+                "Compacted runs are not in the storage anymore");
+
+        List<SortedRun> updatedRuns = new ArrayList<>(currentRuns.size() - oldRuns.size() + newRuns.size());
+        updatedRuns.addAll(currentRuns.subList(0, idx));
+        updatedRuns.addAll(newRuns);
+        updatedRuns.addAll(currentRuns.subList(idx + oldRuns.size(), currentRuns.size()));
+        writeManifest(updatedRuns);
+        runs = Collections.unmodifiableList(updatedRuns);
+
+        for (SortedRun run : oldRuns) {
+            // Readers that still hold a snapshot with this run keep using the mapping until it's garbage collected
+            Files.deleteIfExists(run.file.toPath());
+        }
+    }
+
+    private void runCompaction() {
+        compactionScheduled.set(false);
+        try {
+            List<SortedRun> snapshot = runs;
+            List<SortedRun> level0 = new ArrayList<>();
+            for (SortedRun run : snapshot) {
+                if (run.level == 0) {
+                    level0.add(run);
+                }
+            }
+
+            if (level0.size() >= compactionTrigger) {
+                // If there are no older runs, the deleted keys can be dropped right away
+                boolean isOnlyLevel = level0.size() == snapshot.size();
+                merge(level0, isOnlyLevel ? BOTTOM_LEVEL : 1);
+            }
+
+            snapshot = runs;
+            List<SortedRun> lowerLevels = new ArrayList<>();
+            long level1Size = 0;
+            int level1Runs = 0;
+            long level2Size = 0;
+            for (SortedRun run : snapshot) {
+                if (run.level == 1) {
+                    level1Size += run.sizeInBytes();
+                    level1Runs++;
+                    lowerLevels.add(run);
+                } else if (run.level == BOTTOM_LEVEL) {
+                    level2Size += run.sizeInBytes();
+                    lowerLevels.add(run);
+                }
+            }
+
+            if (level1Runs > 0 && (level1Runs >= compactionTrigger || level1Size * levelSizeRatio >= level2Size)) {
+                merge(lowerLevels, BOTTOM_LEVEL);
+            }
+        } catch (Throwable t) {
+            log.error("Failed to compact sorted runs in {}", dir, t);
+        }
+    }
+
+    /**
+     * Merge contiguous runs into new runs at the given level. The deleted keys are dropped when merging into the bottom
+     * level, since all the older runs are part of the merge.
+     */
+    private void merge(List<SortedRun> inputRuns, int level) throws IOException {
+        long startTime = System.nanoTime();
+        boolean dropDeleted = level == BOTTOM_LEVEL;
+        MergingCursor cursor = new MergingCursor(inputRuns, Long.MIN_VALUE, Long.MIN_VALUE, null, dropDeleted);
+
+        List<SortedRun> outputRuns;
+        try (RunWriter writer = new RunWriter(level)) {
+            while (cursor.next()) {
+                writer.append(cursor.keyFirst, cursor.keySecond, cursor.value);
+            }
+            outputRuns = writer.finish();
+        }
+
+        replaceRuns(inputRuns, outputRuns);
+
+        log.info("Merged {} runs into {} runs at level {} in {} ms", inputRuns.size(), outputRuns.size(), level,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+    }
+
+    private void writeManifest(List<SortedRun> manifestRuns) throws IOException {
+        File tmpManifest = new File(dir, MANIFEST + TMP_SUFFIX);
+        try (FileOutputStream fos = new FileOutputStream(tmpManifest);
+             Writer writer = new OutputStreamWriter(fos, UTF_8)) {
+            for (SortedRun run : manifestRuns) {
+                writer.write(run.level + " " + run.id + "\n");
+            }
+            writer.flush();
+            fos.getChannel().force(true);
+        }
+
+        Files.move(tmpManifest.toPath(), new File(dir, MANIFEST).toPath(), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        syncDir();
+    }
+
+    private void syncDir() {
+        try (FileChannel dirChannel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            dirChannel.force(true);
+        } catch (IOException e) {
+            // Not supported on all platforms
+            if (log.isDebugEnabled()) {
+                log.debug("Failed to sync directory {}", dir, e);
+            }
+        }
+    }
+
+    private File runFile(long runId) {
+        return new File(dir, String.format("%016x%s", runId, RUN_SUFFIX));
+    }
+
+    /**
+     * Writes sorted records into new runs, starting a new run each time the max run size is reached.
+     */
+    private class RunWriter implements AutoCloseable {
+        private final int level;
+        private final List<SortedRun> completedRuns = new ArrayList<>();
+        private final ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+
+        private FileChannel channel;
+        private long runId;
+        private int count;
+        private boolean finished = false;
+
+        RunWriter(int level) {
+            this.level = level;
+        }
+
+        void append(long keyFirst, long keySecond, long value) throws IOException {
+            if (channel == null) {
+                runId = nextRunId.getAndIncrement();
+                channel = FileChannel.open(runFile(runId).toPath(), StandardOpenOption.CREATE_NEW,
+                        StandardOpenOption.WRITE);
+                count = 0;
+                buffer.clear();
+                buffer.putInt(MAGIC).putInt(VERSION).putLong(0L);
+            }
+
+            if (buffer.remaining() < RECORD_SIZE) {
+                writeBuffer();
+            }
+            buffer.putLong(keyFirst).putLong(keySecond).putLong(value);
+
+            if (++count == maxRecordsPerRun) {
+                completeRun();
+            }
+        }
+
+        List<SortedRun> finish() throws IOException {
+            if (channel != null) {
+                completeRun();
+            }
+            finished = true;
+            return completedRuns;
+        }
+
+        private void completeRun() throws IOException {
+            writeBuffer();
+
+            ByteBuffer countBuffer = ByteBuffer.allocate(8);
+            countBuffer.putLong(0, count);
+            while (countBuffer.hasRemaining()) {
+                channel.write(countBuffer, 8 + countBuffer.position());
+            }
+            channel.force(true);
+            channel.close();
+            channel = null;
+
+            completedRuns.add(SortedRun.open(runFile(runId), runId, level));
+        }
+
+        private void writeBuffer() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (finished) {
+                return;
+            }
+
+            // The writer failed, discard all the runs it wrote
+            if (channel != null) {
+                channel.close();
+                Files.deleteIfExists(runFile(runId).toPath());
+            }
+            for (SortedRun run : completedRuns) {
+                Files.deleteIfExists(run.file.toPath());
+            }
+        }
+    }
+
+    /**
+     * Immutable file of records sorted by key, memory mapped for reading.
+     */
+    private static final class SortedRun {
+        final long id;
+        final int level;
+        final File file;
+        final int count;
+
+        private final ByteBuffer buffer;
+        private final long firstKeyFirst;
+        private final long firstKeySecond;
+        private final long lastKeyFirst;
+        private final long lastKeySecond;
+
+        static SortedRun open(File file, long id, int level) throws IOException {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                long fileSize = channel.size();
+                if (fileSize < HEADER_SIZE || fileSize > Integer.MAX_VALUE) {
+                    throw new IOException("Invalid size " + fileSize + " for sorted run " + file);
+                }
+
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+                if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                    throw new IOException("Invalid header for sorted run " + file);
+                }
+                long count = buffer.getLong(8);
+                if (count <= 0 || HEADER_SIZE + count * RECORD_SIZE != fileSize) {
+                    throw new IOException("Sorted run " + file + " is truncated: " + count + " records in "
+                            + fileSize + " bytes");
+                }
+                return new SortedRun(file, id, level, buffer, (int) count);
+            }
+        }
+
+        private SortedRun(File file, long id, int level, ByteBuffer buffer, int count) {
+            this.file = file;
+            this.id = id;
+            this.level = level;
+            this.buffer = buffer;
+            this.count = count;
+            this.firstKeyFirst = keyFirst(0);
+            this.firstKeySecond = keySecond(0);
+            this.lastKeyFirst = keyFirst(count - 1);
+            this.lastKeySecond = keySecond(count - 1);
+        }
+
+        long keyFirst(int idx) {
+            return buffer.getLong(HEADER_SIZE + idx * RECORD_SIZE);
+        }
+
+        long keySecond(int idx) {
+            return buffer.getLong(HEADER_SIZE + idx * RECORD_SIZE + 8);
+        }
+
+        long value(int idx) {
+            return buffer.getLong(HEADER_SIZE + idx * RECORD_SIZE + 16);
+        }
+
+        long sizeInBytes() {
+            return HEADER_SIZE + (long) count * RECORD_SIZE;
+        }
+
+        boolean mayContain(long keyFirst, long keySecond) {
+            return compare(keyFirst, keySecond, firstKeyFirst, firstKeySecond) >= 0
+                    && compare(keyFirst, keySecond, lastKeyFirst, lastKeySecond) <= 0;
+        }
+
+        boolean isBefore(long keyFirst, long keySecond) {
+            return compare(lastKeyFirst, lastKeySecond, keyFirst, keySecond) < 0;
+        }
+
+        /**
+         * @return the index of the first record whose key is greater or equal than the given key, or count if there
+         *         is no such record
+         */
+        int lowerBound(long keyFirst, long keySecond) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (compare(keyFirst(mid), keySecond(mid), keyFirst, keySecond) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Sequential reader over a list of runs that don't overlap, in key order.
+     */
+    private static final class RunsReader {
+        private final List<SortedRun> runs;
+        private int runIdx;
+        private int pos;
+
+        RunsReader(List<SortedRun> runs, long keyFirst, long keySecond) {
+            this.runs = runs;
+            this.runIdx = 0;
+            while (runIdx < runs.size() && runs.get(runIdx).isBefore(keyFirst, keySecond)) {
+                runIdx++;
+            }
+            this.pos = isValid() ? runs.get(runIdx).lowerBound(keyFirst, keySecond) : 0;
+        }
+
+        boolean isValid() {
+            return runIdx < runs.size();
+        }
+
+        long keyFirst() {
+            return runs.get(runIdx).keyFirst(pos);
+        }
+
+        long keySecond() {
+            return runs.get(runIdx).keySecond(pos);
+        }
+
+        long value() {
+            return runs.get(runIdx).value(pos);
+        }
+
+        void advance() {
+            if (++pos == runs.get(runIdx).count) {
+                runIdx++;
+                pos = 0;
+            }
+        }
+    }
+
+    /**
+     * Iterates in key order over the records of a list of runs. When a key is found in multiple runs, only the record
+     * of the most recent run is returned.
+     */
+    private static final class MergingCursor {
+        // Readers from the most recent to the oldest runs
+        private final RunsReader[] readers;
+        private final boolean hasEnd;
+        private final long endFirst;
+        private final long endSecond;
+        private final boolean skipDeleted;
+
+        long keyFirst;
+        long keySecond;
+        long value;
+
+        MergingCursor(List<SortedRun> runs, long startFirst, long startSecond, byte[] endKey, boolean skipDeleted) {
+            List<RunsReader> readerList = new ArrayList<>();
+            List<SortedRun> bottomRuns = new ArrayList<>();
+            for (SortedRun run : runs) {
+                if (run.level == BOTTOM_LEVEL) {
+                    bottomRuns.add(run);
+                } else {
+                    readerList.add(new RunsReader(Collections.singletonList(run), startFirst, startSecond));
+                }
+            }
+            if (!bottomRuns.isEmpty()) {
+                // Bottom level runs don't overlap and are already in key order
+                readerList.add(new RunsReader(bottomRuns, startFirst, startSecond));
+            }
+
+            this.readers = readerList.toArray(new RunsReader[0]);
+            this.hasEnd = endKey != null;
+            this.endFirst = hasEnd ? ArrayUtil.getLong(endKey, 0) : 0;
+            this.endSecond = hasEnd ? ArrayUtil.getLong(endKey, 8) : 0;
+            this.skipDeleted = skipDeleted;
+        }
+
+        boolean next() {
+            while (true) {
+                RunsReader min = null;
+                for (RunsReader reader : readers) {
+                    if (reader.isValid() && (min == null
+                            || compare(reader.keyFirst(), reader.keySecond(), min.keyFirst(), min.keySecond()) < 0)) {
+                        min = reader;
+                    }
+                }
+
+                if (min == null) {
+                    return false;
+                }
+
+                keyFirst = min.keyFirst();
+                keySecond = min.keySecond();
+                value = min.value();
+                if (hasEnd && compare(keyFirst, keySecond, endFirst, endSecond) >= 0) {
+                    return false;
+                }
+
+                // Skip the older records of the same key
+                for (RunsReader reader : readers) {
+                    if (reader.isValid() && reader.keyFirst() == keyFirst && reader.keySecond() == keySecond) {
+                        reader.advance();
+                    }
+                }
+
+                if (!skipDeleted || value != DELETED) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    private static void checkKey(byte[] key) {
+        checkArgument(key.length == 16, "Keys need to be 16 bytes long");
+    }
+
+    private static Entry<byte[], byte[]> newEntry(long keyFirst, long keySecond, long value) {
+        byte[] key = new byte[16];
+        ArrayUtil.setLong(key, 0, keyFirst);
+        ArrayUtil.setLong(key, 8, keySecond);
+        byte[] valueArray = new byte[8];
+        ArrayUtil.setLong(valueArray, 0, value);
+        return new SimpleImmutableEntry<>(key, valueArray);
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(KeyValueStorageSortedRuns.class);
+}
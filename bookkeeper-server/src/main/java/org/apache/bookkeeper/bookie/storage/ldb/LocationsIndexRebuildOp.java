@@ -37,10 +37,12 @@ import org.apache.bookkeeper.bookie.BookieImpl;
 import org.apache.bookkeeper.bookie.EntryLogger;
 import org.apache.bookkeeper.bookie.EntryLogger.EntryLogScanner;
 import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
 import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.stats.NullStatsLogger;
 import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.lang.mutable.MutableLong;
 import org.apache.commons.lang.time.DurationFormatUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -76,8 +78,11 @@ public class LocationsIndexRebuildOp {
         Set<Long> activeLedgers = getActiveLedgers(conf, KeyValueStorageRocksDB.factory, basePath);
         LOG.info("Found {} active ledgers in ledger manager", activeLedgers.size());
 
-        KeyValueStorage newIndex = KeyValueStorageRocksDB.factory.newKeyValueStorage(basePath, "locations",
-                DbConfigType.Default, conf);
+        KeyValueStorage newIndex = EntryLocationIndex.getStorageFactory(conf).newKeyValueStorage(basePath,
+                "locations", DbConfigType.Default, conf);
+        // The new index is empty, so the locations can be loaded in bulk
+        Batch batch = newIndex.newBulkLoadBatch();
+        MutableLong entriesInBatch = new MutableLong(0);
 
         int totalEntryLogs = entryLogs.size();
         int completedEntryLogs = 0;
@@ -100,7 +105,19 @@ public class LocationsIndexRebuildOp {
                     // Update the ledger index page
                     LongPairWrapper key = LongPairWrapper.get(ledgerId, entryId);
                     LongWrapper value = LongWrapper.get(location);
-                    newIndex.put(key.array, value.array);
+                    try {
+                        batch.put(key.array, value.array);
+                    } finally {
+                        key.recycle();
+                        value.recycle();
+                    }
+
+                    entriesInBatch.increment();
+                    if (entriesInBatch.longValue() >= REBUILD_BATCH_SIZE) {
+                        batch.flush();
+                        batch.clear();
+                        entriesInBatch.setValue(0);
+                    }
                 }
 
                 @Override
@@ -114,6 +131,8 @@ public class LocationsIndexRebuildOp {
                     totalEntryLogs);
         }
 
+        batch.flush();
+        batch.close();
         newIndex.sync();
         newIndex.close();
 
@@ -133,5 +152,7 @@ public class LocationsIndexRebuildOp {
         return activeLedgers;
     }
 
+    private static final int REBUILD_BATCH_SIZE = 1000000;
+
     private static final Logger LOG = LoggerFactory.getLogger(LocationsIndexRebuildOp.class);
 }
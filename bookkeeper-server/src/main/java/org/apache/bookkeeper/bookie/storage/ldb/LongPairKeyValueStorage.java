@@ -0,0 +1,52 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import java.io.IOException;
+
+/**
+ * Key-value storage whose keys are pairs of longs and whose values are longs.
+ *
+ * <p>Records can be accessed through primitive longs, without serializing them into byte arrays. The byte array
+ * methods of {@link KeyValueStorage} are still supported, with 16 bytes keys and 8 bytes values.
+ */
+public interface LongPairKeyValueStorage extends KeyValueStorage {
+
+    /**
+     * Get the value associated with the given key.
+     *
+     * @param keyFirst
+     *            the first long of the key
+     * @param keySecond
+     *            the second long of the key
+     * @param defaultValue
+     *            the value to return if the key was not found
+     * @return the value or defaultValue if the key was not found
+     */
+    long getLong(long keyFirst, long keySecond, long defaultValue) throws IOException;
+
+    /**
+     * Batch that can be filled with primitive longs.
+     */
+    interface LongPairBatch extends Batch {
+        void put(long keyFirst, long keySecond, long value) throws IOException;
+    }
+}
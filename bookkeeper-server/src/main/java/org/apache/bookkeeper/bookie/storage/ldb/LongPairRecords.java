@@ -0,0 +1,92 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+/**
+ * Helpers for arrays of (keyFirst, keySecond, value) records laid out one after the other in a long array, as
+ * collected by the batches that load pairs of longs keys.
+ */
+final class LongPairRecords {
+
+    static final int RECORD_LONGS = 3;
+
+    private LongPairRecords() {}
+
+    static int compare(long keyFirst1, long keySecond1, long keyFirst2, long keySecond2) {
+        int res = Long.compare(keyFirst1, keyFirst2);
+        return res != 0 ? res : Long.compare(keySecond1, keySecond2);
+    }
+
+    /**
+     * Stable sort of the records by key, so that the updates of a same key remain in the order they were added.
+     * Batches are often already sorted, when they're filled from the write cache.
+     *
+     * @param records the records to sort
+     * @param size the number of longs used in the records array
+     * @return the array holding the sorted records, which is either the given array or a new one
+     */
+    static long[] sort(long[] records, int size) {
+        boolean sorted = true;
+        for (int i = RECORD_LONGS; i < size && sorted; i += RECORD_LONGS) {
+            sorted = compare(records[i - RECORD_LONGS], records[i - RECORD_LONGS + 1],
+                    records[i], records[i + 1]) <= 0;
+        }
+        if (sorted) {
+            return records;
+        }
+
+        int count = size / RECORD_LONGS;
+        long[] src = records;
+        long[] dst = new long[records.length];
+        for (int width = 1; width < count; width *= 2) {
+            for (int low = 0; low < count; low += 2 * width) {
+                int mid = Math.min(low + width, count);
+                int high = Math.min(low + 2 * width, count);
+                merge(src, dst, low, mid, high);
+            }
+            long[] tmp = src;
+            src = dst;
+            dst = tmp;
+        }
+        return src;
+    }
+
+    private static void merge(long[] src, long[] dst, int low, int mid, int high) {
+        int i = low * RECORD_LONGS;
+        int j = mid * RECORD_LONGS;
+        int k = low * RECORD_LONGS;
+        int midIdx = mid * RECORD_LONGS;
+        int highIdx = high * RECORD_LONGS;
+        while (i < midIdx && j < highIdx) {
+            if (compare(src[j], src[j + 1], src[i], src[i + 1]) < 0) {
+                System.arraycopy(src, j, dst, k, RECORD_LONGS);
+                j += RECORD_LONGS;
+            } else {
+                System.arraycopy(src, i, dst, k, RECORD_LONGS);
+                i += RECORD_LONGS;
+            }
+            k += RECORD_LONGS;
+        }
+        System.arraycopy(src, i, dst, k, midIdx - i);
+        k += midIdx - i;
+        System.arraycopy(src, j, dst, k, highIdx - j);
+    }
+}
@@ -20,6 +20,7 @@
  */
 package org.apache.bookkeeper.bookie.storage.ldb;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static org.apache.bookkeeper.bookie.storage.ldb.WriteCache.align64;
 
 import io.netty.buffer.ByteBuf;
@@ -46,186 +47,300 @@ import org.slf4j.LoggerFactory;
  * ring-buffer fashion. When the read cache is full, the oldest segment
  * is cleared and rotated to make space for new entries to be added to
  * the read cache.
+ *
+ * <p>With the {@link EvictionPolicy#SEGMENTED} policy, the memory is divided in two rings. New entries are
+ * inserted in the probation ring, and an entry that is hit a second time while in probation is promoted to
+ * the protected ring. A scan, which reads each entry once, only rotates the probation ring and leaves the
+ * entries that are read repeatedly in the protected ring.
  */
 public class ReadCache implements Closeable {
     private static final Logger log = LoggerFactory.getLogger(ReadCache.class);
 
     private static final int DEFAULT_MAX_SEGMENT_SIZE = 1 * 1024 * 1024 * 1024;
 
-    private final List<ByteBuf> cacheSegments;
-    private final List<ConcurrentLongLongPairHashMap> cacheIndexes;
+    /**
+     * Eviction policy of the read cache.
+     */
+    public enum EvictionPolicy {
+        /**
+         * A single ring of segments, the oldest segment is evicted first.
+         */
+        FIFO,
+        /**
+         * A probation ring for the new entries and a protected ring for the entries hit more than once.
+         */
+        SEGMENTED
+    }
 
-    private int currentSegmentIdx;
-    private final AtomicInteger currentSegmentOffset = new AtomicInteger(0);
+    // flag set in the size of an index entry once the entry has been hit
+    private static final long ACCESSED_FLAG = 1L << 32;
 
-    private final int segmentSize;
+    private final CacheRing probationRing;
+    private final CacheRing protectedRing;
 
     private ByteBufAllocator allocator;
-    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 
     public ReadCache(ByteBufAllocator allocator, long maxCacheSize) {
         this(allocator, maxCacheSize, DEFAULT_MAX_SEGMENT_SIZE);
     }
 
     public ReadCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize) {
+        this(allocator, maxCacheSize, maxSegmentSize, EvictionPolicy.FIFO, 0);
+    }
+
+    public ReadCache(ByteBufAllocator allocator, long maxCacheSize, EvictionPolicy evictionPolicy,
+                     double protectedRatio) {
+        this(allocator, maxCacheSize, DEFAULT_MAX_SEGMENT_SIZE, evictionPolicy, protectedRatio);
+    }
+
+    public ReadCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize,
+                     EvictionPolicy evictionPolicy, double protectedRatio) {
         this.allocator = allocator;
-        int segmentsCount = Math.max(2, (int) (maxCacheSize / maxSegmentSize));
-        segmentSize = (int) (maxCacheSize / segmentsCount);
-
-        cacheSegments = new ArrayList<>();
-        cacheIndexes = new ArrayList<>();
-
-        for (int i = 0; i < segmentsCount; i++) {
-            cacheSegments.add(Unpooled.directBuffer(segmentSize, segmentSize));
-            ConcurrentLongLongPairHashMap concurrentLongLongPairHashMap = ConcurrentLongLongPairHashMap.newBuilder()
-                    .expectedItems(4096)
-                    .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
-                    .build();
-            cacheIndexes.add(concurrentLongLongPairHashMap);
+        if (evictionPolicy == EvictionPolicy.SEGMENTED) {
+            checkArgument(protectedRatio > 0 && protectedRatio < 1,
+                    "Protected ratio must be between 0 and 1: %s", protectedRatio);
+            long protectedSize = (long) (maxCacheSize * protectedRatio);
+            this.protectedRing = new CacheRing(protectedSize, maxSegmentSize);
+            this.probationRing = new CacheRing(maxCacheSize - protectedSize, maxSegmentSize);
+        } else {
+            this.protectedRing = null;
+            this.probationRing = new CacheRing(maxCacheSize, maxSegmentSize);
         }
     }
 
     @Override
     public void close() {
-        cacheSegments.forEach(ByteBuf::release);
+        probationRing.close();
+        if (protectedRing != null) {
+            protectedRing.close();
+        }
     }
 
     public void put(long ledgerId, long entryId, ByteBuf entry) {
-        int entrySize = entry.readableBytes();
-        int alignedSize = align64(entrySize);
+        probationRing.put(ledgerId, entryId, entry);
+    }
+
+    public ByteBuf get(long ledgerId, long entryId) {
+        if (protectedRing == null) {
+            return probationRing.get(ledgerId, entryId, null);
+        }
+
+        ByteBuf entry = protectedRing.get(ledgerId, entryId, null);
+        if (entry != null) {
+            return entry;
+        }
+
+        return probationRing.get(ledgerId, entryId, protectedRing);
+    }
+
+    public boolean hasEntry(long ledgerId, long entryId) {
+        return (protectedRing != null && protectedRing.hasEntry(ledgerId, entryId))
+                || probationRing.hasEntry(ledgerId, entryId);
+    }
 
-        lock.readLock().lock();
+    /**
+     * @return the total size of cached entries
+     */
+    public long size() {
+        return probationRing.size() + (protectedRing != null ? protectedRing.size() : 0);
+    }
+
+    /**
+     * @return the total number of cached entries
+     */
+    public long count() {
+        return probationRing.count() + (protectedRing != null ? protectedRing.count() : 0);
+    }
+
+    /**
+     * A ring of segments with one index per segment.
+     */
+    private class CacheRing {
+        private final List<ByteBuf> cacheSegments;
+        private final List<ConcurrentLongLongPairHashMap> cacheIndexes;
+
+        private int currentSegmentIdx;
+        private final AtomicInteger currentSegmentOffset = new AtomicInteger(0);
 
-        try {
-            if (entrySize > segmentSize) {
-                log.warn("entrySize {} > segmentSize {}, skip update read cache!", entrySize, segmentSize);
-                return;
+        private final int segmentSize;
+
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        CacheRing(long maxCacheSize, int maxSegmentSize) {
+            int segmentsCount = Math.max(2, (int) (maxCacheSize / maxSegmentSize));
+            segmentSize = (int) (maxCacheSize / segmentsCount);
+
+            cacheSegments = new ArrayList<>();
+            cacheIndexes = new ArrayList<>();
+
+            for (int i = 0; i < segmentsCount; i++) {
+                cacheSegments.add(Unpooled.directBuffer(segmentSize, segmentSize));
+                ConcurrentLongLongPairHashMap concurrentLongLongPairHashMap = ConcurrentLongLongPairHashMap
+                        .newBuilder()
+                        .expectedItems(4096)
+                        .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
+                        .build();
+                cacheIndexes.add(concurrentLongLongPairHashMap);
             }
-            int offset = currentSegmentOffset.getAndAdd(alignedSize);
-            if (offset + entrySize > segmentSize) {
-                // Roll-over the segment (outside the read-lock)
-            } else {
+        }
+
+        void close() {
+            cacheSegments.forEach(ByteBuf::release);
+        }
+
+        void put(long ledgerId, long entryId, ByteBuf entry) {
+            int entrySize = entry.readableBytes();
+            int alignedSize = align64(entrySize);
+
+            lock.readLock().lock();
+
+            try {
+                if (entrySize > segmentSize) {
+                    log.warn("entrySize {} > segmentSize {}, skip update read cache!", entrySize, segmentSize);
+                    return;
+                }
+                int offset = currentSegmentOffset.getAndAdd(alignedSize);
+                if (offset + entrySize > segmentSize) {
+                    // Roll-over the segment (outside the read-lock)
+                } else {
+                    // Copy entry into read cache segment
+                    cacheSegments.get(currentSegmentIdx).setBytes(offset, entry, entry.readerIndex(),
+                            entry.readableBytes());
+                    cacheIndexes.get(currentSegmentIdx).put(ledgerId, entryId, offset, entrySize);
+                    return;
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            // We could not insert in segment, we to get the write lock and roll-over to
+            // next segment
+            lock.writeLock().lock();
+
+            try {
+                int offset = currentSegmentOffset.getAndAdd(entrySize);
+                if (offset + entrySize > segmentSize) {
+                    // Rollover to next segment
+                    currentSegmentIdx = (currentSegmentIdx + 1) % cacheSegments.size();
+                    currentSegmentOffset.set(alignedSize);
+                    cacheIndexes.get(currentSegmentIdx).clear();
+                    offset = 0;
+                }
+
                 // Copy entry into read cache segment
                 cacheSegments.get(currentSegmentIdx).setBytes(offset, entry, entry.readerIndex(),
                         entry.readableBytes());
                 cacheIndexes.get(currentSegmentIdx).put(ledgerId, entryId, offset, entrySize);
-                return;
+            } finally {
+                lock.writeLock().unlock();
             }
-        } finally {
-            lock.readLock().unlock();
         }
 
-        // We could not insert in segment, we to get the write lock and roll-over to
-        // next segment
-        lock.writeLock().lock();
-
-        try {
-            int offset = currentSegmentOffset.getAndAdd(entrySize);
-            if (offset + entrySize > segmentSize) {
-                // Rollover to next segment
-                currentSegmentIdx = (currentSegmentIdx + 1) % cacheSegments.size();
-                currentSegmentOffset.set(alignedSize);
-                cacheIndexes.get(currentSegmentIdx).clear();
-                offset = 0;
+        /**
+         * Get an entry from the ring.
+         *
+         * @param promoteTo if not null, the ring where to move the entry when it is hit for the second time
+         */
+        ByteBuf get(long ledgerId, long entryId, CacheRing promoteTo) {
+            ByteBuf entry = null;
+            boolean promote = false;
+
+            lock.readLock().lock();
+
+            try {
+                // We need to check all the segments, starting from the current one and looking
+                // backward to minimize the
+                // checks for recently inserted entries
+                int size = cacheSegments.size();
+                for (int i = 0; i < size; i++) {
+                    int segmentIdx = (currentSegmentIdx + (size - i)) % size;
+
+                    ConcurrentLongLongPairHashMap cacheIndex = cacheIndexes.get(segmentIdx);
+                    LongPair res = cacheIndex.get(ledgerId, entryId);
+                    if (res != null) {
+                        int entryOffset = (int) res.first;
+                        int entryLen = (int) res.second;
+
+                        entry = allocator.buffer(entryLen, entryLen);
+                        entry.writeBytes(cacheSegments.get(segmentIdx), entryOffset, entryLen);
+
+                        if (promoteTo != null) {
+                            if ((res.second & ACCESSED_FLAG) == 0) {
+                                cacheIndex.put(ledgerId, entryId, res.first, res.second | ACCESSED_FLAG);
+                            } else {
+                                // Only one of the concurrent readers removes the entry and promotes it
+                                promote = cacheIndex.remove(ledgerId, entryId, res.first, res.second);
+                            }
+                        }
+                        break;
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
             }
 
-            // Copy entry into read cache segment
-            cacheSegments.get(currentSegmentIdx).setBytes(offset, entry, entry.readerIndex(), entry.readableBytes());
-            cacheIndexes.get(currentSegmentIdx).put(ledgerId, entryId, offset, entrySize);
-        } finally {
-            lock.writeLock().unlock();
-        }
-    }
-
-    public ByteBuf get(long ledgerId, long entryId) {
-        lock.readLock().lock();
-
-        try {
-            // We need to check all the segments, starting from the current one and looking
-            // backward to minimize the
-            // checks for recently inserted entries
-            int size = cacheSegments.size();
-            for (int i = 0; i < size; i++) {
-                int segmentIdx = (currentSegmentIdx + (size - i)) % size;
-
-                LongPair res = cacheIndexes.get(segmentIdx).get(ledgerId, entryId);
-                if (res != null) {
-                    int entryOffset = (int) res.first;
-                    int entryLen = (int) res.second;
-
-                    ByteBuf entry = allocator.buffer(entryLen, entryLen);
-                    entry.writeBytes(cacheSegments.get(segmentIdx), entryOffset, entryLen);
-                    return entry;
-                }
+            if (promote) {
+                promoteTo.put(ledgerId, entryId, entry);
             }
-        } finally {
-            lock.readLock().unlock();
+            // null if the entry is not found in any segment
+            return entry;
         }
 
-        // Entry not found in any segment
-        return null;
-    }
+        boolean hasEntry(long ledgerId, long entryId) {
+            lock.readLock().lock();
 
-    public boolean hasEntry(long ledgerId, long entryId) {
-        lock.readLock().lock();
+            try {
+                int size = cacheSegments.size();
+                for (int i = 0; i < size; i++) {
+                    int segmentIdx = (currentSegmentIdx + (size - i)) % size;
 
-        try {
-            int size = cacheSegments.size();
-            for (int i = 0; i < size; i++) {
-                int segmentIdx = (currentSegmentIdx + (size - i)) % size;
-
-                LongPair res = cacheIndexes.get(segmentIdx).get(ledgerId, entryId);
-                if (res != null) {
-                    return true;
+                    LongPair res = cacheIndexes.get(segmentIdx).get(ledgerId, entryId);
+                    if (res != null) {
+                        return true;
+                    }
                 }
+            } finally {
+                lock.readLock().unlock();
             }
-        } finally {
-            lock.readLock().unlock();
-        }
 
-        // Entry not found in any segment
-        return false;
-    }
+            // Entry not found in any segment
+            return false;
+        }
 
-    /**
-     * @return the total size of cached entries
-     */
-    public long size() {
-        lock.readLock().lock();
-
-        try {
-            long size = 0;
-            for (int i = 0; i < cacheIndexes.size(); i++) {
-                if (i == currentSegmentIdx) {
-                    size += currentSegmentOffset.get();
-                } else if (!cacheIndexes.get(i).isEmpty()) {
-                    size += segmentSize;
-                } else {
-                    // the segment is empty
+        long size() {
+            lock.readLock().lock();
+
+            try {
+                long size = 0;
+                for (int i = 0; i < cacheIndexes.size(); i++) {
+                    if (i == currentSegmentIdx) {
+                        size += currentSegmentOffset.get();
+                    } else if (!cacheIndexes.get(i).isEmpty()) {
+                        size += segmentSize;
+                    } else {
+                        // the segment is empty
+                    }
                 }
-            }
 
-            return size;
-        } finally {
-            lock.readLock().unlock();
+                return size;
+            } finally {
+                lock.readLock().unlock();
+            }
         }
-    }
 
-    /**
-     * @return the total number of cached entries
-     */
-    public long count() {
-        lock.readLock().lock();
+        long count() {
+            lock.readLock().lock();
 
-        try {
-            long count = 0;
-            for (int i = 0; i < cacheIndexes.size(); i++) {
-                count += cacheIndexes.get(i).size();
-            }
+            try {
+                long count = 0;
+                for (int i = 0; i < cacheIndexes.size(); i++) {
+                    count += cacheIndexes.get(i).size();
+                }
 
-            return count;
-        } finally {
-            lock.readLock().unlock();
+                return count;
+            } finally {
+                lock.readLock().unlock();
+            }
         }
     }
 }
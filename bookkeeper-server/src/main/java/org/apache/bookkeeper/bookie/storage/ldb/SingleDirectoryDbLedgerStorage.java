@@ -42,13 +42,15 @@ import java.util.List;
 import java.util.Map;
 import java.util.PrimitiveIterator.OfLong;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.concurrent.locks.StampedLock;
 
 import org.apache.bookkeeper.bookie.Bookie;
 import org.apache.bookkeeper.bookie.Bookie.NoEntryException;
@@ -100,17 +102,20 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
     private final GarbageCollectorThread gcThread;
 
-    // Write cache where all new entries are inserted into
-    protected volatile WriteCache writeCache;
+    // Ring of write caches. New entries are inserted in the cache of the current write epoch, while the caches of
+    // the previous epochs are sealed and wait to be flushed. The cache of epoch e is writeCaches[e % length]
+    protected final WriteCache[] writeCaches;
 
-    // Write cache that is used to swap with writeCache during flushes
-    protected volatile WriteCache writeCacheBeingFlushed;
+    // Epoch of the write cache where all new entries are inserted into
+    private final AtomicLong writeCacheEpoch = new AtomicLong(0);
+
+    // All the write caches of the epochs before this one were flushed and can be reused.
+    // Only updated by the flush thread, while holding the flushMutex
+    private volatile long flushedWriteCacheEpoch = 0;
 
     // Cache where we insert entries for speculative reading
     private final ReadCache readCache;
 
-    private final StampedLock writeCacheRotationLock = new StampedLock();
-
     protected final ReentrantLock flushMutex = new ReentrantLock();
 
     protected final AtomicBoolean hasFlushBeenTriggered = new AtomicBoolean(false);
@@ -120,6 +125,9 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     private final ExecutorService executor = Executors.newSingleThreadExecutor(
             new DefaultThreadFactory(dbStoragerExecutorName));
 
+    // Executor used to flush the write caches in partitions, when more than one flush thread is configured
+    private final ExecutorService flushExecutor;
+
     // Executor used to for db index cleanup
     private final ScheduledExecutorService cleanupExecutor = Executors
             .newSingleThreadScheduledExecutor(new DefaultThreadFactory("db-storage-cleanup"));
@@ -133,6 +141,8 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     private final long writeCacheMaxSize;
     private final long readCacheMaxSize;
     private final int readAheadCacheBatchSize;
+    private final int minReadAheadCacheBatchSize;
+    private final int maxReadAheadCacheBatchSize;
 
     private final long maxThrottleTimeNanos;
 
@@ -140,6 +150,21 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
     private static final long DEFAULT_MAX_THROTTLE_TIME_MILLIS = TimeUnit.SECONDS.toMillis(10);
 
+    private static final int DEFAULT_SCAN_READ_BUFFER_SIZE = 1024 * 1024;
+
+    private static final double DEFAULT_READ_CACHE_PROTECTED_RATIO = 0.5;
+
+    private static final int DEFAULT_WRITE_CACHE_RING_SIZE = 2;
+
+    private static final int DEFAULT_FLUSH_THREADS = 1;
+
+    private final int flushThreads;
+
+    // Min number of entries in a flushed write cache to bulk load their locations in the index, 0 to disable
+    private final long bulkLoadThreshold;
+
+    private final int scanReadBufferSize;
+
     private final long maxReadAheadBytesSize;
 
     private final Counter flushExecutorTime;
@@ -158,11 +183,20 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 ledgerDirsManager.getAllLedgerDirs().get(0).getPath());
 
         this.writeCacheMaxSize = writeCacheSize;
-        this.writeCache = new WriteCache(allocator, writeCacheMaxSize / 2);
-        this.writeCacheBeingFlushed = new WriteCache(allocator, writeCacheMaxSize / 2);
+        int writeCacheRingSize = conf.getInt(DbLedgerStorage.WRITE_CACHE_RING_SIZE, DEFAULT_WRITE_CACHE_RING_SIZE);
+        checkArgument(writeCacheRingSize >= 2, "The write cache ring needs at least 2 caches");
+        this.writeCaches = new WriteCache[writeCacheRingSize];
+        for (int i = 0; i < writeCacheRingSize; i++) {
+            writeCaches[i] = new WriteCache(allocator, writeCacheMaxSize / writeCacheRingSize);
+        }
 
         readCacheMaxSize = readCacheSize;
         this.readAheadCacheBatchSize = readAheadCacheBatchSize;
+        // The read-ahead window of each ledger starts at readAheadCacheBatchSize and adapts within these bounds
+        this.minReadAheadCacheBatchSize = Math.min(readAheadCacheBatchSize,
+                conf.getInt(DbLedgerStorage.READ_AHEAD_CACHE_MIN_BATCH_SIZE, 1));
+        this.maxReadAheadCacheBatchSize = Math.max(readAheadCacheBatchSize,
+                conf.getInt(DbLedgerStorage.READ_AHEAD_CACHE_MAX_BATCH_SIZE, 10 * readAheadCacheBatchSize));
 
         // Do not attempt to perform read-ahead more than half the total size of the cache
         maxReadAheadBytesSize = readCacheMaxSize / 2;
@@ -171,11 +205,34 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 DEFAULT_MAX_THROTTLE_TIME_MILLIS);
         maxThrottleTimeNanos = TimeUnit.MILLISECONDS.toNanos(maxThrottleTimeMillis);
 
-        readCache = new ReadCache(allocator, readCacheMaxSize);
+        int configuredFlushThreads = conf.getInt(DbLedgerStorage.FLUSH_THREADS, DEFAULT_FLUSH_THREADS);
+        checkArgument(configuredFlushThreads >= 1, "The number of flush threads needs to be at least 1");
+        if (configuredFlushThreads > 1 && !conf.isEntryLogPerLedgerEnabled()) {
+            // Concurrent appends to the single entry log would interleave the entries of different ledgers
+            log.warn("{} is ignored since entryLogPerLedgerEnabled is not set, flushing with a single thread",
+                    DbLedgerStorage.FLUSH_THREADS);
+            configuredFlushThreads = 1;
+        }
+        flushThreads = configuredFlushThreads;
+        if (flushThreads > 1) {
+            flushExecutor = Executors.newFixedThreadPool(flushThreads, new DefaultThreadFactory("db-storage-flush"));
+        } else {
+            flushExecutor = null;
+        }
+
+        bulkLoadThreshold = conf.getLong(DbLedgerStorage.ENTRY_LOCATION_INDEX_BULK_LOAD_THRESHOLD, 0L);
+
+        scanReadBufferSize = conf.getInt(DbLedgerStorage.SCAN_READ_BUFFER_SIZE, DEFAULT_SCAN_READ_BUFFER_SIZE);
+
+        ReadCache.EvictionPolicy readCacheEvictionPolicy = ReadCache.EvictionPolicy.valueOf(
+                conf.getString(DbLedgerStorage.READ_CACHE_EVICTION_POLICY, ReadCache.EvictionPolicy.FIFO.name())
+                        .toUpperCase());
+        readCache = new ReadCache(allocator, readCacheMaxSize, readCacheEvictionPolicy,
+                conf.getDouble(DbLedgerStorage.READ_CACHE_PROTECTED_RATIO, DEFAULT_READ_CACHE_PROTECTED_RATIO));
 
         ledgerIndex = new LedgerMetadataIndex(conf, KeyValueStorageRocksDB.factory, baseDir, ledgerDirStatsLogger);
         entryLocationIndex = new EntryLocationIndex(conf,
-                KeyValueStorageRocksDB.factory, baseDir, ledgerDirStatsLogger);
+                EntryLocationIndex.getStorageFactory(conf), baseDir, ledgerDirStatsLogger);
 
         transientLedgerInfoCache = ConcurrentLongHashMap.<TransientLedgerInfo>newBuilder()
                 .expectedItems(16 * 1024)
@@ -190,8 +247,20 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
         dbLedgerStorageStats = new DbLedgerStorageStats(
                 ledgerDirStatsLogger,
-            () -> writeCache.size() + writeCacheBeingFlushed.size(),
-            () -> writeCache.count() + writeCacheBeingFlushed.count(),
+            () -> {
+                long size = 0;
+                for (WriteCache writeCache : writeCaches) {
+                    size += writeCache.size();
+                }
+                return size;
+            },
+            () -> {
+                long count = 0;
+                for (WriteCache writeCache : writeCaches) {
+                    count += writeCache.count();
+                }
+                return count;
+            },
             () -> readCache.size(),
             () -> readCache.count()
         );
@@ -265,11 +334,16 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             cleanupExecutor.shutdown();
             cleanupExecutor.awaitTermination(1, TimeUnit.SECONDS);
 
+            if (flushExecutor != null) {
+                flushExecutor.shutdown();
+            }
+
             ledgerIndex.close();
             entryLocationIndex.close();
 
-            writeCache.close();
-            writeCacheBeingFlushed.close();
+            for (WriteCache writeCache : writeCaches) {
+                writeCache.close();
+            }
             readCache.close();
             executor.shutdown();
 
@@ -298,25 +372,7 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             return false;
         }
 
-        // We need to try to read from both write caches, since recent entries could be found in either of the two. The
-        // write caches are already thread safe on their own, here we just need to make sure we get references to both
-        // of them. Using an optimistic lock since the read lock is always free, unless we're swapping the caches.
-        long stamp = writeCacheRotationLock.tryOptimisticRead();
-        WriteCache localWriteCache = writeCache;
-        WriteCache localWriteCacheBeingFlushed = writeCacheBeingFlushed;
-        if (!writeCacheRotationLock.validate(stamp)) {
-            // Fallback to regular read lock approach
-            stamp = writeCacheRotationLock.readLock();
-            try {
-                localWriteCache = writeCache;
-                localWriteCacheBeingFlushed = writeCacheBeingFlushed;
-            } finally {
-                writeCacheRotationLock.unlockRead(stamp);
-            }
-        }
-
-        boolean inCache = localWriteCache.hasEntry(ledgerId, entryId)
-             || localWriteCacheBeingFlushed.hasEntry(ledgerId, entryId)
+        boolean inCache = writeCachesHaveEntry(ledgerId, entryId)
              || readCache.hasEntry(ledgerId, entryId);
 
         if (inCache) {
@@ -395,34 +451,117 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             log.debug("Add entry. {}@{}, lac = {}", ledgerId, entryId, lac);
         }
 
-        // First we try to do an optimistic locking to get access to the current write cache.
-        // This is based on the fact that the write cache is only being rotated (swapped) every 1 minute. During the
-        // rest of the time, we can have multiple thread using the optimistic lock here without interfering.
-        long stamp = writeCacheRotationLock.tryOptimisticRead();
-        boolean inserted = false;
+        if (!putInWriteCache(ledgerId, entryId, entry)) {
+            triggerFlushAndAddEntry(ledgerId, entryId, entry);
+        }
+
+        // after successfully insert the entry, update LAC and notify the watchers
+        updateCachedLacIfNeeded(ledgerId, lac);
+
+        recordSuccessfulEvent(dbLedgerStorageStats.getAddEntryStats(), startTime);
+        return entryId;
+    }
 
-        inserted = writeCache.put(ledgerId, entryId, entry);
-        if (!writeCacheRotationLock.validate(stamp)) {
-            // The write cache was rotated while we were inserting. We need to acquire the proper read lock and repeat
-            // the operation because we might have inserted in a write cache that was already being flushed and cleared,
-            // without being sure about this last entry being flushed or not.
-            stamp = writeCacheRotationLock.readLock();
+    /**
+     * Insert an entry in the write cache of the current epoch, without ever blocking on the flush thread.
+     *
+     * <p>A writer registers itself on the cache before checking that the epoch is still the current one. Once the
+     * epoch has moved on, no new writer can start inserting in the sealed cache, and the flush thread only has to
+     * wait for the writers that were already inserting to complete.
+     *
+     * <p>When the current cache is full, the writer seals it and moves to the next cache of the ring, if that one was
+     * already flushed.
+     *
+     * @return false if all the write caches are full
+     */
+    private boolean putInWriteCache(long ledgerId, long entryId, ByteBuf entry) {
+        while (true) {
+            long epoch = writeCacheEpoch.get();
+            WriteCache cache = getWriteCache(epoch);
+            cache.acquireWriter();
             try {
-                inserted = writeCache.put(ledgerId, entryId, entry);
+                if (writeCacheEpoch.get() != epoch) {
+                    // The cache was sealed in the meantime, retry with the new one
+                    continue;
+                }
+
+                if (cache.put(ledgerId, entryId, entry)) {
+                    return true;
+                }
             } finally {
-                writeCacheRotationLock.unlockRead(stamp);
+                cache.releaseWriter();
             }
+
+            if (!rotateWriteCache(epoch)) {
+                return false;
+            }
+
+            triggerFlush();
         }
+    }
 
-        if (!inserted) {
-            triggerFlushAndAddEntry(ledgerId, entryId, entry);
+    /**
+     * Seal the write cache of the given epoch and make the next cache of the ring the current one.
+     *
+     * @return false if the next cache of the ring was not flushed yet
+     */
+    private boolean rotateWriteCache(long epoch) {
+        if (epoch + 1 - flushedWriteCacheEpoch >= writeCaches.length) {
+            return false;
         }
 
-        // after successfully insert the entry, update LAC and notify the watchers
-        updateCachedLacIfNeeded(ledgerId, lac);
+        // If the CAS fails, some other thread already rotated the cache
+        writeCacheEpoch.compareAndSet(epoch, epoch + 1);
+        return true;
+    }
 
-        recordSuccessfulEvent(dbLedgerStorageStats.getAddEntryStats(), startTime);
-        return entryId;
+    private WriteCache getWriteCache(long epoch) {
+        return writeCaches[(int) (epoch % writeCaches.length)];
+    }
+
+    /**
+     * Read an entry from the write caches that were not flushed yet, starting from the most recent one. The caches of
+     * the epochs older than the flushed epoch were already cleared and their entries are found in the indexes.
+     */
+    private ByteBuf getFromWriteCaches(long ledgerId, long entryId) {
+        long flushedEpoch = flushedWriteCacheEpoch;
+        long epoch = writeCacheEpoch.get();
+        for (int i = 0; i < writeCaches.length && epoch - i >= flushedEpoch; i++) {
+            ByteBuf entry = getWriteCache(epoch - i).get(ledgerId, entryId);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private boolean writeCachesHaveEntry(long ledgerId, long entryId) {
+        long flushedEpoch = flushedWriteCacheEpoch;
+        long epoch = writeCacheEpoch.get();
+        for (int i = 0; i < writeCaches.length && epoch - i >= flushedEpoch; i++) {
+            if (getWriteCache(epoch - i).hasEntry(ledgerId, entryId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void triggerFlush() {
+        // If the flush has already been triggered or is ongoing, we don't need to trigger another flush
+        if (!isFlushOngoing.get() && hasFlushBeenTriggered.compareAndSet(false, true)) {
+            // Trigger an early flush in background
+            log.info("Write cache is full, triggering flush");
+            executor.execute(() -> {
+                    long startTime = System.nanoTime();
+                    try {
+                        flush();
+                    } catch (IOException e) {
+                        log.error("Error during flush", e);
+                    } finally {
+                        flushExecutorTime.add(MathUtils.elapsedNanos(startTime));
+                    }
+                });
+        }
     }
 
     private void triggerFlushAndAddEntry(long ledgerId, long entryId, ByteBuf entry)
@@ -432,33 +571,13 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         long absoluteTimeoutNanos = System.nanoTime() + maxThrottleTimeNanos;
 
         while (System.nanoTime() < absoluteTimeoutNanos) {
-            // Write cache is full, we need to trigger a flush so that it gets rotated
-            // If the flush has already been triggered or flush has already switched the
-            // cache, we don't need to trigger another flush
-            if (!isFlushOngoing.get() && hasFlushBeenTriggered.compareAndSet(false, true)) {
-                // Trigger an early flush in background
-                log.info("Write cache is full, triggering flush");
-                executor.execute(() -> {
-                        long startTime = System.nanoTime();
-                        try {
-                            flush();
-                        } catch (IOException e) {
-                            log.error("Error during flush", e);
-                        } finally {
-                            flushExecutorTime.add(MathUtils.elapsedNanos(startTime));
-                        }
-                    });
-            }
+            // All the write caches are full, we need to trigger a flush so that they can be reused
+            triggerFlush();
 
-            long stamp = writeCacheRotationLock.readLock();
-            try {
-                if (writeCache.put(ledgerId, entryId, entry)) {
-                    // We succeeded in putting the entry in write cache in the
-                    recordSuccessfulEvent(dbLedgerStorageStats.getThrottledWriteStats(), throttledStartTime);
-                    return;
-                }
-            } finally {
-                writeCacheRotationLock.unlockRead(stamp);
+            if (putInWriteCache(ledgerId, entryId, entry)) {
+                // We succeeded in putting the entry in write cache in the
+                recordSuccessfulEvent(dbLedgerStorageStats.getThrottledWriteStats(), throttledStartTime);
+                return;
             }
 
             // Wait some time and try again
@@ -498,32 +617,8 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             return getLastEntry(ledgerId);
         }
 
-        // We need to try to read from both write caches, since recent entries could be found in either of the two. The
-        // write caches are already thread safe on their own, here we just need to make sure we get references to both
-        // of them. Using an optimistic lock since the read lock is always free, unless we're swapping the caches.
-        long stamp = writeCacheRotationLock.tryOptimisticRead();
-        WriteCache localWriteCache = writeCache;
-        WriteCache localWriteCacheBeingFlushed = writeCacheBeingFlushed;
-        if (!writeCacheRotationLock.validate(stamp)) {
-            // Fallback to regular read lock approach
-            stamp = writeCacheRotationLock.readLock();
-            try {
-                localWriteCache = writeCache;
-                localWriteCacheBeingFlushed = writeCacheBeingFlushed;
-            } finally {
-                writeCacheRotationLock.unlockRead(stamp);
-            }
-        }
-
-        // First try to read from the write cache of recent entries
-        ByteBuf entry = localWriteCache.get(ledgerId, entryId);
-        if (entry != null) {
-            dbLedgerStorageStats.getWriteCacheHitCounter().inc();
-            return entry;
-        }
-
-        // If there's a flush going on, the entry might be in the flush buffer
-        entry = localWriteCacheBeingFlushed.get(ledgerId, entryId);
+        // First try to read from the write caches of recent entries
+        ByteBuf entry = getFromWriteCaches(ledgerId, entryId);
         if (entry != null) {
             dbLedgerStorageStats.getWriteCacheHitCounter().inc();
             return entry;
@@ -535,6 +630,10 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         entry = readCache.get(ledgerId, entryId);
         if (entry != null) {
             dbLedgerStorageStats.getReadCacheHitCounter().inc();
+            TransientLedgerInfo ledgerInfo = transientLedgerInfoCache.get(ledgerId);
+            if (ledgerInfo != null && ledgerInfo.recordReadCacheHit(entryId)) {
+                dbLedgerStorageStats.getReadAheadHitCounter().inc();
+            }
             return entry;
         }
 
@@ -564,14 +663,127 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
         readCache.put(ledgerId, entryId, entry);
 
-        // Try to read more entries
-        long nextEntryLocation = entryLocation + 4 /* size header */ + entry.readableBytes();
-        fillReadAheadCache(ledgerId, entryId + 1, nextEntryLocation);
+        // Try to read more entries, as many as the access pattern of the ledger suggests. The access
+        // pattern is only tracked for the ledgers which already have a transient info, so that reads
+        // of old ledgers do not fill the transient ledger info cache
+        TransientLedgerInfo ledgerInfo = transientLedgerInfoCache.get(ledgerId);
+        int readAheadBatchSize = ledgerInfo == null ? readAheadCacheBatchSize
+                : ledgerInfo.recordReadCacheMiss(entryId, minReadAheadCacheBatchSize,
+                        maxReadAheadCacheBatchSize, dbLedgerStorageStats);
+        if (readAheadBatchSize > 0) {
+            long nextEntryLocation = entryLocation + 4 /* size header */ + entry.readableBytes();
+            int count = fillReadAheadCache(ledgerId, entryId + 1, nextEntryLocation, readAheadBatchSize);
+            if (ledgerInfo != null) {
+                ledgerInfo.recordReadAhead(entryId + 1, count);
+            }
+        }
+
+        return entry;
+    }
+
+    /**
+     * Scan a range of entries resolving the location of an entry in the locations index only when the
+     * previous entries can't serve it. Once located, the entries that were flushed one after the other
+     * in the entry log are streamed with large reads and without further index lookups. The scanned
+     * entries are not inserted in the read cache, so that a long scan does not evict the hot entries.
+     */
+    @Override
+    public long scanEntries(long ledgerId, long firstEntryId, long lastEntryId, long maxSize,
+                            EntryConsumer consumer) throws IOException, BookieException {
+        long startTime = MathUtils.nowInNano();
+        ScanConsumer scanConsumer = new ScanConsumer(consumer, firstEntryId);
+        try {
+            doScanEntries(ledgerId, lastEntryId, maxSize, scanConsumer);
+            recordSuccessfulEvent(dbLedgerStorageStats.getScanEntriesStats(), startTime);
+            return scanConsumer.nextEntryId - firstEntryId;
+        } catch (IOException | BookieException e) {
+            recordFailedEvent(dbLedgerStorageStats.getScanEntriesStats(), startTime);
+            throw e;
+        }
+    }
+
+    private void doScanEntries(long ledgerId, long lastEntryId, long maxSize, ScanConsumer scanConsumer)
+            throws IOException, BookieException {
+        final long firstEntryId = scanConsumer.nextEntryId;
+        while (!scanConsumer.stopped && scanConsumer.nextEntryId <= lastEntryId) {
+            long entryId = scanConsumer.nextEntryId;
+
+            // Recent entries are only available in the write caches, and hot entries are already in the read cache
+            ByteBuf entry = getFromCaches(ledgerId, entryId);
+            if (entry != null) {
+                scanConsumer.accept(entryId, entry);
+                continue;
+            }
 
+            long entryLocation;
+            long locationIndexStartNano = MathUtils.nowInNano();
+            try {
+                entryLocation = entryLocationIndex.getLocation(ledgerId, entryId);
+            } finally {
+                dbLedgerStorageStats.getReadFromLocationIndexTime().add(MathUtils.elapsedNanos(locationIndexStartNano));
+            }
+            if (entryLocation == 0) {
+                if (entryId == firstEntryId) {
+                    // Only a negative result while in limbo equates to unknown
+                    throwIfLimbo(ledgerId);
+                    throw new NoEntryException(ledgerId, entryId);
+                }
+                // End of the entries stored for the ledger
+                return;
+            }
+
+            long count;
+            long readEntryStartNano = MathUtils.nowInNano();
+            try {
+                count = entryLogger.readSequentialEntries(ledgerId, entryId, lastEntryId, entryLocation,
+                        scanReadBufferSize, maxSize - scanConsumer.size, scanConsumer);
+                if (count == 0) {
+                    // Couldn't stream from the entry location, do a regular validated read
+                    scanConsumer.accept(entryId, entryLogger.readEntry(ledgerId, entryId, entryLocation));
+                    count = 1;
+                }
+            } finally {
+                dbLedgerStorageStats.getReadFromEntryLogTime().add(MathUtils.elapsedNanos(readEntryStartNano));
+            }
+            dbLedgerStorageStats.getScanSequentialRunCountStats().registerSuccessfulValue(count);
+        }
+    }
+
+    private ByteBuf getFromCaches(long ledgerId, long entryId) {
+        ByteBuf entry = getFromWriteCaches(ledgerId, entryId);
+        if (entry == null) {
+            entry = readCache.get(ledgerId, entryId);
+        }
         return entry;
     }
 
-    private void fillReadAheadCache(long orginalLedgerId, long firstEntryId, long firstEntryLocation) {
+    /**
+     * Wraps the consumer of a scan to keep track of the next entry to read and of whether the consumer
+     * asked to stop the scan.
+     */
+    private static class ScanConsumer implements EntryConsumer {
+        private final EntryConsumer consumer;
+        long nextEntryId;
+        // total size of the entries passed to the consumer
+        long size = 0;
+        boolean stopped = false;
+
+        ScanConsumer(EntryConsumer consumer, long firstEntryId) {
+            this.consumer = consumer;
+            this.nextEntryId = firstEntryId;
+        }
+
+        @Override
+        public boolean accept(long entryId, ByteBuf entry) throws IOException {
+            nextEntryId = entryId + 1;
+            size += entry.readableBytes();
+            stopped = !consumer.accept(entryId, entry);
+            return !stopped;
+        }
+    }
+
+    private int fillReadAheadCache(long orginalLedgerId, long firstEntryId, long firstEntryLocation,
+                                   int readAheadBatchSize) {
         long readAheadStartNano = MathUtils.nowInNano();
         int count = 0;
         long size = 0;
@@ -581,7 +793,7 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             long currentEntryLogId = firstEntryLogId;
             long currentEntryLocation = firstEntryLocation;
 
-            while (count < readAheadCacheBatchSize
+            while (count < readAheadBatchSize
                     && size < maxReadAheadBytesSize
                     && currentEntryLogId == firstEntryLogId) {
                 ByteBuf entry = entryLogger.internalReadEntry(orginalLedgerId, firstEntryId, currentEntryLocation,
@@ -618,47 +830,32 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             dbLedgerStorageStats.getReadAheadBatchSizeStats().registerSuccessfulValue(size);
             dbLedgerStorageStats.getReadAheadTime().add(MathUtils.elapsedNanos(readAheadStartNano));
         }
+        return count;
     }
 
     public ByteBuf getLastEntry(long ledgerId) throws IOException, BookieException {
         throwIfLimbo(ledgerId);
 
-        long stamp = writeCacheRotationLock.readLock();
-        try {
-            // First try to read from the write cache of recent entries
-            ByteBuf entry = writeCache.getLastEntry(ledgerId);
+        // First try to read from the write caches of recent entries, starting from the most recent one. If there are
+        // flushes going on, the entry might be in one of the sealed caches
+        long flushedEpoch = flushedWriteCacheEpoch;
+        long epoch = writeCacheEpoch.get();
+        for (int i = 0; i < writeCaches.length && epoch - i >= flushedEpoch; i++) {
+            ByteBuf entry = getWriteCache(epoch - i).getLastEntry(ledgerId);
             if (entry != null) {
                 if (log.isDebugEnabled()) {
                     long foundLedgerId = entry.readLong(); // ledgedId
                     long entryId = entry.readLong();
                     entry.resetReaderIndex();
                     if (log.isDebugEnabled()) {
-                        log.debug("Found last entry for ledger {} in write cache: {}@{}", ledgerId, foundLedgerId,
-                                entryId);
+                        log.debug("Found last entry for ledger {} in write cache of epoch {}: {}@{}", ledgerId,
+                                epoch - i, foundLedgerId, entryId);
                     }
                 }
 
                 dbLedgerStorageStats.getWriteCacheHitCounter().inc();
                 return entry;
             }
-
-            // If there's a flush going on, the entry might be in the flush buffer
-            entry = writeCacheBeingFlushed.getLastEntry(ledgerId);
-            if (entry != null) {
-                if (log.isDebugEnabled()) {
-                    entry.readLong(); // ledgedId
-                    long entryId = entry.readLong();
-                    entry.resetReaderIndex();
-                    if (log.isDebugEnabled()) {
-                        log.debug("Found last entry for ledger {} in write cache being flushed: {}", ledgerId, entryId);
-                    }
-                }
-
-                dbLedgerStorageStats.getWriteCacheHitCounter().inc();
-                return entry;
-            }
-        } finally {
-            writeCacheRotationLock.unlockRead(stamp);
         }
 
         dbLedgerStorageStats.getWriteCacheMissCounter().inc();
@@ -679,14 +876,19 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         return content;
     }
 
+    @VisibleForTesting
+    int getFlushThreads() {
+        return flushThreads;
+    }
+
     @VisibleForTesting
     boolean isFlushRequired() {
-        long stamp = writeCacheRotationLock.readLock();
-        try {
-            return !writeCache.isEmpty();
-        } finally {
-            writeCacheRotationLock.unlockRead(stamp);
+        for (WriteCache writeCache : writeCaches) {
+            if (!writeCache.isEmpty()) {
+                return true;
+            }
         }
+        return false;
     }
 
     @Override
@@ -701,40 +903,35 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         // Only a single flush operation can happen at a time
         flushMutex.lock();
         try {
-            // Swap the write cache so that writes can continue to happen while the flush is
-            // ongoing
-            swapWriteCache();
+            isFlushOngoing.set(true);
 
-            long sizeToFlush = writeCacheBeingFlushed.size();
-            if (log.isDebugEnabled()) {
-                log.debug("Flushing entries. count: {} -- size {} Mb", writeCacheBeingFlushed.count(),
-                        sizeToFlush / 1024.0 / 1024);
-            }
+            // All the caches that are sealed from now on will be flushed by this checkpoint, so we can allow flush to
+            // be triggered again
+            hasFlushBeenTriggered.set(false);
 
-            // Write all the pending entries into the entry logger and collect the offset
-            // position for each entry
+            // All the entries added before the checkpoint are in the caches up to the current epoch. The caches that
+            // the writers seal while we flush them are left to the next flush, so that a checkpoint cannot be kept
+            // running by a steady stream of writes
+            long checkpointEpoch = writeCacheEpoch.get();
+            long flushedEpoch = flushedWriteCacheEpoch;
+            long sizeToFlush = 0;
+            while (flushedEpoch <= checkpointEpoch) {
+                if (flushedEpoch == writeCacheEpoch.get()) {
+                    if (getWriteCache(flushedEpoch).isEmpty()) {
+                        // Nothing was added to the current cache, there is no need to seal it
+                        break;
+                    }
 
-            Batch batch = entryLocationIndex.newBatch();
-            writeCacheBeingFlushed.forEach((ledgerId, entryId, entry) -> {
-                try {
-                    long location = entryLogger.addEntry(ledgerId, entry, true);
-                    entryLocationIndex.addLocation(batch, ledgerId, entryId, location);
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
+                    // Seal the current write cache so that writes can continue to happen in the next one while the
+                    // flush is ongoing
+                    rotateWriteCache(flushedEpoch);
                 }
-            });
 
-            long entryLoggerStart = MathUtils.nowInNano();
-            entryLogger.flush();
-            recordSuccessfulEvent(dbLedgerStorageStats.getFlushEntryLogStats(), entryLoggerStart);
+                sizeToFlush += flushWriteCache(flushedEpoch);
 
-            long batchFlushStartTime = MathUtils.nowInNano();
-            batch.flush();
-            batch.close();
-            recordSuccessfulEvent(dbLedgerStorageStats.getFlushLocationIndexStats(), batchFlushStartTime);
-            if (log.isDebugEnabled()) {
-                log.debug("DB batch flushed time : {} s",
-                        MathUtils.elapsedNanos(batchFlushStartTime) / (double) TimeUnit.SECONDS.toNanos(1));
+                // The cache can now be reused by the writers
+                flushedEpoch++;
+                flushedWriteCacheEpoch = flushedEpoch;
             }
 
             long ledgerIndexStartTime = MathUtils.nowInNano();
@@ -758,9 +955,6 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
             lastCheckpoint = thisCheckpoint;
 
-            // Discard all the entry from the write cache, since they're now persisted
-            writeCacheBeingFlushed.clear();
-
             double flushTimeSeconds = MathUtils.elapsedNanos(startTime) / (double) TimeUnit.SECONDS.toNanos(1);
             double flushThroughput = sizeToFlush / 1024.0 / 1024.0 / flushTimeSeconds;
 
@@ -785,27 +979,112 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 flushMutex.unlock();
             }
         }
+
+        if (writeCacheEpoch.get() > flushedWriteCacheEpoch) {
+            // Writers have sealed more caches while the checkpoint was running
+            triggerFlush();
+        }
     }
 
     /**
-     * Swap the current write cache with the replacement cache.
+     * Flush a sealed write cache into the entry logger and the locations index, and then clear it.
+     *
+     * @return the size of the entries that were flushed
      */
-    private void swapWriteCache() {
-        long stamp = writeCacheRotationLock.writeLock();
+    private long flushWriteCache(long epoch) throws IOException {
+        WriteCache writeCacheBeingFlushed = getWriteCache(epoch);
+
+        // Wait for the writers that were already inserting in the cache when it was sealed. No new writer can start
+        // inserting in it, so this only lasts as long as copying an entry into the cache
         try {
-            // First, swap the current write-cache map with an empty one so that writes will
-            // go on unaffected. Only a single flush is happening at the same time
-            WriteCache tmp = writeCacheBeingFlushed;
-            writeCacheBeingFlushed = writeCache;
-            writeCache = tmp;
+            writeCacheBeingFlushed.waitForWriters();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the writers of the write cache", e);
+        }
 
-            // since the cache is switched, we can allow flush to be triggered
-            hasFlushBeenTriggered.set(false);
-        } finally {
+        long sizeToFlush = writeCacheBeingFlushed.size();
+        if (log.isDebugEnabled()) {
+            log.debug("Flushing entries of epoch {}. count: {} -- size {} Mb", epoch, writeCacheBeingFlushed.count(),
+                    sizeToFlush / 1024.0 / 1024);
+        }
+
+        // Write all the pending entries into the entry logger and collect the offset
+        // position for each entry. With multiple flush threads, each thread gets a range of ledgers and fills its own
+        // locations batch
+
+        boolean bulkLoad = bulkLoadThreshold > 0 && writeCacheBeingFlushed.count() >= bulkLoadThreshold;
+        Batch[] batches = new Batch[flushThreads];
+        WriteCache.EntryConsumer[] consumers = new WriteCache.EntryConsumer[flushThreads];
+        for (int i = 0; i < flushThreads; i++) {
+            Batch batch = bulkLoad ? entryLocationIndex.newBulkLoadBatch() : entryLocationIndex.newBatch();
+            batches[i] = batch;
+            consumers[i] = (ledgerId, entryId, entry) -> {
+                try {
+                    long location = entryLogger.addEntry(ledgerId, entry, true);
+                    entryLocationIndex.addLocation(batch, ledgerId, entryId, location);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            };
+        }
+
+        if (flushExecutor == null) {
+            writeCacheBeingFlushed.forEach(consumers[0]);
+        } else {
+            writeCacheBeingFlushed.forEach(consumers, flushExecutor);
+        }
+
+        long entryLoggerStart = MathUtils.nowInNano();
+        entryLogger.flush();
+        recordSuccessfulEvent(dbLedgerStorageStats.getFlushEntryLogStats(), entryLoggerStart);
+
+        long batchFlushStartTime = MathUtils.nowInNano();
+        flushBatches(batches);
+        recordSuccessfulEvent(dbLedgerStorageStats.getFlushLocationIndexStats(), batchFlushStartTime);
+        if (log.isDebugEnabled()) {
+            log.debug("DB batch flushed time : {} s",
+                    MathUtils.elapsedNanos(batchFlushStartTime) / (double) TimeUnit.SECONDS.toNanos(1));
+        }
+
+        // Discard all the entry from the write cache, since they're now persisted
+        writeCacheBeingFlushed.clear();
+        return sizeToFlush;
+    }
+
+    private void flushBatches(Batch[] batches) throws IOException {
+        if (flushExecutor == null) {
+            for (Batch batch : batches) {
+                batch.flush();
+                batch.close();
+            }
+            return;
+        }
+
+        // The batches hold different keys, so they can be written into the locations index concurrently
+        List<Future<Void>> futures = Lists.newArrayListWithCapacity(batches.length);
+        for (Batch batch : batches) {
+            futures.add(flushExecutor.submit(() -> {
+                try {
+                    batch.flush();
+                } finally {
+                    batch.close();
+                }
+                return null;
+            }));
+        }
+
+        for (Future<Void> future : futures) {
             try {
-                isFlushOngoing.set(true);
-            } finally {
-                writeCacheRotationLock.unlockWrite(stamp);
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while flushing locations index", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException(e.getCause());
             }
         }
     }
@@ -823,12 +1102,9 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             log.debug("Deleting ledger {}", ledgerId);
         }
 
-        // Delete entries from this ledger that are still in the write cache
-        long stamp = writeCacheRotationLock.readLock();
-        try {
+        // Delete entries from this ledger that are still in the write caches
+        for (WriteCache writeCache : writeCaches) {
             writeCache.deleteLedger(ledgerId);
-        } finally {
-            writeCacheRotationLock.unlockRead(stamp);
         }
 
         entryLocationIndex.delete(ledgerId);
@@ -935,7 +1211,7 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
     private TransientLedgerInfo getOrAddLedgerInfo(long ledgerId) {
         return transientLedgerInfoCache.computeIfAbsent(ledgerId, l -> {
-            return new TransientLedgerInfo(l, ledgerIndex);
+            return new TransientLedgerInfo(l, ledgerIndex, readAheadCacheBatchSize);
         });
     }
 
@@ -57,14 +57,23 @@ class TransientLedgerInfo extends Watchable<LastAddConfirmedUpdateNotification>
 
     private long lastAccessed;
 
+    // number of entries to read ahead after the next read cache miss
+    private int readAheadWindow;
+    // next entry that a sequential reader of the ledger would read
+    private long nextReadEntryId = -1;
+    // range of the entries inserted in the read cache by the last read-ahead
+    private long readAheadFirstEntryId = -1;
+    private long readAheadLastEntryId = -1;
+
     /**
      * Construct an Watchable with zero watchers.
      */
-    public TransientLedgerInfo(long ledgerId, LedgerMetadataIndex ledgerIndex) {
+    public TransientLedgerInfo(long ledgerId, LedgerMetadataIndex ledgerIndex, int readAheadWindow) {
         super(WATCHER_RECYCLER);
         this.ledgerId = ledgerId;
         this.ledgerIndex = ledgerIndex;
         this.lastAccessed = System.currentTimeMillis();
+        this.readAheadWindow = readAheadWindow;
     }
 
     long getLastAddConfirmed() {
@@ -139,6 +148,60 @@ class TransientLedgerInfo extends Watchable<LastAddConfirmedUpdateNotification>
         setLastAddConfirmed(explicitLacValue);
     }
 
+    /**
+     * Record a read of the ledger served by the read cache.
+     *
+     * @return true if the entry was inserted in the read cache by the last read-ahead
+     */
+    synchronized boolean recordReadCacheHit(long entryId) {
+        nextReadEntryId = entryId + 1;
+        return entryId >= readAheadFirstEntryId && entryId <= readAheadLastEntryId;
+    }
+
+    /**
+     * Record a read of the ledger that missed the caches and adapt the read-ahead window to the access
+     * pattern: the window doubles when the reader is sequential, i.e. it reads the entry following the
+     * previous read, and it is halved when the reader jumps elsewhere or when the entries read ahead
+     * were evicted before being read.
+     *
+     * @return the number of entries to read ahead after <i>entryId</i>
+     */
+    synchronized int recordReadCacheMiss(long entryId, int minReadAheadWindow, int maxReadAheadWindow,
+                                         DbLedgerStorageStats stats) {
+        lastAccessed = System.currentTimeMillis();
+        long wastedEntries = 0;
+        if (entryId >= readAheadFirstEntryId && entryId <= readAheadLastEntryId) {
+            // the entries read ahead were evicted from the read cache before the reader got to them
+            wastedEntries = readAheadLastEntryId - entryId + 1;
+            readAheadWindow = Math.max(minReadAheadWindow, readAheadWindow / 2);
+        } else if (entryId == nextReadEntryId) {
+            readAheadWindow = Math.min(maxReadAheadWindow, Math.max(1, readAheadWindow * 2));
+        } else if (nextReadEntryId >= 0) {
+            wastedEntries = Math.max(0, readAheadLastEntryId - Math.max(nextReadEntryId, readAheadFirstEntryId) + 1);
+            readAheadWindow = Math.max(minReadAheadWindow, readAheadWindow / 2);
+        }
+
+        nextReadEntryId = entryId + 1;
+        readAheadFirstEntryId = -1;
+        readAheadLastEntryId = -1;
+
+        if (wastedEntries > 0) {
+            stats.getReadAheadWastedCounter().add(wastedEntries);
+        }
+        stats.getReadAheadWindowSizeStats().registerSuccessfulValue(readAheadWindow);
+        return readAheadWindow;
+    }
+
+    /**
+     * Record the range of entries inserted in the read cache by a read-ahead.
+     */
+    synchronized void recordReadAhead(long firstEntryId, int count) {
+        if (count > 0) {
+            readAheadFirstEntryId = firstEntryId;
+            readAheadLastEntryId = firstEntryId + count - 1;
+        }
+    }
+
     boolean isStale() {
         return (lastAccessed + TimeUnit.MINUTES.toMillis(LEDGER_INFO_CACHING_TIME_MINUTES)) < System
                 .currentTimeMillis();
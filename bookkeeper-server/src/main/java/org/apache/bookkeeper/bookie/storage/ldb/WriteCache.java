@@ -27,9 +27,17 @@ import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
 
 import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
 
 import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.util.collections.ConcurrentLongHashSet;
@@ -84,6 +92,16 @@ public class WriteCache implements Closeable {
 
     private final ConcurrentLongHashSet deletedLedgers = ConcurrentLongHashSet.newBuilder().build();
 
+    // Number of threads that are currently inserting entries in this cache
+    private final AtomicInteger activeWriters = new AtomicInteger(0);
+
+    // Set while the owner of the cache is blocked waiting for the active writers to complete
+    private volatile boolean waitingForWriters = false;
+
+    // Write locked while the cache is cleared. The readers copy the entries optimistically and discard the copy if
+    // the cache was cleared in the meantime, since its segments may already be reused for other entries
+    private final StampedLock clearLock = new StampedLock();
+
     private final ByteBufAllocator allocator;
 
     public WriteCache(ByteBufAllocator allocator, long maxCacheSize) {
@@ -117,12 +135,17 @@ public class WriteCache implements Closeable {
     }
 
     public void clear() {
-        cacheSize.set(0L);
-        cacheOffset.set(0L);
-        cacheCount.reset();
-        index.clear();
-        lastEntryMap.clear();
-        deletedLedgers.clear();
+        long stamp = clearLock.writeLock();
+        try {
+            cacheSize.set(0L);
+            cacheOffset.set(0L);
+            cacheCount.reset();
+            index.clear();
+            lastEntryMap.clear();
+            deletedLedgers.clear();
+        } finally {
+            clearLock.unlockWrite(stamp);
+        }
     }
 
     @Override
@@ -184,7 +207,16 @@ public class WriteCache implements Closeable {
         return true;
     }
 
+    /**
+     * Get a copy of an entry of the cache.
+     *
+     * <p>The entries of a cache are only cleared once they are flushed, so a missing entry, or an entry found while
+     * the cache is being cleared, is to be read from the flushed data.
+     *
+     * @return the entry or null if the entry is not in the cache
+     */
     public ByteBuf get(long ledgerId, long entryId) {
+        long stamp = clearLock.tryOptimisticRead();
         LongPair result = index.get(ledgerId, entryId);
         if (result == null) {
             return null;
@@ -197,6 +229,12 @@ public class WriteCache implements Closeable {
         int localOffset = (int) (offset & segmentOffsetMask);
         int segmentIdx = (int) (offset >>> segmentOffsetBits);
         entry.writeBytes(cacheSegments[segmentIdx], localOffset, size);
+
+        if (!clearLock.validate(stamp)) {
+            // The cache was cleared while copying the entry, the copy may contain the data of a newer entry
+            entry.release();
+            return null;
+        }
         return entry;
     }
 
@@ -214,6 +252,39 @@ public class WriteCache implements Closeable {
         }
     }
 
+    /**
+     * Register the calling thread as a writer of this cache. The owner of the cache uses this to know when all the
+     * writers that could still see this cache as the active one have completed their insertion.
+     */
+    void acquireWriter() {
+        activeWriters.incrementAndGet();
+    }
+
+    void releaseWriter() {
+        if (activeWriters.decrementAndGet() == 0 && waitingForWriters) {
+            synchronized (activeWriters) {
+                activeWriters.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Block until there are no more writers inserting in this cache. The writers only get notified about the waiter
+     * when there is one, so that the insertion path does not have to take the monitor.
+     */
+    void waitForWriters() throws InterruptedException {
+        synchronized (activeWriters) {
+            waitingForWriters = true;
+            try {
+                while (activeWriters.get() > 0) {
+                    activeWriters.wait();
+                }
+            } finally {
+                waitingForWriters = false;
+            }
+        }
+    }
+
     public void deleteLedger(long ledgerId) {
         deletedLedgers.add(ledgerId);
     }
@@ -224,66 +295,133 @@ public class WriteCache implements Closeable {
         sortedEntriesLock.lock();
 
         try {
-            int entriesToSort = (int) index.size();
-            int arrayLen = entriesToSort * 4;
-            if (sortedEntries == null || sortedEntries.length < arrayLen) {
-                sortedEntries = new long[(int) (arrayLen * 2)];
-            }
+            sortEntries();
 
             long startTime = MathUtils.nowInNano();
-
-            sortedEntriesIdx = 0;
-            index.forEach((ledgerId, entryId, offset, length) -> {
-                if (deletedLedgers.contains(ledgerId)) {
-                    // Ignore deleted ledgers
-                    return;
-                }
-
-                sortedEntries[sortedEntriesIdx] = ledgerId;
-                sortedEntries[sortedEntriesIdx + 1] = entryId;
-                sortedEntries[sortedEntriesIdx + 2] = offset;
-                sortedEntries[sortedEntriesIdx + 3] = length;
-                sortedEntriesIdx += 4;
-            });
+            forEachInRange(consumer, 0, sortedEntriesIdx);
 
             if (log.isDebugEnabled()) {
-                log.debug("iteration took {} ms", MathUtils.elapsedNanos(startTime) / 1e6);
+                log.debug("entry log adding {} ms", MathUtils.elapsedNanos(startTime) / 1e6);
             }
-            startTime = MathUtils.nowInNano();
+        } finally {
+            sortedEntriesLock.unlock();
+        }
+    }
 
-            // Sort entries by (ledgerId, entryId) maintaining the 4 items groups
-            groupSorter.sort(sortedEntries, 0, sortedEntriesIdx);
-            if (log.isDebugEnabled()) {
-                log.debug("sorting {} ms", (MathUtils.elapsedNanos(startTime) / 1e6));
-            }
-            startTime = MathUtils.nowInNano();
+    /**
+     * Iterate through the stored entries in (ledgerId, entry) order, splitting them in as many partitions as the
+     * number of consumers. Each partition holds a contiguous range of whole ledgers and is passed to its own consumer
+     * in the given executor, so that the entries of a ledger are still consumed in order, by a single thread.
+     */
+    public void forEach(EntryConsumer[] consumers, ExecutorService executor) throws IOException {
+        sortedEntriesLock.lock();
+
+        try {
+            sortEntries();
+
+            long startTime = MathUtils.nowInNano();
+            int partitionSize = align4(sortedEntriesIdx / consumers.length);
+            List<Future<?>> futures = new ArrayList<>(consumers.length);
+            int partitionStart = 0;
+            for (int i = 0; i < consumers.length && partitionStart < sortedEntriesIdx; i++) {
+                int partitionEnd;
+                if (i == consumers.length - 1) {
+                    partitionEnd = sortedEntriesIdx;
+                } else {
+                    // Extend the partition up to the end of its last ledger
+                    partitionEnd = Math.min(partitionStart + Math.max(partitionSize, 4), sortedEntriesIdx);
+                    while (partitionEnd < sortedEntriesIdx
+                            && sortedEntries[partitionEnd] == sortedEntries[partitionEnd - 4]) {
+                        partitionEnd += 4;
+                    }
+                }
 
-            ByteBuf[] entrySegments = new ByteBuf[segmentsCount];
-            for (int i = 0; i < segmentsCount; i++) {
-                entrySegments[i] = cacheSegments[i].slice(0, cacheSegments[i].capacity());
+                EntryConsumer consumer = consumers[i];
+                int start = partitionStart;
+                int end = partitionEnd;
+                futures.add(executor.submit(() -> forEachInRange(consumer, start, end)));
+                partitionStart = partitionEnd;
             }
 
-            for (int i = 0; i < sortedEntriesIdx; i += 4) {
-                long ledgerId = sortedEntries[i];
-                long entryId = sortedEntries[i + 1];
-                long offset = sortedEntries[i + 2];
-                long length = sortedEntries[i + 3];
-
-                int localOffset = (int) (offset & segmentOffsetMask);
-                int segmentIdx = (int) (offset >>> segmentOffsetBits);
-                ByteBuf entry = entrySegments[segmentIdx];
-                entry.setIndex(localOffset, localOffset + (int) length);
-                consumer.accept(ledgerId, entryId, entry);
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while iterating on write cache", e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    throw new IOException(e.getCause());
+                }
             }
 
             if (log.isDebugEnabled()) {
-                log.debug("entry log adding {} ms", MathUtils.elapsedNanos(startTime) / 1e6);
+                log.debug("entry log adding in {} partitions {} ms", futures.size(),
+                        MathUtils.elapsedNanos(startTime) / 1e6);
             }
         } finally {
             sortedEntriesLock.unlock();
         }
     }
 
+    private void sortEntries() {
+        int entriesToSort = (int) index.size();
+        int arrayLen = entriesToSort * 4;
+        if (sortedEntries == null || sortedEntries.length < arrayLen) {
+            sortedEntries = new long[(int) (arrayLen * 2)];
+        }
+
+        long startTime = MathUtils.nowInNano();
+
+        sortedEntriesIdx = 0;
+        index.forEach((ledgerId, entryId, offset, length) -> {
+            if (deletedLedgers.contains(ledgerId)) {
+                // Ignore deleted ledgers
+                return;
+            }
+
+            sortedEntries[sortedEntriesIdx] = ledgerId;
+            sortedEntries[sortedEntriesIdx + 1] = entryId;
+            sortedEntries[sortedEntriesIdx + 2] = offset;
+            sortedEntries[sortedEntriesIdx + 3] = length;
+            sortedEntriesIdx += 4;
+        });
+
+        if (log.isDebugEnabled()) {
+            log.debug("iteration took {} ms", MathUtils.elapsedNanos(startTime) / 1e6);
+        }
+        startTime = MathUtils.nowInNano();
+
+        // Sort entries by (ledgerId, entryId) maintaining the 4 items groups
+        groupSorter.sort(sortedEntries, 0, sortedEntriesIdx);
+        if (log.isDebugEnabled()) {
+            log.debug("sorting {} ms", (MathUtils.elapsedNanos(startTime) / 1e6));
+        }
+    }
+
+    private void forEachInRange(EntryConsumer consumer, int start, int end) {
+        // Each caller uses its own slices, since the entries are passed by moving the reader and writer indexes
+        ByteBuf[] entrySegments = new ByteBuf[segmentsCount];
+        for (int i = 0; i < segmentsCount; i++) {
+            entrySegments[i] = cacheSegments[i].slice(0, cacheSegments[i].capacity());
+        }
+
+        for (int i = start; i < end; i += 4) {
+            long ledgerId = sortedEntries[i];
+            long entryId = sortedEntries[i + 1];
+            long offset = sortedEntries[i + 2];
+            long length = sortedEntries[i + 3];
+
+            int localOffset = (int) (offset & segmentOffsetMask);
+            int segmentIdx = (int) (offset >>> segmentOffsetBits);
+            ByteBuf entry = entrySegments[segmentIdx];
+            entry.setIndex(localOffset, localOffset + (int) length);
+            consumer.accept(ledgerId, entryId, entry);
+        }
+    }
+
     public long size() {
         return cacheSize.get();
     }
@@ -302,6 +440,10 @@ public class WriteCache implements Closeable {
         return (size + 64 - 1) & ALIGN_64_MASK;
     }
 
+    private static int align4(int idx) {
+        return idx & ~(4 - 1);
+    }
+
     private static long alignToPowerOfTwo(long n) {
         return (long) Math.pow(2, 64 - Long.numberOfLeadingZeros(n - 1));
     }
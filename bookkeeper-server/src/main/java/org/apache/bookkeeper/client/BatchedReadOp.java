@@ -0,0 +1,276 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ReferenceCountUtil;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.bookkeeper.client.BKException.BKDigestMatchException;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.impl.LedgerEntriesImpl;
+import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+import org.apache.bookkeeper.common.util.SafeRunnable;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieProtocol;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.RangeReadEntryCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallbackCtx;
+import org.apache.bookkeeper.proto.checksum.DigestManager;
+import org.apache.bookkeeper.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A pending read operation that fetches a batch of consecutive entries of a ledger
+ * with a single range read request to one bookie.
+ *
+ * <p>Since the whole batch is served by one bookie, the op requires each bookie of the
+ * ensemble to store every entry, i.e. the write quorum size of the ledger must be equal to
+ * its ensemble size, and the batch must not span an ensemble change. The replicas are
+ * tried one after the other until one of them returns the first entry of the batch.
+ *
+ * <p>If none of the replicas supports range reads, e.g. during a rolling upgrade of the
+ * bookies, the batch falls back to a regular read of its entries.
+ */
+class BatchedReadOp implements RangeReadEntryCallback, SafeRunnable {
+    private static final Logger LOG = LoggerFactory.getLogger(BatchedReadOp.class);
+
+    private final LedgerHandle lh;
+    private final ClientContext clientCtx;
+    private final CompletableFuture<LedgerEntries> future;
+    private final AtomicBoolean complete = new AtomicBoolean(false);
+
+    final long firstEntryId;
+    final int maxCount;
+    final long maxSize;
+
+    private List<BookieId> ensemble;
+    private DistributionSchedule.WriteSet writeSet;
+    private int nextReplicaIndexToReadFrom = 0;
+    private int firstError = BKException.Code.OK;
+    private int numUnsupportedReplicas = 0;
+    private long requestTimeNanos;
+
+    BatchedReadOp(LedgerHandle lh,
+                  ClientContext clientCtx,
+                  long firstEntryId,
+                  int maxCount,
+                  long maxSize) {
+        this.lh = lh;
+        this.clientCtx = clientCtx;
+        this.future = new CompletableFuture<>();
+        this.firstEntryId = firstEntryId;
+        this.maxCount = maxCount;
+        this.maxSize = maxSize;
+    }
+
+    CompletableFuture<LedgerEntries> future() {
+        return future;
+    }
+
+    protected LedgerMetadata getLedgerMetadata() {
+        return lh.getLedgerMetadata();
+    }
+
+    void initiate() {
+        this.requestTimeNanos = MathUtils.nowInNano();
+        this.ensemble = getLedgerMetadata().getEnsembleAt(firstEntryId);
+        if (clientCtx.getConf().enableReorderReadSequence) {
+            this.writeSet = clientCtx.getPlacementPolicy()
+                .reorderReadSequence(
+                        ensemble,
+                        lh.getBookiesHealthInfo(),
+                        lh.getWriteSetForReadOperation(firstEntryId));
+        } else {
+            this.writeSet = lh.getWriteSetForReadOperation(firstEntryId);
+        }
+        sendNextRead();
+    }
+
+    @Override
+    public void safeRun() {
+        initiate();
+    }
+
+    private synchronized void sendNextRead() {
+        if (nextReplicaIndexToReadFrom >= writeSet.size()) {
+            if (numUnsupportedReplicas == writeSet.size()) {
+                fallbackToRegularRead();
+                return;
+            }
+            // the read has failed from all replicas
+            completeRequest(firstError, null);
+            return;
+        }
+
+        int bookieIndex = writeSet.get(nextReplicaIndexToReadFrom);
+        nextReplicaIndexToReadFrom++;
+
+        BookieId to = ensemble.get(bookieIndex);
+        if (lh.throttler != null) {
+            lh.throttler.acquire();
+        }
+        clientCtx.getBookieClient().readEntries(to, lh.ledgerId, firstEntryId, maxCount, maxSize,
+                this, new ReadContext(bookieIndex, to), BookieProtocol.FLAG_NONE);
+    }
+
+    private void fallbackToRegularRead() {
+        if (!complete.compareAndSet(false, true)) {
+            return;
+        }
+        writeSet.recycle();
+        LOG.info("Range reads are not supported by the bookies of ensemble {}, reading L{} E{} maxCount {}"
+                + " with regular reads", ensemble, lh.ledgerId, firstEntryId, maxCount);
+        FutureUtils.proxyTo(lh.readEntriesInternalAsync(firstEntryId, firstEntryId + maxCount - 1, false)
+                .thenApply(entries -> LedgerEntriesImpl.truncate(entries, maxSize)), future);
+    }
+
+    private synchronized void logErrorAndReattemptRead(int bookieIndex, BookieId host, String errMsg, int rc) {
+        if (BKException.Code.ProtocolVersionException == rc) {
+            numUnsupportedReplicas++;
+        }
+        if (BKException.Code.OK == firstError
+            || BKException.Code.NoSuchEntryException == firstError
+            || BKException.Code.NoSuchLedgerExistsException == firstError) {
+            firstError = rc;
+        }
+        if (BKException.Code.NoSuchEntryException == rc
+            || BKException.Code.NoSuchLedgerExistsException == rc) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("No such entry found on bookie.  L{} E{} bookie: {}",
+                        lh.ledgerId, firstEntryId, host);
+            }
+        } else {
+            if (LOG.isInfoEnabled()) {
+                LOG.info("{} while range reading L{} E{} from bookie: {}",
+                        errMsg, lh.ledgerId, firstEntryId, host);
+            }
+        }
+
+        if (BKException.Code.ProtocolVersionException != rc) {
+            // a bookie which does not support range reads is not faulty
+            lh.recordReadErrorOnBookie(bookieIndex);
+        }
+        sendNextRead();
+    }
+
+    @Override
+    public void readEntriesComplete(int rc, long ledgerId, long firstEntryId, List<ByteBuf> buffers, Object ctx) {
+        final ReadContext rctx = (ReadContext) ctx;
+
+        if (rc == BKException.Code.OK && (buffers == null || buffers.isEmpty())) {
+            rc = BKException.Code.NoSuchEntryException;
+        }
+        if (rc != BKException.Code.OK) {
+            releaseBuffers(buffers, 0);
+            logErrorAndReattemptRead(rctx.bookieIndex, rctx.to, "Error: " + BKException.getMessage(rc), rc);
+            return;
+        }
+
+        List<LedgerEntry> entries = new ArrayList<>(buffers.size());
+        for (int i = 0; i < buffers.size(); i++) {
+            ByteBuf buffer = buffers.get(i);
+            long entryId = firstEntryId + i;
+            ByteBuf content;
+            try {
+                content = lh.macManager.verifyDigestAndReturnData(entryId, buffer);
+            } catch (BKDigestMatchException e) {
+                clientCtx.getClientStats().getReadOpDmCounter().inc();
+                releaseBuffers(buffers, i);
+                if (entries.isEmpty()) {
+                    logErrorAndReattemptRead(rctx.bookieIndex, rctx.to, "Mac mismatch",
+                            BKException.Code.DigestMatchException);
+                    return;
+                }
+                // return the entries verified so far, the caller will read the rest in the next batch
+                LOG.info("Mac mismatch while range reading L{} E{} from bookie: {}, truncating the batch at {} entries",
+                        lh.ledgerId, entryId, rctx.to, entries.size());
+                break;
+            }
+            /*
+             * The length is a long and it is the last field of the metadata of an entry.
+             * Consequently, we have to subtract 8 from METADATA_LENGTH to get the length.
+             */
+            LedgerEntryImpl entryImpl = LedgerEntryImpl.create(lh.ledgerId, entryId);
+            entryImpl.setLength(buffer.getLong(DigestManager.METADATA_LENGTH - 8));
+            entryImpl.setEntryBuf(content);
+            entries.add(entryImpl);
+        }
+
+        lh.updateLastConfirmed(rctx.getLastAddConfirmed(), 0L);
+        completeRequest(BKException.Code.OK, entries);
+    }
+
+    private static void releaseBuffers(List<ByteBuf> buffers, int fromIndex) {
+        if (buffers == null) {
+            return;
+        }
+        for (int i = fromIndex; i < buffers.size(); i++) {
+            ReferenceCountUtil.release(buffers.get(i));
+        }
+    }
+
+    private void completeRequest(int code, List<LedgerEntry> entries) {
+        // ensure callback once
+        if (!complete.compareAndSet(false, true)) {
+            return;
+        }
+        writeSet.recycle();
+
+        long latencyNanos = MathUtils.elapsedNanos(requestTimeNanos);
+        if (code != BKException.Code.OK) {
+            LOG.error("Range read of ledger entries failed: L{} E{} maxCount {} maxSize {}, ensemble {}, Error = '{}'",
+                    lh.getId(), firstEntryId, maxCount, maxSize, ensemble, BKException.getMessage(code));
+            clientCtx.getClientStats().getReadOpLogger().registerFailedEvent(latencyNanos, TimeUnit.NANOSECONDS);
+            future.completeExceptionally(BKException.create(code));
+        } else {
+            clientCtx.getClientStats().getReadOpLogger().registerSuccessfulEvent(latencyNanos, TimeUnit.NANOSECONDS);
+            future.complete(LedgerEntriesImpl.create(entries));
+        }
+    }
+
+    private static class ReadContext implements ReadEntryCallbackCtx {
+        final int bookieIndex;
+        final BookieId to;
+        long lac = LedgerHandle.INVALID_ENTRY_ID;
+
+        ReadContext(int bookieIndex, BookieId to) {
+            this.bookieIndex = bookieIndex;
+            this.to = to;
+        }
+
+        @Override
+        public void setLastAddConfirmed(long lac) {
+            this.lac = lac;
+        }
+
+        @Override
+        public long getLastAddConfirmed() {
+            return lac;
+        }
+    }
+}
@@ -58,6 +58,9 @@ public interface BookKeeperClientStats {
     String READ_LAST_CONFIRMED_AND_ENTRY = "READ_LAST_CONFIRMED_AND_ENTRY";
     String READ_LAST_CONFIRMED_AND_ENTRY_RESPONSE = "READ_LAST_CONFIRMED_AND_ENTRY_RESPONSE";
     String PENDING_ADDS = "NUM_PENDING_ADD";
+    String ADD_MEMORY_USAGE = "ADD_MEMORY_USAGE";
+    String ADD_MEMORY_LIMIT_WAIT = "ADD_MEMORY_LIMIT_WAIT";
+    String ADD_MEMORY_LIMIT_REJECTED = "ADD_MEMORY_LIMIT_REJECTED";
     String ENSEMBLE_CHANGES = "NUM_ENSEMBLE_CHANGE";
     String LAC_UPDATE_HITS = "LAC_UPDATE_HITS";
     String LAC_UPDATE_MISSES = "LAC_UPDATE_MISSES";
@@ -71,6 +74,8 @@ public interface BookKeeperClientStats {
 
     String CHANNEL_READ_OP = "READ_ENTRY";
     String CHANNEL_TIMEOUT_READ = "TIMEOUT_READ_ENTRY";
+    String CHANNEL_RANGE_READ_OP = "RANGE_READ_ENTRY";
+    String CHANNEL_TIMEOUT_RANGE_READ = "TIMEOUT_RANGE_READ_ENTRY";
     String CHANNEL_ADD_OP = "ADD_ENTRY";
     String CHANNEL_TIMEOUT_ADD = "TIMEOUT_ADD_ENTRY";
     String CHANNEL_WRITE_LAC_OP = "WRITE_LAC";
@@ -129,7 +134,10 @@ public interface BookKeeperClientStats {
     OpStatsLogger getWriteDelayedDueToNotEnoughFaultDomainsLatency();
     Counter getWriteDelayedDueToNotEnoughFaultDomains();
     Counter getWriteTimedOutDueToNotEnoughFaultDomains();
+    OpStatsLogger getAddMemoryLimitWaitLogger();
+    Counter getAddMemoryLimitRejectedCounter();
     void registerPendingAddsGauge(Gauge<Integer> gauge);
+    void registerAddMemoryUsageGauge(Gauge<Long> gauge);
 
     static BookKeeperClientStats newInstance(StatsLogger stats) {
         return new BookKeeperClientStatsImpl(stats);
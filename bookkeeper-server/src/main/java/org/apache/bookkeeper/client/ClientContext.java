@@ -22,6 +22,7 @@ package org.apache.bookkeeper.client;
 
 import io.netty.buffer.ByteBufAllocator;
 
+import org.apache.bookkeeper.common.util.MemoryLimitController;
 import org.apache.bookkeeper.common.util.OrderedExecutor;
 import org.apache.bookkeeper.common.util.OrderedScheduler;
 import org.apache.bookkeeper.meta.LedgerManager;
@@ -43,5 +44,6 @@ public interface ClientContext {
     OrderedExecutor getMainWorkerPool();
     OrderedScheduler getScheduler();
     BookKeeperClientStats getClientStats();
+    MemoryLimitController getAddMemoryLimitController();
     boolean isClientClosed();
 }
@@ -71,7 +71,30 @@ public class DefaultSpeculativeRequestExecutionPolicy implements SpeculativeRequ
     @Override
     public ScheduledFuture<?> initiateSpeculativeRequest(final ScheduledExecutorService scheduler,
             final SpeculativeRequestExecutor requestExecutor) {
-        return scheduleSpeculativeRead(scheduler, requestExecutor, firstSpeculativeRequestTimeout);
+        return scheduleSpeculativeRead(scheduler, requestExecutor, getFirstSpeculativeRequestTimeout(requestExecutor));
+    }
+
+    /**
+     * Get the time to wait before issuing the first speculative request.
+     *
+     * @param requestExecutor the executor of the request
+     * @return the timeout in milliseconds
+     */
+    protected int getFirstSpeculativeRequestTimeout(SpeculativeRequestExecutor requestExecutor) {
+        return firstSpeculativeRequestTimeout;
+    }
+
+    /**
+     * Get the time to wait before issuing the next speculative request.
+     *
+     * @param requestExecutor the executor of the request
+     * @param speculativeRequestTimeout the time waited before issuing the previous speculative request
+     * @return the timeout in milliseconds
+     */
+    protected int getNextSpeculativeRequestTimeout(SpeculativeRequestExecutor requestExecutor,
+                                                   int speculativeRequestTimeout) {
+        return Math.min(maxSpeculativeRequestTimeout,
+                Math.round((float) speculativeRequestTimeout * backoffMultiplier));
     }
 
     private ScheduledFuture<?> scheduleSpeculativeRead(final ScheduledExecutorService scheduler,
@@ -88,8 +111,8 @@ public class DefaultSpeculativeRequestExecutionPolicy implements SpeculativeRequ
                         public void onSuccess(Boolean issueNextRequest) {
                             if (issueNextRequest) {
                                 scheduleSpeculativeRead(scheduler, requestExecutor,
-                                        Math.min(maxSpeculativeRequestTimeout,
-                                        Math.round((float) speculativeRequestTimeout * backoffMultiplier)));
+                                        getNextSpeculativeRequestTimeout(requestExecutor,
+                                                speculativeRequestTimeout));
                             } else {
                                 if (LOG.isTraceEnabled()) {
                                     LOG.trace("Stopped issuing speculative requests for {}, "
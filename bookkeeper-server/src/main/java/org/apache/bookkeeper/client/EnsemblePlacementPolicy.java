@@ -315,6 +315,18 @@ public interface EnsemblePlacementPolicy {
      */
     void registerSlowBookie(BookieId bookieSocketAddress, long entryId);
 
+    /**
+     * Register the latency of a successful read response from a bookie, so that policies
+     * ordering reads by bookie latency can adapt to it.
+     *
+     * @param bookieSocketAddress
+     *          Address of bookie host
+     * @param latencyNanos
+     *          Time between sending the read request and receiving its response.
+     */
+    default void registerReadLatency(BookieId bookieSocketAddress, long latencyNanos) {
+    }
+
     /**
      * Reorder the read sequence of a given write quorum <i>writeSet</i>.
      *
@@ -0,0 +1,138 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.bookkeeper.net.BookieId;
+
+/**
+ * A {@link SpeculativeRequestExecutionPolicy} which waits for a percentile of the latency of the
+ * bookie a request was sent to before issuing a speculative request.
+ *
+ * <p>The latencies of the successful responses of each bookie are kept in a sliding window of
+ * {@code sampleSize} samples, from which the percentile is periodically recomputed. The timeout is
+ * bounded by {@code maxSpeculativeRequestTimeout}. Until a bookie has enough samples, the policy
+ * behaves as {@link DefaultSpeculativeRequestExecutionPolicy}.
+ */
+public class LatencyAwareSpeculativeRequestExecutionPolicy extends DefaultSpeculativeRequestExecutionPolicy {
+
+    final double percentile;
+    final int sampleSize;
+    private final ConcurrentMap<BookieId, LatencyWindow> latencies = new ConcurrentHashMap<>();
+
+    public LatencyAwareSpeculativeRequestExecutionPolicy(int firstSpeculativeRequestTimeout,
+            int maxSpeculativeRequestTimeout, float backoffMultiplier, double percentile, int sampleSize) {
+        super(firstSpeculativeRequestTimeout, maxSpeculativeRequestTimeout, backoffMultiplier);
+        if (percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException("Invalid value provided for percentile");
+        }
+        if (sampleSize <= 0) {
+            throw new IllegalArgumentException("Invalid value provided for sampleSize");
+        }
+        this.percentile = percentile;
+        this.sampleSize = sampleSize;
+    }
+
+    @Override
+    public void recordResponseLatency(BookieId bookie, long latencyNanos) {
+        LatencyWindow window = latencies.get(bookie);
+        if (window == null) {
+            window = latencies.computeIfAbsent(bookie, k -> new LatencyWindow(sampleSize, percentile));
+        }
+        window.record(latencyNanos);
+    }
+
+    @Override
+    protected int getFirstSpeculativeRequestTimeout(SpeculativeRequestExecutor requestExecutor) {
+        int timeout = getLatencyTimeout(requestExecutor.getLastRequestedBookie());
+        return timeout > 0 ? timeout : super.getFirstSpeculativeRequestTimeout(requestExecutor);
+    }
+
+    @Override
+    protected int getNextSpeculativeRequestTimeout(SpeculativeRequestExecutor requestExecutor,
+                                                   int speculativeRequestTimeout) {
+        int timeout = getLatencyTimeout(requestExecutor.getLastRequestedBookie());
+        return timeout > 0 ? timeout : super.getNextSpeculativeRequestTimeout(requestExecutor,
+                speculativeRequestTimeout);
+    }
+
+    /**
+     * Get the timeout learned for a bookie.
+     *
+     * @return the timeout in milliseconds, or -1 if there are not enough samples for the bookie
+     */
+    int getLatencyTimeout(BookieId bookie) {
+        LatencyWindow window = bookie == null ? null : latencies.get(bookie);
+        if (window == null) {
+            return -1;
+        }
+        long latencyNanos = window.getPercentileNanos();
+        if (latencyNanos < 0) {
+            return -1;
+        }
+        long timeout = Math.max(1, (latencyNanos + TimeUnit.MILLISECONDS.toNanos(1) - 1)
+                / TimeUnit.MILLISECONDS.toNanos(1));
+        return (int) Math.min(maxSpeculativeRequestTimeout, timeout);
+    }
+
+    /**
+     * Sliding window of the latest latencies of a bookie.
+     */
+    static class LatencyWindow {
+
+        private final long[] samples;
+        private final double percentile;
+        private final int recomputeInterval;
+        private int next = 0;
+        private int count = 0;
+        private int sinceRecompute = 0;
+        private volatile long percentileNanos = -1;
+
+        LatencyWindow(int sampleSize, double percentile) {
+            this.samples = new long[sampleSize];
+            this.percentile = percentile;
+            this.recomputeInterval = Math.max(1, sampleSize / 10);
+        }
+
+        synchronized void record(long latencyNanos) {
+            samples[next] = latencyNanos;
+            next = (next + 1) % samples.length;
+            if (count < samples.length) {
+                count++;
+            }
+            if (++sinceRecompute >= recomputeInterval) {
+                sinceRecompute = 0;
+                long[] sorted = Arrays.copyOf(samples, count);
+                Arrays.sort(sorted);
+                int index = (int) Math.ceil(percentile / 100 * count) - 1;
+                percentileNanos = sorted[Math.max(0, Math.min(count - 1, index))];
+            }
+        }
+
+        long getPercentileNanos() {
+            return percentileNanos;
+        }
+    }
+}
@@ -408,7 +408,7 @@ public class LedgerFragmentReplicator {
                     long startWriteEntryTime = MathUtils.nowInNano();
                     bkc.getBookieClient().addEntry(newBookie, lh.getId(),
                             lh.getLedgerKey(), entryId, ByteBufList.clone(toSend),
-                            multiWriteCallback, dataLength, BookieProtocol.FLAG_RECOVERY_ADD,
+                            multiWriteCallback, dataLength, BookieProtocol.FLAG_RECOVERY_ADD | lh.addEntryFlags,
                             false, WriteFlag.NONE);
                     writeDataLatency.registerSuccessfulEvent(
                            MathUtils.elapsedNanos(startWriteEntryTime), TimeUnit.NANOSECONDS);
@@ -33,7 +33,9 @@ import com.google.common.collect.Iterators;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.RateLimiter;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCountUtil;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -72,10 +74,12 @@ import org.apache.bookkeeper.client.api.LedgerEntries;
 import org.apache.bookkeeper.client.api.LedgerMetadata;
 import org.apache.bookkeeper.client.api.WriteFlag;
 import org.apache.bookkeeper.client.api.WriteHandle;
+import org.apache.bookkeeper.client.impl.LedgerEntriesImpl;
 import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
 import org.apache.bookkeeper.common.concurrent.FutureEventListener;
 import org.apache.bookkeeper.common.concurrent.FutureUtils;
 import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.common.util.MemoryLimitController;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.proto.BookieProtocol;
 import org.apache.bookkeeper.proto.checksum.DigestManager;
@@ -102,7 +106,12 @@ public class LedgerHandle implements WriteHandle {
     final byte[] ledgerKey;
     private Versioned<LedgerMetadata> versionedMetadata;
     final long ledgerId;
-    long lastAddPushed;
+    /**
+     * Last entryId handed out to an add. Only updated while holding the handle lock,
+     * so that entry ids are assigned in the same order the adds enter {@link #pendingAddOps},
+     * but volatile so that it can be read without the lock.
+     */
+    volatile long lastAddPushed;
 
     private enum HandleState {
         OPEN,
@@ -136,13 +145,15 @@ public class LedgerHandle implements WriteHandle {
      */
     private int stickyBookieIndex;
 
-    long length;
+    volatile long length;
     final DigestManager macManager;
     final DistributionSchedule distributionSchedule;
     final RateLimiter throttler;
     final LoadingCache<BookieId, Long> bookieFailureHistory;
     final BookiesHealthInfo bookiesHealthInfo;
     final EnumSet<WriteFlag> writeFlags;
+    // flags of the add requests, declaring the digest type of the entries when the bookies can verify it
+    final int addEntryFlags;
 
     ScheduledFuture<?> timeoutFuture = null;
 
@@ -183,6 +194,8 @@ public class LedgerHandle implements WriteHandle {
         this.versionedMetadata = versionedMetadata;
         this.pendingAddOps = new ConcurrentLinkedQueue<PendingAddOp>();
         this.writeFlags = writeFlags;
+        this.addEntryFlags = digestType == BookKeeper.DigestType.CRC32C
+                ? BookieProtocol.FLAG_CRC32C_DIGEST : BookieProtocol.FLAG_NONE;
 
         LedgerMetadata metadata = versionedMetadata.getValue();
         if (metadata.isClosed()) {
@@ -324,7 +337,7 @@ public class LedgerHandle implements WriteHandle {
      * {@inheritDoc}
      */
     @Override
-    public synchronized long getLastAddConfirmed() {
+    public long getLastAddConfirmed() {
         return lastAddConfirmed;
     }
 
@@ -336,7 +349,7 @@ public class LedgerHandle implements WriteHandle {
      * {@inheritDoc}
      */
     @Override
-    public synchronized long getLastAddPushed() {
+    public long getLastAddPushed() {
         return lastAddPushed;
     }
 
@@ -437,10 +450,19 @@ public class LedgerHandle implements WriteHandle {
      * @return the length of the ledger in bytes
      */
     @Override
-    public synchronized long getLength() {
+    public long getLength() {
         return this.length;
     }
 
+    /**
+     * Returns the allocator of the client of this handle.
+     *
+     * @return the allocator used for the buffers of the entries
+     */
+    public ByteBufAllocator getByteBufAllocator() {
+        return clientCtx.getByteBufAllocator();
+    }
+
     /**
      * Returns the ledger creation time.
      *
@@ -759,6 +781,66 @@ public class LedgerHandle implements WriteHandle {
         return readEntriesInternalAsync(firstEntry, lastEntry, false);
     }
 
+    /**
+     * Read a batch of consecutive entries asynchronously.
+     *
+     * <p>When range reads are enabled, the client uses the v3 protocol and every bookie of the
+     * ensemble stores all the entries of the ledger (write quorum size equal to ensemble size),
+     * the batch is fetched from a single bookie with one range read request. Otherwise, this
+     * falls back to {@link #readAsync(long, long)} on the entries up to the LastAddConfirmed, and the
+     * result is truncated to <i>maxSize</i> bytes of entry payloads.
+     *
+     * @param firstEntry
+     *          id of first entry of the batch
+     * @param maxCount
+     *          maximum number of entries to read
+     * @param maxSize
+     *          maximum total size, in bytes, of the entries to read
+     */
+    @Override
+    public CompletableFuture<LedgerEntries> batchReadAsync(long firstEntry, int maxCount, long maxSize) {
+        // Little sanity check
+        if (firstEntry < 0 || maxCount <= 0 || maxSize <= 0) {
+            LOG.error("IncorrectParameterException on ledgerId:{} firstEntry:{} maxCount:{} maxSize:{}",
+                    ledgerId, firstEntry, maxCount, maxSize);
+            return FutureUtils.exception(new BKIncorrectParameterException());
+        }
+
+        if (firstEntry > lastAddConfirmed) {
+            LOG.error("BatchReadAsync exception on ledgerId:{} firstEntry:{} lastAddConfirmed:{}",
+                    ledgerId, firstEntry, lastAddConfirmed);
+            return FutureUtils.exception(new BKReadException());
+        }
+
+        // never read beyond the LastAddConfirmed nor across an ensemble change
+        LedgerMetadata metadata = getLedgerMetadata();
+        long lastEntry = Math.min(firstEntry + maxCount - 1, lastAddConfirmed);
+        long nextEnsembleChange = LedgerMetadataUtils.getNextEnsembleChange(metadata, firstEntry);
+        if (nextEnsembleChange > firstEntry) {
+            lastEntry = Math.min(lastEntry, nextEnsembleChange - 1);
+        }
+
+        ClientInternalConf conf = clientCtx.getConf();
+        if (!conf.enableRangeRead || conf.useV2WireProtocol
+                || metadata.getWriteQuorumSize() != metadata.getEnsembleSize()) {
+            return readEntriesInternalAsync(firstEntry, lastEntry, false)
+                    .thenApply(entries -> LedgerEntriesImpl.truncate(entries, maxSize));
+        }
+
+        BatchedReadOp op = new BatchedReadOp(this, clientCtx, firstEntry,
+                (int) (lastEntry - firstEntry + 1), maxSize);
+        if (clientCtx.isClientClosed()) {
+            op.future().completeExceptionally(BKException.create(ClientClosedException));
+        } else if (isHandleWritable()) {
+            // Ledger handle in read/write mode: submit to OSE for ordered execution.
+            clientCtx.getMainWorkerPool().executeOrdered(ledgerId, op);
+        } else {
+            // Read-only ledger handle: bypass OSE and execute read directly in client thread.
+            op.run();
+        }
+        return op.future();
+    }
+
     /**
      * Read a sequence of entries asynchronously, allowing to read after the LastAddConfirmed range.
      * <br>This is the same of
@@ -1296,10 +1378,73 @@ public class LedgerHandle implements WriteHandle {
         return success;
     }
 
+    /**
+     * Reserve the memory of the payload of an add in the client add memory limit, if any. When the limit is
+     * exceeded, either wait for memory to be released or fail the add, depending on the configuration.
+     * Adds submitted from the threads of the main worker pool always fail, as these threads complete the
+     * pending adds and release their memory, so waiting there could deadlock the client.
+     *
+     * @return false if the add was failed
+     */
+    protected boolean reserveAddMemory(final PendingAddOp op) {
+        MemoryLimitController memoryLimitController = clientCtx.getAddMemoryLimitController();
+        if (memoryLimitController == null || op.isRecoveryAdd) {
+            return true;
+        }
+        int size = op.entryLength;
+        if (!memoryLimitController.tryReserveMemory(size)) {
+            if (clientCtx.getConf().addEntryMemoryLimitFailFast || clientCtx.getMainWorkerPool().isExecutorThread()) {
+                clientCtx.getClientStats().getAddMemoryLimitRejectedCounter().inc();
+                failAddBeforeSubmit(op, BKException.Code.TooManyRequestsException);
+                return false;
+            }
+            long startTime = MathUtils.nowInNano();
+            try {
+                memoryLimitController.reserveMemory(size);
+                clientCtx.getClientStats().getAddMemoryLimitWaitLogger()
+                        .registerSuccessfulEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                clientCtx.getClientStats().getAddMemoryLimitWaitLogger()
+                        .registerFailedEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+                failAddBeforeSubmit(op, BKException.Code.InterruptedException);
+                return false;
+            }
+        }
+        op.setReservedMemory(memoryLimitController, size);
+        return true;
+    }
+
+    private void failAddBeforeSubmit(final PendingAddOp op, final int rc) {
+        ReferenceCountUtil.release(op.payload);
+        op.payload = null;
+        // make sure the callback is triggered in main worker pool
+        try {
+            clientCtx.getMainWorkerPool().executeOrdered(ledgerId, new SafeRunnable() {
+                @Override
+                public void safeRun() {
+                    op.cb.addCompleteWithLatency(rc, LedgerHandle.this, op.getEntryId(), 0, op.ctx);
+                }
+
+                @Override
+                public String toString() {
+                    return String.format("AsyncAddEntryFailure(lid=%d, rc=%d)", ledgerId, rc);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            op.cb.addCompleteWithLatency(BookKeeper.getReturnRc(clientCtx.getBookieClient(),
+                                                                BKException.Code.InterruptedException),
+                    LedgerHandle.this, op.getEntryId(), 0, op.ctx);
+        }
+    }
+
     protected void doAsyncAddEntry(final PendingAddOp op) {
         if (throttler != null) {
             throttler.acquire();
         }
+        if (!reserveAddMemory(op)) {
+            return;
+        }
 
         boolean wasClosed = false;
         synchronized (this) {
@@ -1318,6 +1463,7 @@ public class LedgerHandle implements WriteHandle {
         }
 
         if (wasClosed) {
+            op.releaseMemory();
             // make sure the callback is triggered in main worker pool
             try {
                 clientCtx.getMainWorkerPool().executeOrdered(ledgerId, new SafeRunnable() {
@@ -1341,6 +1487,10 @@ public class LedgerHandle implements WriteHandle {
             return;
         }
 
+        // compute the digest on the adding thread rather than on the ordered executor of
+        // the ledger, so that it scales with the number of threads adding to the ledger
+        op.prepareToSend();
+
         DistributionSchedule.WriteSet ws = distributionSchedule.getWriteSet(op.getEntryId());
         try {
             if (!waitForWritable(ws, 0, clientCtx.getConf().waitForWriteSetMs)) {
@@ -1353,6 +1503,7 @@ public class LedgerHandle implements WriteHandle {
         try {
             clientCtx.getMainWorkerPool().executeOrdered(ledgerId, op);
         } catch (RejectedExecutionException e) {
+            op.releaseMemory();
             op.cb.addCompleteWithLatency(
                     BookKeeper.getReturnRc(clientCtx.getBookieClient(), BKException.Code.InterruptedException),
                     LedgerHandle.this, INVALID_ENTRY_ID, 0, op.ctx);
@@ -225,6 +225,9 @@ public class LedgerHandleAdv extends LedgerHandle implements WriteAdvHandle {
         if (throttler != null) {
             throttler.acquire();
         }
+        if (!reserveAddMemory(op)) {
+            return;
+        }
 
         boolean wasClosed = false;
         synchronized (this) {
@@ -241,6 +244,7 @@ public class LedgerHandleAdv extends LedgerHandle implements WriteAdvHandle {
         }
 
         if (wasClosed) {
+            op.releaseMemory();
             // make sure the callback is triggered in main worker pool
             try {
                 clientCtx.getMainWorkerPool().submit(new SafeRunnable() {
@@ -263,6 +267,10 @@ public class LedgerHandleAdv extends LedgerHandle implements WriteAdvHandle {
             return;
         }
 
+        // compute the digest on the adding thread rather than on the ordered executor of
+        // the ledger, so that it scales with the number of threads adding to the ledger
+        op.prepareToSend();
+
         if (!waitForWritable(distributionSchedule.getWriteSet(op.getEntryId()),
                     0, clientCtx.getConf().waitForWriteSetMs)) {
             op.allowFailFastOnUnwritableChannel();
@@ -271,6 +279,7 @@ public class LedgerHandleAdv extends LedgerHandle implements WriteAdvHandle {
         try {
             clientCtx.getMainWorkerPool().executeOrdered(ledgerId, op);
         } catch (RejectedExecutionException e) {
+            op.releaseMemory();
             op.cb.addCompleteWithLatency(BookKeeper.getReturnRc(clientCtx.getBookieClient(),
                                                                 BKException.Code.InterruptedException),
                               LedgerHandleAdv.this, op.getEntryId(), 0, op.ctx);
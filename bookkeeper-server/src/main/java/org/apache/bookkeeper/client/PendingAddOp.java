@@ -38,6 +38,7 @@ import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import org.apache.bookkeeper.client.AsyncCallback.AddCallbackWithLatency;
 import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.common.util.MemoryLimitController;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
 import org.apache.bookkeeper.util.ByteBufList;
@@ -59,6 +60,7 @@ class PendingAddOp extends SafeRunnable implements WriteCallback {
     private static final Logger LOG = LoggerFactory.getLogger(PendingAddOp.class);
 
     ByteBuf payload;
+    ByteBufList preparedToSend;
     ByteBufList toSend;
     AddCallbackWithLatency cb;
     Object ctx;
@@ -83,6 +85,8 @@ class PendingAddOp extends SafeRunnable implements WriteCallback {
     EnumSet<WriteFlag> writeFlags;
     boolean allowFailFast = false;
     List<BookieId> ensemble;
+    MemoryLimitController memoryLimitController;
+    int reservedMemory;
 
     static PendingAddOp create(LedgerHandle lh, ClientContext clientCtx,
                                List<BookieId> ensemble,
@@ -97,6 +101,7 @@ class PendingAddOp extends SafeRunnable implements WriteCallback {
         op.entryId = LedgerHandle.INVALID_ENTRY_ID;
         op.currentLedgerLength = -1;
         op.payload = payload;
+        op.preparedToSend = null;
         op.entryLength = payload.readableBytes();
 
         op.completed = false;
@@ -109,6 +114,8 @@ class PendingAddOp extends SafeRunnable implements WriteCallback {
         op.allowFailFast = false;
         op.qwcLatency = 0;
         op.writeFlags = writeFlags;
+        op.memoryLimitController = null;
+        op.reservedMemory = 0;
 
         if (op.addEntrySuccessBookies == null) {
             op.addEntrySuccessBookies = new HashSet<>();
@@ -146,8 +153,40 @@ class PendingAddOp extends SafeRunnable implements WriteCallback {
         return this.entryId;
     }
 
+    /**
+     * Compute the digest of the payload ahead of {@link #safeRun()}.
+     *
+     * <p>This is called by the thread adding the entry, after the entry id and the ledger
+     * length have been assigned and before the operation is submitted to the ordered
+     * executor of the ledger. The last add confirmed piggy-backed on the entry is the one
+     * known at this point, which can only be older than the one known when the operation runs.
+     */
+    void prepareToSend() {
+        preparedToSend = lh.macManager.computeDigestAndPackageForSending(
+                entryId, lh.lastAddConfirmed, currentLedgerLength,
+                payload);
+        // ownership of RefCounted ByteBuf was passed to computeDigestAndPackageForSending
+        payload = null;
+    }
+
+    void setReservedMemory(MemoryLimitController memoryLimitController, int reservedMemory) {
+        this.memoryLimitController = memoryLimitController;
+        this.reservedMemory = reservedMemory;
+    }
+
+    /**
+     * Release the memory reserved for the payload in the client add memory limit.
+     */
+    void releaseMemory() {
+        if (memoryLimitController != null) {
+            memoryLimitController.releaseMemory(reservedMemory);
+            memoryLimitController = null;
+            reservedMemory = 0;
+        }
+    }
+
     void sendWriteRequest(List<BookieId> ensemble, int bookieIndex) {
-        int flags = isRecoveryAdd ? FLAG_RECOVERY_ADD | FLAG_HIGH_PRIORITY : FLAG_NONE;
+        int flags = (isRecoveryAdd ? FLAG_RECOVERY_ADD | FLAG_HIGH_PRIORITY : FLAG_NONE) | lh.addEntryFlags;
 
         clientCtx.getBookieClient().addEntry(ensemble.get(bookieIndex),
                                              lh.ledgerId, lh.ledgerKey, entryId, toSend, this, bookieIndex,
@@ -252,6 +291,10 @@ class PendingAddOp extends SafeRunnable implements WriteCallback {
             // this should only be true if the request was failed due
             // to another request ahead in the pending queue,
             // so we can just ignore this request
+            if (preparedToSend != null) {
+                ReferenceCountUtil.release(preparedToSend);
+                preparedToSend = null;
+            }
             maybeRecycle();
             return;
         }
@@ -260,11 +303,16 @@ class PendingAddOp extends SafeRunnable implements WriteCallback {
         checkNotNull(lh);
         checkNotNull(lh.macManager);
 
-        this.toSend = lh.macManager.computeDigestAndPackageForSending(
-                entryId, lh.lastAddConfirmed, currentLedgerLength,
-                payload);
-        // ownership of RefCounted ByteBuf was passed to computeDigestAndPackageForSending
-        payload = null;
+        if (preparedToSend != null) {
+            this.toSend = preparedToSend;
+            preparedToSend = null;
+        } else {
+            this.toSend = lh.macManager.computeDigestAndPackageForSending(
+                    entryId, lh.lastAddConfirmed, currentLedgerLength,
+                    payload);
+            // ownership of RefCounted ByteBuf was passed to computeDigestAndPackageForSending
+            payload = null;
+        }
 
         // We are about to send. Check if we need to make an ensemble change
         // because of delayed write errors
@@ -492,6 +540,7 @@ class PendingAddOp extends SafeRunnable implements WriteCallback {
         if (hasRun && callbackTriggered) {
             ReferenceCountUtil.release(toSend);
             toSend = null;
+            releaseMemory();
         }
         // only recycle a pending add op after it has been run.
         if (hasRun && toSend == null && pendingWriteRequests == 0) {
@@ -506,6 +555,11 @@ class PendingAddOp extends SafeRunnable implements WriteCallback {
             ReferenceCountUtil.release(payload);
             payload = null;
         }
+        if (preparedToSend != null) {
+            ReferenceCountUtil.release(preparedToSend);
+            preparedToSend = null;
+        }
+        releaseMemory();
         cb = null;
         ctx = null;
         ensemble = null;
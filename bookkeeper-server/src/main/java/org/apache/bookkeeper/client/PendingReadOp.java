@@ -91,6 +91,7 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
         final DistributionSchedule.WriteSet writeSet;
         final LedgerEntryImpl entryImpl;
         final long eId;
+        volatile BookieId lastRequestedBookie;
 
         LedgerEntryRequest(List<BookieId> ensemble, long lId, long eId) {
             this.entryImpl = LedgerEntryImpl.create(lId, eId);
@@ -255,6 +256,11 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
             return String.format("L%d-E%d", lh.getId(), eId);
         }
 
+        @Override
+        public BookieId getLastRequestedBookie() {
+            return lastRequestedBookie;
+        }
+
         /**
          * Issues a speculative request and indicates if more speculative
          * requests should be issued.
@@ -548,12 +554,14 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
         final int bookieIndex;
         final BookieId to;
         final LedgerEntryRequest entry;
+        final long sentNanos;
         long lac = LedgerHandle.INVALID_ENTRY_ID;
 
         ReadContext(int bookieIndex, BookieId to, LedgerEntryRequest entry) {
             this.bookieIndex = bookieIndex;
             this.to = to;
             this.entry = entry;
+            this.sentNanos = MathUtils.nowInNano();
         }
 
         @Override
@@ -575,6 +583,7 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
         if (lh.throttler != null) {
             lh.throttler.acquire();
         }
+        entry.lastRequestedBookie = to;
 
         if (isRecoveryRead) {
             int flags = BookieProtocol.FLAG_HIGH_PRIORITY | BookieProtocol.FLAG_DO_FENCING;
@@ -598,6 +607,11 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
 
         heardFromHosts.add(rctx.to);
         heardFromHostsBitSet.set(rctx.bookieIndex, true);
+        long latencyNanos = MathUtils.elapsedNanos(rctx.sentNanos);
+        clientCtx.getPlacementPolicy().registerReadLatency(rctx.to, latencyNanos);
+        if (clientCtx.getConf().readSpeculativeRequestPolicy.isPresent()) {
+            clientCtx.getConf().readSpeculativeRequestPolicy.get().recordResponseLatency(rctx.to, latencyNanos);
+        }
 
         buffer.retain();
         // if entry has completed don't handle twice
@@ -43,12 +43,15 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.apache.bookkeeper.client.BKException.BKNotEnoughBookiesException;
 import org.apache.bookkeeper.client.BookieInfoReader.BookieInfo;
 import org.apache.bookkeeper.client.WeightedRandomSelection.WeightedObject;
+import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.common.util.ReflectionUtils;
 import org.apache.bookkeeper.conf.ClientConfiguration;
 import org.apache.bookkeeper.conf.Configurable;
@@ -104,6 +107,13 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
     static final int UNAVAIL_MASK     = 0x40 << 24;
     static final int MASK_BITS        = 0xFFF << 20;
 
+    // weight of the latest read latency in the moving average of the read latency of a bookie
+    static final double READ_LATENCY_EWMA_ALPHA = 0.3;
+    // time constant of the decay of the read latency of a bookie without recent samples
+    static final long READ_LATENCY_DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+    // factor applied to the load score of a bookie which failed recently
+    static final double FAILED_BOOKIE_LOAD_SCORE_PENALTY = 16;
+
     protected HashedWheelTimer timer;
     // Use a loading cache so slow bookies are expired. Use entryId as values.
     protected Cache<BookieId, Long> slowBookies;
@@ -112,6 +122,9 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
     protected boolean enforceDurability = false;
     protected int stabilizePeriodSeconds = 0;
     protected int reorderThresholdPendingRequests = 0;
+    protected boolean reorderReadsByLoadScore = false;
+    // exponentially weighted moving average of the read latency of each bookie
+    protected final ConcurrentMap<BookieId, ReadLatency> readLatencyEwma = new ConcurrentHashMap<>();
     // looks like these only assigned in the same thread as constructor, immediately after constructor;
     // no need to make volatile
     protected StatsLogger statsLogger = null;
@@ -291,6 +304,7 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
                     return -1L;
                 }
             });
+        this.reorderReadsByLoadScore = conf.isReadReorderByLoadScoreEnabled();
         return initialize(
                 dnsResolver,
                 timer,
@@ -780,15 +794,137 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
         throw new BKNotEnoughBookiesException();
     }
 
+    @Override
+    public Set<BookieId> onClusterChanged(Set<BookieId> writableBookies,
+            Set<BookieId> readOnlyBookies) {
+        Set<BookieId> deadBookies = super.onClusterChanged(writableBookies, readOnlyBookies);
+        // forget the read latency of the bookies which left the cluster
+        readLatencyEwma.keySet().removeIf(addr -> !writableBookies.contains(addr) && !readOnlyBookies.contains(addr));
+        return deadBookies;
+    }
+
     @Override
     public void registerSlowBookie(BookieId bookieSocketAddress, long entryId) {
-        if (reorderThresholdPendingRequests <= 0) {
-            // only put bookies on slowBookies list if reorderThresholdPendingRequests is *not* set (0);
-            // otherwise, rely on reordering of reads based on reorderThresholdPendingRequests
+        if (reorderThresholdPendingRequests <= 0 && !reorderReadsByLoadScore) {
+            // only put bookies on slowBookies list if reorderThresholdPendingRequests is *not* set (0)
+            // and reads are not ordered by load score; otherwise, rely on reordering of reads
             slowBookies.put(bookieSocketAddress, entryId);
         }
     }
 
+    @Override
+    public void registerReadLatency(BookieId bookieSocketAddress, long latencyNanos) {
+        if (!reorderReadsByLoadScore) {
+            return;
+        }
+        long nowNanos = MathUtils.nowInNano();
+        ReadLatency latency = readLatencyEwma.get(bookieSocketAddress);
+        if (latency == null) {
+            latency = readLatencyEwma.putIfAbsent(bookieSocketAddress, new ReadLatency(latencyNanos, nowNanos));
+            if (latency == null) {
+                return;
+            }
+        }
+        latency.update(latencyNanos, nowNanos);
+    }
+
+    /**
+     * Order the write set by increasing load score of the bookies.
+     *
+     * <p>The load score of a bookie is its moving average read latency multiplied by its number of
+     * pending requests plus one, so that a bookie is avoided as soon as requests queue up on it,
+     * and is penalized if the bookie failed recently. Bookies without latency samples yet are
+     * given the lowest latency of the write set. The latency of a bookie without recent samples
+     * decays toward that lowest latency, so that a bookie which was slow is tried again once it
+     * had time to recover. Bookies with equal scores keep their order.
+     *
+     * @return whether the write set was reordered
+     */
+    private boolean reorderReadSequenceByLoadScore(List<BookieId> ensemble,
+                                                   BookiesHealthInfo bookiesHealthInfo,
+                                                   DistributionSchedule.WriteSet writeSet) {
+        int size = writeSet.size();
+        ReadLatency[] latencies = new ReadLatency[size];
+        double[] scores = new double[size];
+        double minLatency = Double.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            latencies[i] = readLatencyEwma.get(ensemble.get(writeSet.get(i)));
+            if (latencies[i] != null) {
+                minLatency = Math.min(minLatency, latencies[i].get());
+            }
+        }
+        if (minLatency == Double.MAX_VALUE) {
+            minLatency = 1;
+        }
+        long nowNanos = MathUtils.nowInNano();
+        for (int i = 0; i < size; i++) {
+            BookieId address = ensemble.get(writeSet.get(i));
+            double latency = latencies[i] != null ? latencies[i].decayedTo(minLatency, nowNanos) : minLatency;
+            scores[i] = latency * (bookiesHealthInfo.getBookiePendingRequests(address) + 1);
+            if (bookiesHealthInfo.getBookieFailureHistory(address) >= 0) {
+                scores[i] *= FAILED_BOOKIE_LOAD_SCORE_PENALTY;
+            }
+        }
+
+        // the write set is small, a stable insertion sort is enough
+        boolean reordered = false;
+        for (int i = 1; i < size; i++) {
+            double score = scores[i];
+            int idx = writeSet.get(i);
+            int j = i - 1;
+            while (j >= 0 && scores[j] > score) {
+                scores[j + 1] = scores[j];
+                writeSet.set(j + 1, writeSet.get(j));
+                j--;
+            }
+            if (j + 1 != i) {
+                scores[j + 1] = score;
+                writeSet.set(j + 1, idx);
+                reordered = true;
+            }
+        }
+        if (reordered && LOG.isDebugEnabled()) {
+            LOG.debug("read set reordered by load score to {}", writeSet);
+        }
+        return reordered;
+    }
+
+    /**
+     * Moving average of the read latency of a bookie, whose weight decays with the time elapsed since its
+     * last sample.
+     */
+    static class ReadLatency {
+        private double ewmaNanos;
+        private long lastSampleNanos;
+
+        ReadLatency(long latencyNanos, long nowNanos) {
+            this.ewmaNanos = latencyNanos;
+            this.lastSampleNanos = nowNanos;
+        }
+
+        synchronized void update(long latencyNanos, long nowNanos) {
+            // an old average weighs less against the new sample
+            double prevWeight = (1 - READ_LATENCY_EWMA_ALPHA) * decay(nowNanos);
+            ewmaNanos = latencyNanos + prevWeight * (ewmaNanos - latencyNanos);
+            lastSampleNanos = nowNanos;
+        }
+
+        synchronized double get() {
+            return ewmaNanos;
+        }
+
+        /**
+         * @return the average, decayed toward the given latency with the time elapsed since the last sample
+         */
+        synchronized double decayedTo(double latencyNanos, long nowNanos) {
+            return latencyNanos + (ewmaNanos - latencyNanos) * decay(nowNanos);
+        }
+
+        private double decay(long nowNanos) {
+            return Math.exp(-(double) Math.max(0, nowNanos - lastSampleNanos) / READ_LATENCY_DECAY_NANOS);
+        }
+    }
+
     @Override
     public DistributionSchedule.WriteSet reorderReadSequence(
             List<BookieId> ensemble,
@@ -861,7 +997,9 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
         }
 
         boolean reordered = false;
-        if (reorderThresholdPendingRequests > 0) {
+        if (reorderReadsByLoadScore) {
+            reordered = reorderReadSequenceByLoadScore(ensemble, bookiesHealthInfo, writeSet);
+        } else if (reorderThresholdPendingRequests > 0) {
             // if there are no slow or unavailable bookies, capture each bookie's number of
             // pending request to reorder requests based on a threshold of pending requests
 
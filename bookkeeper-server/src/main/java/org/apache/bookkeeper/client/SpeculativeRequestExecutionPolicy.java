@@ -22,6 +22,7 @@ package org.apache.bookkeeper.client;
 
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import org.apache.bookkeeper.net.BookieId;
 
 /**
  * Define a policy for speculative request execution.
@@ -42,4 +43,15 @@ public interface SpeculativeRequestExecutionPolicy {
      */
     ScheduledFuture<?> initiateSpeculativeRequest(ScheduledExecutorService scheduler,
             SpeculativeRequestExecutor requestExectuor);
+
+    /**
+     * Record the latency of a successful response received from a bookie.
+     *
+     * <p>Policies which do not adapt to the latencies of the bookies can ignore it.
+     *
+     * @param bookie the bookie which responded
+     * @param latencyNanos the time between sending the request and receiving the response
+     */
+    default void recordResponseLatency(BookieId bookie, long latencyNanos) {
+    }
 }
@@ -0,0 +1,96 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.api;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.bookkeeper.client.impl.BatchedEntries;
+import org.apache.bookkeeper.client.impl.BatchedReadHandleImpl;
+import org.apache.bookkeeper.common.annotation.InterfaceAudience.Public;
+import org.apache.bookkeeper.common.annotation.InterfaceStability.Unstable;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+
+/**
+ * Read the records of a ledger written by a {@link BatchedWriteHandle}.
+ *
+ * @since 4.16
+ */
+@Public
+@Unstable
+public interface BatchedReadHandle {
+
+    /**
+     * Wrap a read handle to unpack the records of the entries it reads.
+     *
+     * @param handle the handle to read entries from
+     * @return the batched read handle
+     */
+    static BatchedReadHandle of(ReadHandle handle) {
+        return new BatchedReadHandleImpl(handle);
+    }
+
+    /**
+     * Unpack the records of an entry written by a {@link BatchedWriteHandle}.
+     *
+     * @param entry the entry to unpack, it is not released by this method
+     * @return the records of the entry, in the order they were added
+     * @throws BKException if the entry is not a batch of records
+     */
+    static List<BatchedRecord> unpack(LedgerEntry entry) throws BKException {
+        return BatchedEntries.unpack(entry.getEntryId(), entry.getEntryBuffer());
+    }
+
+    /**
+     * Returns the handle entries are read from.
+     *
+     * @return the underlying read handle
+     */
+    ReadHandle getReadHandle();
+
+    /**
+     * Read the records of a range of entries asynchronously.
+     *
+     * @param firstEntry
+     *          id of first entry of sequence
+     * @param lastEntry
+     *          id of last entry of sequence, inclusive
+     * @return an handle to the result of the operation, with the records of the entries in order
+     * @see ReadHandle#readAsync(long, long)
+     */
+    CompletableFuture<List<BatchedRecord>> readRecordsAsync(long firstEntry, long lastEntry);
+
+    /**
+     * Read the records of a range of entries synchronously.
+     *
+     * @param firstEntry
+     *          id of first entry of sequence
+     * @param lastEntry
+     *          id of last entry of sequence, inclusive
+     * @return the records of the entries in order
+     * @see #readRecordsAsync(long, long)
+     */
+    default List<BatchedRecord> readRecords(long firstEntry, long lastEntry)
+            throws BKException, InterruptedException {
+        return FutureUtils.<List<BatchedRecord>, BKException>result(readRecordsAsync(firstEntry, lastEntry),
+                                                                    BKException.HANDLER);
+    }
+}
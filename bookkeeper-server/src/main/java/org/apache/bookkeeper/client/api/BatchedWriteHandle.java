@@ -0,0 +1,170 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.api;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.bookkeeper.client.impl.BatchedWriteHandleImpl;
+import org.apache.bookkeeper.common.annotation.InterfaceAudience.Public;
+import org.apache.bookkeeper.common.annotation.InterfaceStability.Unstable;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+
+/**
+ * Append small records to a ledger, packing many of them in a single entry.
+ *
+ * <p>Records are accumulated in a batch, which is appended to the underlying {@link WriteHandle}
+ * as one entry when it reaches the maximum batch size or the maximum number of records,
+ * when the linger time of its first record expires, or when {@link #flushAsync()} is called.
+ * Batches are appended in the order the records were added, so record positions grow in the
+ * same order.
+ *
+ * <p>Entries written by this handle must be read with a {@link BatchedReadHandle}.
+ *
+ * @since 4.16
+ */
+@Public
+@Unstable
+public interface BatchedWriteHandle extends AutoCloseable {
+
+    /**
+     * Wrap a write handle with record batching. The batches are allocated with the allocator of the
+     * client of the handle.
+     *
+     * @param handle the handle to append batches to
+     * @param maxBatchSize the maximum size in bytes of a batch, including its framing. A record
+     *                     larger than this size is appended alone in its own batch
+     * @param maxBatchRecords the maximum number of records in a batch
+     * @param lingerTime how long a batch may wait for more records after its first record was
+     *                   added. If not positive, batches are only appended when full or when flushed
+     * @param unit the unit of {@code lingerTime}
+     * @param scheduler the scheduler used to append batches when their linger time expires. It can
+     *                  be null if {@code lingerTime} is not positive
+     * @return the batched write handle
+     */
+    static BatchedWriteHandle of(WriteHandle handle, int maxBatchSize, int maxBatchRecords,
+                                 long lingerTime, TimeUnit unit, ScheduledExecutorService scheduler) {
+        return new BatchedWriteHandleImpl(handle, maxBatchSize, maxBatchRecords, lingerTime, unit, scheduler);
+    }
+
+    /**
+     * Wrap a write handle with record batching, allocating the batches with the given allocator.
+     *
+     * @param handle the handle to append batches to
+     * @param maxBatchSize the maximum size in bytes of a batch, including its framing
+     * @param maxBatchRecords the maximum number of records in a batch
+     * @param lingerTime how long a batch may wait for more records after its first record was added
+     * @param unit the unit of {@code lingerTime}
+     * @param scheduler the scheduler used to append batches when their linger time expires
+     * @param allocator the allocator of the buffers of the batches
+     * @return the batched write handle
+     * @see #of(WriteHandle, int, int, long, TimeUnit, ScheduledExecutorService)
+     */
+    static BatchedWriteHandle of(WriteHandle handle, int maxBatchSize, int maxBatchRecords,
+                                 long lingerTime, TimeUnit unit, ScheduledExecutorService scheduler,
+                                 ByteBufAllocator allocator) {
+        return new BatchedWriteHandleImpl(handle, maxBatchSize, maxBatchRecords, lingerTime, unit, scheduler,
+                allocator);
+    }
+
+    /**
+     * Returns the handle batches are appended to.
+     *
+     * @return the underlying write handle
+     */
+    WriteHandle getWriteHandle();
+
+    /**
+     * Add a record asynchronously to the current batch.
+     *
+     * @param record a bytebuf to be written. The bytebuf's reference count will be decremented by 1 once
+     *               the record has been copied into its batch.
+     *               do not reuse the buffer, bk-client will release it appropriately.
+     * @return an handle to the result, in case of success it will return the position of the record
+     */
+    CompletableFuture<RecordPosition> appendAsync(ByteBuf record);
+
+    /**
+     * Add a record asynchronously to the current batch.
+     *
+     * @param record array of bytes to be written
+     *               do not reuse the buffer, bk-client will release it appropriately.
+     * @return an handle to the result, in case of success it will return the position of the record
+     */
+    default CompletableFuture<RecordPosition> appendAsync(byte[] record) {
+        return appendAsync(Unpooled.wrappedBuffer(record));
+    }
+
+    /**
+     * Add a record synchronously, flushing the current batch.
+     *
+     * <p>Waiting on a record alone would hold its batch until the linger time expires, so the
+     * batch is appended right away.
+     *
+     * @param record a bytebuf to be written.
+     *               do not reuse the buffer, bk-client will release it appropriately.
+     * @return the position of the record
+     */
+    default RecordPosition append(ByteBuf record) throws BKException, InterruptedException {
+        CompletableFuture<RecordPosition> future = appendAsync(record);
+        flushAsync();
+        return FutureUtils.<RecordPosition, BKException>result(future, BKException.HANDLER);
+    }
+
+    /**
+     * Append the current batch, if any, and wait for all the batches appended so far.
+     *
+     * @return an handle to the result of the operation
+     */
+    CompletableFuture<Void> flushAsync();
+
+    /**
+     * Append the current batch, if any, and wait for all the batches appended so far.
+     */
+    default void flush() throws BKException, InterruptedException {
+        FutureUtils.<Void, BKException>result(flushAsync(), BKException.HANDLER);
+    }
+
+    /**
+     * Asynchronous close the batched handle.
+     *
+     * <p>The current batch is appended and, once all the batches appended so far have
+     * completed, the underlying write handle is closed. Records added after this call
+     * fail with a ledger closed error.
+     *
+     * @return an handle to access the result of the operation
+     */
+    CompletableFuture<Void> closeAsync();
+
+    /**
+     * Synchronous close the batched handle.
+     *
+     * @see #closeAsync()
+     */
+    @Override
+    default void close() throws BKException, InterruptedException {
+        FutureUtils.<Void, BKException>result(closeAsync(), BKException.HANDLER);
+    }
+}
@@ -21,6 +21,7 @@
 package org.apache.bookkeeper.client.api;
 
 import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.client.impl.LedgerEntriesImpl;
 import org.apache.bookkeeper.common.annotation.InterfaceAudience.Public;
 import org.apache.bookkeeper.common.annotation.InterfaceStability.Unstable;
 import org.apache.bookkeeper.common.concurrent.FutureUtils;
@@ -59,6 +60,49 @@ public interface ReadHandle extends Handle {
                                                               BKException.HANDLER);
     }
 
+    /**
+     * Read a batch of consecutive entries asynchronously.
+     *
+     * <p>Unlike {@link #readAsync(long, long)}, the caller only bounds the batch: the result contains
+     * at least the entry <i>firstEntry</i> and at most <i>maxCount</i> entries, stopping earlier when
+     * the accumulated size would exceed <i>maxSize</i> bytes or when reaching the LastAddConfirmed.
+     * Implementations may serve the whole batch from a single bookie with one request.
+     *
+     * @param firstEntry
+     *          id of first entry of the batch
+     * @param maxCount
+     *          maximum number of entries to read
+     * @param maxSize
+     *          maximum total size, in bytes, of the entries to read
+     * @return an handle to the result of the operation
+     * @since 4.16
+     */
+    default CompletableFuture<LedgerEntries> batchReadAsync(long firstEntry, int maxCount, long maxSize) {
+        if (maxCount <= 0) {
+            return FutureUtils.exception(new IllegalArgumentException("maxCount must be positive : " + maxCount));
+        }
+        long lastEntry = Math.min(firstEntry + maxCount - 1, getLastAddConfirmed());
+        return readAsync(firstEntry, lastEntry).thenApply(entries -> LedgerEntriesImpl.truncate(entries, maxSize));
+    }
+
+    /**
+     * Read a batch of consecutive entries synchronously.
+     *
+     * @param firstEntry
+     *          id of first entry of the batch
+     * @param maxCount
+     *          maximum number of entries to read
+     * @param maxSize
+     *          maximum total size, in bytes, of the entries to read
+     * @return the result of the operation
+     * @see #batchReadAsync(long, int, long)
+     */
+    default LedgerEntries batchRead(long firstEntry, int maxCount, long maxSize)
+            throws BKException, InterruptedException {
+        return FutureUtils.<LedgerEntries, BKException>result(batchReadAsync(firstEntry, maxCount, maxSize),
+                                                              BKException.HANDLER);
+    }
+
     /**
      * Read a sequence of entries asynchronously, allowing to read after the LastAddConfirmed range.
      * <br>This is the same of
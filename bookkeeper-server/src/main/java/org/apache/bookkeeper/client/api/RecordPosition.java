@@ -0,0 +1,52 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.api;
+
+import org.apache.bookkeeper.common.annotation.InterfaceAudience.Public;
+import org.apache.bookkeeper.common.annotation.InterfaceStability.Unstable;
+
+/**
+ * Position of a record appended through a {@link BatchedWriteHandle}.
+ *
+ * <p>A record is identified by the id of the entry that carries its batch and by
+ * its index within that batch.
+ *
+ * @since 4.16
+ */
+@Public
+@Unstable
+public interface RecordPosition {
+
+    /**
+     * Gets the id of the entry containing the record.
+     *
+     * @return the entry id
+     */
+    long getEntryId();
+
+    /**
+     * Gets the index of the record within its entry.
+     *
+     * @return the index of the record, starting from 0
+     */
+    int getIndex();
+
+}
@@ -0,0 +1,142 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.bookkeeper.client.BKException.BKUnexpectedConditionException;
+import org.apache.bookkeeper.client.api.BKException;
+import org.apache.bookkeeper.client.api.BatchedRecord;
+import org.apache.bookkeeper.client.api.RecordPosition;
+
+/**
+ * Layout of the entries written by {@link BatchedWriteHandleImpl}.
+ *
+ * <pre>
+ * +-------------+--------------+---------------+----------+-----+
+ * | magic (int) | count (int)  | length (int)  | record   | ... |
+ * +-------------+--------------+---------------+----------+-----+
+ * </pre>
+ */
+public final class BatchedEntries {
+
+    static final int MAGIC = 0x42544348; // "BTCH"
+    static final int HEADER_SIZE = 2 * Integer.BYTES;
+    static final int RECORD_HEADER_SIZE = Integer.BYTES;
+
+    private BatchedEntries() {}
+
+    /**
+     * Pack records in a single entry allocated with the given allocator. The records are released.
+     */
+    static ByteBuf pack(List<ByteBuf> records, int size, ByteBufAllocator allocator) {
+        ByteBuf entry = allocator.buffer(size, size);
+        entry.writeInt(MAGIC);
+        entry.writeInt(records.size());
+        for (ByteBuf record : records) {
+            entry.writeInt(record.readableBytes());
+            entry.writeBytes(record, record.readerIndex(), record.readableBytes());
+            record.release();
+        }
+        return entry;
+    }
+
+    /**
+     * Unpack the records of an entry, without releasing it.
+     */
+    public static List<BatchedRecord> unpack(long entryId, ByteBuf entry) throws BKException {
+        int offset = entry.readerIndex();
+        int end = entry.writerIndex();
+        if (end - offset < HEADER_SIZE || entry.getInt(offset) != MAGIC) {
+            throw new BKUnexpectedConditionException();
+        }
+        int count = entry.getInt(offset + Integer.BYTES);
+        if (count < 0 || (long) count * RECORD_HEADER_SIZE > end - offset - HEADER_SIZE) {
+            throw new BKUnexpectedConditionException();
+        }
+        offset += HEADER_SIZE;
+        List<BatchedRecord> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (end - offset < RECORD_HEADER_SIZE) {
+                throw new BKUnexpectedConditionException();
+            }
+            int length = entry.getInt(offset);
+            offset += RECORD_HEADER_SIZE;
+            if (length < 0 || length > end - offset) {
+                throw new BKUnexpectedConditionException();
+            }
+            byte[] data = new byte[length];
+            entry.getBytes(offset, data);
+            offset += length;
+            records.add(new Record(entryId, i, data));
+        }
+        if (offset != end) {
+            // trailing bytes after the last record
+            throw new BKUnexpectedConditionException();
+        }
+        return Collections.unmodifiableList(records);
+    }
+
+    static class Position implements RecordPosition {
+
+        private final long entryId;
+        private final int index;
+
+        Position(long entryId, int index) {
+            this.entryId = entryId;
+            this.index = index;
+        }
+
+        @Override
+        public long getEntryId() {
+            return entryId;
+        }
+
+        @Override
+        public int getIndex() {
+            return index;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + entryId + ", " + index + ")";
+        }
+    }
+
+    static class Record extends Position implements BatchedRecord {
+
+        private final byte[] data;
+
+        Record(long entryId, int index, byte[] data) {
+            super(entryId, index);
+            this.data = data;
+        }
+
+        @Override
+        public byte[] getRecordBytes() {
+            return data;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.bookkeeper.client.api.BatchedReadHandle;
+import org.apache.bookkeeper.client.api.BatchedRecord;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.ReadHandle;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+
+/**
+ * Implementation of {@link BatchedReadHandle}.
+ */
+public class BatchedReadHandleImpl implements BatchedReadHandle {
+
+    private final ReadHandle handle;
+
+    public BatchedReadHandleImpl(ReadHandle handle) {
+        this.handle = handle;
+    }
+
+    @Override
+    public ReadHandle getReadHandle() {
+        return handle;
+    }
+
+    @Override
+    public CompletableFuture<List<BatchedRecord>> readRecordsAsync(long firstEntry, long lastEntry) {
+        return handle.readAsync(firstEntry, lastEntry).thenCompose(entries -> {
+            try (LedgerEntries ignored = entries) {
+                List<BatchedRecord> records = new ArrayList<>();
+                for (LedgerEntry entry : entries) {
+                    records.addAll(BatchedEntries.unpack(entry.getEntryId(), entry.getEntryBuffer()));
+                }
+                return FutureUtils.value(records);
+            } catch (Exception e) {
+                return FutureUtils.exception(e);
+            }
+        });
+    }
+}
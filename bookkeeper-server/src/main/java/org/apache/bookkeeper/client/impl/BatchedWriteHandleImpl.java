@@ -0,0 +1,247 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.bookkeeper.client.BKException.BKLedgerClosedException;
+import org.apache.bookkeeper.client.LedgerHandle;
+import org.apache.bookkeeper.client.api.BatchedWriteHandle;
+import org.apache.bookkeeper.client.api.RecordPosition;
+import org.apache.bookkeeper.client.api.WriteHandle;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+
+/**
+ * Implementation of {@link BatchedWriteHandle}.
+ *
+ * <p>Batches are packed while holding the lock of this handle and queued. They are appended to the
+ * underlying handle outside of the lock, by a single thread at a time and in the order of the queue,
+ * so that they are appended in the same order their records were added.
+ */
+public class BatchedWriteHandleImpl implements BatchedWriteHandle {
+
+    private final WriteHandle handle;
+    private final int maxBatchSize;
+    private final int maxBatchRecords;
+    private final long lingerTimeNanos;
+    private final ScheduledExecutorService scheduler;
+    private final ByteBufAllocator allocator;
+
+    private final List<ByteBuf> records = new ArrayList<>();
+    private final List<CompletableFuture<RecordPosition>> futures = new ArrayList<>();
+    private int batchSize = BatchedEntries.HEADER_SIZE;
+    private long batchSequence = 0;
+    private ScheduledFuture<?> lingerTask = null;
+    private CompletableFuture<Long> lastBatchFuture = null;
+    private boolean closed = false;
+
+    // packed batches waiting to be appended, and whether a thread is appending them
+    private final Queue<PackedBatch> packedBatches = new ArrayDeque<>();
+    private boolean appending = false;
+
+    public BatchedWriteHandleImpl(WriteHandle handle, int maxBatchSize, int maxBatchRecords,
+                                  long lingerTime, TimeUnit unit, ScheduledExecutorService scheduler) {
+        this(handle, maxBatchSize, maxBatchRecords, lingerTime, unit, scheduler, allocatorOf(handle));
+    }
+
+    public BatchedWriteHandleImpl(WriteHandle handle, int maxBatchSize, int maxBatchRecords,
+                                  long lingerTime, TimeUnit unit, ScheduledExecutorService scheduler,
+                                  ByteBufAllocator allocator) {
+        checkArgument(maxBatchSize > 0, "maxBatchSize must be positive");
+        checkArgument(maxBatchRecords > 0, "maxBatchRecords must be positive");
+        this.handle = checkNotNull(handle);
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchRecords = maxBatchRecords;
+        this.lingerTimeNanos = lingerTime > 0 ? unit.toNanos(lingerTime) : 0;
+        checkArgument(lingerTimeNanos == 0 || scheduler != null, "a scheduler is required with a linger time");
+        this.scheduler = scheduler;
+        this.allocator = checkNotNull(allocator);
+    }
+
+    private static ByteBufAllocator allocatorOf(WriteHandle handle) {
+        return handle instanceof LedgerHandle
+                ? ((LedgerHandle) handle).getByteBufAllocator() : ByteBufAllocator.DEFAULT;
+    }
+
+    @Override
+    public WriteHandle getWriteHandle() {
+        return handle;
+    }
+
+    @Override
+    public CompletableFuture<RecordPosition> appendAsync(ByteBuf record) {
+        CompletableFuture<RecordPosition> future = new CompletableFuture<>();
+        synchronized (this) {
+            if (closed) {
+                record.release();
+                future.completeExceptionally(new BKLedgerClosedException());
+                return future;
+            }
+            int recordSize = BatchedEntries.RECORD_HEADER_SIZE + record.readableBytes();
+            if (!records.isEmpty() && batchSize + recordSize > maxBatchSize) {
+                packBatch();
+            }
+            records.add(record);
+            futures.add(future);
+            batchSize += recordSize;
+            if (batchSize >= maxBatchSize || records.size() >= maxBatchRecords) {
+                packBatch();
+            } else if (records.size() == 1 && lingerTimeNanos > 0) {
+                final long sequence = batchSequence;
+                lingerTask = scheduler.schedule(() -> lingerExpired(sequence), lingerTimeNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        appendPackedBatches();
+        return future;
+    }
+
+    private void lingerExpired(long sequence) {
+        synchronized (this) {
+            if (sequence != batchSequence) {
+                return;
+            }
+            packBatch();
+        }
+        appendPackedBatches();
+    }
+
+    /**
+     * Pack the current batch and queue it to be appended. Must be called holding the lock of this handle.
+     */
+    private void packBatch() {
+        if (records.isEmpty()) {
+            return;
+        }
+        if (lingerTask != null) {
+            lingerTask.cancel(false);
+            lingerTask = null;
+        }
+        ++batchSequence;
+
+        PackedBatch batch = new PackedBatch(BatchedEntries.pack(records, batchSize, allocator),
+                new ArrayList<>(futures));
+        records.clear();
+        futures.clear();
+        batchSize = BatchedEntries.HEADER_SIZE;
+
+        packedBatches.add(batch);
+        lastBatchFuture = batch.result;
+    }
+
+    /**
+     * Append the queued batches to the underlying handle. Must be called without holding the lock of this
+     * handle. If another thread is already appending, it appends the batches queued by this thread too.
+     */
+    private void appendPackedBatches() {
+        synchronized (this) {
+            if (appending) {
+                return;
+            }
+            appending = true;
+        }
+        while (true) {
+            PackedBatch batch;
+            synchronized (this) {
+                batch = packedBatches.poll();
+                if (batch == null) {
+                    appending = false;
+                    return;
+                }
+            }
+            batch.append();
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> flushAsync() {
+        CompletableFuture<Long> lastBatch;
+        synchronized (this) {
+            packBatch();
+            lastBatch = lastBatchFuture;
+        }
+        appendPackedBatches();
+        // entries of a ledger complete in order, so the last batch completes after all the others
+        return lastBatch == null ? FutureUtils.Void() : lastBatch.thenApply(entryId -> null);
+    }
+
+    @Override
+    public CompletableFuture<Void> closeAsync() {
+        CompletableFuture<Long> lastBatch;
+        synchronized (this) {
+            packBatch();
+            closed = true;
+            lastBatch = lastBatchFuture;
+        }
+        appendPackedBatches();
+        if (lastBatch == null) {
+            return handle.closeAsync();
+        }
+        // closing the underlying handle fails the adds still in flight, wait for them first
+        return lastBatch.handle((entryId, cause) -> null).thenCompose(ignored -> handle.closeAsync());
+    }
+
+    /**
+     * A packed entry, and the futures of its records.
+     */
+    private class PackedBatch {
+        final ByteBuf entry;
+        final List<CompletableFuture<RecordPosition>> recordFutures;
+        final CompletableFuture<Long> result = new CompletableFuture<>();
+
+        PackedBatch(ByteBuf entry, List<CompletableFuture<RecordPosition>> recordFutures) {
+            this.entry = entry;
+            this.recordFutures = recordFutures;
+            result.whenComplete((entryId, cause) -> {
+                for (int i = 0; i < recordFutures.size(); i++) {
+                    if (cause != null) {
+                        recordFutures.get(i).completeExceptionally(cause);
+                    } else {
+                        recordFutures.get(i).complete(new BatchedEntries.Position(entryId, i));
+                    }
+                }
+            });
+        }
+
+        void append() {
+            CompletableFuture<Long> appended;
+            try {
+                appended = handle.appendAsync(entry);
+            } catch (RuntimeException e) {
+                entry.release();
+                result.completeExceptionally(e);
+                return;
+            }
+            FutureUtils.proxyTo(appended, result);
+        }
+    }
+}
@@ -158,6 +158,16 @@ public class BookKeeperClientStatsImpl implements BookKeeperClientStats {
         help = "The number of times write completion timed out because min number of fault domains was not reached"
     )
     private final Counter writeTimedOutDueToNotEnoughFaultDomains;
+    @StatsDoc(
+        name = ADD_MEMORY_LIMIT_WAIT,
+        help = "The latency distribution of waiting for the add memory limit, failed if the wait was interrupted"
+    )
+    private final OpStatsLogger addMemoryLimitWaitStats;
+    @StatsDoc(
+        name = ADD_MEMORY_LIMIT_REJECTED,
+        help = "The number of adds failed because the add memory limit was exceeded"
+    )
+    private final Counter addMemoryLimitRejectedCounter;
 
 
     public BookKeeperClientStatsImpl(StatsLogger stats) {
@@ -190,6 +200,8 @@ public class BookKeeperClientStatsImpl implements BookKeeperClientStats {
         this.writeDelayedDueToNotEnoughFaultDomains = stats.getCounter(WRITE_DELAYED_DUE_TO_NOT_ENOUGH_FAULT_DOMAINS);
         this.writeTimedOutDueToNotEnoughFaultDomains =
                 stats.getCounter(WRITE_TIMED_OUT_DUE_TO_NOT_ENOUGH_FAULT_DOMAINS);
+        this.addMemoryLimitWaitStats = stats.getOpStatsLogger(ADD_MEMORY_LIMIT_WAIT);
+        this.addMemoryLimitRejectedCounter = stats.getCounter(ADD_MEMORY_LIMIT_REJECTED);
     }
 
     @Override
@@ -289,7 +301,19 @@ public class BookKeeperClientStatsImpl implements BookKeeperClientStats {
         return writeTimedOutDueToNotEnoughFaultDomains;
     }
     @Override
+    public OpStatsLogger getAddMemoryLimitWaitLogger() {
+        return addMemoryLimitWaitStats;
+    }
+    @Override
+    public Counter getAddMemoryLimitRejectedCounter() {
+        return addMemoryLimitRejectedCounter;
+    }
+    @Override
     public void registerPendingAddsGauge(Gauge<Integer> gauge) {
         stats.registerGauge(PENDING_ADDS, gauge);
     }
+    @Override
+    public void registerAddMemoryUsageGauge(Gauge<Long> gauge) {
+        stats.registerGauge(ADD_MEMORY_USAGE, gauge);
+    }
 }
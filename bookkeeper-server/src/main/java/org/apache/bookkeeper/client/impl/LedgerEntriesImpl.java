@@ -25,6 +25,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import io.netty.util.Recycler;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
@@ -75,6 +76,38 @@ public class LedgerEntriesImpl implements LedgerEntries {
         return ledgerEntries;
     }
 
+    /**
+     * Truncate ledger entries to the first entries whose total payload size does not exceed the given size.
+     * The first entry is always kept, even if it is larger. The given entries are closed if they are truncated.
+     *
+     * @param entries the entries with ordering
+     * @param maxSize the maximum total size, in bytes, of the kept entries
+     * @return the given entries if they all fit, new ledger entries otherwise
+     */
+    public static LedgerEntries truncate(LedgerEntries entries, long maxSize) {
+        int count = 0;
+        long size = 0;
+        boolean truncated = false;
+        for (LedgerEntry entry : entries) {
+            size += entry.getEntryBuffer().readableBytes();
+            if (count > 0 && size > maxSize) {
+                truncated = true;
+                break;
+            }
+            count++;
+        }
+        if (!truncated) {
+            return entries;
+        }
+        List<LedgerEntry> kept = new ArrayList<>(count);
+        Iterator<LedgerEntry> iterator = entries.iterator();
+        while (kept.size() < count) {
+            kept.add(iterator.next().duplicate());
+        }
+        entries.close();
+        return create(kept);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -44,6 +44,8 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
 
     // Throttle value
     protected static final String THROTTLE = "throttle";
+    protected static final String ADD_ENTRY_MEMORY_LIMIT_BYTES = "addEntryMemoryLimitBytes";
+    protected static final String ADD_ENTRY_MEMORY_LIMIT_FAIL_FAST = "addEntryMemoryLimitFailFast";
 
     // Digest Type
     protected static final String DIGEST_TYPE = "digestType";
@@ -109,6 +111,8 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     protected static final String MAX_SPECULATIVE_READ_TIMEOUT = "maxSpeculativeReadTimeout";
     protected static final String SPECULATIVE_READ_TIMEOUT_BACKOFF_MULTIPLIER =
         "speculativeReadTimeoutBackoffMultiplier";
+    protected static final String SPECULATIVE_READ_LATENCY_PERCENTILE = "speculativeReadLatencyPercentile";
+    protected static final String SPECULATIVE_READ_LATENCY_SAMPLE_SIZE = "speculativeReadLatencySampleSize";
     protected static final String FIRST_SPECULATIVE_READ_LAC_TIMEOUT = "firstSpeculativeReadLACTimeout";
     protected static final String MAX_SPECULATIVE_READ_LAC_TIMEOUT = "maxSpeculativeReadLACTimeout";
     protected static final String SPECULATIVE_READ_LAC_TIMEOUT_BACKOFF_MULTIPLIER =
@@ -117,6 +121,7 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     protected static final String RECOVERY_READ_BATCH_SIZE = "recoveryReadBatchSize";
     protected static final String REORDER_READ_SEQUENCE_ENABLED = "reorderReadSequenceEnabled";
     protected static final String STICKY_READS_ENABLED = "stickyReadSEnabled";
+    protected static final String RANGE_READ_ENABLED = "rangeReadEnabled";
     // Add Parameters
     protected static final String OPPORTUNISTIC_STRIPING = "opportunisticStriping";
     protected static final String DELAY_ENSEMBLE_CHANGE = "delayEnsembleChange";
@@ -160,6 +165,7 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     public static final String ENSEMBLE_PLACEMENT_POLICY = "ensemblePlacementPolicy";
     protected static final String NETWORK_TOPOLOGY_STABILIZE_PERIOD_SECONDS = "networkTopologyStabilizePeriodSeconds";
     protected static final String READ_REORDER_THRESHOLD_PENDING_REQUESTS = "readReorderThresholdPendingRequests";
+    protected static final String READ_REORDER_BY_LOAD_SCORE_ENABLED = "readReorderByLoadScoreEnabled";
     protected static final String ENSEMBLE_PLACEMENT_POLICY_ORDER_SLOW_BOOKIES =
         "ensemblePlacementPolicyOrderSlowBookies";
 
@@ -247,6 +253,64 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Get the memory limit of the payloads of the pending adds of the client.
+     *
+     * @return the memory limit in bytes, 0 if there is no limit
+     * @see #setAddEntryMemoryLimitBytes
+     */
+    public long getAddEntryMemoryLimitBytes() {
+        return this.getLong(ADD_ENTRY_MEMORY_LIMIT_BYTES, 0L);
+    }
+
+    /**
+     * Set the memory limit of the payloads of the pending adds of the client.
+     *
+     * <p>The payload of an add is accounted from the time it is submitted until it is not retained by the
+     * client anymore, i.e. once its callback is triggered. Unlike the throttle value, this bounds the memory
+     * retained by the client when the bookies are slow. When the limit is exceeded, new adds either wait
+     * for memory to be released or fail, see {@link #setAddEntryMemoryLimitFailFast(boolean)}. Recovery
+     * adds are not limited.
+     *
+     * <p>Setting the limit to 0, will disable the limit.
+     *
+     * @param memoryLimitBytes
+     *          memory limit in bytes
+     * @return client configuration
+     */
+    public ClientConfiguration setAddEntryMemoryLimitBytes(long memoryLimitBytes) {
+        this.setProperty(ADD_ENTRY_MEMORY_LIMIT_BYTES, memoryLimitBytes);
+        return this;
+    }
+
+    /**
+     * Whether adds fail when the add memory limit is exceeded, instead of waiting for memory to be released.
+     *
+     * @return true if adds fail when the add memory limit is exceeded
+     * @see #setAddEntryMemoryLimitFailFast
+     */
+    public boolean getAddEntryMemoryLimitFailFast() {
+        return this.getBoolean(ADD_ENTRY_MEMORY_LIMIT_FAIL_FAST, false);
+    }
+
+    /**
+     * Set whether adds fail when the add memory limit is exceeded.
+     *
+     * <p>If true, an add submitted while the limit is exceeded fails with
+     * {@link org.apache.bookkeeper.client.BKException.Code#TooManyRequestsException}. Otherwise the thread
+     * submitting the add is blocked until enough memory is released. The adds submitted from the threads
+     * completing the adds, e.g. from an add callback, fail in both cases, since blocking these threads would
+     * prevent the memory from being released.
+     *
+     * @param failFast
+     *          whether adds fail when the add memory limit is exceeded
+     * @return client configuration
+     */
+    public ClientConfiguration setAddEntryMemoryLimitFailFast(boolean failFast) {
+        this.setProperty(ADD_ENTRY_MEMORY_LIMIT_FAIL_FAST, failFast);
+        return this;
+    }
+
     /**
      * Get autodetection of digest type.
      *
@@ -995,6 +1059,60 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Get the percentile of the latency of a bookie to wait for before sending a speculative
+     * read to the next replica.
+     *
+     * <p>When greater than 0, the client keeps the latencies of the read responses of each bookie
+     * and waits for this percentile of the latency of the bookie a read was sent to, bounded by
+     * {@link #getMaxSpeculativeReadTimeout()}, before sending the next speculative read. Until a
+     * bookie has enough samples, {@link #getFirstSpeculativeReadTimeout()} and
+     * {@link #getSpeculativeReadTimeoutBackoffMultiplier()} are used. Speculative reads must be
+     * enabled with {@link #getFirstSpeculativeReadTimeout()}.
+     *
+     * @return the percentile of the bookie latency, or 0 to use fixed speculative read timeouts.
+     */
+    public double getSpeculativeReadLatencyPercentile() {
+        return getDouble(SPECULATIVE_READ_LATENCY_PERCENTILE, 0.0);
+    }
+
+    /**
+     * Set the percentile of the latency of a bookie to wait for before sending a speculative
+     * read to the next replica.
+     *
+     * @param percentile
+     *          percentile of the bookie latency, e.g. 95, or 0 to use fixed speculative read timeouts.
+     * @return client configuration.
+     * @see #getSpeculativeReadLatencyPercentile()
+     */
+    public ClientConfiguration setSpeculativeReadLatencyPercentile(double percentile) {
+        setProperty(SPECULATIVE_READ_LATENCY_PERCENTILE, percentile);
+        return this;
+    }
+
+    /**
+     * Get the number of latest read latencies of each bookie used to compute the speculative
+     * read latency percentile.
+     *
+     * @return the number of latency samples kept per bookie.
+     */
+    public int getSpeculativeReadLatencySampleSize() {
+        return getInt(SPECULATIVE_READ_LATENCY_SAMPLE_SIZE, 200);
+    }
+
+    /**
+     * Set the number of latest read latencies of each bookie used to compute the speculative
+     * read latency percentile.
+     *
+     * @param sampleSize
+     *          number of latency samples kept per bookie.
+     * @return client configuration.
+     */
+    public ClientConfiguration setSpeculativeReadLatencySampleSize(int sampleSize) {
+        setProperty(SPECULATIVE_READ_LATENCY_SAMPLE_SIZE, sampleSize);
+        return this;
+    }
+
     /**
      * Multipler to use when determining time between successive speculative read LAC requests.
      *
@@ -1198,6 +1316,32 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * If batch reads should be served by range read requests or not.
+     *
+     * @return true if range reads are enabled, otherwise false.
+     */
+    public boolean isRangeReadEnabled() {
+        return getBoolean(RANGE_READ_ENABLED, true);
+    }
+
+    /**
+     * Enable/disable serving {@link org.apache.bookkeeper.client.api.ReadHandle#batchReadAsync(long, int, long)}
+     * with range read requests.
+     *
+     * <p>If this flag is enabled, the client fetches up to the requested number of consecutive
+     * entries from one bookie in a single request, instead of sending one request per entry.
+     * Range reads require the v3 wire protocol and a ledger whose write quorum size equals its
+     * ensemble size; in all the other cases the client falls back to regular reads.
+     *
+     * @param enabled the flag to enable/disable range reads.
+     * @return client configuration instance.
+     */
+    public ClientConfiguration setRangeReadEnabled(boolean enabled) {
+        setProperty(RANGE_READ_ENABLED, enabled);
+        return this;
+    }
+
     /**
      * Get Ensemble Placement Policy Class.
      *
@@ -1246,6 +1390,34 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Whether to order reads by the load score of the bookies.
+     *
+     * <p>The load score of a bookie combines its number of pending requests, the moving average
+     * of its read latency and its recent failures, so that reads move away from a loaded bookie
+     * without waiting for it to be marked as slow. It takes precedence over
+     * {@link #getReorderThresholdPendingRequests()}, and only applies when
+     * {@link #isReorderReadSequenceEnabled()} is set.
+     *
+     * @return true if reads are ordered by the load score of the bookies.
+     */
+    public boolean isReadReorderByLoadScoreEnabled() {
+        return getBoolean(READ_REORDER_BY_LOAD_SCORE_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable ordering reads by the load score of the bookies.
+     *
+     * @param enabled
+     *            flag to enable/disable ordering reads by the load score of the bookies.
+     * @return client configuration.
+     * @see #isReadReorderByLoadScoreEnabled()
+     */
+    public ClientConfiguration setReadReorderByLoadScoreEnabled(boolean enabled) {
+        setProperty(READ_REORDER_BY_LOAD_SCORE_ENABLED, enabled);
+        return this;
+    }
+
     /**
      * Get the network topology stabilize period in seconds. if it is zero, this feature is turned off.
      *
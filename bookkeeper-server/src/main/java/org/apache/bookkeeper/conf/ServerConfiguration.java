@@ -138,21 +138,32 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String MAX_BACKUP_JOURNALS = "journalMaxBackups";
     protected static final String JOURNAL_SYNC_DATA = "journalSyncData";
     protected static final String JOURNAL_WRITE_DATA = "journalWriteData";
+    protected static final String JOURNAL_SKIP_DEFERRED_SYNC_DATA = "journalSkipDeferredSyncData";
+    protected static final String JOURNAL_DEFERRED_SYNC_FLUSH_MIN_INTERVAL_MS =
+            "journalDeferredSyncFlushMinIntervalMs";
+    protected static final String ENTRY_DIGEST_VERIFICATION_ENABLED = "entryDigestVerificationEnabled";
     protected static final String JOURNAL_ADAPTIVE_GROUP_WRITES = "journalAdaptiveGroupWrites";
+    protected static final String JOURNAL_MAX_IN_FLIGHT_FORCE_WRITES = "journalMaxInFlightForceWrites";
+    protected static final String JOURNAL_REUSE_FILES_COUNT = "journalReuseFilesCount";
     protected static final String JOURNAL_MAX_GROUP_WAIT_MSEC = "journalMaxGroupWaitMSec";
     protected static final String JOURNAL_BUFFERED_WRITES_THRESHOLD = "journalBufferedWritesThreshold";
     protected static final String JOURNAL_BUFFERED_ENTRIES_THRESHOLD = "journalBufferedEntriesThreshold";
     protected static final String JOURNAL_FLUSH_WHEN_QUEUE_EMPTY = "journalFlushWhenQueueEmpty";
+    protected static final String JOURNAL_TARGET_ADD_LATENCY_MICROS = "journalTargetAddLatencyMicros";
     protected static final String JOURNAL_REMOVE_FROM_PAGE_CACHE = "journalRemoveFromPageCache";
     protected static final String JOURNAL_PRE_ALLOC_SIZE = "journalPreAllocSizeMB";
     protected static final String JOURNAL_WRITE_BUFFER_SIZE = "journalWriteBufferSizeKB";
     protected static final String JOURNAL_ALIGNMENT_SIZE = "journalAlignmentSize";
     protected static final String NUM_JOURNAL_CALLBACK_THREADS = "numJournalCallbackThreads";
+    protected static final String JOURNAL_CALLBACK_BATCH_SIZE = "journalCallbackBatchSize";
     protected static final String JOURNAL_FORMAT_VERSION_TO_WRITE = "journalFormatVersionToWrite";
+    protected static final String JOURNAL_COMPRESSION_TYPE = "journalCompressionType";
     protected static final String JOURNAL_QUEUE_SIZE = "journalQueueSize";
     protected static final String JOURNAL_MAX_MEMORY_SIZE_MB = "journalMaxMemorySizeMb";
     protected static final String JOURNAL_PAGECACHE_FLUSH_INTERVAL_MSEC = "journalPageCacheFlushIntervalMSec";
     protected static final String JOURNAL_CHANNEL_PROVIDER = "journalChannelProvider";
+    protected static final String JOURNAL_REPLAY_QUEUE_SIZE = "journalReplayQueueSize";
+    protected static final String JOURNAL_LOAD_AWARE_SELECTION_ENABLED = "journalLoadAwareSelectionEnabled";
     // backpressure control
     protected static final String MAX_ADDS_IN_PROGRESS_LIMIT = "maxAddsInProgressLimit";
     protected static final String MAX_READS_IN_PROGRESS_LIMIT = "maxReadsInProgressLimit";
@@ -315,6 +326,15 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String ENTRY_LOG_PER_LEDGER_COUNTER_LIMITS_MULT_FACTOR =
             "entryLogPerLedgerCounterLimitsMultFactor";
 
+    /*
+     * config specifying if the rotated entry logs should be read through memory
+     * mappings, and how many entry logs can be kept mapped at a given point in time.
+     */
+    protected static final String ENTRY_LOG_MMAP_READ_ENABLED = "entryLogMmapReadEnabled";
+    protected static final String ENTRY_LOG_MMAP_CACHE_SIZE = "entryLogMmapCacheSize";
+    // The FileChannelProvider used to write and read the entry logs
+    protected static final String ENTRY_LOG_CHANNEL_PROVIDER = "entryLogChannelProvider";
+
     // Perform local consistency check on bookie startup
     protected static final String LOCAL_CONSISTENCY_CHECK_ON_STARTUP = "localConsistencyCheckOnStartup";
 
@@ -903,6 +923,29 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Get the codec compressing the batches of entries written to the journal: NONE, SNAPPY or DEFLATE.
+     *
+     * @return journal compression type.
+     */
+    public String getJournalCompressionType() {
+        return this.getString(JOURNAL_COMPRESSION_TYPE, "NONE");
+    }
+
+    /**
+     * Set the codec compressing the batches of entries written to the journal. With a codec other than NONE,
+     * the journal files are written with the format version 7, so the journal format version to write must be
+     * set to 7, see {@link #setJournalFormatVersionToWrite(int)}.
+     *
+     * @param compressionType
+     *          NONE, SNAPPY or DEFLATE.
+     * @return server configuration.
+     */
+    public ServerConfiguration setJournalCompressionType(String compressionType) {
+        this.setProperty(JOURNAL_COMPRESSION_TYPE, compressionType);
+        return this;
+    }
+
     /**
      * Set the size of the journal queue.
      *
@@ -924,6 +967,52 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this.getInt(JOURNAL_QUEUE_SIZE, 10_000);
     }
 
+    /**
+     * Set the number of records read ahead of the records applied to the ledger storage, when replaying a journal
+     * on startup.
+     *
+     * @param journalReplayQueueSize
+     *            the max number of records read ahead, 0 to read and apply the records in the same thread
+     * @return server configuration.
+     */
+    public ServerConfiguration setJournalReplayQueueSize(int journalReplayQueueSize) {
+        this.setProperty(JOURNAL_REPLAY_QUEUE_SIZE, journalReplayQueueSize);
+        return this;
+    }
+
+    /**
+     * Get the number of records read ahead of the records applied to the ledger storage, when replaying a journal
+     * on startup.
+     *
+     * @return the max number of records read ahead.
+     */
+    public int getJournalReplayQueueSize() {
+        return this.getInt(JOURNAL_REPLAY_QUEUE_SIZE, 1024);
+    }
+
+    /**
+     * Set whether the ledgers are assigned to the least loaded journal when they are first written, instead of
+     * being assigned to a journal by ledger id.
+     *
+     * @param enabled
+     *            whether the load aware journal selection is enabled
+     * @return server configuration.
+     */
+    public ServerConfiguration setJournalLoadAwareSelectionEnabled(boolean enabled) {
+        this.setProperty(JOURNAL_LOAD_AWARE_SELECTION_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Whether the ledgers are assigned to the least loaded journal when they are first written, instead of being
+     * assigned to a journal by ledger id.
+     *
+     * @return true if the load aware journal selection is enabled.
+     */
+    public boolean isJournalLoadAwareSelectionEnabled() {
+        return this.getBoolean(JOURNAL_LOAD_AWARE_SELECTION_ENABLED, false);
+    }
+
     /**
      * Set the max amount of memory that can be used by the journal.
      *
@@ -2128,6 +2217,32 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return getInt(NUM_JOURNAL_CALLBACK_THREADS, 1);
     }
 
+    /**
+     * Set the max number of journal callbacks handed to a callback thread as a single task.
+     *
+     * @param batchSize
+     *          max number of callbacks completed in order by a single task.
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalCallbackBatchSize(int batchSize) {
+        setProperty(JOURNAL_CALLBACK_BATCH_SIZE, batchSize);
+        return this;
+    }
+
+    /**
+     * Get the max number of journal callbacks handed to a callback thread as a single task.
+     *
+     * <p>The callbacks of the entries acknowledged by a journal flush or force write are split in
+     * batches of up to this size, each batch is completed in order by a single task of the journal
+     * callback threads. This amortizes the scheduling cost of the callbacks when many entries are
+     * acknowledged at once. A value of 1 submits each callback as a separate task.
+     *
+     * @return the max number of callbacks completed by a single task.
+     */
+    public int getJournalCallbackBatchSize() {
+        return getInt(JOURNAL_CALLBACK_BATCH_SIZE, 1);
+    }
+
     /**
      * Set sorted-ledger storage enabled or not.
      *
@@ -2251,6 +2366,87 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Whether the journal skips the payload of entries added with ackBeforeSync (DEFERRED_SYNC ledgers).
+     *
+     * <p>When enabled, only a small metadata record (ledgerId and entryId) is journaled for
+     * such entries and the payload becomes durable through the ledger storage. A forceLedger request flushes
+     * the ledger storage before it is acknowledged.
+     *
+     * <p>Default is false
+     *
+     * @return true if the journal skips the payload of deferred sync entries
+     */
+    public boolean getJournalSkipDeferredSyncData() {
+        return getBoolean(JOURNAL_SKIP_DEFERRED_SYNC_DATA, false);
+    }
+
+    /**
+     * Set whether the journal skips the payload of entries added with ackBeforeSync (DEFERRED_SYNC ledgers).
+     *
+     * @param journalSkipDeferredSyncData
+     *          whether to journal only metadata records for deferred sync entries
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalSkipDeferredSyncData(boolean journalSkipDeferredSyncData) {
+        setProperty(JOURNAL_SKIP_DEFERRED_SYNC_DATA, journalSkipDeferredSyncData);
+        return this;
+    }
+
+    /**
+     * Get the minimum interval between two ledger storage flushes requested by forceLedger when
+     * {@link #getJournalSkipDeferredSyncData()} is enabled.
+     *
+     * <p>The forceLedger requests received until the next flush starts share it, so a higher interval
+     * lowers the number of flushes at the cost of a higher forceLedger latency.
+     *
+     * @return the minimum interval between two flushes, in milliseconds
+     */
+    public long getJournalDeferredSyncFlushMinIntervalMs() {
+        return getLong(JOURNAL_DEFERRED_SYNC_FLUSH_MIN_INTERVAL_MS, 10);
+    }
+
+    /**
+     * Set the minimum interval between two ledger storage flushes requested by forceLedger.
+     *
+     * @param minIntervalMs
+     *          the minimum interval between two flushes, in milliseconds
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalDeferredSyncFlushMinIntervalMs(long minIntervalMs) {
+        setProperty(JOURNAL_DEFERRED_SYNC_FLUSH_MIN_INTERVAL_MS, minIntervalMs);
+        return this;
+    }
+
+    /**
+     * Whether the bookie verifies the CRC32C digest of the entries before adding them.
+     *
+     * <p>An entry whose digest does not match is rejected with an I/O error, so the client writes it
+     * to another bookie instead of having a corrupted entry found at read time. Only the entries that
+     * the client declares to be protected by a CRC32C digest are verified, the others are added without
+     * verification and counted in the BOOKIE_UNVERIFIED_ENTRY_DIGEST stat. The verification runs on the
+     * add worker threads, or on the Netty threads if numAddWorkerThreads is 0.
+     *
+     * <p>Default is false
+     *
+     * @return true if the digest of the added entries is verified
+     */
+    public boolean isEntryDigestVerificationEnabled() {
+        return getBoolean(ENTRY_DIGEST_VERIFICATION_ENABLED, false);
+    }
+
+    /**
+     * Set whether the bookie verifies the CRC32C digest of the entries before adding them.
+     *
+     * @param entryDigestVerificationEnabled
+     *          whether to verify the digest of the added entries
+     * @return server configuration
+     */
+    public ServerConfiguration setEntryDigestVerificationEnabled(boolean entryDigestVerificationEnabled) {
+        setProperty(ENTRY_DIGEST_VERIFICATION_ENABLED, entryDigestVerificationEnabled);
+        return this;
+    }
+
     /**
      * Enable or disable journal syncs.
      *
@@ -2289,6 +2485,49 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Max number of journal force writes running concurrently. With more than one, a force write is issued for
+     * the entries flushed while the previous force writes are still running, instead of waiting for them to
+     * complete. Default is 1.
+     *
+     * @return max number of concurrent journal force writes
+     */
+    public int getJournalMaxInFlightForceWrites() {
+        return getInt(JOURNAL_MAX_IN_FLIGHT_FORCE_WRITES, 1);
+    }
+
+    /**
+     * Set the max number of journal force writes running concurrently.
+     *
+     * @param maxInFlightForceWrites max number of concurrent journal force writes
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalMaxInFlightForceWrites(int maxInFlightForceWrites) {
+        setProperty(JOURNAL_MAX_IN_FLIGHT_FORCE_WRITES, maxInFlightForceWrites);
+        return this;
+    }
+
+    /**
+     * Max number of garbage collected journal files kept, zeroed, to be reused for the new journal files instead
+     * of creating them. Default is 0, which deletes the garbage collected journal files.
+     *
+     * @return max number of journal files kept for reuse
+     */
+    public int getJournalReuseFilesCount() {
+        return getInt(JOURNAL_REUSE_FILES_COUNT, 0);
+    }
+
+    /**
+     * Set the max number of garbage collected journal files kept to be reused for the new journal files.
+     *
+     * @param journalReuseFilesCount max number of journal files kept for reuse, 0 to delete them
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalReuseFilesCount(int journalReuseFilesCount) {
+        setProperty(JOURNAL_REUSE_FILES_COUNT, journalReuseFilesCount);
+        return this;
+    }
+
     /**
      * Maximum latency to impose on a journal write to achieve grouping. Default is 2ms.
      *
@@ -2310,6 +2549,29 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Target latency of a journal write. If set, the time to wait to achieve grouping is adjusted from the
+     * measured sync latency and arrival rate of the journal writes, instead of using the max group wait and
+     * flush when queue empty settings. Default is 0, which disables it.
+     *
+     * @return target latency of a journal write in microseconds
+     */
+    public long getJournalTargetAddLatencyMicros() {
+        return getLong(JOURNAL_TARGET_ADD_LATENCY_MICROS, 0);
+    }
+
+    /**
+     * Sets the target latency of a journal write.
+     *
+     * @param journalTargetAddLatencyMicros
+     *          target latency in microseconds, 0 to disable the adjustment of the group wait.
+     * @return server configuration.
+     */
+    public ServerConfiguration setJournalTargetAddLatencyMicros(long journalTargetAddLatencyMicros) {
+        setProperty(JOURNAL_TARGET_ADD_LATENCY_MICROS, journalTargetAddLatencyMicros);
+        return this;
+    }
+
     /**
      * Maximum bytes to buffer to impose on a journal write to achieve grouping.
      *
@@ -3090,6 +3352,10 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
             throw new ConfigurationException("For persisiting explicitLac, journalFormatVersionToWrite should be >= 6"
                     + "and FileInfoFormatVersionToWrite should be >= 1");
         }
+        if (!"NONE".equalsIgnoreCase(getJournalCompressionType()) && getJournalFormatVersionToWrite() < 7) {
+            throw new ConfigurationException("Journal compression writes the journal format version 7,"
+                    + " journalFormatVersionToWrite should be >= 7");
+        }
     }
 
     /**
@@ -3810,6 +4076,61 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /*
+     * specifies if the entry logs that have been rotated and flushed are read
+     * through memory mappings. Entries are then returned as slices of the
+     * mapping, without copying them and without a read syscall per entry.
+     */
+    public boolean isEntryLogMmapReadEnabled() {
+        return this.getBoolean(ENTRY_LOG_MMAP_READ_ENABLED, false);
+    }
+
+    /*
+     * enables/disables reading the rotated entry logs through memory mappings.
+     */
+    public ServerConfiguration setEntryLogMmapReadEnabled(boolean entryLogMmapReadEnabled) {
+        this.setProperty(ENTRY_LOG_MMAP_READ_ENABLED, Boolean.toString(entryLogMmapReadEnabled));
+        return this;
+    }
+
+    /*
+     * get the maximum number of entry logs that are kept memory mapped at a
+     * given point in time, when entryLogMmapReadEnabled is enabled.
+     */
+    public int getEntryLogMmapCacheSize() {
+        return this.getInt(ENTRY_LOG_MMAP_CACHE_SIZE, 64);
+    }
+
+    /*
+     * sets the maximum number of entry logs that are kept memory mapped at a
+     * given point in time.
+     */
+    public ServerConfiguration setEntryLogMmapCacheSize(int entryLogMmapCacheSize) {
+        this.setProperty(ENTRY_LOG_MMAP_CACHE_SIZE, Integer.toString(entryLogMmapCacheSize));
+        return this;
+    }
+
+    /**
+     * Set EntryLogChannelProvider classname.
+     * @param entryLogChannelProvider
+     *          The EntryLogChannelProvider classname. The class must implements {@link FileChannelProvider} and
+     *          no args constructor is needed.
+     * @return server configuration
+     */
+    public ServerConfiguration setEntryLogChannelProvider(String entryLogChannelProvider) {
+        this.setProperty(ENTRY_LOG_CHANNEL_PROVIDER, entryLogChannelProvider);
+        return this;
+    }
+
+    /**
+     * Get the classname of the {@link FileChannelProvider} used to write and read the entry logs.
+     *
+     * @return the EntryLogChannelProvider classname
+     */
+    public String getEntryLogChannelProvider() {
+        return this.getString(ENTRY_LOG_CHANNEL_PROVIDER, "org.apache.bookkeeper.bookie.DefaultFileChannelProvider");
+    }
+
     /**
      * True if a local consistency check should be performed on startup.
      */
@@ -189,6 +189,8 @@ public interface BookieProtocol {
     short FLAG_DO_FENCING = 0x0001;
     short FLAG_RECOVERY_ADD = 0x0002;
     short FLAG_HIGH_PRIORITY = 0x0004;
+    // the entry of an add request is protected by a CRC32C digest, which the bookie can verify
+    short FLAG_CRC32C_DIGEST = 0x0008;
 
     /**
      * A Bookie request object.
@@ -332,6 +334,10 @@ public interface BookieProtocol {
             return (flags & FLAG_RECOVERY_ADD) == FLAG_RECOVERY_ADD;
         }
 
+        boolean hasCrc32cDigest() {
+            return (flags & FLAG_CRC32C_DIGEST) == FLAG_CRC32C_DIGEST;
+        }
+
         void release() {
             data.release();
         }
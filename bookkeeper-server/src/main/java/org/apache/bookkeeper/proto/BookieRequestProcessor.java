@@ -318,6 +318,9 @@ public class BookieRequestProcessor implements RequestProcessor {
                     case READ_ENTRY:
                         processReadRequestV3(r, c);
                         break;
+                    case RANGE_READ_ENTRY:
+                        processRangeReadRequestV3(r, c);
+                        break;
                     case FORCE_LEDGER:
                         processForceLedgerRequestV3(r, c);
                         break;
@@ -547,6 +550,33 @@ public class BookieRequestProcessor implements RequestProcessor {
         }
     }
 
+    private void processRangeReadRequestV3(final BookkeeperProtocol.Request r, final Channel c) {
+        final RangeReadEntryProcessorV3 rangeRead = new RangeReadEntryProcessorV3(r, c, this);
+        final BookkeeperProtocol.RangeReadRequest rangeReadRequest = r.getRangeReadRequest();
+
+        final OrderedExecutor threadPool = RequestUtils.isHighPriority(r) ? highPriorityThreadPool : readThreadPool;
+        if (null == threadPool) {
+            rangeRead.run();
+        } else {
+            try {
+                threadPool.executeOrdered(rangeReadRequest.getLedgerId(), rangeRead);
+            } catch (RejectedExecutionException e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Failed to process request to range read entries from {}:{}. Too many pending requests",
+                              rangeReadRequest.getLedgerId(), rangeReadRequest.getFirstEntryId());
+                }
+                getRequestStats().getReadEntryRejectedCounter().inc();
+                BookkeeperProtocol.RangeReadResponse rangeReadResponse =
+                    BookkeeperProtocol.RangeReadResponse.newBuilder()
+                        .setLedgerId(rangeReadRequest.getLedgerId())
+                        .setFirstEntryId(rangeReadRequest.getFirstEntryId())
+                        .setStatus(BookkeeperProtocol.StatusCode.ETOOMANYREQUESTS)
+                        .build();
+                rangeRead.sendResponse(rangeReadResponse);
+            }
+        }
+    }
+
     private void processStartTLSRequestV3(final BookkeeperProtocol.Request r, final Channel c) {
         BookkeeperProtocol.Response.Builder response = BookkeeperProtocol.Response.newBuilder();
         BookkeeperProtocol.BKPacketHeader.Builder header = BookkeeperProtocol.BKPacketHeader.newBuilder();
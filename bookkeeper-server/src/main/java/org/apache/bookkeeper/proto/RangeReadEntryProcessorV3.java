@@ -0,0 +1,183 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import com.google.common.base.Stopwatch;
+import com.google.protobuf.ByteString;
+import io.netty.channel.Channel;
+import io.netty.util.ReferenceCountUtil;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.BookieException;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeReadRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeReadResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.util.MathUtils;
+import org.apache.commons.lang.mutable.MutableLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A processor class for v3 range read packets.
+ *
+ * <p>A range read returns up to <i>maxCount</i> consecutive entries starting at <i>firstEntryId</i>
+ * in a single response. The read stops early when the accumulated body size would exceed
+ * <i>maxSize</i> (or the netty frame size of this bookie), or when the next entry is not
+ * available on this bookie. The first entry is always returned if it exists.
+ */
+class RangeReadEntryProcessorV3 extends PacketProcessorBaseV3 {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RangeReadEntryProcessorV3.class);
+
+    // Reserved space in the frame for the response header and the per-entry protobuf overhead
+    private static final int RESPONSE_FRAME_OVERHEAD = 1024;
+    private static final int PER_ENTRY_OVERHEAD = 16;
+
+    protected final RangeReadRequest rangeReadRequest;
+    protected final long ledgerId;
+    protected final long firstEntryId;
+
+    public RangeReadEntryProcessorV3(Request request,
+                                     Channel channel,
+                                     BookieRequestProcessor requestProcessor) {
+        super(request, channel, requestProcessor);
+        requestProcessor.onReadRequestStart(channel);
+
+        this.rangeReadRequest = request.getRangeReadRequest();
+        this.ledgerId = rangeReadRequest.getLedgerId();
+        this.firstEntryId = rangeReadRequest.getFirstEntryId();
+    }
+
+    private long getMaxResponseSize() {
+        long maxFrameSize = requestProcessor.getServerCfg().getNettyMaxFrameSizeBytes() - RESPONSE_FRAME_OVERHEAD;
+        return Math.min(rangeReadRequest.getMaxSize(), maxFrameSize);
+    }
+
+    protected RangeReadResponse getRangeReadResponse() {
+        final Stopwatch startTimeSw = Stopwatch.createStarted();
+
+        final RangeReadResponse.Builder rangeReadResponse = RangeReadResponse.newBuilder()
+                .setLedgerId(ledgerId)
+                .setFirstEntryId(firstEntryId);
+
+        if (firstEntryId < 0 || rangeReadRequest.getMaxCount() <= 0) {
+            return buildResponse(rangeReadResponse, StatusCode.EBADREQ, startTimeSw);
+        }
+
+        final Bookie bookie = requestProcessor.getBookie();
+        final long maxSize = getMaxResponseSize();
+        final long lastEntryId = firstEntryId
+                + Math.min(rangeReadRequest.getMaxCount() - 1, Long.MAX_VALUE - firstEntryId);
+        final MutableLong responseSize = new MutableLong(0);
+        try {
+            // the range ends at the last entry available on this bookie
+            bookie.readEntries(ledgerId, firstEntryId, lastEntryId, maxSize, (readEntryId, entryBody) -> {
+                try {
+                    long entrySize = entryBody.readableBytes() + PER_ENTRY_OVERHEAD;
+                    if (rangeReadResponse.getBodiesCount() > 0 && responseSize.longValue() + entrySize > maxSize) {
+                        return false;
+                    }
+                    rangeReadResponse.addBodies(ByteString.copyFrom(entryBody.nioBuffer()));
+                    responseSize.add(entrySize);
+                    return true;
+                } finally {
+                    ReferenceCountUtil.release(entryBody);
+                }
+            });
+
+            rangeReadResponse.setMaxLAC(bookie.readLastAddConfirmed(ledgerId));
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Range read of ledger {} from entry {} returned {} entries ({} bytes)",
+                        ledgerId, firstEntryId, rangeReadResponse.getBodiesCount(), responseSize.longValue());
+            }
+            return buildResponse(rangeReadResponse, StatusCode.EOK, startTimeSw);
+        } catch (Bookie.NoLedgerException e) {
+            LOG.info("No ledger found while range reading from entry: {} of ledger: {}", firstEntryId, ledgerId);
+            return buildResponse(rangeReadResponse.clearBodies(), StatusCode.ENOLEDGER, startTimeSw);
+        } catch (Bookie.NoEntryException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("No entry found while range reading from entry: {} of ledger: {}", firstEntryId, ledgerId);
+            }
+            return buildResponse(rangeReadResponse.clearBodies(), StatusCode.ENOENTRY, startTimeSw);
+        } catch (IOException e) {
+            LOG.error("IOException while range reading entry: {} from ledger {} ", firstEntryId, ledgerId, e);
+            return buildResponse(rangeReadResponse.clearBodies(), StatusCode.EIO, startTimeSw);
+        } catch (BookieException.DataUnknownException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Ledger has unknown state for entry: {} from ledger {}", firstEntryId, ledgerId);
+            }
+            return buildResponse(rangeReadResponse.clearBodies(), StatusCode.EUNKNOWNLEDGERSTATE, startTimeSw);
+        } catch (BookieException e) {
+            LOG.error("Unauthorized access to ledger:{} while range reading entry:{} in request from address: {}",
+                    ledgerId, firstEntryId, channel.remoteAddress());
+            return buildResponse(rangeReadResponse.clearBodies(), StatusCode.EUA, startTimeSw);
+        }
+    }
+
+    @Override
+    public void safeRun() {
+        requestProcessor.getRequestStats().getReadEntrySchedulingDelayStats().registerSuccessfulEvent(
+                MathUtils.elapsedNanos(enqueueNanos), TimeUnit.NANOSECONDS);
+
+        if (!isVersionCompatible()) {
+            RangeReadResponse rangeReadResponse = RangeReadResponse.newBuilder()
+                    .setLedgerId(ledgerId)
+                    .setFirstEntryId(firstEntryId)
+                    .setStatus(StatusCode.EBADVERSION)
+                    .build();
+            sendResponse(rangeReadResponse);
+            return;
+        }
+
+        sendResponse(getRangeReadResponse());
+    }
+
+    private RangeReadResponse buildResponse(RangeReadResponse.Builder rangeReadResponseBuilder,
+                                            StatusCode statusCode,
+                                            Stopwatch startTimeSw) {
+        long elapsedNanos = startTimeSw.elapsed(TimeUnit.NANOSECONDS);
+        if (StatusCode.EOK == statusCode) {
+            requestProcessor.getRequestStats().getRangeReadEntryStats()
+                    .registerSuccessfulEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+        } else {
+            requestProcessor.getRequestStats().getRangeReadEntryStats()
+                    .registerFailedEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+        }
+        rangeReadResponseBuilder.setStatus(statusCode);
+        return rangeReadResponseBuilder.build();
+    }
+
+    protected void sendResponse(RangeReadResponse rangeReadResponse) {
+        Response.Builder response = Response.newBuilder()
+                .setHeader(getHeader())
+                .setStatus(rangeReadResponse.getStatus())
+                .setRangeReadResponse(rangeReadResponse);
+        sendResponse(response.getStatus(),
+                     response.build(),
+                     requestProcessor.getRequestStats().getRangeReadRequestStats());
+        requestProcessor.onReadRequestFinish();
+    }
+
+    @Override
+    public String toString() {
+        return RequestUtils.toSafeString(request);
+    }
+}
@@ -115,14 +115,17 @@ class WriteEntryProcessorV3 extends PacketProcessorBaseV3 {
             writeFlags = WriteFlag.NONE;
         }
         final boolean ackBeforeSync = writeFlags.contains(WriteFlag.DEFERRED_SYNC);
+        final boolean crc32cDigest = addRequest.hasDigestType()
+                && addRequest.getDigestType() == AddRequest.DigestType.CRC32C;
         StatusCode status = null;
         byte[] masterKey = addRequest.getMasterKey().toByteArray();
         ByteBuf entryToAdd = Unpooled.wrappedBuffer(addRequest.getBody().asReadOnlyByteBuffer());
         try {
             if (RequestUtils.hasFlag(addRequest, AddRequest.Flag.RECOVERY_ADD)) {
-                requestProcessor.getBookie().recoveryAddEntry(entryToAdd, wcb, channel, masterKey);
+                requestProcessor.getBookie().recoveryAddEntry(entryToAdd, crc32cDigest, wcb, channel, masterKey);
             } else {
-                requestProcessor.getBookie().addEntry(entryToAdd, ackBeforeSync, wcb, channel, masterKey);
+                requestProcessor.getBookie().addEntry(entryToAdd, ackBeforeSync, crc32cDigest, wcb, channel,
+                        masterKey);
             }
             status = StatusCode.EOK;
         } catch (OperationRejectedException e) {
@@ -20,8 +20,11 @@ package org.apache.bookkeeper.util;
 
 import com.sun.jna.LastErrorException;
 import com.sun.jna.Native;
+import com.sun.jna.Platform;
+import com.sun.jna.Pointer;
 
 import java.io.FileDescriptor;
+import java.io.IOException;
 import java.lang.reflect.Field;
 
 import org.slf4j.Logger;
@@ -35,6 +38,15 @@ public final class NativeIO {
 
     private static final int POSIX_FADV_DONTNEED = 4; /* fadvise.h */
 
+    /* fcntl.h, O_DIRECT depends on the architecture */
+    private static final int O_RDONLY = 00;
+    private static final int O_RDWR = 02;
+    private static final int O_CREAT = 0100;
+    private static final int O_DIRECT = System.getProperty("os.arch", "").startsWith("aarch64")
+            || System.getProperty("os.arch", "").startsWith("arm") ? 0200000 : 040000;
+    private static final int SEEK_END = 2;
+    private static final int FILE_MODE = 0644;
+
     private static boolean initialized = false;
     private static boolean fadvisePossible = true;
 
@@ -54,6 +66,16 @@ public final class NativeIO {
     // fadvice
     public static native int posix_fadvise(int fd, long offset, long len, int flag) throws LastErrorException;
 
+    // direct I/O, size_t and off_t are mapped to long so these are only used on 64 bits Linux
+    private static native int open(String pathname, int flags, int mode) throws LastErrorException;
+    private static native long pread(int fd, Pointer buf, long count, long offset) throws LastErrorException;
+    private static native long pwrite(int fd, Pointer buf, long count, long offset) throws LastErrorException;
+    private static native long lseek(int fd, long offset, int whence) throws LastErrorException;
+    private static native int ftruncate(int fd, long length) throws LastErrorException;
+    private static native int fsync(int fd) throws LastErrorException;
+    private static native int fdatasync(int fd) throws LastErrorException;
+    private static native int close(int fd) throws LastErrorException;
+
     private NativeIO() {}
 
     private static Field getFieldByReflection(Class cls, String fieldName) {
@@ -118,4 +140,87 @@ public final class NativeIO {
         }
     }
 
+    /**
+     * Whether files can be opened with O_DIRECT through {@link #openDirect(String, boolean)}.
+     */
+    public static boolean isDirectIOSupported() {
+        return initialized && Platform.isLinux() && Platform.is64Bit();
+    }
+
+    /**
+     * Open a file with O_DIRECT, bypassing the file system page cache. The offsets, lengths and memory
+     * addresses of the reads and writes done on the returned file descriptor must be aligned to the
+     * logical block size of the underlying device.
+     *
+     * @param path the file to open
+     * @param readOnly whether the file is opened for reading only, otherwise it is created if missing
+     * @return the file descriptor
+     */
+    public static int openDirect(String path, boolean readOnly) throws IOException {
+        int flags = O_DIRECT | (readOnly ? O_RDONLY : O_RDWR | O_CREAT);
+        try {
+            return open(path, flags, FILE_MODE);
+        } catch (LastErrorException e) {
+            throw new IOException("Failed to open " + path + " with O_DIRECT, errno " + e.getErrorCode(), e);
+        }
+    }
+
+    public static long pread(int fd, Pointer buf, long count, long offset, String path) throws IOException {
+        try {
+            return pread(fd, buf, count, offset);
+        } catch (LastErrorException e) {
+            throw new IOException("Failed to read " + path + " at " + offset + ", errno " + e.getErrorCode(), e);
+        }
+    }
+
+    public static long pwrite(int fd, Pointer buf, long count, long offset, String path) throws IOException {
+        try {
+            return pwrite(fd, buf, count, offset);
+        } catch (LastErrorException e) {
+            throw new IOException("Failed to write " + path + " at " + offset + ", errno " + e.getErrorCode(), e);
+        }
+    }
+
+    public static long size(int fd, String path) throws IOException {
+        try {
+            return lseek(fd, 0, SEEK_END);
+        } catch (LastErrorException e) {
+            throw new IOException("Failed to get the size of " + path + ", errno " + e.getErrorCode(), e);
+        }
+    }
+
+    public static void truncate(int fd, long length, String path) throws IOException {
+        try {
+            ftruncate(fd, length);
+        } catch (LastErrorException e) {
+            throw new IOException("Failed to truncate " + path + " to " + length + ", errno " + e.getErrorCode(), e);
+        }
+    }
+
+    public static void sync(int fd, String path) throws IOException {
+        try {
+            fsync(fd);
+        } catch (LastErrorException e) {
+            throw new IOException("Failed to sync " + path + ", errno " + e.getErrorCode(), e);
+        }
+    }
+
+    /**
+     * Persist the data of the file, and only the metadata that is needed to read it back, like its size.
+     */
+    public static void syncData(int fd, String path) throws IOException {
+        try {
+            fdatasync(fd);
+        } catch (LastErrorException e) {
+            throw new IOException("Failed to sync the data of " + path + ", errno " + e.getErrorCode(), e);
+        }
+    }
+
+    public static void close(int fd, String path) throws IOException {
+        try {
+            close(fd);
+        } catch (LastErrorException e) {
+            throw new IOException("Failed to close " + path + ", errno " + e.getErrorCode(), e);
+        }
+    }
 }
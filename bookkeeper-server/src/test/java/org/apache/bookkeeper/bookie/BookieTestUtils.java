@@ -0,0 +1,90 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.discover.BookieServiceInfo;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.util.DiskChecker;
+
+/**
+ * Helpers to run a bookie without a metadata store in unit tests.
+ */
+final class BookieTestUtils {
+
+    private BookieTestUtils() {}
+
+    /**
+     * @return a configuration with a journal and a ledger directory created in the given directory
+     */
+    static ServerConfiguration newServerConfiguration(File baseDir) throws Exception {
+        File journalDir = new File(baseDir, "journal");
+        File ledgerDir = new File(baseDir, "ledger");
+        Files.createDirectories(journalDir.toPath());
+        Files.createDirectories(ledgerDir.toPath());
+
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setBookieId("test-bookie");
+        conf.setJournalDirName(journalDir.getPath());
+        conf.setLedgerDirNames(new String[]{ledgerDir.getPath()});
+        // There is no metadata store to check the ledgers to garbage collect
+        conf.setGcWaitTime(TimeUnit.HOURS.toMillis(1));
+        conf.setMinorCompactionInterval(0);
+        conf.setMajorCompactionInterval(0);
+        // The file descriptor is not accessible by reflection on recent JVMs
+        conf.setJournalRemovePagesFromCache(false);
+        return conf;
+    }
+
+    /**
+     * Create a bookie which is not registered in a metadata store.
+     */
+    static BookieImpl newBookie(ServerConfiguration conf, StatsLogger statsLogger) throws Exception {
+        DiskChecker diskChecker = BookieResources.createDiskChecker(conf);
+        LedgerDirsManager ledgerDirsManager = BookieResources.createLedgerDirsManager(conf, diskChecker, statsLogger);
+        LedgerDirsManager indexDirsManager = BookieResources.createIndexDirsManager(conf, diskChecker, statsLogger,
+                ledgerDirsManager);
+        LedgerStorage storage = BookieResources.createLedgerStorage(conf, null, ledgerDirsManager, indexDirsManager,
+                statsLogger, UnpooledByteBufAllocator.DEFAULT);
+        return new BookieImpl(conf, null, storage, diskChecker, ledgerDirsManager, indexDirsManager, statsLogger,
+                UnpooledByteBufAllocator.DEFAULT, BookieServiceInfo.NO_INFO);
+    }
+
+    /**
+     * @return an entry as added by the clients, without digest
+     */
+    static ByteBuf newEntry(long ledgerId, long entryId, int size) {
+        ByteBuf entry = Unpooled.buffer(16 + size);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        for (int i = 0; i < size; i++) {
+            entry.writeByte((int) (entryId + i));
+        }
+        return entry;
+    }
+}
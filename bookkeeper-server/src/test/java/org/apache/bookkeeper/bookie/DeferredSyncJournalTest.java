@@ -0,0 +1,210 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.proto.BookieProtocol;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Durability of the entries of DEFERRED_SYNC ledgers when the journal skips their payload.
+ */
+public class DeferredSyncJournalTest {
+
+    private static final byte[] MASTER_KEY = "key".getBytes(UTF_8);
+    private static final int ENTRY_SIZE = 100;
+
+    private final List<File> dirs = new ArrayList<>();
+    private final List<BookieImpl> bookies = new ArrayList<>();
+
+    @Before
+    public void setup() throws Exception {
+        dirs.add(Files.createTempDirectory("deferred-sync").toFile());
+    }
+
+    @After
+    public void teardown() throws Exception {
+        for (BookieImpl bookie : bookies) {
+            bookie.shutdown();
+        }
+        for (File dir : dirs) {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    private BookieImpl startBookie(File baseDir, long flushMinIntervalMs) throws Exception {
+        ServerConfiguration conf = BookieTestUtils.newServerConfiguration(baseDir);
+        conf.setJournalSkipDeferredSyncData(true);
+        conf.setJournalDeferredSyncFlushMinIntervalMs(flushMinIntervalMs);
+        BookieImpl bookie = BookieTestUtils.newBookie(conf, NullStatsLogger.INSTANCE);
+        bookies.add(bookie);
+        bookie.start();
+        return bookie;
+    }
+
+    /**
+     * Start a bookie on a copy of the directories of the given bookie, as left on the disk if it crashed now.
+     */
+    private BookieImpl crashAndRestart(File baseDir) throws Exception {
+        File crashDir = Files.createTempDirectory("deferred-sync-crash").toFile();
+        dirs.add(crashDir);
+        FileUtils.copyDirectory(baseDir, crashDir);
+        return startBookie(crashDir, 0);
+    }
+
+    private static void addEntries(BookieImpl bookie, long ledgerId, int count, boolean ackBeforeSync)
+            throws Exception {
+        for (int i = 0; i < count; i++) {
+            CompletableFuture<Integer> result = new CompletableFuture<>();
+            bookie.addEntry(BookieTestUtils.newEntry(ledgerId, i, ENTRY_SIZE), ackBeforeSync,
+                    (rc, lid, eid, addr, ctx) -> result.complete(rc), null, MASTER_KEY);
+            assertEquals(BookieProtocol.EOK, (int) result.get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    private static CompletableFuture<Integer> forceLedger(BookieImpl bookie, long ledgerId) {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        bookie.forceLedger(ledgerId, (rc, lid, eid, addr, ctx) -> result.complete(rc), null);
+        return result;
+    }
+
+    private static void assertEntries(BookieImpl bookie, long ledgerId, int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            ByteBuf expected = BookieTestUtils.newEntry(ledgerId, i, ENTRY_SIZE);
+            ByteBuf entry = bookie.readEntry(ledgerId, i);
+            assertEquals(expected, entry);
+            entry.release();
+        }
+    }
+
+    @Test
+    public void testForcedEntriesSurviveCrash() throws Exception {
+        File baseDir = dirs.get(0);
+        BookieImpl bookie = startBookie(baseDir, 0);
+        addEntries(bookie, 1, 10, true);
+        assertEquals(BookieProtocol.EOK, (int) forceLedger(bookie, 1).get(10, TimeUnit.SECONDS));
+
+        BookieImpl restarted = crashAndRestart(baseDir);
+        assertEntries(restarted, 1, 10);
+    }
+
+    @Test
+    public void testReplaySkipsDeferredEntryRecords() throws Exception {
+        File baseDir = dirs.get(0);
+        BookieImpl bookie = startBookie(baseDir, 0);
+        // Unforced deferred sync entries, followed by regular entries synced to the journal
+        addEntries(bookie, 1, 10, true);
+        addEntries(bookie, 2, 10, false);
+
+        // Only the ids of the deferred sync entries were journaled
+        Journal journal = bookie.journals.get(0);
+        AtomicInteger deferredRecords = new AtomicInteger();
+        for (long journalId : Journal.listJournalIds(journal.getJournalDirectory(), null)) {
+            journal.scanJournal(journalId, 0, (version, offset, record) -> {
+                long ledgerId = record.getLong(0);
+                long entryId = record.getLong(8);
+                if (entryId == BookieImpl.METAENTRY_ID_DEFERRED_ENTRY) {
+                    assertEquals(1, ledgerId);
+                    assertEquals(24, record.remaining());
+                    deferredRecords.incrementAndGet();
+                } else if (ledgerId == 1) {
+                    assertTrue("Unexpected record of entry " + entryId, entryId < 0);
+                }
+            });
+        }
+        assertEquals(10, deferredRecords.get());
+
+        // The replay skips the deferred sync records and restores the regular entries
+        BookieImpl restarted = crashAndRestart(baseDir);
+        assertEntries(restarted, 2, 10);
+        try {
+            restarted.readEntry(1, 0);
+            fail("The unforced entries should be lost by the crash");
+        } catch (Bookie.NoLedgerException | Bookie.NoEntryException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testForceLedgerFlushesOnlyUnflushedLedgers() throws Exception {
+        BookieImpl bookie = startBookie(dirs.get(0), 0);
+        SyncThread syncThread = bookie.syncThread;
+        addEntries(bookie, 1, 2, true);
+        addEntries(bookie, 2, 2, false);
+
+        assertEquals(BookieProtocol.EOK, (int) forceLedger(bookie, 1).get(10, TimeUnit.SECONDS));
+        assertEquals(1, syncThread.getStartedLedgerStorageFlushes());
+
+        // Ledger 1 has no deferred sync entry added since the flush, ledger 2 never had one
+        assertEquals(BookieProtocol.EOK, (int) forceLedger(bookie, 1).get(10, TimeUnit.SECONDS));
+        assertEquals(BookieProtocol.EOK, (int) forceLedger(bookie, 2).get(10, TimeUnit.SECONDS));
+        assertEquals(1, syncThread.getStartedLedgerStorageFlushes());
+
+        // A new deferred sync entry needs a new flush
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        bookie.addEntry(BookieTestUtils.newEntry(1, 2, ENTRY_SIZE), true,
+                (rc, lid, eid, addr, ctx) -> result.complete(rc), null, MASTER_KEY);
+        assertEquals(BookieProtocol.EOK, (int) result.get(10, TimeUnit.SECONDS));
+        assertEquals(BookieProtocol.EOK, (int) forceLedger(bookie, 1).get(10, TimeUnit.SECONDS));
+        assertEquals(2, syncThread.getStartedLedgerStorageFlushes());
+    }
+
+    @Test
+    public void testFlushesAreRateLimited() throws Exception {
+        long minIntervalMs = 500;
+        BookieImpl bookie = startBookie(dirs.get(0), minIntervalMs);
+        SyncThread syncThread = bookie.syncThread;
+
+        long startNanos = MathUtils.nowInNano();
+        addEntries(bookie, 1, 1, true);
+        assertEquals(BookieProtocol.EOK, (int) forceLedger(bookie, 1).get(10, TimeUnit.SECONDS));
+        assertEquals(1, syncThread.getStartedLedgerStorageFlushes());
+
+        // The ledgers forced within the interval share the next flush, started after the interval
+        addEntries(bookie, 2, 1, true);
+        addEntries(bookie, 3, 1, true);
+        CompletableFuture<Integer> force2 = forceLedger(bookie, 2);
+        CompletableFuture<Integer> force3 = forceLedger(bookie, 3);
+        assertEquals(BookieProtocol.EOK, (int) force2.get(10, TimeUnit.SECONDS));
+        assertEquals(BookieProtocol.EOK, (int) force3.get(10, TimeUnit.SECONDS));
+        assertTrue(MathUtils.elapsedNanos(startNanos) >= TimeUnit.MILLISECONDS.toNanos(minIntervalMs));
+        assertEquals(2, syncThread.getStartedLedgerStorageFlushes());
+    }
+}
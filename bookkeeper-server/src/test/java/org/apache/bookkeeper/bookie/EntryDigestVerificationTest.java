@@ -0,0 +1,163 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_UNVERIFIED_ENTRY_DIGEST;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_VERIFY_ENTRY_DIGEST;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.proto.BookieProtocol;
+import org.apache.bookkeeper.proto.DataFormats.LedgerMetadataFormat.DigestType;
+import org.apache.bookkeeper.proto.checksum.DigestManager;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Verification of the digest of the added entries by the bookie.
+ */
+public class EntryDigestVerificationTest {
+
+    private static final byte[] MASTER_KEY = "key".getBytes(UTF_8);
+
+    private File baseDir;
+    private BookieImpl bookie;
+    private final Counter unverifiedCounter = mock(Counter.class);
+    private final OpStatsLogger verifyStats = mock(OpStatsLogger.class);
+
+    @Before
+    public void setup() throws Exception {
+        baseDir = Files.createTempDirectory("entry-digest").toFile();
+        ServerConfiguration conf = BookieTestUtils.newServerConfiguration(baseDir);
+        conf.setEntryDigestVerificationEnabled(true);
+
+        StatsLogger statsLogger = mock(StatsLogger.class, delegatesTo(NullStatsLogger.INSTANCE));
+        when(statsLogger.getCounter(BOOKIE_UNVERIFIED_ENTRY_DIGEST)).thenReturn(unverifiedCounter);
+        when(statsLogger.getOpStatsLogger(BOOKIE_VERIFY_ENTRY_DIGEST)).thenReturn(verifyStats);
+
+        bookie = BookieTestUtils.newBookie(conf, statsLogger);
+        bookie.start();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        bookie.shutdown();
+        FileUtils.deleteDirectory(baseDir);
+    }
+
+    private static ByteBuf newEntry(DigestType digestType, long ledgerId, long entryId) throws Exception {
+        DigestManager digestManager = DigestManager.instantiate(ledgerId, MASTER_KEY, digestType,
+                UnpooledByteBufAllocator.DEFAULT, false);
+        ByteBuf payload = Unpooled.wrappedBuffer(("entry-" + entryId).getBytes(UTF_8));
+        ByteBufList toSend = digestManager.computeDigestAndPackageForSending(entryId, entryId - 1,
+                payload.readableBytes() * (entryId + 1), payload);
+        ByteBuf entry = ByteBufList.coalesce(toSend);
+        toSend.release();
+        return entry;
+    }
+
+    private void addEntry(ByteBuf entry, boolean crc32cDigest) throws Exception {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        bookie.addEntry(entry, false, crc32cDigest, (rc, ledgerId, entryId, addr, ctx) -> result.complete(rc),
+                null, MASTER_KEY);
+        assertEquals(BookieProtocol.EOK, (int) result.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testMatchingCrc32cDigest() throws Exception {
+        addEntry(newEntry(DigestType.CRC32C, 1, 0), true);
+        addEntry(newEntry(DigestType.CRC32C, 1, 1), true);
+
+        verify(verifyStats, times(2)).registerSuccessfulEvent(anyLong(), eq(TimeUnit.NANOSECONDS));
+        verify(unverifiedCounter, never()).inc();
+        assertEquals(0, bookie.readLastAddConfirmed(1));
+        bookie.readEntry(1, 1).release();
+    }
+
+    @Test
+    public void testCorruptedCrc32cDigest() throws Exception {
+        ByteBuf entry = newEntry(DigestType.CRC32C, 1, 0);
+        // Flip a byte of the payload
+        int last = entry.writerIndex() - 1;
+        entry.setByte(last, entry.getByte(last) ^ 0xff);
+        try {
+            bookie.addEntry(entry, false, true, (rc, ledgerId, entryId, addr, ctx) -> {}, null, MASTER_KEY);
+            fail("An entry with a corrupted digest should be rejected");
+        } catch (IOException e) {
+            // expected
+        }
+        verify(verifyStats).registerFailedEvent(anyLong(), eq(TimeUnit.NANOSECONDS));
+        assertEquals(0, entry.refCnt());
+
+        // The entry was not added to the ledger
+        try {
+            bookie.readEntry(1, 0);
+            fail("The rejected entry should not be readable");
+        } catch (Bookie.NoLedgerException | Bookie.NoEntryException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testEntriesWithOtherDigestsAreNotVerified() throws Exception {
+        // Entries of ledgers with other digest types are added without verification, whether recovery adds or not
+        addEntry(newEntry(DigestType.CRC32, 1, 0), false);
+        addEntry(newEntry(DigestType.HMAC, 2, 0), false);
+        addEntry(newEntry(DigestType.DUMMY, 3, 0), false);
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        bookie.recoveryAddEntry(newEntry(DigestType.CRC32, 1, 1), false,
+                (rc, ledgerId, entryId, addr, ctx) -> result.complete(rc), null, MASTER_KEY);
+        assertEquals(BookieProtocol.EOK, (int) result.get(10, TimeUnit.SECONDS));
+
+        verify(unverifiedCounter, times(4)).inc();
+        verify(verifyStats, never()).registerSuccessfulEvent(anyLong(), eq(TimeUnit.NANOSECONDS));
+        verify(verifyStats, never()).registerFailedEvent(anyLong(), eq(TimeUnit.NANOSECONDS));
+        for (long ledgerId = 1; ledgerId <= 3; ledgerId++) {
+            bookie.readEntry(ledgerId, 0).release();
+        }
+    }
+}
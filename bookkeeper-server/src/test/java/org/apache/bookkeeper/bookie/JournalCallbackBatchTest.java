@@ -0,0 +1,176 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the completion of the journal callbacks in batches ({@code journalCallbackBatchSize}).
+ */
+public class JournalCallbackBatchTest {
+
+    private static final long LEDGER_ID = 1;
+
+    private File baseDir;
+    private Journal journal;
+
+    @Before
+    public void setup() throws Exception {
+        baseDir = Files.createTempDirectory("journal-callback-batch").toFile();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        if (journal != null) {
+            journal.shutdown();
+        }
+        FileUtils.deleteDirectory(baseDir);
+    }
+
+    private static Journal.QueueEntry newQueueEntry(long entryId, WriteCallback cb) {
+        return Journal.QueueEntry.create(null, false, LEDGER_ID, entryId, cb, null, System.nanoTime(),
+                NullStatsLogger.INSTANCE.getOpStatsLogger("add"),
+                NullStatsLogger.INSTANCE.getCounter("cb-queue"),
+                NullStatsLogger.INSTANCE.getCounter("cb-time"));
+    }
+
+    @Test
+    public void testBatchRunsCallbacksInOrder() {
+        List<Long> completed = new ArrayList<>();
+        Journal.CallbackBatch batch = new Journal.CallbackBatch(3);
+        WriteCallback cb = (rc, ledgerId, entryId, addr, ctx) -> {
+            assertEquals(BookieException.Code.OK, rc);
+            completed.add(entryId);
+        };
+        assertFalse(batch.add(newQueueEntry(0, cb)));
+        assertFalse(batch.add(newQueueEntry(1, cb)));
+        // The batch is full with its max size
+        assertTrue(batch.add(newQueueEntry(2, cb)));
+        assertTrue(completed.isEmpty());
+
+        batch.run();
+        assertEquals(Arrays.asList(0L, 1L, 2L), completed);
+    }
+
+    @Test
+    public void testFailingCallback() {
+        List<Long> completed = new ArrayList<>();
+        Journal.CallbackBatch batch = new Journal.CallbackBatch(4);
+        for (long entryId = 0; entryId < 3; entryId++) {
+            batch.add(newQueueEntry(entryId, (rc, ledgerId, eid, addr, ctx) -> {
+                if (eid == 1) {
+                    throw new IllegalStateException("Failed callback");
+                }
+                completed.add(eid);
+            }));
+        }
+        // A partial batch completes its entries, the failure of one doesn't stop the next ones
+        batch.run();
+        assertEquals(Arrays.asList(0L, 2L), completed);
+    }
+
+    private void startJournal(int callbackBatchSize, boolean syncData) throws Exception {
+        ServerConfiguration conf = BookieTestUtils.newServerConfiguration(baseDir);
+        conf.setJournalCallbackBatchSize(callbackBatchSize);
+        conf.setJournalSyncData(syncData);
+        // Group all the entries in a single flush
+        conf.setJournalMaxGroupWaitMSec(200);
+        File journalDir = BookieImpl.getCurrentDirectory(conf.getJournalDirs()[0]);
+        BookieImpl.checkDirectoryStructure(journalDir);
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        journal = new Journal(0, journalDir, conf, ledgerDirsManager);
+        journal.start();
+    }
+
+    private void testCallbacksCompleted(int callbackBatchSize, boolean syncData, boolean ackBeforeSync)
+            throws Exception {
+        startJournal(callbackBatchSize, syncData);
+        int numEntries = callbackBatchSize * 3 + 1;
+        List<Long> completed = Collections.synchronizedList(new ArrayList<>());
+        Set<Thread> threads = Collections.synchronizedSet(new HashSet<>());
+        CountDownLatch latch = new CountDownLatch(numEntries);
+        for (long entryId = 0; entryId < numEntries; entryId++) {
+            journal.logAddEntry(BookieTestUtils.newEntry(LEDGER_ID, entryId, 100), ackBeforeSync,
+                    (rc, ledgerId, eid, addr, ctx) -> {
+                        assertEquals(BookieException.Code.OK, rc);
+                        completed.add(eid);
+                        threads.add(Thread.currentThread());
+                        latch.countDown();
+                    }, null);
+        }
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+
+        // Full batches and the last partial one are all completed, in order, by the callback thread
+        List<Long> expected = new ArrayList<>();
+        for (long entryId = 0; entryId < numEntries; entryId++) {
+            expected.add(entryId);
+        }
+        assertEquals(expected, completed);
+        assertEquals(1, threads.size());
+        Thread callbackThread = threads.iterator().next();
+        assertNotEquals(journal, callbackThread);
+        assertNotEquals(journal.forceWriteThread, callbackThread);
+    }
+
+    @Test
+    public void testCallbacksAfterForceWrite() throws Exception {
+        testCallbacksCompleted(4, true, false);
+    }
+
+    @Test
+    public void testCallbacksAfterFlush() throws Exception {
+        testCallbacksCompleted(4, false, false);
+    }
+
+    @Test
+    public void testCallbacksAckedBeforeSync() throws Exception {
+        testCallbacksCompleted(4, true, true);
+    }
+
+    @Test
+    public void testCallbacksWithoutBatches() throws Exception {
+        testCallbacksCompleted(1, true, false);
+    }
+}
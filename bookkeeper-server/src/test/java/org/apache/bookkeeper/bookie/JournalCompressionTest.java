@@ -0,0 +1,332 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * Replay of the journal files holding compressed batches of entries (format V7).
+ */
+@RunWith(Parameterized.class)
+public class JournalCompressionTest {
+
+    private static final long LEDGER_ID = 5;
+    private static final int ENTRIES_PER_BATCH = 50;
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> data() {
+        List<Object[]> data = new ArrayList<>();
+        for (JournalCompressionCodec codec : JournalCompressionCodec.values()) {
+            data.add(new Object[]{codec});
+        }
+        return data;
+    }
+
+    private final JournalCompressionCodec codec;
+
+    private File journalDir;
+    private File ledgerDir;
+
+    public JournalCompressionTest(JournalCompressionCodec codec) {
+        this.codec = codec;
+    }
+
+    @Before
+    public void setup() throws Exception {
+        journalDir = Files.createTempDirectory("journal-compression-journal").toFile();
+        ledgerDir = Files.createTempDirectory("journal-compression-ledger").toFile();
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(journalDir));
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(ledgerDir));
+    }
+
+    @After
+    public void teardown() throws Exception {
+        FileUtils.deleteDirectory(journalDir);
+        FileUtils.deleteDirectory(ledgerDir);
+    }
+
+    private ServerConfiguration newConf(String compressionType, int formatVersion) {
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setJournalDirName(journalDir.getPath());
+        conf.setLedgerDirNames(new String[]{ledgerDir.getPath()});
+        conf.setJournalCompressionType(compressionType);
+        conf.setJournalFormatVersionToWrite(formatVersion);
+        // Group all the entries of a batch in a single write
+        conf.setJournalMaxGroupWaitMSec(200);
+        // The file descriptor is not accessible by reflection on recent JVMs
+        conf.setJournalRemovePagesFromCache(false);
+        return conf;
+    }
+
+    private Journal newJournal(ServerConfiguration conf) throws IOException {
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        return new Journal(0, BookieImpl.getCurrentDirectory(journalDir), conf, ledgerDirsManager);
+    }
+
+    private static ByteBuf newEntry(long entryId) {
+        ByteBuf entry = Unpooled.buffer();
+        entry.writeLong(LEDGER_ID);
+        entry.writeLong(entryId);
+        // Compressible payload
+        for (int i = 0; i < 64; i++) {
+            entry.writeLong(entryId);
+        }
+        return entry;
+    }
+
+    /**
+     * Write the entries in a new journal file, waiting for each batch to be acknowledged before adding the next one
+     * so that each batch is written as a separate compressed record.
+     *
+     * @return the id of the journal file
+     */
+    private long writeJournal(ServerConfiguration conf, long firstEntryId, int numBatches) throws Exception {
+        List<Long> existingIds = Journal.listJournalIds(BookieImpl.getCurrentDirectory(journalDir), null);
+        Journal journal = newJournal(conf);
+        journal.start();
+        try {
+            long entryId = firstEntryId;
+            for (int b = 0; b < numBatches; b++) {
+                CountDownLatch latch = new CountDownLatch(ENTRIES_PER_BATCH);
+                AtomicInteger failures = new AtomicInteger();
+                for (int i = 0; i < ENTRIES_PER_BATCH; i++) {
+                    journal.logAddEntry(newEntry(entryId++), false, (rc, ledgerId, eid, addr, ctx) -> {
+                        if (rc != BookieException.Code.OK) {
+                            failures.incrementAndGet();
+                        }
+                        latch.countDown();
+                    }, null);
+                }
+                assertTrue(latch.await(30, TimeUnit.SECONDS));
+                assertEquals(0, failures.get());
+            }
+        } finally {
+            journal.shutdown();
+        }
+
+        List<Long> ids = new ArrayList<>(Journal.listJournalIds(BookieImpl.getCurrentDirectory(journalDir), null));
+        ids.removeAll(existingIds);
+        assertEquals(1, ids.size());
+        return ids.get(0);
+    }
+
+    /**
+     * Entries read back from a journal file, with the offsets of the records holding them.
+     */
+    private static class Replay implements Journal.JournalScanner {
+        final List<Long> entryIds = new ArrayList<>();
+        final List<Long> offsets = new ArrayList<>();
+        final List<Integer> versions = new ArrayList<>();
+        long scanOffset;
+
+        @Override
+        public void process(int journalVersion, long offset, ByteBuffer entry) throws IOException {
+            assertEquals(LEDGER_ID, entry.getLong(entry.position()));
+            long entryId = entry.getLong(entry.position() + 8);
+            for (int i = 0; i < 64; i++) {
+                assertEquals(entryId, entry.getLong(entry.position() + 16 + i * 8));
+            }
+            entryIds.add(entryId);
+            offsets.add(offset);
+            versions.add(journalVersion);
+        }
+
+        /**
+         * @return the distinct offsets of the records, in order
+         */
+        List<Long> recordOffsets() {
+            List<Long> res = new ArrayList<>();
+            for (long offset : offsets) {
+                if (res.isEmpty() || res.get(res.size() - 1) != offset) {
+                    res.add(offset);
+                }
+            }
+            return res;
+        }
+    }
+
+    private Replay replay(Journal journal, long journalId) throws IOException {
+        Replay replay = new Replay();
+        replay.scanOffset = journal.scanJournal(journalId, 0, replay);
+        return replay;
+    }
+
+    private static List<Long> range(long first, int count) {
+        List<Long> res = new ArrayList<>();
+        for (long i = first; i < first + count; i++) {
+            res.add(i);
+        }
+        return res;
+    }
+
+    private ServerConfiguration codecConf() {
+        return newConf(codec.name().toLowerCase(Locale.ROOT),
+                codec == JournalCompressionCodec.NONE ? JournalChannel.V6 : JournalChannel.V7);
+    }
+
+    private File journalFile(long journalId) {
+        return new File(BookieImpl.getCurrentDirectory(journalDir), Long.toHexString(journalId) + ".txn");
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        ServerConfiguration conf = codecConf();
+        long journalId = writeJournal(conf, 0, 4);
+
+        Replay replay = replay(newJournal(conf), journalId);
+        assertEquals(range(0, 4 * ENTRIES_PER_BATCH), replay.entryIds);
+
+        if (codec == JournalCompressionCodec.NONE) {
+            // Each entry is a record
+            assertEquals(replay.offsets.size(), replay.recordOffsets().size());
+        } else {
+            // The compression writes the V7 format, and the entries of a batch share the offset of their record
+            assertTrue(replay.versions.stream().allMatch(v -> v == JournalChannel.V7));
+            assertEquals(4, replay.recordOffsets().size());
+        }
+
+        // The journal files can be read whatever codec is configured
+        Replay uncompressedReplay = replay(newJournal(newConf("none", JournalChannel.V6)), journalId);
+        assertEquals(replay.entryIds, uncompressedReplay.entryIds);
+    }
+
+    @Test
+    public void testTornBatch() throws Exception {
+        Assume.assumeTrue(codec != JournalCompressionCodec.NONE);
+        ServerConfiguration conf = codecConf();
+        long journalId = writeJournal(conf, 0, 3);
+        List<Long> batchOffsets = replay(newJournal(conf), journalId).recordOffsets();
+        assertEquals(3, batchOffsets.size());
+
+        // Cut the file in the middle of the header and then in the middle of the data of the last batch
+        long lastBatchOffset = batchOffsets.get(2);
+        for (long cut : new long[]{lastBatchOffset + 40, lastBatchOffset + 10}) {
+            try (RandomAccessFile file = new RandomAccessFile(journalFile(journalId), "rw")) {
+                file.setLength(cut);
+            }
+
+            Replay replay = replay(newJournal(conf), journalId);
+            assertEquals(range(0, 2 * ENTRIES_PER_BATCH), replay.entryIds);
+            assertEquals(lastBatchOffset, replay.scanOffset);
+        }
+    }
+
+    @Test
+    public void testCorruptedBatch() throws Exception {
+        Assume.assumeTrue(codec != JournalCompressionCodec.NONE);
+        ServerConfiguration conf = codecConf();
+        long journalId = writeJournal(conf, 0, 3);
+        List<Long> batchOffsets = replay(newJournal(conf), journalId).recordOffsets();
+        assertEquals(3, batchOffsets.size());
+
+        // Flip a byte of the compressed data of the second batch, the checksum doesn't match anymore
+        long secondBatchOffset = batchOffsets.get(1);
+        try (RandomAccessFile file = new RandomAccessFile(journalFile(journalId), "rw")) {
+            long pos = secondBatchOffset + Journal.COMPRESSED_BATCH_HEADER_SIZE + 5;
+            file.seek(pos);
+            int b = file.read();
+            file.seek(pos);
+            file.write(b ^ 0xff);
+        }
+
+        // The replay ends at the corrupted batch, the following batches are not replayed
+        Replay replay = replay(newJournal(conf), journalId);
+        assertEquals(range(0, ENTRIES_PER_BATCH), replay.entryIds);
+        assertEquals(secondBatchOffset, replay.scanOffset);
+    }
+
+    @Test
+    public void testMixedFormatVersions() throws Exception {
+        // A bookie that enables the compression after writing V6 journals
+        long v6JournalId = writeJournal(newConf("none", JournalChannel.V6), 0, 2);
+        ServerConfiguration conf = codecConf();
+        long v7JournalId = writeJournal(conf, 2 * ENTRIES_PER_BATCH, 2);
+        // and that disables it again
+        long lastJournalId = writeJournal(newConf("none", JournalChannel.V6), 4 * ENTRIES_PER_BATCH, 1);
+
+        Journal journal = newJournal(conf);
+        assertEquals(Arrays.asList(v6JournalId, v7JournalId, lastJournalId),
+                Journal.listJournalIds(BookieImpl.getCurrentDirectory(journalDir), null));
+
+        Replay v6Replay = replay(journal, v6JournalId);
+        assertEquals(range(0, 2 * ENTRIES_PER_BATCH), v6Replay.entryIds);
+        assertTrue(v6Replay.versions.stream().allMatch(v -> v == JournalChannel.V6));
+
+        Replay v7Replay = replay(journal, v7JournalId);
+        assertEquals(range(2 * ENTRIES_PER_BATCH, 2 * ENTRIES_PER_BATCH), v7Replay.entryIds);
+        int expectedVersion = codec == JournalCompressionCodec.NONE ? JournalChannel.V6 : JournalChannel.V7;
+        assertTrue(v7Replay.versions.stream().allMatch(v -> v == expectedVersion));
+
+        Replay lastReplay = replay(journal, lastJournalId);
+        assertEquals(range(4 * ENTRIES_PER_BATCH, ENTRIES_PER_BATCH), lastReplay.entryIds);
+        assertTrue(lastReplay.versions.stream().allMatch(v -> v == JournalChannel.V6));
+    }
+
+    @Test
+    public void testCompressionRequiresV7() throws Exception {
+        Assume.assumeTrue(codec != JournalCompressionCodec.NONE);
+        newConf(codec.name(), JournalChannel.V7).validate();
+
+        ServerConfiguration conf = newConf(codec.name(), JournalChannel.V6);
+        try {
+            conf.validate();
+            fail("The configuration should be rejected");
+        } catch (ConfigurationException e) {
+            // expected
+        }
+        try {
+            newJournal(conf);
+            fail("The journal should not be created");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
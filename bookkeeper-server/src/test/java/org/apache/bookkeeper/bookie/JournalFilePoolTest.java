@@ -0,0 +1,227 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the reuse of zeroed journal files by {@link JournalFilePool}.
+ */
+public class JournalFilePoolTest {
+
+    private static final int FILE_SIZE = 64 * 1024;
+    private static final int ENTRY_SIZE = 1024;
+
+    private File baseDir;
+    private File journalDir;
+
+    @Before
+    public void setup() throws Exception {
+        baseDir = Files.createTempDirectory("journal-file-pool").toFile();
+        journalDir = BookieImpl.getCurrentDirectory(new File(baseDir, "journal"));
+        BookieImpl.checkDirectoryStructure(journalDir);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        FileUtils.deleteDirectory(baseDir);
+    }
+
+    private File journalFile(long id) {
+        return new File(journalDir, Long.toHexString(id) + ".txn");
+    }
+
+    private File oldJournalFile(long id) throws IOException {
+        File file = journalFile(id);
+        byte[] data = new byte[FILE_SIZE];
+        Arrays.fill(data, (byte) 0x5a);
+        Files.write(file.toPath(), data);
+        return file;
+    }
+
+    private List<String> fileNames(String suffix) {
+        List<String> names = new ArrayList<>();
+        for (String name : journalDir.list()) {
+            if (name.endsWith(suffix)) {
+                names.add(name);
+            }
+        }
+        names.sort(null);
+        return names;
+    }
+
+    @Test
+    public void testReleaseAndAcquire() throws Exception {
+        JournalFilePool pool = new JournalFilePool(journalDir, 2);
+        // Nothing to reuse yet
+        assertFalse(pool.acquire(journalFile(10)));
+        assertFalse(journalFile(10).exists());
+
+        pool.release(oldJournalFile(1));
+        pool.release(oldJournalFile(2));
+        // The pool is full, the file is deleted
+        pool.release(oldJournalFile(3));
+        // Wait for the files to be zeroed
+        pool.shutdown();
+
+        assertFalse(journalFile(1).exists());
+        assertFalse(journalFile(2).exists());
+        assertFalse(journalFile(3).exists());
+        assertEquals(Arrays.asList("1.txn.free", "2.txn.free"), fileNames(JournalFilePool.FREE_SUFFIX));
+        assertTrue(fileNames(JournalFilePool.ZEROING_SUFFIX).isEmpty());
+        // The free files are never listed as journal files
+        assertTrue(Journal.listJournalIds(journalDir, null).isEmpty());
+
+        pool = new JournalFilePool(journalDir, 2);
+        try {
+            assertTrue(pool.acquire(journalFile(10)));
+            assertTrue(pool.acquire(journalFile(11)));
+            assertFalse(pool.acquire(journalFile(12)));
+        } finally {
+            pool.shutdown();
+        }
+        for (long id : new long[]{10, 11}) {
+            // The reused files keep their blocks, and are entirely zeroed
+            assertArrayEquals(new byte[FILE_SIZE], Files.readAllBytes(journalFile(id).toPath()));
+        }
+        assertTrue(fileNames(JournalFilePool.FREE_SUFFIX).isEmpty());
+    }
+
+    @Test
+    public void testExistingJournalFileNotOverwritten() throws Exception {
+        JournalFilePool pool = new JournalFilePool(journalDir, 2);
+        try {
+            pool.release(oldJournalFile(1));
+            File existing = oldJournalFile(2);
+            assertFalse(pool.acquire(existing));
+            assertEquals(FILE_SIZE, existing.length());
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(Arrays.asList("1.txn.free"), fileNames(JournalFilePool.FREE_SUFFIX));
+    }
+
+    @Test
+    public void testStartupCleanup() throws Exception {
+        // Files left by a crash while zeroing them, and more free files than the pool size
+        for (String name : new String[]{"1.txn.zeroing", "2.txn.free", "3.txn.free", "4.txn.free"}) {
+            Files.write(new File(journalDir, name).toPath(), new byte[FILE_SIZE]);
+        }
+        JournalFilePool pool = new JournalFilePool(journalDir, 2);
+        pool.shutdown();
+        assertTrue(fileNames(JournalFilePool.ZEROING_SUFFIX).isEmpty());
+        assertEquals(2, fileNames(JournalFilePool.FREE_SUFFIX).size());
+    }
+
+    @Test
+    public void testReleaseAfterShutdown() throws Exception {
+        JournalFilePool pool = new JournalFilePool(journalDir, 2);
+        pool.shutdown();
+        pool.release(oldJournalFile(1));
+        assertEquals(0, journalDir.list().length);
+    }
+
+    private Journal newJournal() throws Exception {
+        ServerConfiguration conf = BookieTestUtils.newServerConfiguration(baseDir);
+        conf.setJournalReuseFilesCount(1);
+        conf.setMaxBackupJournals(0);
+        conf.setProperty("journalPreAllocSizeMB", 1);
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        return new Journal(0, journalDir, conf, ledgerDirsManager);
+    }
+
+    private void addEntries(Journal journal, long ledgerId, int numEntries) throws Exception {
+        CountDownLatch latch = new CountDownLatch(numEntries);
+        AtomicInteger failures = new AtomicInteger();
+        for (int i = 0; i < numEntries; i++) {
+            journal.logAddEntry(BookieTestUtils.newEntry(ledgerId, i, ENTRY_SIZE), false,
+                    (rc, lid, eid, addr, ctx) -> {
+                        if (rc != BookieException.Code.OK) {
+                            failures.incrementAndGet();
+                        }
+                        latch.countDown();
+                    }, null);
+        }
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+        assertEquals(0, failures.get());
+    }
+
+    @Test
+    public void testJournalReusesGarbageCollectedFiles() throws Exception {
+        // Each journal writes a new journal file
+        Journal journal = newJournal();
+        journal.start();
+        addEntries(journal, 1, 200);
+        journal.shutdown();
+        long firstId = Journal.listJournalIds(journalDir, null).get(0);
+        long firstSize = journalFile(firstId).length();
+
+        journal = newJournal();
+        journal.start();
+        addEntries(journal, 2, 10);
+        // The first journal file is garbage collected, and zeroed before the journal is shut down
+        journal.checkpointComplete(journal.newCheckpoint(), true);
+        journal.shutdown();
+        assertFalse(journalFile(firstId).exists());
+        assertEquals(Arrays.asList(Long.toHexString(firstId) + JournalFilePool.FREE_SUFFIX),
+                fileNames(JournalFilePool.FREE_SUFFIX));
+
+        journal = newJournal();
+        journal.start();
+        addEntries(journal, 3, 10);
+        journal.shutdown();
+        assertTrue(fileNames(JournalFilePool.FREE_SUFFIX).isEmpty());
+        List<Long> ids = Journal.listJournalIds(journalDir, null);
+        assertEquals(2, ids.size());
+        long reusedId = ids.get(1);
+        // The new journal file is the first one, with its blocks
+        assertEquals(firstSize, journalFile(reusedId).length());
+
+        // Only the entries of the new journal are read back from the reused file, the scan stops at the zeros
+        List<Long> ledgerIds = new ArrayList<>();
+        newJournal().scanJournal(reusedId, 0, (version, offset, entry) -> ledgerIds.add(entry.getLong()));
+        assertEquals(10, ledgerIds.size());
+        for (long ledgerId : ledgerIds) {
+            assertEquals(3, ledgerId);
+        }
+    }
+}
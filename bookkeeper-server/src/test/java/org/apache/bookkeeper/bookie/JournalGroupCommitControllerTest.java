@@ -0,0 +1,142 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Unit tests of the adjustment of the group wait of the journal by {@link JournalGroupCommitController}.
+ */
+public class JournalGroupCommitControllerTest {
+
+    private static final long TARGET = TimeUnit.MILLISECONDS.toNanos(16);
+    private static final long SYNC = TimeUnit.MILLISECONDS.toNanos(4);
+    // the window grows by 1/16 of its bound
+    private static final long INCREMENT = (TARGET - SYNC) / 16;
+
+    private final JournalGroupCommitController controller = new JournalGroupCommitController(TARGET);
+    // arbitrary origin, the nano time can be negative
+    private long now = -TimeUnit.SECONDS.toNanos(1);
+
+    private void arrivals(int count, long interArrivalNanos) {
+        for (int i = 0; i < count; i++) {
+            now += interArrivalNanos;
+            controller.onArrival(now);
+        }
+    }
+
+    @Test
+    public void testInitialWindow() {
+        assertEquals(TARGET / 2, controller.getWindowNanos());
+        // Without arrivals to group, the window is closed
+        controller.update(SYNC);
+        assertEquals(0, controller.getWindowNanos());
+        // A single arrival gives no inter-arrival time yet
+        arrivals(1, 1000);
+        controller.update(SYNC);
+        assertEquals(0, controller.getWindowNanos());
+    }
+
+    @Test
+    public void testAdditiveIncrease() {
+        arrivals(10, 1000);
+        controller.onAcknowledged(TARGET / 2);
+        controller.update(SYNC);
+        assertEquals(TARGET / 2 + INCREMENT, controller.getWindowNanos());
+
+        // The window grows while the add latency is under the target, up to the part of the target not spent syncing
+        long previous = controller.getWindowNanos();
+        for (int i = 0; i < 100; i++) {
+            controller.update(SYNC);
+            long window = controller.getWindowNanos();
+            assertTrue(window == TARGET - SYNC || window == previous + INCREMENT);
+            previous = window;
+        }
+        assertEquals(TARGET - SYNC, controller.getWindowNanos());
+
+        // The bound follows the sync latency
+        controller.update(SYNC * 3 / 2);
+        assertEquals(TARGET - SYNC * 3 / 2, controller.getWindowNanos());
+        controller.update(TARGET);
+        assertEquals(0, controller.getWindowNanos());
+    }
+
+    @Test
+    public void testMultiplicativeDecrease() {
+        arrivals(10, 1000);
+        controller.onAcknowledged(TARGET / 2);
+        for (int i = 0; i < 100; i++) {
+            controller.update(SYNC);
+        }
+        assertEquals(TARGET - SYNC, controller.getWindowNanos());
+
+        // The target is exceeded, the window is halved on each flush
+        controller.onAcknowledged(TARGET * 20);
+        controller.update(SYNC);
+        assertEquals((TARGET - SYNC) / 2, controller.getWindowNanos());
+        controller.update(SYNC);
+        assertEquals((TARGET - SYNC) / 4, controller.getWindowNanos());
+
+        // It grows again once the average add latency is back under the target
+        while (controller.getWindowNanos() > 0) {
+            controller.update(SYNC);
+        }
+        for (int i = 0; i < 100; i++) {
+            controller.onAcknowledged(TARGET / 4);
+        }
+        controller.update(SYNC);
+        assertEquals(INCREMENT, controller.getWindowNanos());
+    }
+
+    @Test
+    public void testSparseArrivals() {
+        arrivals(10, 1000);
+        controller.onAcknowledged(TARGET / 2);
+        controller.update(SYNC);
+        assertTrue(controller.getWindowNanos() > 0);
+
+        // The next entry is not expected within the window, waiting would only add latency
+        arrivals(50, TARGET);
+        controller.update(SYNC);
+        assertEquals(0, controller.getWindowNanos());
+
+        // Dense arrivals reopen it
+        arrivals(50, 1000);
+        controller.update(SYNC);
+        assertEquals(INCREMENT, controller.getWindowNanos());
+    }
+
+    @Test
+    public void testBurstOfArrivals() {
+        // Entries enqueued at the same time, or dequeued out of order, keep the window open
+        arrivals(10, 0);
+        now -= 1000;
+        controller.onArrival(now);
+        controller.onAcknowledged(TARGET / 2);
+        controller.update(SYNC);
+        assertEquals(TARGET / 2 + INCREMENT, controller.getWindowNanos());
+    }
+}
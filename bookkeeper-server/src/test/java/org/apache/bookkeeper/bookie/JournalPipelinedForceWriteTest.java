@@ -0,0 +1,508 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the pipelined force writes of the journal ({@code journalMaxInFlightForceWrites} > 1): completion of the
+ * requests in order while their force writes overlap, grouping of the force writes, journal rollover and shutdown,
+ * and force write failures.
+ */
+public class JournalPipelinedForceWriteTest {
+
+    private static final long LEDGER_ID = 1;
+    private static final int MAX_IN_FLIGHT_FORCE_WRITES = 2;
+
+    /**
+     * A force write of a journal file, blocked until the test releases or fails it.
+     */
+    static class Sync {
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        void release() {
+            result.complete(null);
+        }
+
+        void fail() {
+            result.completeExceptionally(new IOException("Injected force write failure"));
+        }
+
+        void await() throws IOException {
+            try {
+                result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            } catch (ExecutionException e) {
+                throw (IOException) e.getCause();
+            }
+        }
+    }
+
+    // Force writes of the data of the journal files, in the order they started
+    private static final BlockingQueue<Sync> SYNCS = new LinkedBlockingQueue<>();
+    private static final AtomicInteger WRITES = new AtomicInteger();
+    private static final List<BlockingFileChannel> CHANNELS = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Provider of journal channels whose force writes of the data wait for the test.
+     */
+    public static class BlockingFileChannelProvider implements FileChannelProvider {
+        @Override
+        public BookieFileChannel open(File file, ServerConfiguration configuration) throws IOException {
+            return new BookieFileChannel() {
+                private RandomAccessFile raf;
+                private BlockingFileChannel fc;
+
+                @Override
+                public synchronized FileChannel getFileChannel() throws IOException {
+                    // The file is created when the journal gets its channel, as with the default channel
+                    if (fc == null) {
+                        raf = new RandomAccessFile(file, "rw");
+                        fc = new BlockingFileChannel(raf.getChannel());
+                        CHANNELS.add(fc);
+                    }
+                    return fc;
+                }
+
+                @Override
+                public boolean fileExists(File f) {
+                    return f.exists();
+                }
+
+                @Override
+                public synchronized FileDescriptor getFD() throws IOException {
+                    return raf.getFD();
+                }
+
+                @Override
+                public synchronized void close() throws IOException {
+                    if (fc != null) {
+                        fc.close();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public void close(BookieFileChannel bookieFileChannel) throws IOException {
+            bookieFileChannel.close();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * A file channel whose force writes of the data (without metadata) wait until released by the test.
+     */
+    static class BlockingFileChannel extends FileChannel {
+        private final FileChannel fc;
+
+        BlockingFileChannel(FileChannel fc) {
+            this.fc = fc;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            if (!metaData) {
+                Sync sync = new Sync();
+                SYNCS.add(sync);
+                sync.await();
+            }
+            fc.force(metaData);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int written = fc.write(src);
+            WRITES.incrementAndGet();
+            return written;
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            return fc.write(src, position);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            long written = fc.write(srcs, offset, length);
+            WRITES.incrementAndGet();
+            return written;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return fc.read(dst);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return fc.read(dst, position);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return fc.read(dsts, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return fc.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            fc.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return fc.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            fc.truncate(size);
+            return this;
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return fc.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return fc.transferFrom(src, position, count);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return fc.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return fc.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return fc.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            fc.close();
+        }
+    }
+
+    private File journalDir;
+    private File ledgerDir;
+    private Journal journal;
+    // Entries acknowledged by the journal, in order
+    private final List<Long> acknowledged = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger failures = new AtomicInteger();
+
+    @Before
+    public void setup() throws Exception {
+        SYNCS.clear();
+        WRITES.set(0);
+        CHANNELS.clear();
+        journalDir = Files.createTempDirectory("journal-force-write-journal").toFile();
+        ledgerDir = Files.createTempDirectory("journal-force-write-ledger").toFile();
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(journalDir));
+        BookieImpl.checkDirectoryStructure(BookieImpl.getCurrentDirectory(ledgerDir));
+    }
+
+    @After
+    public void teardown() throws Exception {
+        // Let the force writes still in flight finish, so that the journal shuts down promptly
+        SYNCS.forEach(Sync::release);
+        if (journal != null) {
+            CompletableFuture<Void> shutdown = CompletableFuture.runAsync(journal::shutdown);
+            while (!shutdown.isDone()) {
+                SYNCS.forEach(Sync::release);
+                Thread.sleep(10);
+            }
+        }
+        FileUtils.deleteDirectory(journalDir);
+        FileUtils.deleteDirectory(ledgerDir);
+    }
+
+    private void startJournal(boolean groupForceWrites, long maxJournalSizeMB) throws Exception {
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setJournalDirName(journalDir.getPath());
+        conf.setLedgerDirNames(new String[]{ledgerDir.getPath()});
+        conf.setJournalMaxInFlightForceWrites(MAX_IN_FLIGHT_FORCE_WRITES);
+        conf.setJournalAdaptiveGroupWrites(groupForceWrites);
+        conf.setJournalChannelProvider(BlockingFileChannelProvider.class.getName());
+        conf.setMaxJournalSizeMB(maxJournalSizeMB);
+        // Each entry is flushed and force written by its own request
+        conf.setJournalFlushWhenQueueEmpty(true);
+        // The file descriptor is not accessible by reflection on recent JVMs
+        conf.setJournalRemovePagesFromCache(false);
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        journal = new Journal(0, BookieImpl.getCurrentDirectory(journalDir), conf, ledgerDirsManager);
+        journal.start();
+    }
+
+    /**
+     * Add an entry and wait for its data to be written to the journal file.
+     */
+    private void addEntry(long entryId, int size) throws Exception {
+        int writes = WRITES.get();
+        ByteBuf entry = Unpooled.buffer(size);
+        entry.writeLong(LEDGER_ID);
+        entry.writeLong(entryId);
+        entry.writerIndex(size);
+        journal.logAddEntry(entry, false, (rc, ledgerId, eid, addr, ctx) -> {
+            if (rc == BookieException.Code.OK) {
+                acknowledged.add(eid);
+            } else {
+                failures.incrementAndGet();
+            }
+        }, null);
+        waitFor(() -> WRITES.get() > writes);
+    }
+
+    private void addEntry(long entryId) throws Exception {
+        addEntry(entryId, 1024);
+    }
+
+    private Sync nextSync() throws Exception {
+        Sync sync = SYNCS.poll(10, TimeUnit.SECONDS);
+        assertTrue("No force write started", sync != null);
+        return sync;
+    }
+
+    private void assertNoSync() throws Exception {
+        assertNull("Unexpected force write", SYNCS.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    private interface Condition {
+        boolean check() throws Exception;
+    }
+
+    private static void waitFor(Condition condition) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.check()) {
+            assertTrue("Timed out", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private void waitForAcknowledged(Long... entryIds) throws Exception {
+        List<Long> expected = new ArrayList<>();
+        Collections.addAll(expected, entryIds);
+        waitFor(() -> acknowledged.size() >= expected.size());
+        // Let late callbacks show up
+        Thread.sleep(100);
+        assertEquals(expected, new ArrayList<>(acknowledged));
+    }
+
+    private void waitForBlockedForceWriteThread() throws Exception {
+        // The request dequeued by the force write thread waits for a force write to be over
+        Thread forceWriteThread = journal.forceWriteThread;
+        waitFor(() -> journal.getForceWriteQueueLength() == 1
+                && forceWriteThread.getState() == Thread.State.WAITING);
+    }
+
+    @Test
+    public void testInOrderCompletion() throws Exception {
+        startJournal(false, 2048);
+        addEntry(0);
+        Sync sync0 = nextSync();
+        addEntry(1);
+        Sync sync1 = nextSync();
+
+        // The later force write is over first, but the earlier request is not persisted yet
+        sync1.release();
+        waitForAcknowledged();
+        sync0.release();
+        waitForAcknowledged(0L, 1L);
+
+        addEntry(2);
+        nextSync().release();
+        waitForAcknowledged(0L, 1L, 2L);
+        assertEquals(0, failures.get());
+    }
+
+    @Test
+    public void testGroupedForceWrites() throws Exception {
+        startJournal(true, 2048);
+        addEntry(0);
+        Sync sync0 = nextSync();
+        addEntry(1);
+        Sync sync1 = nextSync();
+        // The third request waits for a force write slot, and the fourth one is queued behind it
+        addEntry(2);
+        addEntry(3);
+        waitForBlockedForceWriteThread();
+        assertNoSync();
+
+        // The force write of the third request persists the fourth one as well
+        sync0.release();
+        Sync sync2 = nextSync();
+        waitForAcknowledged(0L);
+        sync1.release();
+        waitForAcknowledged(0L, 1L);
+        assertNoSync();
+        sync2.release();
+        waitForAcknowledged(0L, 1L, 2L, 3L);
+        assertNoSync();
+    }
+
+    @Test
+    public void testForceWritePerRequestWithoutGrouping() throws Exception {
+        startJournal(false, 2048);
+        addEntry(0);
+        Sync sync0 = nextSync();
+        addEntry(1);
+        Sync sync1 = nextSync();
+        addEntry(2);
+        addEntry(3);
+        waitForBlockedForceWriteThread();
+
+        sync0.release();
+        Sync sync2 = nextSync();
+        sync1.release();
+        Sync sync3 = nextSync();
+        sync3.release();
+        waitForAcknowledged(0L, 1L);
+        sync2.release();
+        waitForAcknowledged(0L, 1L, 2L, 3L);
+    }
+
+    @Test
+    public void testRollover() throws Exception {
+        startJournal(false, 1);
+        // The journal file is rolled over after the third entry
+        addEntry(0, 400 * 1024);
+        nextSync().release();
+        addEntry(1, 400 * 1024);
+        Sync sync1 = nextSync();
+        addEntry(2, 400 * 1024);
+        Sync sync2 = nextSync();
+        BlockingFileChannel firstFile = CHANNELS.get(0);
+
+        // The request of the new journal file gets a force write slot once the closing request is force written
+        addEntry(3);
+        assertEquals(2, CHANNELS.size());
+        assertNoSync();
+        sync2.release();
+        Sync sync3 = nextSync();
+        // The entries of the new journal file are not acknowledged before the ones of the previous file
+        sync3.release();
+        waitForAcknowledged(0L);
+        // The previous file is closed once the force writes on it are over
+        assertTrue(firstFile.isOpen());
+        sync1.release();
+        waitForAcknowledged(0L, 1L, 2L, 3L);
+        waitFor(() -> !firstFile.isOpen());
+        assertTrue(CHANNELS.get(1).isOpen());
+        assertEquals(2, Journal.listJournalIds(BookieImpl.getCurrentDirectory(journalDir), null).size());
+        assertEquals(0, failures.get());
+    }
+
+    @Test
+    public void testShutdownWaitsForInFlightForceWrites() throws Exception {
+        startJournal(false, 2048);
+        addEntry(0);
+        Sync sync0 = nextSync();
+        addEntry(1);
+        Sync sync1 = nextSync();
+
+        CompletableFuture<Void> shutdown = CompletableFuture.runAsync(journal::shutdown);
+        assertFalse(shutdown.isDone());
+        sync1.release();
+        sync0.release();
+        shutdown.get(10, TimeUnit.SECONDS);
+        journal = null;
+
+        // The force writes in flight completed their requests, and the journal file was closed
+        waitForAcknowledged(0L, 1L);
+        assertFalse(CHANNELS.get(0).isOpen());
+    }
+
+    @Test
+    public void testForceWriteFailure() throws Exception {
+        startJournal(false, 2048);
+        addEntry(0);
+        nextSync().release();
+        waitForAcknowledged(0L);
+        addEntry(1);
+        Sync sync1 = nextSync();
+        addEntry(2);
+        Sync sync2 = nextSync();
+
+        // The data of the failed request may be lost, so the later request is not acknowledged either
+        sync1.fail();
+        sync2.release();
+        Thread forceWriteThread = journal.forceWriteThread;
+        forceWriteThread.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(forceWriteThread.isAlive());
+        // The journal thread is stopped as well
+        journal.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(journal.isAlive());
+        waitForAcknowledged(0L);
+        assertFalse(CHANNELS.get(0).isOpen());
+    }
+}
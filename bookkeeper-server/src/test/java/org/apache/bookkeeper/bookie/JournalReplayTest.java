@@ -0,0 +1,193 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.proto.BookieProtocol;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * Replay of several journal directories on bookie startup, with and without applying the records in a pipeline
+ * ({@code journalReplayQueueSize}).
+ */
+@RunWith(Parameterized.class)
+public class JournalReplayTest {
+
+    private static final byte[] MASTER_KEY = "key".getBytes(UTF_8);
+    private static final int NUM_JOURNALS = 3;
+    private static final int NUM_LEDGERS = 6;
+    private static final int NUM_ENTRIES = 50;
+    private static final int ENTRY_SIZE = 100;
+
+    @Parameterized.Parameters(name = "journalReplayQueueSize={0}")
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][]{{0}, {16}});
+    }
+
+    private final int replayQueueSize;
+    private final List<File> dirs = new ArrayList<>();
+    private final List<BookieImpl> bookies = new ArrayList<>();
+    private BookieImpl replayed;
+
+    public JournalReplayTest(int replayQueueSize) {
+        this.replayQueueSize = replayQueueSize;
+    }
+
+    @Before
+    public void setup() throws Exception {
+        dirs.add(Files.createTempDirectory("journal-replay").toFile());
+    }
+
+    @After
+    public void teardown() throws Exception {
+        for (BookieImpl bookie : bookies) {
+            bookie.shutdown();
+        }
+        if (replayed != null) {
+            replayed.ledgerStorage.shutdown();
+        }
+        for (File dir : dirs) {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    private ServerConfiguration newConf(File baseDir) throws Exception {
+        ServerConfiguration conf = BookieTestUtils.newServerConfiguration(baseDir);
+        String[] journalDirs = new String[NUM_JOURNALS];
+        for (int i = 0; i < NUM_JOURNALS; i++) {
+            journalDirs[i] = new File(baseDir, "journal-" + i).getPath();
+        }
+        conf.setJournalDirsName(journalDirs);
+        conf.setJournalReplayQueueSize(replayQueueSize);
+        return conf;
+    }
+
+    /**
+     * Write entries of ledgers spread across the journals, and return the directories of the bookie as left on the
+     * disk if it crashed now.
+     */
+    private File writeAndCrash() throws Exception {
+        File baseDir = dirs.get(0);
+        BookieImpl bookie = BookieTestUtils.newBookie(newConf(baseDir), NullStatsLogger.INSTANCE);
+        bookies.add(bookie);
+        bookie.start();
+        for (int i = 0; i < NUM_ENTRIES; i++) {
+            for (long ledgerId = 1; ledgerId <= NUM_LEDGERS; ledgerId++) {
+                CompletableFuture<Integer> result = new CompletableFuture<>();
+                bookie.addEntry(BookieTestUtils.newEntry(ledgerId, i, ENTRY_SIZE), false,
+                        (rc, lid, eid, addr, ctx) -> result.complete(rc), null, MASTER_KEY);
+                assertEquals(BookieProtocol.EOK, (int) result.get(10, TimeUnit.SECONDS));
+            }
+        }
+
+        File crashDir = Files.createTempDirectory("journal-replay-crash").toFile();
+        dirs.add(crashDir);
+        FileUtils.copyDirectory(baseDir, crashDir);
+        return crashDir;
+    }
+
+    /**
+     * Create a bookie on the given directories, without starting it so that the journals are only replayed.
+     */
+    private BookieImpl newReplayedBookie(File baseDir) throws Exception {
+        replayed = BookieTestUtils.newBookie(newConf(baseDir), NullStatsLogger.INSTANCE);
+        assertEquals(NUM_JOURNALS, replayed.journals.size());
+        return replayed;
+    }
+
+    private static LogMark endOfJournal(Journal journal) throws IOException {
+        List<Long> ids = Journal.listJournalIds(journal.getJournalDirectory(), null);
+        long lastId = ids.get(ids.size() - 1);
+        return new LogMark(lastId, journal.scanJournal(lastId, 0, (version, offset, entry) -> {}));
+    }
+
+    @Test
+    public void testReplaySeveralJournals() throws Exception {
+        BookieImpl bookie = newReplayedBookie(writeAndCrash());
+        // Each journal has records to replay
+        for (Journal journal : bookie.journals) {
+            assertTrue(journal.getLastLogMark().getCurMark().compare(endOfJournal(journal)) < 0);
+        }
+        bookie.readJournal();
+
+        for (long ledgerId = 1; ledgerId <= NUM_LEDGERS; ledgerId++) {
+            for (int i = 0; i < NUM_ENTRIES; i++) {
+                ByteBuf entry = bookie.readEntry(ledgerId, i);
+                assertEquals(BookieTestUtils.newEntry(ledgerId, i, ENTRY_SIZE), entry);
+                entry.release();
+            }
+        }
+        // The log mark of each journal is moved to its end once all its records are applied
+        for (Journal journal : bookie.journals) {
+            LogMark end = endOfJournal(journal);
+            assertTrue(end.getLogFileOffset() > JournalChannel.HEADER_SIZE);
+            assertEquals(0, journal.getLastLogMark().getCurMark().compare(end));
+        }
+    }
+
+    @Test
+    public void testReplayFailure() throws Exception {
+        File crashDir = writeAndCrash();
+        // Corrupt the version of the journal files of one journal
+        File journalDir = BookieImpl.getCurrentDirectory(new File(crashDir, "journal-1"));
+        for (long id : Journal.listJournalIds(journalDir, null)) {
+            try (RandomAccessFile file = new RandomAccessFile(new File(journalDir, Long.toHexString(id) + ".txn"),
+                    "rw")) {
+                file.seek(4);
+                file.writeInt(Integer.MAX_VALUE);
+            }
+        }
+
+        BookieImpl bookie = newReplayedBookie(crashDir);
+        LogMark markBeforeReplay = new LogMark(bookie.journals.get(1).getLastLogMark().getCurMark());
+        try {
+            bookie.readJournal();
+            fail("The replay of the corrupted journal should fail");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Invalid journal version"));
+        }
+        // The log mark of the failed journal is not moved
+        assertEquals(0, bookie.journals.get(1).getLastLogMark().getCurMark().compare(markBeforeReplay));
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests of the assignment of the ledgers to the journals by {@link LoadAwareJournalSelector}.
+ */
+public class LoadAwareJournalSelectorTest {
+
+    private static final int NUM_JOURNALS = 3;
+
+    private final List<Journal> journals = new ArrayList<>();
+    private final AtomicIntegerArray queued = new AtomicIntegerArray(NUM_JOURNALS);
+    private final AtomicIntegerArray forceWriteQueued = new AtomicIntegerArray(NUM_JOURNALS);
+    private final AtomicLongArray avgForceWriteLatencyNanos = new AtomicLongArray(NUM_JOURNALS);
+    private LoadAwareJournalSelector selector;
+
+    @Before
+    public void setup() {
+        for (int i = 0; i < NUM_JOURNALS; i++) {
+            int index = i;
+            // The loads are read from arrays, since stubbing the mocks is not thread safe
+            Journal journal = mock(Journal.class);
+            when(journal.getJournalQueueLength()).thenAnswer(invocation -> queued.get(index));
+            when(journal.getForceWriteQueueLength()).thenAnswer(invocation -> forceWriteQueued.get(index));
+            when(journal.getAvgForceWriteLatencyNanos()).thenAnswer(invocation -> avgForceWriteLatencyNanos.get(index));
+            journals.add(journal);
+            setLoad(i, 0, 0, TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        selector = new LoadAwareJournalSelector(journals);
+    }
+
+    private void setLoad(int journalIndex, int queueLength, int forceWriteQueueLength, long avgLatencyNanos) {
+        queued.set(journalIndex, queueLength);
+        forceWriteQueued.set(journalIndex, forceWriteQueueLength);
+        avgForceWriteLatencyNanos.set(journalIndex, avgLatencyNanos);
+    }
+
+    @Test
+    public void testStaticAssignmentWhenEquallyLoaded() {
+        for (long ledgerId = 0; ledgerId < 10; ledgerId++) {
+            assertSame(journals.get((int) (ledgerId % NUM_JOURNALS)), selector.getJournal(ledgerId));
+        }
+        // Without samples of the sync latency, the journals are equally loaded too
+        for (int i = 0; i < NUM_JOURNALS; i++) {
+            setLoad(i, 0, 0, 0);
+        }
+        assertSame(journals.get(1), selector.getJournal(100));
+    }
+
+    @Test
+    public void testLeastLoadedJournal() {
+        // Ledger 0 would go to journal 0, which has the most pending requests
+        setLoad(0, 10, 5, TimeUnit.MILLISECONDS.toNanos(1));
+        setLoad(1, 2, 0, TimeUnit.MILLISECONDS.toNanos(1));
+        setLoad(2, 0, 1, TimeUnit.MILLISECONDS.toNanos(1));
+        assertSame(journals.get(2), selector.getJournal(0));
+
+        // Fewer pending requests don't help a journal whose syncs are much slower
+        setLoad(2, 0, 0, TimeUnit.MILLISECONDS.toNanos(100));
+        assertSame(journals.get(1), selector.getJournal(3));
+    }
+
+    @Test
+    public void testLedgersStickToTheirJournal() {
+        setLoad(0, 10, 0, TimeUnit.MILLISECONDS.toNanos(1));
+        assertSame(journals.get(1), selector.getJournal(0));
+
+        // The load changes, but the records of the ledger stay in a single journal
+        setLoad(0, 0, 0, TimeUnit.MILLISECONDS.toNanos(1));
+        setLoad(1, 100, 100, TimeUnit.MILLISECONDS.toNanos(10));
+        assertSame(journals.get(1), selector.getJournal(0));
+        assertSame(journals.get(0), selector.getJournal(3));
+    }
+
+    @Test
+    public void testDeletedLedgersAreReassigned() {
+        setLoad(0, 10, 0, TimeUnit.MILLISECONDS.toNanos(1));
+        assertSame(journals.get(1), selector.getJournal(0));
+
+        setLoad(0, 0, 0, TimeUnit.MILLISECONDS.toNanos(1));
+        setLoad(1, 10, 0, TimeUnit.MILLISECONDS.toNanos(1));
+        selector.ledgerDeleted(0);
+        // Once deleted, the ledger is forgotten and assigned again from the current load
+        assertSame(journals.get(0), selector.getJournal(0));
+        // Deleting an unknown ledger is a no-op
+        selector.ledgerDeleted(42);
+        assertSame(journals.get(0), selector.getJournal(0));
+    }
+
+    @Test
+    public void testConcurrentAssignments() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Set<Journal>>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    Set<Journal> assigned = new HashSet<>();
+                    start.await();
+                    for (int i = 0; i < 1000; i++) {
+                        // Change the load while the ledger is being assigned
+                        setLoad(i % NUM_JOURNALS, thread, 0, TimeUnit.MILLISECONDS.toNanos(1));
+                        assigned.add(selector.getJournal(7));
+                    }
+                    return assigned;
+                }));
+            }
+            start.countDown();
+            Set<Journal> assigned = Collections.newSetFromMap(new ConcurrentHashMap<>());
+            for (Future<Set<Journal>> future : futures) {
+                assigned.addAll(future.get(30, TimeUnit.SECONDS));
+            }
+            // All the threads got the same journal for the ledger
+            assertEquals(1, assigned.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
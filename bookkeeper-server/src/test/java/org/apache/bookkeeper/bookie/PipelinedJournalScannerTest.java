@@ -0,0 +1,208 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link PipelinedJournalScanner}: order of the applied records, failures to apply them, and
+ * interruptions of the thread reading the journal.
+ */
+public class PipelinedJournalScannerTest {
+
+    /**
+     * A scanner recording the offsets of the applied records, and checking that they are applied by another thread
+     * than the one reading the journal.
+     */
+    private static class RecordingScanner implements Journal.JournalScanner {
+        final List<Long> offsets = Collections.synchronizedList(new ArrayList<>());
+        final List<Long> values = Collections.synchronizedList(new ArrayList<>());
+        final Thread readThread = Thread.currentThread();
+        volatile CountDownLatch applyLatch = new CountDownLatch(0);
+        volatile long failAtOffset = -1;
+        volatile RuntimeException failure;
+
+        @Override
+        public void process(int journalVersion, long offset, ByteBuffer entry) throws IOException {
+            assertNotEquals(readThread, Thread.currentThread());
+            try {
+                applyLatch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+            if (offset == failAtOffset) {
+                if (failure != null) {
+                    throw failure;
+                }
+                throw new IOException("Failed to apply record " + offset);
+            }
+            offsets.add(offset);
+            values.add(entry.getLong());
+        }
+    }
+
+    private static void process(PipelinedJournalScanner pipeline, ByteBuffer entry, long offset) throws IOException {
+        entry.clear();
+        entry.putLong(0, offset * 10);
+        pipeline.process(JournalChannel.V6, offset, entry);
+    }
+
+    @Test
+    public void testRecordsAppliedInOrder() throws Exception {
+        RecordingScanner scanner = new RecordingScanner();
+        List<Long> expected = new ArrayList<>();
+        try (PipelinedJournalScanner pipeline = new PipelinedJournalScanner(scanner, 2, "test-replay")) {
+            // The journal reuses its read buffer, the records are copied
+            ByteBuffer entry = ByteBuffer.allocate(8);
+            for (long offset = 0; offset < 100; offset++) {
+                process(pipeline, entry, offset);
+                expected.add(offset);
+            }
+            pipeline.finish();
+        }
+        // All the records are applied once finished
+        assertEquals(expected, scanner.offsets);
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i) * 10, (long) scanner.values.get(i));
+        }
+    }
+
+    @Test
+    public void testFinishWaitsForTheQueuedRecords() throws Exception {
+        RecordingScanner scanner = new RecordingScanner();
+        scanner.applyLatch = new CountDownLatch(1);
+        try (PipelinedJournalScanner pipeline = new PipelinedJournalScanner(scanner, 10, "test-replay")) {
+            ByteBuffer entry = ByteBuffer.allocate(8);
+            for (long offset = 0; offset < 5; offset++) {
+                process(pipeline, entry, offset);
+            }
+            CompletableFuture<Void> finish = CompletableFuture.runAsync(() -> {
+                try {
+                    pipeline.finish();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            Thread.sleep(100);
+            assertFalse(finish.isDone());
+            assertTrue(scanner.offsets.isEmpty());
+
+            scanner.applyLatch.countDown();
+            finish.get(10, TimeUnit.SECONDS);
+            assertEquals(5, scanner.offsets.size());
+        }
+    }
+
+    @Test
+    public void testApplyFailure() throws Exception {
+        RecordingScanner scanner = new RecordingScanner();
+        scanner.failAtOffset = 3;
+        try (PipelinedJournalScanner pipeline = new PipelinedJournalScanner(scanner, 2, "test-replay")) {
+            ByteBuffer entry = ByteBuffer.allocate(8);
+            long offset = 0;
+            try {
+                // The failure is rethrown to the reading thread by one of the next records
+                while (offset < 1000) {
+                    process(pipeline, entry, offset++);
+                    Thread.sleep(1);
+                }
+                fail("The failure to apply a record should stop the replay");
+            } catch (IOException e) {
+                assertEquals("Failed to apply record 3", e.getMessage());
+            }
+            try {
+                pipeline.finish();
+                fail("The failure should be rethrown when finishing");
+            } catch (IOException e) {
+                assertEquals("Failed to apply record 3", e.getMessage());
+            }
+        }
+        // The records after the failed one are not applied
+        assertEquals(3, scanner.offsets.size());
+    }
+
+    @Test
+    public void testApplyRuntimeFailure() throws Exception {
+        RecordingScanner scanner = new RecordingScanner();
+        scanner.failAtOffset = 0;
+        scanner.failure = new IllegalStateException("Unexpected record");
+        try (PipelinedJournalScanner pipeline = new PipelinedJournalScanner(scanner, 2, "test-replay")) {
+            process(pipeline, ByteBuffer.allocate(8), 0);
+            pipeline.finish();
+            fail("The failure should be rethrown when finishing");
+        } catch (IOException e) {
+            assertSame(scanner.failure, e.getCause());
+        }
+        assertTrue(scanner.offsets.isEmpty());
+    }
+
+    @Test
+    public void testInterruptedReadThread() throws Exception {
+        RecordingScanner scanner = new RecordingScanner();
+        scanner.applyLatch = new CountDownLatch(1);
+        PipelinedJournalScanner pipeline = new PipelinedJournalScanner(scanner, 1, "test-replay");
+        try {
+            // The reading thread blocks once the queue is full, until it is interrupted
+            CompletableFuture<IOException> failure = new CompletableFuture<>();
+            Thread readThread = new Thread(() -> {
+                ByteBuffer entry = ByteBuffer.allocate(8);
+                try {
+                    for (long offset = 0; offset < 10; offset++) {
+                        process(pipeline, entry, offset);
+                    }
+                    failure.complete(null);
+                } catch (IOException e) {
+                    assertTrue(Thread.currentThread().isInterrupted());
+                    failure.complete(e);
+                }
+            }, "test-journal-read");
+            readThread.start();
+            Thread.sleep(100);
+            assertFalse(failure.isDone());
+            readThread.interrupt();
+            IOException e = failure.get(10, TimeUnit.SECONDS);
+            assertEquals("Interrupted while replaying journal", e.getMessage());
+            assertTrue(e.getCause() instanceof InterruptedException);
+        } finally {
+            // Closing stops the record being applied, and drops the queued ones
+            pipeline.close();
+        }
+        scanner.applyLatch.countDown();
+        assertTrue(scanner.offsets.isEmpty());
+    }
+}
@@ -0,0 +1,303 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.bookkeeper.bookie.BookieImpl;
+import org.apache.bookkeeper.bookie.CheckpointSource;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the flushes of the write caches with several threads: partitions of {@link WriteCache#forEach} in ranges
+ * of whole ledgers, and fallback to a single flush thread without an entry log per ledger.
+ */
+public class DbLedgerStorageFlushThreadsTest {
+
+    private static final byte[] MASTER_KEY = "key".getBytes(UTF_8);
+    private static final int ENTRY_SIZE = 64;
+    private static final int NUM_CONSUMERS = 4;
+
+    private ExecutorService executor;
+    private WriteCache cache;
+    private File tmpDir;
+    private DbLedgerStorage storage;
+
+    @Before
+    public void setup() throws Exception {
+        executor = Executors.newFixedThreadPool(NUM_CONSUMERS);
+        cache = new WriteCache(UnpooledByteBufAllocator.DEFAULT, 1024 * 1024);
+        tmpDir = Files.createTempDirectory("db-storage-flush-threads").toFile();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        if (storage != null) {
+            storage.shutdown();
+        }
+        cache.close();
+        executor.shutdownNow();
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    private static ByteBuf newEntry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        while (entry.isWritable()) {
+            entry.writeByte((int) entryId);
+        }
+        return entry;
+    }
+
+    private void put(long ledgerId, int numEntries) {
+        // Out of order, the cache sorts the entries
+        for (long entryId = numEntries - 1; entryId >= 0; entryId--) {
+            assertTrue(cache.put(ledgerId, entryId, newEntry(ledgerId, entryId)));
+        }
+    }
+
+    /**
+     * Consumer recording the entries of its partition and the threads it was called from.
+     */
+    private static class RecordingConsumer implements WriteCache.EntryConsumer {
+        final List<long[]> entries = new ArrayList<>();
+        final Set<Thread> threads = new HashSet<>();
+
+        @Override
+        public void accept(long ledgerId, long entryId, ByteBuf entry) {
+            assertEquals(newEntry(ledgerId, entryId), entry);
+            entries.add(new long[]{ledgerId, entryId});
+            threads.add(Thread.currentThread());
+        }
+    }
+
+    private RecordingConsumer[] forEachPartitioned() throws Exception {
+        RecordingConsumer[] consumers = new RecordingConsumer[NUM_CONSUMERS];
+        for (int i = 0; i < NUM_CONSUMERS; i++) {
+            consumers[i] = new RecordingConsumer();
+        }
+        cache.forEach(consumers, executor);
+        return consumers;
+    }
+
+    /**
+     * Check that the partitions hold contiguous ranges of whole ledgers, with the entries in order.
+     *
+     * @return the number of entries of each ledger
+     */
+    private static Map<Long, Integer> checkPartitions(RecordingConsumer[] consumers) {
+        Map<Long, Integer> entriesPerLedger = new HashMap<>();
+        long previousLedgerId = -1;
+        long previousEntryId = -1;
+        for (RecordingConsumer consumer : consumers) {
+            if (consumer.entries.isEmpty()) {
+                continue;
+            }
+            assertEquals(1, consumer.threads.size());
+            assertFalse(consumer.threads.contains(Thread.currentThread()));
+            // A partition starts with a new ledger
+            assertTrue(consumer.entries.get(0)[0] > previousLedgerId);
+            for (long[] e : consumer.entries) {
+                if (e[0] == previousLedgerId) {
+                    assertEquals(previousEntryId + 1, e[1]);
+                } else {
+                    assertTrue(e[0] > previousLedgerId);
+                    assertEquals(0, e[1]);
+                }
+                previousLedgerId = e[0];
+                previousEntryId = e[1];
+                entriesPerLedger.merge(e[0], 1, Integer::sum);
+            }
+        }
+        return entriesPerLedger;
+    }
+
+    private static int usedPartitions(RecordingConsumer[] consumers) {
+        int used = 0;
+        for (RecordingConsumer consumer : consumers) {
+            if (!consumer.entries.isEmpty()) {
+                used++;
+            }
+        }
+        return used;
+    }
+
+    @Test
+    public void testPartitionsOfWholeLedgers() throws Exception {
+        Map<Long, Integer> expected = new HashMap<>();
+        for (long ledgerId = 1; ledgerId <= 20; ledgerId++) {
+            // Ledgers of different sizes, so that the partitions end in the middle of a ledger
+            int numEntries = (int) (ledgerId * 7 % 13) + 1;
+            put(ledgerId, numEntries);
+            expected.put(ledgerId, numEntries);
+        }
+
+        RecordingConsumer[] consumers = forEachPartitioned();
+        assertEquals(expected, checkPartitions(consumers));
+        assertEquals(NUM_CONSUMERS, usedPartitions(consumers));
+    }
+
+    @Test
+    public void testSingleLedgerInOnePartition() throws Exception {
+        put(1, 100);
+        RecordingConsumer[] consumers = forEachPartitioned();
+        assertEquals(100, (int) checkPartitions(consumers).get(1L));
+        assertEquals(1, usedPartitions(consumers));
+    }
+
+    @Test
+    public void testFewerEntriesThanPartitions() throws Exception {
+        put(1, 1);
+        put(2, 1);
+        RecordingConsumer[] consumers = forEachPartitioned();
+        assertEquals(2, checkPartitions(consumers).size());
+        assertEquals(2, usedPartitions(consumers));
+
+        // An empty cache passes no entry
+        cache.clear();
+        assertEquals(0, usedPartitions(forEachPartitioned()));
+    }
+
+    @Test
+    public void testDeletedLedgersAreSkipped() throws Exception {
+        put(1, 10);
+        put(2, 10);
+        put(3, 10);
+        cache.deleteLedger(2);
+        Map<Long, Integer> entriesPerLedger = checkPartitions(forEachPartitioned());
+        assertEquals(2, entriesPerLedger.size());
+        assertFalse(entriesPerLedger.containsKey(2L));
+    }
+
+    @Test
+    public void testConsumerFailure() throws Exception {
+        for (long ledgerId = 1; ledgerId <= 8; ledgerId++) {
+            put(ledgerId, 10);
+        }
+        RuntimeException failure = new RuntimeException("Failed to add entry");
+        WriteCache.EntryConsumer[] consumers = new WriteCache.EntryConsumer[NUM_CONSUMERS];
+        for (int i = 0; i < NUM_CONSUMERS; i++) {
+            consumers[i] = (ledgerId, entryId, entry) -> {
+                if (ledgerId == 5) {
+                    throw failure;
+                }
+            };
+        }
+        try {
+            cache.forEach(consumers, executor);
+            fail("The failure of a partition should be rethrown");
+        } catch (RuntimeException e) {
+            assertSame(failure, e);
+        }
+    }
+
+    private void startStorage(int flushThreads, boolean entryLogPerLedger) throws Exception {
+        File ledgerDir = new File(tmpDir, "ledgers");
+        BookieImpl.getCurrentDirectory(ledgerDir).mkdirs();
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setBookieId("test-bookie");
+        conf.setLedgerDirNames(new String[]{ledgerDir.getPath()});
+        // There is no metadata store to check the ledgers to garbage collect
+        conf.setGcWaitTime(TimeUnit.HOURS.toMillis(1));
+        conf.setMinorCompactionInterval(0);
+        conf.setMajorCompactionInterval(0);
+        conf.setEntryLogPerLedgerEnabled(entryLogPerLedger);
+        conf.setProperty(DbLedgerStorage.FLUSH_THREADS, flushThreads);
+        // Use the RocksDB options of the distribution when the tests run from the module directory
+        File confDir = new File("../conf");
+        if (confDir.exists()) {
+            conf.setEntryLocationRocksdbConf(new File(confDir, "entry_location_rocksdb.conf").getAbsolutePath());
+            conf.setLedgerMetadataRocksdbConf(new File(confDir, "ledger_metadata_rocksdb.conf").getAbsolutePath());
+        }
+
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        storage = new DbLedgerStorage();
+        storage.initialize(conf, null, ledgerDirsManager, ledgerDirsManager, NullStatsLogger.INSTANCE,
+                UnpooledByteBufAllocator.DEFAULT);
+        storage.setCheckpointSource(CheckpointSource.DEFAULT);
+    }
+
+    private void addFlushAndRead() throws Exception {
+        for (long ledgerId = 1; ledgerId <= 10; ledgerId++) {
+            storage.setMasterKey(ledgerId, MASTER_KEY);
+            for (long entryId = 0; entryId < 20; entryId++) {
+                storage.addEntry(newEntry(ledgerId, entryId));
+            }
+        }
+        storage.flush();
+        for (long ledgerId = 1; ledgerId <= 10; ledgerId++) {
+            for (long entryId = 0; entryId < 20; entryId++) {
+                ByteBuf entry = storage.getEntry(ledgerId, entryId);
+                assertEquals(newEntry(ledgerId, entryId), entry);
+                entry.release();
+            }
+        }
+    }
+
+    @Test
+    public void testSingleThreadWithoutEntryLogPerLedger() throws Exception {
+        // Concurrent appends to the single entry log would interleave the ledgers, the option is ignored
+        startStorage(NUM_CONSUMERS, false);
+        assertEquals(1, storage.getLedgerStorageList().get(0).getFlushThreads());
+        addFlushAndRead();
+    }
+
+    @Test
+    public void testFlushThreadsWithEntryLogPerLedger() throws Exception {
+        startStorage(NUM_CONSUMERS, true);
+        assertEquals(NUM_CONSUMERS, storage.getLedgerStorageList().get(0).getFlushThreads());
+        addFlushAndRead();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidFlushThreads() throws Exception {
+        startStorage(0, true);
+    }
+}
@@ -0,0 +1,248 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.AbstractByteBufAllocator;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.BookieImpl;
+import org.apache.bookkeeper.bookie.CheckpointSource;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.bookie.LedgerStorage.EntryConsumer;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the sequential scans of {@link SingleDirectoryDbLedgerStorage#scanEntries}: limits of the scanned range,
+ * size of the reads from the entry logs, and ledgers whose entries span several entry logs.
+ */
+public class DbLedgerStorageScanTest {
+
+    private static final byte[] MASTER_KEY = "key".getBytes(UTF_8);
+    private static final long LEDGER_ID = 1;
+    private static final int ENTRY_SIZE = 1000;
+    private static final int NUM_ENTRIES = 200;
+    private static final int SCAN_READ_BUFFER_SIZE = 1024 * 1024;
+
+    private File tmpDir;
+    private DbLedgerStorage storage;
+    // Read chunks allocated by the sequential scans
+    private final List<ByteBuf> scanChunks = new ArrayList<>();
+
+    @Before
+    public void setup() throws Exception {
+        tmpDir = Files.createTempDirectory("db-storage-scan").toFile();
+        File ledgerDir = new File(tmpDir, "ledgers");
+        BookieImpl.getCurrentDirectory(ledgerDir).mkdirs();
+
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setBookieId("test-bookie");
+        conf.setLedgerDirNames(new String[]{ledgerDir.getPath()});
+        // There is no metadata store to check the ledgers to garbage collect
+        conf.setGcWaitTime(TimeUnit.HOURS.toMillis(1));
+        conf.setMinorCompactionInterval(0);
+        conf.setMajorCompactionInterval(0);
+        // Entry logs of about 64 entries, so that the entries of the ledger span several entry logs
+        conf.setEntryLogSizeLimit(64 * (4 + ENTRY_SIZE));
+        conf.setProperty(DbLedgerStorage.SCAN_READ_BUFFER_SIZE, SCAN_READ_BUFFER_SIZE);
+        // Use the RocksDB options of the distribution when the tests run from the module directory
+        File confDir = new File("../conf");
+        if (confDir.exists()) {
+            conf.setEntryLocationRocksdbConf(new File(confDir, "entry_location_rocksdb.conf").getAbsolutePath());
+            conf.setLedgerMetadataRocksdbConf(new File(confDir, "ledger_metadata_rocksdb.conf").getAbsolutePath());
+        }
+
+        ByteBufAllocator allocator = new AbstractByteBufAllocator(true) {
+            @Override
+            protected ByteBuf newHeapBuffer(int initialCapacity, int maxCapacity) {
+                return UnpooledByteBufAllocator.DEFAULT.heapBuffer(initialCapacity, maxCapacity);
+            }
+
+            @Override
+            protected ByteBuf newDirectBuffer(int initialCapacity, int maxCapacity) {
+                ByteBuf buffer = UnpooledByteBufAllocator.DEFAULT.directBuffer(initialCapacity, maxCapacity);
+                if (maxCapacity == SCAN_READ_BUFFER_SIZE) {
+                    synchronized (scanChunks) {
+                        scanChunks.add(buffer);
+                    }
+                }
+                return buffer;
+            }
+
+            @Override
+            public boolean isDirectBufferPooled() {
+                return false;
+            }
+        };
+
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        storage = new DbLedgerStorage();
+        storage.initialize(conf, null, ledgerDirsManager, ledgerDirsManager, NullStatsLogger.INSTANCE, allocator);
+        storage.setCheckpointSource(CheckpointSource.DEFAULT);
+        storage.setMasterKey(LEDGER_ID, MASTER_KEY);
+
+        for (long entryId = 0; entryId < NUM_ENTRIES; entryId++) {
+            ByteBuf entry = newEntry(entryId);
+            storage.addEntry(entry);
+            entry.release();
+        }
+        // Move the entries from the write cache to the entry logs
+        storage.flush();
+        scanChunks.clear();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        storage.shutdown();
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    private static ByteBuf newEntry(long entryId) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writeLong(LEDGER_ID);
+        entry.writeLong(entryId);
+        while (entry.isWritable()) {
+            entry.writeByte((int) entryId);
+        }
+        return entry;
+    }
+
+    /**
+     * Consumer checking the scanned entries, which stops once it got more than <i>maxSize</i> bytes.
+     */
+    private static class CheckingConsumer implements EntryConsumer {
+        private final long maxSize;
+        long nextEntryId;
+        long size = 0;
+
+        CheckingConsumer(long firstEntryId, long maxSize) {
+            this.nextEntryId = firstEntryId;
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        public boolean accept(long entryId, ByteBuf entry) {
+            try {
+                assertEquals(nextEntryId, entryId);
+                assertEquals(newEntry(entryId), entry);
+            } finally {
+                entry.release();
+            }
+            nextEntryId++;
+            size += ENTRY_SIZE;
+            return size < maxSize;
+        }
+    }
+
+    private long scan(long firstEntryId, long lastEntryId, long maxSize) throws Exception {
+        CheckingConsumer consumer = new CheckingConsumer(firstEntryId, maxSize);
+        long count = storage.scanEntries(LEDGER_ID, firstEntryId, lastEntryId, maxSize, consumer);
+        assertEquals(firstEntryId + count, consumer.nextEntryId);
+        return count;
+    }
+
+    private int maxScanChunkCapacity() {
+        int capacity = 0;
+        for (ByteBuf chunk : scanChunks) {
+            capacity = Math.max(capacity, chunk.capacity());
+        }
+        return capacity;
+    }
+
+    @Test
+    public void testScanAcrossEntryLogs() throws Exception {
+        long firstLogId = storage.getLocation(LEDGER_ID, 0) >> 32;
+        long lastLogId = storage.getLocation(LEDGER_ID, NUM_ENTRIES - 1) >> 32;
+        assertTrue("The entries should span several entry logs", lastLogId - firstLogId >= 2);
+
+        assertEquals(NUM_ENTRIES, scan(0, Long.MAX_VALUE, Long.MAX_VALUE));
+        assertEquals(101, scan(50, 150, Long.MAX_VALUE));
+        // Each entry log was streamed with its own chunk
+        assertTrue(scanChunks.size() > 1);
+    }
+
+    @Test
+    public void testCountLimit() throws Exception {
+        assertEquals(10, scan(10, 19, Long.MAX_VALUE));
+        assertEquals(1, scan(0, 0, Long.MAX_VALUE));
+        // The scan stops at the last stored entry
+        assertEquals(10, scan(NUM_ENTRIES - 10, NUM_ENTRIES + 100, Long.MAX_VALUE));
+
+        // A short range only reads its entries, not a full read buffer
+        scanChunks.clear();
+        assertEquals(3, scan(20, 22, Long.MAX_VALUE));
+        assertEquals(1, scanChunks.size());
+        assertTrue(maxScanChunkCapacity() <= 3 * (4 + ENTRY_SIZE));
+
+        try {
+            scan(NUM_ENTRIES, NUM_ENTRIES + 10, Long.MAX_VALUE);
+            fail("The first entry of the scan is not stored");
+        } catch (Bookie.NoEntryException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSizeLimit() throws Exception {
+        assertEquals(5, scan(0, Long.MAX_VALUE, 5 * ENTRY_SIZE));
+        assertEquals(6, scan(0, Long.MAX_VALUE, 5 * ENTRY_SIZE + 1));
+        // The first entry is always returned
+        assertEquals(1, scan(30, Long.MAX_VALUE, 1));
+
+        // The reads are bounded by the size the consumer accepts, plus the entry that stops the scan
+        scanChunks.clear();
+        assertEquals(10, scan(0, Long.MAX_VALUE, 10 * ENTRY_SIZE));
+        assertFalse(scanChunks.isEmpty());
+        int capacity = maxScanChunkCapacity();
+        assertTrue("Chunk of " + capacity + " bytes", capacity <= 11 * (4 + ENTRY_SIZE));
+        assertNotEquals(SCAN_READ_BUFFER_SIZE, capacity);
+    }
+
+    @Test
+    public void testLargeScanUsesTheReadBuffer() throws Exception {
+        // Without limits, the scan reads large chunks
+        assertEquals(NUM_ENTRIES, scan(0, Long.MAX_VALUE, Long.MAX_VALUE));
+        assertTrue(maxScanChunkCapacity() > 32 * (4 + ENTRY_SIZE));
+        assertTrue(maxScanChunkCapacity() <= SCAN_READ_BUFFER_SIZE);
+    }
+}
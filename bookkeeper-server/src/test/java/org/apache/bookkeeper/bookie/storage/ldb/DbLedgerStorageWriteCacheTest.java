@@ -0,0 +1,269 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.bookkeeper.bookie.BookieImpl;
+import org.apache.bookkeeper.bookie.CheckpointSource;
+import org.apache.bookkeeper.bookie.CheckpointSource.Checkpoint;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Concurrency tests of the write caches of {@link SingleDirectoryDbLedgerStorage}: rotation of the caches under
+ * concurrent adds, checkpoints while the writers keep adding, and reads while the caches are flushed.
+ */
+public class DbLedgerStorageWriteCacheTest {
+
+    private static final byte[] MASTER_KEY = "key".getBytes(UTF_8);
+    private static final int ENTRY_SIZE = 4096;
+    private static final int WRITERS = 4;
+    private static final long TEST_DURATION_MS = 1000;
+
+    private File tmpDir;
+    private DbLedgerStorage storage;
+
+    // Last entry acknowledged by the writer of each ledger, ledger i + 1 is written by writer i
+    private final AtomicLongArray lastAdded = new AtomicLongArray(WRITERS);
+    private final AtomicBoolean done = new AtomicBoolean();
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+    private final List<Thread> threads = new ArrayList<>();
+
+    @Before
+    public void setup() throws Exception {
+        tmpDir = Files.createTempDirectory("db-storage-write-cache").toFile();
+        File ledgerDir = new File(tmpDir, "ledgers");
+        BookieImpl.getCurrentDirectory(ledgerDir).mkdirs();
+
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setBookieId("test-bookie");
+        conf.setLedgerDirNames(new String[]{ledgerDir.getPath()});
+        // There is no metadata store to check the ledgers to garbage collect
+        conf.setGcWaitTime(TimeUnit.HOURS.toMillis(1));
+        conf.setMinorCompactionInterval(0);
+        conf.setMajorCompactionInterval(0);
+        // Two write caches of 512 KB, which are rotated every 128 entries
+        conf.setProperty(DbLedgerStorage.WRITE_CACHE_MAX_SIZE_MB, 1);
+        conf.setProperty(DbLedgerStorage.READ_AHEAD_CACHE_MAX_SIZE_MB, 1);
+        // Use the RocksDB options of the distribution when the tests run from the module directory
+        File confDir = new File("../conf");
+        if (confDir.exists()) {
+            conf.setEntryLocationRocksdbConf(new File(confDir, "entry_location_rocksdb.conf").getAbsolutePath());
+            conf.setLedgerMetadataRocksdbConf(new File(confDir, "ledger_metadata_rocksdb.conf").getAbsolutePath());
+        }
+
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        storage = new DbLedgerStorage();
+        storage.initialize(conf, null, ledgerDirsManager, ledgerDirsManager, NullStatsLogger.INSTANCE,
+                UnpooledByteBufAllocator.DEFAULT);
+        storage.setCheckpointSource(CheckpointSource.DEFAULT);
+        for (int i = 0; i < WRITERS; i++) {
+            storage.setMasterKey(i + 1, MASTER_KEY);
+            lastAdded.set(i, -1);
+        }
+    }
+
+    @After
+    public void teardown() throws Exception {
+        done.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        storage.shutdown();
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    private static ByteBuf newEntry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        while (entry.isWritable()) {
+            entry.writeLong(ledgerId * 31 + entryId);
+        }
+        return entry;
+    }
+
+    private void assertEntry(long ledgerId, long entryId) throws Exception {
+        ByteBuf entry = storage.getEntry(ledgerId, entryId);
+        try {
+            ByteBuf expected = newEntry(ledgerId, entryId);
+            assertEquals("Invalid content of entry " + ledgerId + "@" + entryId, expected, entry);
+        } finally {
+            entry.release();
+        }
+    }
+
+    private void startThread(Runnable task) {
+        Thread thread = new Thread(() -> {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            }
+        });
+        threads.add(thread);
+        thread.start();
+    }
+
+    private void startWriters() {
+        for (int i = 0; i < WRITERS; i++) {
+            int writer = i;
+            startThread(() -> {
+                long ledgerId = writer + 1;
+                try {
+                    for (long entryId = 0; !done.get(); entryId++) {
+                        ByteBuf entry = newEntry(ledgerId, entryId);
+                        storage.addEntry(entry);
+                        entry.release();
+                        lastAdded.set(writer, entryId);
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+    }
+
+    private void stopThreads() throws Exception {
+        done.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        threads.clear();
+        if (failure.get() != null) {
+            throw new AssertionError("Failure of a concurrent thread", failure.get());
+        }
+    }
+
+    private long totalAdded() {
+        long total = 0;
+        for (int i = 0; i < WRITERS; i++) {
+            total += lastAdded.get(i) + 1;
+        }
+        return total;
+    }
+
+    @Test
+    public void testConcurrentAddsRotateTheCaches() throws Exception {
+        startWriters();
+        Thread.sleep(TEST_DURATION_MS);
+        stopThreads();
+
+        // The writers went through many write caches, and no entry was lost by the rotations
+        assertTrue(totalAdded() > 10 * 128);
+        for (int i = 0; i < WRITERS; i++) {
+            for (long entryId = 0; entryId <= lastAdded.get(i); entryId++) {
+                assertEntry(i + 1, entryId);
+            }
+        }
+        storage.flush();
+        for (int i = 0; i < WRITERS; i++) {
+            for (long entryId = 0; entryId <= lastAdded.get(i); entryId++) {
+                assertNotEquals(0, storage.getLocation(i + 1, entryId));
+            }
+        }
+    }
+
+    @Test
+    public void testCheckpointWhileAdding() throws Exception {
+        startWriters();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TEST_DURATION_MS);
+        int checkpoints = 0;
+        while (System.nanoTime() < deadline && failure.get() == null) {
+            long[] addedBeforeCheckpoint = new long[WRITERS];
+            for (int i = 0; i < WRITERS; i++) {
+                addedBeforeCheckpoint[i] = lastAdded.get(i);
+            }
+
+            // The checkpoint completes although the writers keep filling new caches
+            CompletableFuture<Void> checkpoint = CompletableFuture.runAsync(() -> {
+                try {
+                    storage.checkpoint(Checkpoint.MIN);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            checkpoint.get(30, TimeUnit.SECONDS);
+            checkpoints++;
+
+            // All the entries added before the checkpoint are persisted
+            for (int i = 0; i < WRITERS; i++) {
+                for (long entryId = 0; entryId <= addedBeforeCheckpoint[i]; entryId++) {
+                    assertNotEquals(0, storage.getLocation(i + 1, entryId));
+                }
+            }
+        }
+        long added = totalAdded();
+        stopThreads();
+        assertTrue(checkpoints > 1);
+        assertTrue(added > 128);
+    }
+
+    @Test
+    public void testReadsWhileFlushing() throws Exception {
+        startWriters();
+        for (int r = 0; r < 2; r++) {
+            startThread(() -> {
+                try {
+                    while (!done.get()) {
+                        int writer = ThreadLocalRandom.current().nextInt(WRITERS);
+                        long last = lastAdded.get(writer);
+                        if (last < 0) {
+                            continue;
+                        }
+                        // Read recent entries, which are in the caches being rotated, flushed and reused
+                        long entryId = Math.max(0, last - ThreadLocalRandom.current().nextInt(256));
+                        assertEntry(writer + 1, entryId);
+                    }
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+        Thread.sleep(TEST_DURATION_MS);
+        stopThreads();
+    }
+}
@@ -0,0 +1,585 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.CloseableIterator;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * Contract of the {@link KeyValueStorage} implementations used by the locations index. Every implementation is
+ * checked against the same operations, with keys made of a pair of non-negative longs and 8 bytes values.
+ */
+@RunWith(Parameterized.class)
+public class KeyValueStorageTest {
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][]{
+                {"rocksdb", KeyValueStorageRocksDB.factory},
+                {"sortedRuns", KeyValueStorageSortedRuns.factory},
+        });
+    }
+
+    private final String name;
+    private final KeyValueStorageFactory factory;
+
+    private File tmpDir;
+    private ServerConfiguration conf;
+    private KeyValueStorage db;
+
+    public KeyValueStorageTest(String name, KeyValueStorageFactory factory) {
+        this.name = name;
+        this.factory = factory;
+    }
+
+    @Before
+    public void setup() throws Exception {
+        tmpDir = Files.createTempDirectory("key-value-storage-test").toFile();
+        conf = new ServerConfiguration();
+        // Compact the sorted runs early to go through all the levels
+        conf.setProperty(KeyValueStorageSortedRuns.COMPACTION_TRIGGER, 2);
+        conf.setProperty(KeyValueStorageSortedRuns.LEVEL_SIZE_RATIO, 2);
+        // Use the RocksDB options of the distribution when the tests run from the module directory
+        File rocksDbConf = new File("../conf/entry_location_rocksdb.conf");
+        if (rocksDbConf.exists()) {
+            conf.setEntryLocationRocksdbConf(rocksDbConf.getAbsolutePath());
+        }
+        db = open();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        if (db != null) {
+            db.close();
+        }
+        FileUtils.deleteDirectory(tmpDir);
+    }
+
+    private KeyValueStorage open() throws IOException {
+        return factory.newKeyValueStorage(tmpDir.getAbsolutePath(), "index", DbConfigType.EntryLocation, conf);
+    }
+
+    private KeyValueStorage reopen() throws IOException {
+        db.close();
+        db = null;
+        db = open();
+        return db;
+    }
+
+    private static byte[] key(long first, long second) {
+        byte[] key = new byte[16];
+        ArrayUtil.setLong(key, 0, first);
+        ArrayUtil.setLong(key, 8, second);
+        return key;
+    }
+
+    private static byte[] value(long value) {
+        byte[] res = new byte[8];
+        ArrayUtil.setLong(res, 0, value);
+        return res;
+    }
+
+    private static long toLong(byte[] array) {
+        return ArrayUtil.getLong(array, 0);
+    }
+
+    private static void assertEntry(long first, long second, long value, Entry<byte[], byte[]> entry) {
+        assertArrayEquals(key(first, second), entry.getKey());
+        assertEquals(value, toLong(entry.getValue()));
+    }
+
+    @Test
+    public void testGetAndPut() throws Exception {
+        assertNull(db.get(key(1, 1)));
+        assertEquals(-1, db.get(key(1, 1), new byte[8]));
+
+        db.put(key(1, 1), value(11));
+        db.put(key(1, 2), value(12));
+        db.put(key(2, 1), value(21));
+
+        assertEquals(11, toLong(db.get(key(1, 1))));
+        assertEquals(12, toLong(db.get(key(1, 2))));
+        assertEquals(21, toLong(db.get(key(2, 1))));
+        assertNull(db.get(key(1, 3)));
+        assertNull(db.get(key(0, 0)));
+
+        byte[] res = new byte[8];
+        assertEquals(8, db.get(key(1, 2), res));
+        assertEquals(12, toLong(res));
+
+        // The most recent value wins
+        db.put(key(1, 2), value(120));
+        assertEquals(120, toLong(db.get(key(1, 2))));
+    }
+
+    @Test
+    public void testGetFloorAndCeil() throws Exception {
+        assertNull(db.getFloor(key(1, 1)));
+        assertNull(db.getCeil(key(1, 1)));
+
+        db.put(key(1, 1), value(11));
+        db.put(key(1, 3), value(13));
+        db.put(key(3, 0), value(30));
+
+        // Floor is strictly lower than the key
+        assertNull(db.getFloor(key(1, 1)));
+        assertEntry(1, 1, 11, db.getFloor(key(1, 2)));
+        assertEntry(1, 1, 11, db.getFloor(key(1, 3)));
+        assertEntry(1, 3, 13, db.getFloor(key(2, 0)));
+        assertEntry(3, 0, 30, db.getFloor(key(Long.MAX_VALUE, Long.MAX_VALUE)));
+
+        // Ceil includes the key
+        assertEntry(1, 1, 11, db.getCeil(key(0, 0)));
+        assertEntry(1, 1, 11, db.getCeil(key(1, 1)));
+        assertEntry(1, 3, 13, db.getCeil(key(1, 2)));
+        assertEntry(3, 0, 30, db.getCeil(key(2, 5)));
+        assertNull(db.getCeil(key(3, 1)));
+    }
+
+    @Test
+    public void testDelete() throws Exception {
+        db.put(key(1, 1), value(11));
+        db.put(key(1, 2), value(12));
+        db.put(key(1, 3), value(13));
+
+        db.delete(key(1, 2));
+        assertNull(db.get(key(1, 2)));
+        assertEquals(-1, db.get(key(1, 2), new byte[8]));
+
+        // Deleted keys are skipped by floor and ceil
+        assertEntry(1, 1, 11, db.getFloor(key(1, 3)));
+        assertEntry(1, 3, 13, db.getCeil(key(1, 2)));
+        assertEquals(Arrays.asList(1L, 3L), secondKeys(db.keys()));
+
+        // Deleting a missing key is a no-op
+        db.delete(key(5, 5));
+        assertNull(db.get(key(5, 5)));
+
+        // A deleted key can be added back
+        db.put(key(1, 2), value(120));
+        assertEquals(120, toLong(db.get(key(1, 2))));
+    }
+
+    @Test
+    public void testGetFloorSkipsManyTombstones() throws Exception {
+        int numKeys = 10000;
+        try (Batch batch = db.newBatch()) {
+            for (int i = 0; i < numKeys; i++) {
+                batch.put(key(1, i), value(i));
+            }
+            batch.flush();
+        }
+
+        // Delete all the keys but the first one, in separate batches so that the tombstones are spread across runs
+        for (int start = 1; start < numKeys; start += 1000) {
+            try (Batch batch = db.newBatch()) {
+                for (int i = start; i < Math.min(start + 1000, numKeys); i++) {
+                    batch.remove(key(1, i));
+                }
+                batch.flush();
+            }
+        }
+
+        assertEntry(1, 0, 0, db.getFloor(key(2, 0)));
+        assertNull(db.getFloor(key(1, 0)));
+
+        db.delete(key(1, 0));
+        assertNull(db.getFloor(key(2, 0)));
+        assertNull(db.getCeil(key(0, 0)));
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        db.put(key(1, 1), value(11));
+
+        try (Batch batch = db.newBatch()) {
+            batch.put(key(2, 1), value(21));
+            batch.put(key(2, 2), value(22));
+            batch.remove(key(1, 1));
+
+            // Nothing is visible before the flush
+            assertNull(db.get(key(2, 1)));
+            assertEquals(11, toLong(db.get(key(1, 1))));
+
+            batch.flush();
+        }
+
+        assertNull(db.get(key(1, 1)));
+        assertEquals(21, toLong(db.get(key(2, 1))));
+        assertEquals(22, toLong(db.get(key(2, 2))));
+
+        try (Batch batch = db.newBatch()) {
+            batch.put(key(3, 1), value(31));
+            batch.clear();
+            batch.put(key(3, 2), value(32));
+            batch.flush();
+        }
+
+        assertNull(db.get(key(3, 1)));
+        assertEquals(32, toLong(db.get(key(3, 2))));
+    }
+
+    @Test
+    public void testDeleteRange() throws Exception {
+        try (Batch batch = db.newBatch()) {
+            for (int i = 0; i < 10; i++) {
+                batch.put(key(1, i), value(i));
+                batch.put(key(2, i), value(i));
+            }
+            batch.flush();
+        }
+
+        try (Batch batch = db.newBatch()) {
+            batch.deleteRange(key(1, 3), key(2, 0));
+            batch.flush();
+        }
+
+        assertEquals(Arrays.asList(0L, 1L, 2L), secondKeys(db.keys(key(1, 0), key(2, 0))));
+        assertEquals(10, secondKeys(db.keys(key(2, 0), key(3, 0))).size());
+        assertEntry(1, 2, 2, db.getFloor(key(2, 0)));
+    }
+
+    @Test
+    public void testIteration() throws Exception {
+        try (Batch batch = db.newBatch()) {
+            // Insert out of order
+            for (int i = 9; i >= 0; i--) {
+                batch.put(key(i % 3, i), value(i));
+            }
+            batch.flush();
+        }
+        db.delete(key(1, 4));
+
+        List<byte[]> keys = new ArrayList<>();
+        try (CloseableIterator<byte[]> iterator = db.keys()) {
+            while (iterator.hasNext()) {
+                keys.add(iterator.next());
+            }
+        }
+        assertEquals(9, keys.size());
+        for (int i = 1; i < keys.size(); i++) {
+            assertTrue(compare(keys.get(i - 1), keys.get(i)) < 0);
+        }
+
+        // First key included, last key excluded
+        assertEquals(Arrays.asList(1L, 7L), secondKeys(db.keys(key(1, 0), key(2, 0))));
+        assertEquals(Arrays.asList(7L), secondKeys(db.keys(key(1, 5), key(1, 8))));
+        assertEquals(Arrays.asList(), secondKeys(db.keys(key(5, 0), key(6, 0))));
+
+        List<Long> values = new ArrayList<>();
+        try (CloseableIterator<Entry<byte[], byte[]>> iterator = db.iterator()) {
+            while (iterator.hasNext()) {
+                Entry<byte[], byte[]> entry = iterator.next();
+                assertEquals(ArrayUtil.getLong(entry.getKey(), 8), toLong(entry.getValue()));
+                values.add(toLong(entry.getValue()));
+            }
+        }
+        assertEquals(Arrays.asList(0L, 3L, 6L, 9L, 1L, 7L, 2L, 5L, 8L), values);
+    }
+
+    @Test
+    public void testIteratorIsNotAffectedByLaterWrites() throws Exception {
+        // Only the sorted runs storage iterates over a snapshot
+        Assume.assumeTrue(db instanceof KeyValueStorageSortedRuns);
+
+        db.put(key(1, 1), value(11));
+        db.put(key(1, 2), value(12));
+
+        try (CloseableIterator<byte[]> iterator = db.keys()) {
+            db.put(key(1, 3), value(13));
+            db.delete(key(1, 2));
+            db.compact(key(0, 0), key(Long.MAX_VALUE, Long.MAX_VALUE));
+
+            assertEquals(Arrays.asList(1L, 2L), secondKeys(iterator));
+        }
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        NavigableMap<Long, Long> expected = new TreeMap<>();
+        for (int b = 0; b < 20; b++) {
+            try (Batch batch = db.newBatch()) {
+                for (long i = b * 100; i < b * 100 + 200; i++) {
+                    batch.put(key(1, i), value(b));
+                    expected.put(i, (long) b);
+                }
+                for (long i = b * 50; i < b * 50 + 20; i++) {
+                    batch.remove(key(1, i));
+                    expected.remove(i);
+                }
+                batch.flush();
+            }
+        }
+
+        assertContent(expected);
+        db.compact(key(0, 0), key(Long.MAX_VALUE, Long.MAX_VALUE));
+        assertContent(expected);
+
+        if (db instanceof KeyValueStorageSortedRuns) {
+            // The overwritten and deleted keys are dropped
+            assertEquals(expected.size(), db.count());
+        }
+
+        reopen();
+        assertContent(expected);
+    }
+
+    @Test
+    public void testRandomOperations() throws Exception {
+        Random random = new Random(1);
+        NavigableMap<Long, Long> expected = new TreeMap<>();
+
+        for (int round = 0; round < 50; round++) {
+            try (Batch batch = db.newBatch()) {
+                for (int i = 0; i < 200; i++) {
+                    long k = random.nextInt(2000);
+                    if (random.nextInt(4) == 0) {
+                        batch.remove(key(1, k));
+                        expected.remove(k);
+                    } else {
+                        long v = random.nextInt(Integer.MAX_VALUE);
+                        batch.put(key(1, k), value(v));
+                        expected.put(k, v);
+                    }
+                }
+                batch.flush();
+            }
+
+            if (round % 10 == 9) {
+                db.compact(key(0, 0), key(Long.MAX_VALUE, Long.MAX_VALUE));
+            }
+
+            for (int i = 0; i < 100; i++) {
+                long k = random.nextInt(2100);
+                Long v = expected.get(k);
+                byte[] res = db.get(key(1, k));
+                if (v == null) {
+                    assertNull(res);
+                } else {
+                    assertEquals(v.longValue(), toLong(res));
+                }
+
+                Entry<Long, Long> floor = expected.lowerEntry(k);
+                Entry<byte[], byte[]> floorEntry = db.getFloor(key(1, k));
+                if (floor == null) {
+                    assertNull(floorEntry);
+                } else {
+                    assertEntry(1, floor.getKey(), floor.getValue(), floorEntry);
+                }
+
+                Entry<Long, Long> ceil = expected.ceilingEntry(k);
+                Entry<byte[], byte[]> ceilEntry = db.getCeil(key(1, k));
+                if (ceil == null) {
+                    assertNull(ceilEntry);
+                } else {
+                    assertEntry(1, ceil.getKey(), ceil.getValue(), ceilEntry);
+                }
+            }
+        }
+
+        assertContent(expected);
+        reopen();
+        assertContent(expected);
+    }
+
+    @Test
+    public void testReopen() throws Exception {
+        db.put(key(1, 1), value(11));
+        db.put(key(1, 2), value(12));
+        db.delete(key(1, 1));
+        db.sync();
+
+        reopen();
+        assertNull(db.get(key(1, 1)));
+        assertEquals(12, toLong(db.get(key(1, 2))));
+        assertEntry(1, 2, 12, db.getFloor(key(2, 0)));
+
+        // Writes keep working after the reopen
+        db.put(key(1, 3), value(13));
+        reopen();
+        assertEquals(Arrays.asList(2L, 3L), secondKeys(db.keys()));
+    }
+
+    @Test
+    public void testReopenEmpty() throws Exception {
+        reopen();
+        assertNull(db.get(key(1, 1)));
+        assertNull(db.getFloor(key(1, 1)));
+        assertFalse(db.keys().hasNext());
+    }
+
+    @Test
+    public void testRecoveryDeletesUncommittedRuns() throws Exception {
+        Assume.assumeTrue(db instanceof KeyValueStorageSortedRuns);
+
+        db.put(key(1, 1), value(11));
+        db.close();
+        db = null;
+
+        // Files left behind by a crash during a flush or a compaction, before the manifest was updated
+        File dir = new File(tmpDir, "index");
+        File uncommittedRun = new File(dir, "999.run");
+        File tmpRun = new File(dir, "1000.run.tmp");
+        Files.write(uncommittedRun.toPath(), new byte[]{1, 2, 3});
+        Files.write(tmpRun.toPath(), new byte[]{1, 2, 3});
+
+        db = open();
+        assertFalse(uncommittedRun.exists());
+        assertFalse(tmpRun.exists());
+        assertEquals(11, toLong(db.get(key(1, 1))));
+
+        // New runs don't reuse the id of a committed run
+        db.put(key(1, 2), value(12));
+        reopen();
+        assertEquals(Arrays.asList(1L, 2L), secondKeys(db.keys()));
+    }
+
+    @Test
+    public void testRecoveryWithCorruptedManifest() throws Exception {
+        Assume.assumeTrue(db instanceof KeyValueStorageSortedRuns);
+
+        db.put(key(1, 1), value(11));
+        db.close();
+        db = null;
+
+        Files.write(new File(new File(tmpDir, "index"), "MANIFEST").toPath(), "not a manifest\n".getBytes());
+        try {
+            db = open();
+            fail("Should fail to open with a corrupted manifest");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testReadOnly() throws Exception {
+        Assume.assumeTrue(db instanceof KeyValueStorageSortedRuns);
+
+        db.put(key(1, 1), value(11));
+
+        try (KeyValueStorage readOnly = new KeyValueStorageSortedRuns(tmpDir.getAbsolutePath(), "index", conf,
+                true)) {
+            assertEquals(11, toLong(readOnly.get(key(1, 1))));
+            try {
+                readOnly.newBatch();
+                fail("Should not write in read-only mode");
+            } catch (IllegalStateException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void testInvalidKeysAndValues() throws Exception {
+        // Only the sorted runs storage is restricted to the records of the locations index
+        Assume.assumeTrue(db instanceof KeyValueStorageSortedRuns);
+
+        try {
+            db.put(new byte[8], value(1));
+            fail("Keys need to be 16 bytes long");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+
+        try {
+            db.put(key(1, 1), new byte[4]);
+            fail("Values need to be 8 bytes long");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+
+        try {
+            db.put(key(1, 1), value(KeyValueStorageSortedRuns.DELETED));
+            fail("The value of the deleted keys is reserved");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    private void assertContent(NavigableMap<Long, Long> expected) throws IOException {
+        List<Entry<Long, Long>> actual = new ArrayList<>();
+        try (CloseableIterator<Entry<byte[], byte[]>> iterator = db.iterator()) {
+            while (iterator.hasNext()) {
+                Entry<byte[], byte[]> entry = iterator.next();
+                assertEquals(1, ArrayUtil.getLong(entry.getKey(), 0));
+                actual.add(new SimpleImmutableEntry<>(ArrayUtil.getLong(entry.getKey(), 8),
+                        toLong(entry.getValue())));
+            }
+        }
+        assertEquals(new ArrayList<>(expected.entrySet()), actual);
+
+        for (Map.Entry<Long, Long> entry : expected.entrySet()) {
+            assertEquals(entry.getValue().longValue(), toLong(db.get(key(1, entry.getKey()))));
+        }
+    }
+
+    private static List<Long> secondKeys(CloseableIterator<byte[]> iterator) throws IOException {
+        List<Long> res = new ArrayList<>();
+        try {
+            while (iterator.hasNext()) {
+                res.add(ArrayUtil.getLong(iterator.next(), 8));
+            }
+        } finally {
+            iterator.close();
+        }
+        return res;
+    }
+
+    private static int compare(byte[] a, byte[] b) {
+        int res = Long.compare(ArrayUtil.getLong(a, 0), ArrayUtil.getLong(b, 0));
+        return res != 0 ? res : Long.compare(ArrayUtil.getLong(a, 8), ArrayUtil.getLong(b, 8));
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,212 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests of the synchronization of the {@link WriteCache} with its writers and readers.
+ */
+public class WriteCacheTest {
+
+    private static final int ENTRY_SIZE = 1024;
+    private static final int ENTRIES_PER_ROUND = 64;
+
+    private WriteCache cache;
+
+    @Before
+    public void setup() {
+        cache = new WriteCache(UnpooledByteBufAllocator.DEFAULT, ENTRIES_PER_ROUND * ENTRY_SIZE, 16 * ENTRY_SIZE);
+    }
+
+    @After
+    public void teardown() {
+        cache.close();
+    }
+
+    /**
+     * @return an entry whose content depends on the entry id
+     */
+    private static ByteBuf newEntry(long entryId) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        while (entry.isWritable()) {
+            entry.writeLong(entryId);
+        }
+        return entry;
+    }
+
+    private static void assertEntry(long entryId, ByteBuf entry) {
+        assertEquals(ENTRY_SIZE, entry.readableBytes());
+        while (entry.isReadable()) {
+            assertEquals(entryId, entry.readLong());
+        }
+    }
+
+    @Test
+    public void testWaitForWriters() throws Exception {
+        cache.acquireWriter();
+        cache.acquireWriter();
+        CompletableFuture<Void> waiter = CompletableFuture.runAsync(() -> {
+            try {
+                cache.waitForWriters();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        cache.releaseWriter();
+        try {
+            waiter.get(100, TimeUnit.MILLISECONDS);
+            throw new AssertionError("The waiter should be blocked by the remaining writer");
+        } catch (TimeoutException e) {
+            // expected
+        }
+        cache.releaseWriter();
+        waiter.get(10, TimeUnit.SECONDS);
+
+        // There is nothing to wait for without writers
+        cache.waitForWriters();
+    }
+
+    @Test
+    public void testConcurrentWritersAndWaiters() throws Exception {
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicLong writes = new AtomicLong();
+        Thread[] writers = new Thread[4];
+        for (int i = 0; i < writers.length; i++) {
+            writers[i] = new Thread(() -> {
+                while (!done.get()) {
+                    cache.acquireWriter();
+                    writes.incrementAndGet();
+                    cache.releaseWriter();
+                }
+            });
+            writers[i].start();
+        }
+
+        // A waiter never misses the release of the last writer
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500);
+        CompletableFuture<Void> waiters = CompletableFuture.runAsync(() -> {
+            try {
+                while (System.nanoTime() < deadline) {
+                    cache.waitForWriters();
+                }
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        try {
+            waiters.get(10, TimeUnit.SECONDS);
+        } finally {
+            done.set(true);
+            for (Thread writer : writers) {
+                writer.join();
+            }
+        }
+        assertTrue(writes.get() > 0);
+    }
+
+    @Test
+    public void testGetAfterClear() {
+        assertTrue(cache.put(1, 0, newEntry(0)));
+        ByteBuf entry = cache.get(1, 0);
+        assertEntry(0, entry);
+        entry.release();
+
+        cache.clear();
+        assertNull(cache.get(1, 0));
+        assertFalse(cache.hasEntry(1, 0));
+    }
+
+    @Test
+    public void testReadsWhileTheCacheIsClearedAndReused() throws Exception {
+        // Each round fills the cache with new entries at the same offsets as the entries of the previous round
+        AtomicLong round = new AtomicLong();
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicLong hits = new AtomicLong();
+        Thread[] readers = new Thread[2];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread(() -> {
+                try {
+                    while (!done.get()) {
+                        long entryId = round.get() * ENTRIES_PER_ROUND
+                                + ThreadLocalRandom.current().nextInt(ENTRIES_PER_ROUND);
+                        ByteBuf entry = cache.get(1, entryId);
+                        if (entry != null) {
+                            // A found entry is never mixed with the data of a newer entry
+                            try {
+                                assertEntry(entryId, entry);
+                            } finally {
+                                entry.release();
+                            }
+                            hits.incrementAndGet();
+                        }
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            });
+            readers[i].start();
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500);
+        try {
+            while (System.nanoTime() < deadline && failure.get() == null) {
+                long firstEntryId = round.get() * ENTRIES_PER_ROUND;
+                for (int i = 0; i < ENTRIES_PER_ROUND; i++) {
+                    ByteBuf entry = newEntry(firstEntryId + i);
+                    assertTrue(cache.put(1, firstEntryId + i, entry));
+                    entry.release();
+                }
+                cache.clear();
+                round.incrementAndGet();
+            }
+        } finally {
+            done.set(true);
+            for (Thread reader : readers) {
+                reader.join();
+            }
+        }
+        if (failure.get() != null) {
+            throw new AssertionError("Invalid read while clearing the cache", failure.get());
+        }
+        assertTrue(hits.get() > 0);
+    }
+}
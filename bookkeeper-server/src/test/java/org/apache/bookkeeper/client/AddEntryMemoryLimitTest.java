@@ -0,0 +1,243 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.common.util.MemoryLimitController;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.common.util.SafeRunnable;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests of the add memory limit of the client: rejection or wait when the limit is exceeded, fail fast
+ * on the threads completing the adds, and release of the memory once the adds complete.
+ */
+public class AddEntryMemoryLimitTest {
+
+    private static final long LEDGER_ID = 1;
+    private static final byte[] PASSWORD = "password".getBytes(UTF_8);
+    private static final int ENTRY_SIZE = 100;
+    private static final int MAX_PENDING_ADDS = 3;
+
+    private final List<BookieId> ensemble = Arrays.asList(
+            BookieId.parse("bookie-1:3181"), BookieId.parse("bookie-2:3181"), BookieId.parse("bookie-3:3181"));
+
+    private final ClientConfiguration conf = new ClientConfiguration();
+    private final BookieClient bookieClient = mock(BookieClient.class);
+    // The controller lets the usage go over the limit once, so the limit is exceeded by MAX_PENDING_ADDS adds
+    private final MemoryLimitController memoryLimitController =
+            new MemoryLimitController(MAX_PENDING_ADDS * ENTRY_SIZE - 1);
+    // Writes sent to the bookies and not answered yet
+    private final List<Runnable> pendingWrites = new ArrayList<>();
+    private OrderedExecutor mainWorkerPool;
+    private LedgerHandle lh;
+
+    @Before
+    public void setup() throws Exception {
+        mainWorkerPool = OrderedExecutor.newBuilder().name("test-main-worker").numThreads(1).build();
+        doAnswer(invocation -> {
+            BookieId address = invocation.getArgument(0);
+            long entryId = invocation.getArgument(3);
+            WriteCallback cb = invocation.getArgument(5);
+            Object ctx = invocation.getArgument(6);
+            synchronized (pendingWrites) {
+                pendingWrites.add(() -> cb.writeComplete(BKException.Code.OK, LEDGER_ID, entryId, address, ctx));
+            }
+            return null;
+        }).when(bookieClient).addEntry(any(), anyLong(), any(), anyLong(), any(), any(), any(), anyInt(),
+                anyBoolean(), any());
+    }
+
+    @After
+    public void teardown() throws Exception {
+        mainWorkerPool.shutdown();
+    }
+
+    private LedgerHandle newLedgerHandle() throws Exception {
+        ClientContext clientCtx = mock(ClientContext.class);
+        when(clientCtx.getConf()).thenReturn(ClientInternalConf.fromConfig(conf));
+        when(clientCtx.getBookieClient()).thenReturn(bookieClient);
+        when(clientCtx.getMainWorkerPool()).thenReturn(mainWorkerPool);
+        when(clientCtx.getPlacementPolicy()).thenReturn(mock(EnsemblePlacementPolicy.class));
+        when(clientCtx.getClientStats()).thenReturn(BookKeeperClientStats.newInstance(NullStatsLogger.INSTANCE));
+        when(clientCtx.getByteBufAllocator()).thenReturn(UnpooledByteBufAllocator.DEFAULT);
+        when(clientCtx.getAddMemoryLimitController()).thenReturn(memoryLimitController);
+
+        LedgerMetadata metadata = LedgerMetadataBuilder.create()
+                .withId(LEDGER_ID)
+                .withPassword(PASSWORD)
+                .withDigestType(BookKeeper.DigestType.CRC32.toApiDigestType())
+                .withEnsembleSize(3).withWriteQuorumSize(3).withAckQuorumSize(2)
+                .newEnsembleEntry(0, ensemble)
+                .build();
+        return new LedgerHandle(clientCtx, LEDGER_ID, new Versioned<>(metadata, new LongVersion(0)),
+                BookKeeper.DigestType.CRC32, PASSWORD, WriteFlag.NONE);
+    }
+
+    private CompletableFuture<Integer> addEntry() {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        lh.asyncAddEntry(new byte[ENTRY_SIZE], (rc, handle, entryId, ctx) -> result.complete(rc), null);
+        return result;
+    }
+
+    private void waitForPendingWrites(int count) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (true) {
+            synchronized (pendingWrites) {
+                if (pendingWrites.size() >= count) {
+                    return;
+                }
+            }
+            assertTrue("Writes not sent to the bookies", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private void completePendingWrites() {
+        List<Runnable> writes;
+        synchronized (pendingWrites) {
+            writes = new ArrayList<>(pendingWrites);
+            pendingWrites.clear();
+        }
+        writes.forEach(Runnable::run);
+    }
+
+    private void waitForMemoryUsage(long expected) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (memoryLimitController.currentUsage() != expected) {
+            assertTrue("Memory usage " + memoryLimitController.currentUsage() + " instead of " + expected,
+                    System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Fill the memory limit with adds that the bookies don't answer yet.
+     */
+    private List<CompletableFuture<Integer>> fillMemoryLimit() throws Exception {
+        List<CompletableFuture<Integer>> adds = new ArrayList<>();
+        for (int i = 0; i < MAX_PENDING_ADDS; i++) {
+            adds.add(addEntry());
+        }
+        waitForPendingWrites(MAX_PENDING_ADDS * ensemble.size());
+        assertEquals(MAX_PENDING_ADDS * ENTRY_SIZE, memoryLimitController.currentUsage());
+        return adds;
+    }
+
+    private void completeAdds(List<CompletableFuture<Integer>> adds) throws Exception {
+        completePendingWrites();
+        for (CompletableFuture<Integer> add : adds) {
+            assertEquals(BKException.Code.OK, (int) add.get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testFailFast() throws Exception {
+        conf.setAddEntryMemoryLimitFailFast(true);
+        lh = newLedgerHandle();
+        List<CompletableFuture<Integer>> adds = fillMemoryLimit();
+
+        assertEquals(BKException.Code.TooManyRequestsException, (int) addEntry().get(10, TimeUnit.SECONDS));
+        assertEquals(MAX_PENDING_ADDS * ENTRY_SIZE, memoryLimitController.currentUsage());
+
+        // The memory of the completed adds is released, and new adds are accepted again
+        completeAdds(adds);
+        waitForMemoryUsage(0);
+        CompletableFuture<Integer> add = addEntry();
+        waitForPendingWrites(ensemble.size());
+        completeAdds(Arrays.asList(add));
+        waitForMemoryUsage(0);
+    }
+
+    @Test
+    public void testWaitForMemory() throws Exception {
+        lh = newLedgerHandle();
+        List<CompletableFuture<Integer>> adds = fillMemoryLimit();
+
+        // The add waits in the submitting thread until the memory of an add is released
+        CompletableFuture<CompletableFuture<Integer>> blockedAdd = CompletableFuture.supplyAsync(this::addEntry);
+        try {
+            blockedAdd.get(200, TimeUnit.MILLISECONDS);
+            throw new AssertionError("The add should wait for memory to be released");
+        } catch (TimeoutException e) {
+            // expected
+        }
+        completeAdds(adds);
+        CompletableFuture<Integer> add = blockedAdd.get(10, TimeUnit.SECONDS);
+        waitForPendingWrites(ensemble.size());
+        waitForMemoryUsage(ENTRY_SIZE);
+        completeAdds(Arrays.asList(add));
+        waitForMemoryUsage(0);
+    }
+
+    @Test
+    public void testFailFastOnWorkerThread() throws Exception {
+        lh = newLedgerHandle();
+        List<CompletableFuture<Integer>> adds = fillMemoryLimit();
+
+        // Waiting on the thread that completes the adds would never end, the add fails instead
+        CompletableFuture<CompletableFuture<Integer>> workerAdd = new CompletableFuture<>();
+        mainWorkerPool.executeOrdered(LEDGER_ID, SafeRunnable.safeRun(() -> workerAdd.complete(addEntry())));
+        assertEquals(BKException.Code.TooManyRequestsException,
+                (int) workerAdd.get(10, TimeUnit.SECONDS).get(10, TimeUnit.SECONDS));
+        assertEquals(MAX_PENDING_ADDS * ENTRY_SIZE, memoryLimitController.currentUsage());
+
+        completeAdds(adds);
+        waitForMemoryUsage(0);
+    }
+
+    @Test
+    public void testExecutorThread() throws Exception {
+        assertFalse(mainWorkerPool.isExecutorThread());
+        assertTrue(mainWorkerPool.submitOrdered(LEDGER_ID, mainWorkerPool::isExecutorThread)
+                .get(10, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,297 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.ReadHandle;
+import org.apache.bookkeeper.client.api.WriteFlag;
+import org.apache.bookkeeper.client.impl.LedgerEntriesImpl;
+import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.RangeReadEntryCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallbackCtx;
+import org.apache.bookkeeper.proto.checksum.DigestManager;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests of the limits of {@link LedgerHandle#batchReadAsync(long, int, long)}, with range reads
+ * ({@link BatchedReadOp}) and with the fallback to regular reads.
+ */
+public class BatchedReadTest {
+
+    private static final long LEDGER_ID = 1;
+    private static final byte[] PASSWORD = "password".getBytes(UTF_8);
+    private static final int ENTRY_SIZE = 100;
+    // The second ensemble starts at this entry
+    private static final long ENSEMBLE_CHANGE = 5;
+    private static final long LAST_ENTRY = 7;
+
+    private final List<BookieId> ensemble1 = Arrays.asList(
+            BookieId.parse("bookie-1:3181"), BookieId.parse("bookie-2:3181"), BookieId.parse("bookie-3:3181"));
+    private final List<BookieId> ensemble2 = Arrays.asList(
+            BookieId.parse("bookie-1:3181"), BookieId.parse("bookie-2:3181"), BookieId.parse("bookie-4:3181"));
+
+    private final ClientConfiguration conf = new ClientConfiguration();
+    // The overloads of readEntry delegate to the one answered below
+    private final BookieClient bookieClient = mock(BookieClient.class, CALLS_REAL_METHODS);
+    private final AtomicInteger rangeReads = new AtomicInteger();
+    private final AtomicInteger regularReads = new AtomicInteger();
+    private boolean rangeReadsSupported = true;
+    private OrderedExecutor mainWorkerPool;
+    private ExecutorService bookieExecutor;
+    private DigestManager digestManager;
+
+    @Before
+    public void setup() throws Exception {
+        conf.setRangeReadEnabled(true);
+        conf.setSpeculativeReadTimeout(0);
+        mainWorkerPool = OrderedExecutor.newBuilder().name("test-main-worker").numThreads(1).build();
+        bookieExecutor = Executors.newSingleThreadExecutor();
+        digestManager = DigestManager.instantiate(LEDGER_ID, PASSWORD,
+                BookKeeper.DigestType.toProtoDigestType(BookKeeper.DigestType.CRC32),
+                UnpooledByteBufAllocator.DEFAULT, false);
+
+        // The bookies store all the entries, and answer like RangeReadEntryProcessorV3 and ReadEntryProcessorV3
+        doAnswer(invocation -> {
+            long firstEntryId = invocation.getArgument(2);
+            int maxCount = invocation.getArgument(3);
+            long maxSize = invocation.getArgument(4);
+            RangeReadEntryCallback cb = invocation.getArgument(5);
+            Object ctx = invocation.getArgument(6);
+            rangeReads.incrementAndGet();
+            bookieExecutor.execute(() -> {
+                if (!rangeReadsSupported) {
+                    cb.readEntriesComplete(BKException.Code.ProtocolVersionException, LEDGER_ID, firstEntryId,
+                            null, ctx);
+                    return;
+                }
+                List<ByteBuf> buffers = new ArrayList<>();
+                long size = 0;
+                for (long entryId = firstEntryId; entryId <= LAST_ENTRY && buffers.size() < maxCount; entryId++) {
+                    ByteBuf buffer = newStoredEntry(entryId);
+                    size += buffer.readableBytes() + 16;
+                    if (!buffers.isEmpty() && size > maxSize) {
+                        buffer.release();
+                        break;
+                    }
+                    buffers.add(buffer);
+                }
+                ((ReadEntryCallbackCtx) ctx).setLastAddConfirmed(LAST_ENTRY);
+                cb.readEntriesComplete(BKException.Code.OK, LEDGER_ID, firstEntryId, buffers, ctx);
+            });
+            return null;
+        }).when(bookieClient).readEntries(any(), anyLong(), anyLong(), anyInt(), anyLong(), any(), any(), anyInt());
+        doAnswer(invocation -> {
+            long entryId = invocation.getArgument(2);
+            ReadEntryCallback cb = invocation.getArgument(3);
+            Object ctx = invocation.getArgument(4);
+            regularReads.incrementAndGet();
+            bookieExecutor.execute(() -> cb.readEntryComplete(BKException.Code.OK, LEDGER_ID, entryId,
+                    newStoredEntry(entryId), ctx));
+            return null;
+        }).when(bookieClient).readEntry(any(), anyLong(), anyLong(), any(), any(), anyInt(), any(), anyBoolean());
+    }
+
+    @After
+    public void teardown() throws Exception {
+        mainWorkerPool.shutdown();
+        bookieExecutor.shutdown();
+    }
+
+    private ByteBuf newStoredEntry(long entryId) {
+        ByteBuf payload = Unpooled.buffer(ENTRY_SIZE).writeZero(ENTRY_SIZE).setLong(0, entryId);
+        ByteBufList toSend = digestManager.computeDigestAndPackageForSending(entryId, entryId - 1,
+                ENTRY_SIZE * (entryId + 1), payload);
+        ByteBuf entry = ByteBufList.coalesce(toSend);
+        toSend.release();
+        return entry;
+    }
+
+    private LedgerHandle newLedgerHandle(boolean closed) throws Exception {
+        ClientContext clientCtx = mock(ClientContext.class);
+        when(clientCtx.getConf()).thenReturn(ClientInternalConf.fromConfig(conf));
+        when(clientCtx.getBookieClient()).thenReturn(bookieClient);
+        when(clientCtx.getMainWorkerPool()).thenReturn(mainWorkerPool);
+        when(clientCtx.getPlacementPolicy()).thenReturn(mock(EnsemblePlacementPolicy.class));
+        when(clientCtx.getClientStats()).thenReturn(BookKeeperClientStats.newInstance(NullStatsLogger.INSTANCE));
+        when(clientCtx.getByteBufAllocator()).thenReturn(UnpooledByteBufAllocator.DEFAULT);
+
+        LedgerMetadataBuilder builder = LedgerMetadataBuilder.create()
+                .withId(LEDGER_ID)
+                .withPassword(PASSWORD)
+                .withDigestType(BookKeeper.DigestType.CRC32.toApiDigestType())
+                .withEnsembleSize(3).withWriteQuorumSize(3).withAckQuorumSize(2)
+                .newEnsembleEntry(0, ensemble1)
+                .newEnsembleEntry(ENSEMBLE_CHANGE, ensemble2);
+        if (closed) {
+            builder.withClosedState().withLastEntryId(LAST_ENTRY).withLength(ENTRY_SIZE * (LAST_ENTRY + 1));
+        }
+        LedgerMetadata metadata = builder.build();
+        LedgerHandle lh = new LedgerHandle(clientCtx, LEDGER_ID, new Versioned<>(metadata, new LongVersion(0)),
+                BookKeeper.DigestType.CRC32, PASSWORD, WriteFlag.NONE);
+        if (!closed) {
+            lh.updateLastConfirmed(LAST_ENTRY - 1, 0);
+        }
+        return lh;
+    }
+
+    private static List<Long> batchRead(ReadHandle handle, long firstEntry, int maxCount, long maxSize)
+            throws Exception {
+        List<Long> entryIds = new ArrayList<>();
+        try (LedgerEntries entries = handle.batchReadAsync(firstEntry, maxCount, maxSize).get(10, TimeUnit.SECONDS)) {
+            for (LedgerEntry entry : entries) {
+                assertEquals(ENTRY_SIZE, entry.getEntryBuffer().readableBytes());
+                ByteBuf payload = entry.getEntryBuffer();
+                assertEquals(entry.getEntryId(), payload.getLong(payload.readerIndex()));
+                entryIds.add(entry.getEntryId());
+            }
+        }
+        return entryIds;
+    }
+
+    @Test
+    public void testCountAndSizeLimits() throws Exception {
+        LedgerHandle lh = newLedgerHandle(true);
+        assertEquals(Arrays.asList(0L, 1L), batchRead(lh, 0, 2, Long.MAX_VALUE));
+        // The size limit of the bookie accounts for the digest and the response overhead of every entry
+        assertEquals(Arrays.asList(1L, 2L), batchRead(lh, 1, 10, 4 * ENTRY_SIZE));
+        // The first entry is always returned
+        assertEquals(Arrays.asList(3L), batchRead(lh, 3, 10, 1));
+        assertEquals(3, rangeReads.get());
+        assertEquals(0, regularReads.get());
+    }
+
+    @Test
+    public void testLastAddConfirmedCutOff() throws Exception {
+        // A closed ledger ends at its last entry, an open one at the LastAddConfirmed
+        assertEquals(Arrays.asList(6L, 7L), batchRead(newLedgerHandle(true), 6, 10, Long.MAX_VALUE));
+        assertEquals(Arrays.asList(5L, 6L), batchRead(newLedgerHandle(false), 5, 10, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testEnsembleChangeCutOff() throws Exception {
+        LedgerHandle lh = newLedgerHandle(true);
+        assertEquals(Arrays.asList(2L, 3L, 4L), batchRead(lh, 2, 10, Long.MAX_VALUE));
+        assertEquals(Arrays.asList(5L, 6L, 7L), batchRead(lh, 5, 10, Long.MAX_VALUE));
+        assertEquals(2, rangeReads.get());
+    }
+
+    @Test
+    public void testFallbackWhenRangeReadsAreDisabled() throws Exception {
+        conf.setRangeReadEnabled(false);
+        LedgerHandle lh = newLedgerHandle(true);
+        assertEquals(Arrays.asList(0L, 1L, 2L), batchRead(lh, 0, 3, Long.MAX_VALUE));
+        // The payloads of the entries are limited to the given size, the first entry is always returned
+        assertEquals(Arrays.asList(2L, 3L), batchRead(lh, 2, 10, 2 * ENTRY_SIZE + 1));
+        assertEquals(Arrays.asList(4L), batchRead(lh, 4, 10, 1));
+        assertEquals(0, rangeReads.get());
+    }
+
+    @Test
+    public void testFallbackWhenRangeReadsAreNotSupported() throws Exception {
+        rangeReadsSupported = false;
+        LedgerHandle lh = newLedgerHandle(true);
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L), batchRead(lh, 1, 10, Long.MAX_VALUE));
+        assertEquals(Arrays.asList(0L, 1L), batchRead(lh, 0, 10, 2 * ENTRY_SIZE));
+        // Every replica was asked for a range read before falling back
+        assertEquals(6, rangeReads.get());
+        assertEquals(9, regularReads.get());
+    }
+
+    @Test
+    public void testDefaultBatchRead() throws Exception {
+        ReadHandle handle = mock(ReadHandle.class, CALLS_REAL_METHODS);
+        when(handle.getLastAddConfirmed()).thenReturn(3L);
+        doAnswer(invocation -> {
+            long firstEntry = invocation.getArgument(0);
+            long lastEntry = invocation.getArgument(1);
+            List<LedgerEntry> entries = new ArrayList<>();
+            for (long entryId = firstEntry; entryId <= lastEntry; entryId++) {
+                ByteBuf payload = Unpooled.buffer(ENTRY_SIZE).writeZero(ENTRY_SIZE).setLong(0, entryId);
+                entries.add(LedgerEntryImpl.create(LEDGER_ID, entryId, ENTRY_SIZE, payload));
+            }
+            return CompletableFuture.completedFuture(LedgerEntriesImpl.create(entries));
+        }).when(handle).readAsync(anyLong(), anyLong());
+
+        assertEquals(Arrays.asList(0L, 1L), batchRead(handle, 0, 2, Long.MAX_VALUE));
+        assertEquals(Arrays.asList(1L, 2L, 3L), batchRead(handle, 1, 10, Long.MAX_VALUE));
+        assertEquals(Arrays.asList(0L, 1L), batchRead(handle, 0, 10, 2 * ENTRY_SIZE + 1));
+        assertEquals(Arrays.asList(2L), batchRead(handle, 2, 10, 1));
+    }
+
+    @Test
+    public void testTruncateReleasesDroppedEntries() {
+        List<LedgerEntry> list = new ArrayList<>();
+        List<ByteBuf> payloads = new ArrayList<>();
+        for (long entryId = 0; entryId < 3; entryId++) {
+            ByteBuf payload = Unpooled.buffer(ENTRY_SIZE).writeZero(ENTRY_SIZE);
+            payloads.add(payload);
+            list.add(LedgerEntryImpl.create(LEDGER_ID, entryId, ENTRY_SIZE, payload));
+        }
+        LedgerEntries entries = LedgerEntriesImpl.create(list);
+        // All the entries fit
+        assertEquals(entries, LedgerEntriesImpl.truncate(entries, 3 * ENTRY_SIZE));
+
+        LedgerEntries truncated = LedgerEntriesImpl.truncate(entries, 2 * ENTRY_SIZE);
+        List<Long> entryIds = new ArrayList<>();
+        truncated.forEach(entry -> entryIds.add(entry.getEntryId()));
+        assertEquals(Arrays.asList(0L, 1L), entryIds);
+        assertEquals(1, payloads.get(0).refCnt());
+        assertEquals(0, payloads.get(2).refCnt());
+        truncated.close();
+        assertEquals(0, payloads.get(0).refCnt());
+    }
+}
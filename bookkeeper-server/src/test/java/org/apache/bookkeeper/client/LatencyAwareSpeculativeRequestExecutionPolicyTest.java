@@ -0,0 +1,160 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.bookkeeper.client.LatencyAwareSpeculativeRequestExecutionPolicy.LatencyWindow;
+import org.apache.bookkeeper.net.BookieId;
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link LatencyAwareSpeculativeRequestExecutionPolicy}.
+ */
+public class LatencyAwareSpeculativeRequestExecutionPolicyTest {
+
+    private static final int FIRST_TIMEOUT_MS = 10;
+    private static final int MAX_TIMEOUT_MS = 100;
+
+    private final BookieId bookie1 = BookieId.parse("bookie1:3181");
+    private final BookieId bookie2 = BookieId.parse("bookie2:3181");
+
+    private static long millis(long ms) {
+        return TimeUnit.MILLISECONDS.toNanos(ms);
+    }
+
+    private static SpeculativeRequestExecutor executorFor(BookieId bookie) {
+        SpeculativeRequestExecutor executor = mock(SpeculativeRequestExecutor.class);
+        when(executor.getLastRequestedBookie()).thenReturn(bookie);
+        return executor;
+    }
+
+    @Test
+    public void testPercentile() {
+        LatencyWindow window = new LatencyWindow(10, 90);
+        assertEquals(-1, window.getPercentileNanos());
+        for (int i = 10; i >= 1; i--) {
+            window.record(millis(i));
+        }
+        assertEquals(millis(9), window.getPercentileNanos());
+
+        LatencyWindow max = new LatencyWindow(10, 100);
+        LatencyWindow min = new LatencyWindow(10, 1);
+        for (int i = 1; i <= 10; i++) {
+            max.record(millis(i));
+            min.record(millis(i));
+        }
+        assertEquals(millis(10), max.getPercentileNanos());
+        assertEquals(millis(1), min.getPercentileNanos());
+    }
+
+    @Test
+    public void testRecomputeInterval() {
+        // The percentile of a window of 100 samples is recomputed every 10 samples
+        LatencyWindow window = new LatencyWindow(100, 50);
+        for (int i = 0; i < 9; i++) {
+            window.record(millis(1));
+        }
+        assertEquals(-1, window.getPercentileNanos());
+        window.record(millis(1));
+        assertEquals(millis(1), window.getPercentileNanos());
+
+        for (int i = 0; i < 9; i++) {
+            window.record(millis(5));
+        }
+        assertEquals(millis(1), window.getPercentileNanos());
+        window.record(millis(5));
+        assertEquals(millis(1), window.getPercentileNanos());
+
+        // The oldest samples slide out of the window
+        for (int i = 0; i < 90; i++) {
+            window.record(millis(5));
+        }
+        assertEquals(millis(5), window.getPercentileNanos());
+    }
+
+    @Test
+    public void testFallbackToDefaultPolicy() {
+        LatencyAwareSpeculativeRequestExecutionPolicy policy =
+                new LatencyAwareSpeculativeRequestExecutionPolicy(FIRST_TIMEOUT_MS, MAX_TIMEOUT_MS, 2, 99, 100);
+        SpeculativeRequestExecutor executor = executorFor(bookie1);
+
+        // Without enough samples, the timeouts are the ones of the default policy
+        for (int i = 0; i < 9; i++) {
+            policy.recordResponseLatency(bookie1, millis(3));
+        }
+        assertEquals(FIRST_TIMEOUT_MS, policy.getFirstSpeculativeRequestTimeout(executor));
+        assertEquals(2 * FIRST_TIMEOUT_MS, policy.getNextSpeculativeRequestTimeout(executor, FIRST_TIMEOUT_MS));
+        assertEquals(MAX_TIMEOUT_MS, policy.getNextSpeculativeRequestTimeout(executor, MAX_TIMEOUT_MS));
+
+        policy.recordResponseLatency(bookie1, millis(3));
+        assertEquals(3, policy.getFirstSpeculativeRequestTimeout(executor));
+        assertEquals(3, policy.getNextSpeculativeRequestTimeout(executor, FIRST_TIMEOUT_MS));
+
+        // The samples are per bookie, and executors that don't know the bookie use the default policy
+        assertEquals(FIRST_TIMEOUT_MS, policy.getFirstSpeculativeRequestTimeout(executorFor(bookie2)));
+        assertEquals(FIRST_TIMEOUT_MS, policy.getFirstSpeculativeRequestTimeout(executorFor(null)));
+    }
+
+    @Test
+    public void testTimeoutBounds() {
+        LatencyAwareSpeculativeRequestExecutionPolicy policy =
+                new LatencyAwareSpeculativeRequestExecutionPolicy(FIRST_TIMEOUT_MS, MAX_TIMEOUT_MS, 2, 50, 10);
+        policy.recordResponseLatency(bookie1, TimeUnit.MICROSECONDS.toNanos(100));
+        policy.recordResponseLatency(bookie2, millis(500));
+
+        // Sub-millisecond latencies are rounded up, and large ones capped to the max timeout
+        assertEquals(1, policy.getLatencyTimeout(bookie1));
+        assertEquals(MAX_TIMEOUT_MS, policy.getLatencyTimeout(bookie2));
+    }
+
+    @Test
+    public void testSchedulesWithLearnedTimeout() {
+        LatencyAwareSpeculativeRequestExecutionPolicy policy =
+                new LatencyAwareSpeculativeRequestExecutionPolicy(FIRST_TIMEOUT_MS, MAX_TIMEOUT_MS, 2, 50, 10);
+        ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+
+        policy.initiateSpeculativeRequest(scheduler, executorFor(bookie1));
+        verify(scheduler).schedule(any(Runnable.class), eq((long) FIRST_TIMEOUT_MS), eq(TimeUnit.MILLISECONDS));
+
+        policy.recordResponseLatency(bookie1, millis(4));
+        policy.initiateSpeculativeRequest(scheduler, executorFor(bookie1));
+        verify(scheduler).schedule(any(Runnable.class), eq(4L), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPercentile() {
+        new LatencyAwareSpeculativeRequestExecutionPolicy(FIRST_TIMEOUT_MS, MAX_TIMEOUT_MS, 2, 0, 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSampleSize() {
+        new LatencyAwareSpeculativeRequestExecutionPolicy(FIRST_TIMEOUT_MS, MAX_TIMEOUT_MS, 2, 99, 0);
+    }
+}
@@ -0,0 +1,213 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.util.HashedWheelTimer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.bookkeeper.client.RackawareEnsemblePlacementPolicyImpl.ReadLatency;
+import org.apache.bookkeeper.client.TopologyAwareEnsemblePlacementPolicy.DefaultResolver;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.feature.SettableFeatureProvider;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.net.BookieSocketAddress;
+import org.apache.bookkeeper.net.NetworkTopology;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests of the ordering of the reads by load score in {@link RackawareEnsemblePlacementPolicyImpl}.
+ */
+public class RackawareEnsemblePlacementPolicyLoadScoreTest {
+
+    private final BookieId bookie0 = BookieId.parse("127.0.0.1:3181");
+    private final BookieId bookie1 = BookieId.parse("127.0.0.1:3182");
+    private final BookieId bookie2 = BookieId.parse("127.0.0.1:3183");
+    private final List<BookieId> ensemble = Arrays.asList(bookie0, bookie1, bookie2);
+
+    private final Map<BookieId, Long> pendingRequests = new HashMap<>();
+    private final Map<BookieId, Long> failureHistory = new HashMap<>();
+    private final BookiesHealthInfo healthInfo = new BookiesHealthInfo() {
+        @Override
+        public long getBookieFailureHistory(BookieId bookieSocketAddress) {
+            return failureHistory.getOrDefault(bookieSocketAddress, -1L);
+        }
+
+        @Override
+        public long getBookiePendingRequests(BookieId bookieSocketAddress) {
+            return pendingRequests.getOrDefault(bookieSocketAddress, 0L);
+        }
+    };
+
+    private HashedWheelTimer timer;
+    private RackawareEnsemblePlacementPolicyImpl policy;
+
+    @Before
+    public void setup() {
+        timer = new HashedWheelTimer();
+        policy = newPolicy(true);
+    }
+
+    @After
+    public void teardown() {
+        timer.stop();
+    }
+
+    private RackawareEnsemblePlacementPolicyImpl newPolicy(boolean reorderByLoadScore) {
+        ClientConfiguration conf = new ClientConfiguration();
+        conf.setReadReorderByLoadScoreEnabled(reorderByLoadScore);
+        DefaultResolver resolver = new DefaultResolver(() -> NetworkTopology.DEFAULT_REGION_AND_RACK);
+        resolver.setBookieAddressResolver(BookieSocketAddress.LEGACY_BOOKIEID_RESOLVER);
+        RackawareEnsemblePlacementPolicyImpl policy = new RackawareEnsemblePlacementPolicyImpl();
+        policy.initialize(conf, Optional.of(resolver), timer, SettableFeatureProvider.DISABLE_ALL,
+                NullStatsLogger.INSTANCE, BookieSocketAddress.LEGACY_BOOKIEID_RESOLVER);
+        policy.onClusterChanged(new HashSet<>(ensemble), Collections.emptySet());
+        return policy;
+    }
+
+    private static long millis(long ms) {
+        return TimeUnit.MILLISECONDS.toNanos(ms);
+    }
+
+    private void assertReadOrder(Integer... expected) {
+        DistributionSchedule.WriteSet writeSet = policy.reorderReadSequence(ensemble, healthInfo,
+                RoundRobinDistributionSchedule.writeSetFromValues(0, 1, 2));
+        Integer[] actual = new Integer[writeSet.size()];
+        for (int i = 0; i < actual.length; i++) {
+            actual[i] = writeSet.get(i);
+        }
+        assertEquals(Arrays.asList(expected), Arrays.asList(actual));
+    }
+
+    @Test
+    public void testOrderByLatency() {
+        policy.registerReadLatency(bookie0, millis(4));
+        policy.registerReadLatency(bookie1, millis(1));
+        policy.registerReadLatency(bookie2, millis(2));
+        assertReadOrder(1, 2, 0);
+    }
+
+    @Test
+    public void testOrderByPendingRequests() {
+        policy.registerReadLatency(bookie0, millis(4));
+        policy.registerReadLatency(bookie1, millis(1));
+        policy.registerReadLatency(bookie2, millis(2));
+        // 1ms * (5 + 1) is more than 2ms * (0 + 1), but less than 4ms * (1 + 1)
+        pendingRequests.put(bookie0, 1L);
+        pendingRequests.put(bookie1, 5L);
+        assertReadOrder(2, 1, 0);
+    }
+
+    @Test
+    public void testFailurePenalty() {
+        policy.registerReadLatency(bookie0, millis(4));
+        policy.registerReadLatency(bookie1, millis(1));
+        policy.registerReadLatency(bookie2, millis(2));
+        failureHistory.put(bookie1, 10L);
+        assertReadOrder(2, 0, 1);
+    }
+
+    @Test
+    public void testStableTies() {
+        // Without samples, and with equal scores, the bookies keep their order
+        assertReadOrder(0, 1, 2);
+        policy.registerReadLatency(bookie0, millis(2));
+        policy.registerReadLatency(bookie1, millis(2));
+        policy.registerReadLatency(bookie2, millis(2));
+        assertReadOrder(0, 1, 2);
+
+        // A bookie without samples gets the lowest latency of the write set
+        policy.readLatencyEwma.remove(bookie2);
+        policy.registerReadLatency(bookie0, millis(5));
+        assertReadOrder(1, 2, 0);
+    }
+
+    @Test
+    public void testIdleSlowBookieDecays() {
+        long nowNanos = MathUtils.nowInNano();
+        policy.registerReadLatency(bookie1, millis(1));
+        policy.registerReadLatency(bookie2, millis(2));
+
+        // A bookie that was slow recently is read last
+        policy.readLatencyEwma.put(bookie0, new ReadLatency(millis(100), nowNanos));
+        assertReadOrder(1, 2, 0);
+
+        // Without samples for a while, its latency decays toward the best one of the write set
+        long idleNanos = 6 * RackawareEnsemblePlacementPolicyImpl.READ_LATENCY_DECAY_NANOS;
+        policy.readLatencyEwma.put(bookie0, new ReadLatency(millis(100), nowNanos - idleNanos));
+        assertReadOrder(1, 0, 2);
+    }
+
+    @Test
+    public void testReadLatencyDecay() {
+        long decayNanos = RackawareEnsemblePlacementPolicyImpl.READ_LATENCY_DECAY_NANOS;
+        ReadLatency latency = new ReadLatency(millis(100), 0);
+        assertEquals(millis(100), latency.decayedTo(millis(1), 0), 1);
+        assertEquals(millis(1) + millis(99) * Math.exp(-1), latency.decayedTo(millis(1), decayNanos), 1);
+
+        // A recent average is updated as a moving average
+        latency.update(millis(10), 0);
+        double expected = millis(10) + (1 - RackawareEnsemblePlacementPolicyImpl.READ_LATENCY_EWMA_ALPHA)
+                * (millis(100) - millis(10));
+        assertEquals(expected, latency.get(), 1);
+
+        // An old average gives its weight to the new sample
+        latency.update(millis(1), 100 * decayNanos);
+        assertEquals(millis(1), latency.get(), 1);
+    }
+
+    @Test
+    public void testDepartedBookiesAreForgotten() {
+        policy.registerReadLatency(bookie0, millis(1));
+        policy.registerReadLatency(bookie1, millis(1));
+        policy.registerReadLatency(bookie2, millis(1));
+
+        // Read-only bookies are still read
+        policy.onClusterChanged(new HashSet<>(Arrays.asList(bookie1, bookie2)), Collections.singleton(bookie0));
+        assertEquals(3, policy.readLatencyEwma.size());
+
+        policy.onClusterChanged(Collections.singleton(bookie1), Collections.emptySet());
+        assertEquals(Collections.singleton(bookie1), policy.readLatencyEwma.keySet());
+    }
+
+    @Test
+    public void testLatenciesIgnoredWhenDisabled() {
+        policy = newPolicy(false);
+        policy.registerReadLatency(bookie0, millis(4));
+        assertTrue(policy.readLatencyEwma.isEmpty());
+        assertFalse(policy.reorderReadsByLoadScore);
+        assertReadOrder(0, 1, 2);
+    }
+}
@@ -0,0 +1,175 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.bookkeeper.client.BKException.BKUnexpectedConditionException;
+import org.apache.bookkeeper.client.api.BKException;
+import org.apache.bookkeeper.client.api.BatchedReadHandle;
+import org.apache.bookkeeper.client.api.BatchedRecord;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.ReadHandle;
+import org.junit.Test;
+
+/**
+ * Unit tests of the layout of the entries of batched records.
+ */
+public class BatchedEntriesTest {
+
+    private static ByteBuf pack(String... values) {
+        List<ByteBuf> records = new ArrayList<>();
+        int size = BatchedEntries.HEADER_SIZE;
+        for (String value : values) {
+            ByteBuf record = Unpooled.wrappedBuffer(value.getBytes(UTF_8));
+            size += BatchedEntries.RECORD_HEADER_SIZE + record.readableBytes();
+            records.add(record);
+        }
+        return BatchedEntries.pack(records, size, ByteBufAllocator.DEFAULT);
+    }
+
+    private static List<String> values(List<BatchedRecord> records) {
+        List<String> values = new ArrayList<>();
+        for (BatchedRecord record : records) {
+            values.add(new String(record.getRecordBytes(), UTF_8));
+        }
+        return values;
+    }
+
+    private static void assertCorrupted(ByteBuf entry) {
+        try {
+            BatchedEntries.unpack(0, entry);
+            fail("The entry should be rejected");
+        } catch (BKException e) {
+            assertEquals(BKUnexpectedConditionException.class, e.getClass());
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        List<ByteBuf> records = new ArrayList<>();
+        for (String value : new String[]{"a", "", "ccc"}) {
+            records.add(Unpooled.buffer().writeBytes(value.getBytes(UTF_8)));
+        }
+        int size = BatchedEntries.HEADER_SIZE + 3 * BatchedEntries.RECORD_HEADER_SIZE + 4;
+        ByteBuf entry = BatchedEntries.pack(records, size, ByteBufAllocator.DEFAULT);
+
+        // The records are released, the entry is exactly of the given size
+        for (ByteBuf record : records) {
+            assertEquals(0, record.refCnt());
+        }
+        assertEquals(size, entry.readableBytes());
+
+        List<BatchedRecord> unpacked = BatchedEntries.unpack(7, entry);
+        assertEquals(Arrays.asList("a", "", "ccc"), values(unpacked));
+        for (int i = 0; i < unpacked.size(); i++) {
+            assertEquals(7, unpacked.get(i).getEntryId());
+            assertEquals(i, unpacked.get(i).getIndex());
+        }
+        // The entry is not released by unpack
+        assertEquals(1, entry.refCnt());
+        entry.release();
+    }
+
+    @Test
+    public void testEmptyBatch() throws Exception {
+        ByteBuf entry = pack();
+        assertEquals(0, BatchedEntries.unpack(0, entry).size());
+        entry.release();
+    }
+
+    @Test
+    public void testCorruptedHeader() {
+        // Not a batch
+        assertCorrupted(Unpooled.wrappedBuffer("not a batch".getBytes(UTF_8)));
+        // Shorter than the header
+        assertCorrupted(Unpooled.buffer().writeInt(BatchedEntries.MAGIC));
+        // Negative count
+        assertCorrupted(Unpooled.buffer().writeInt(BatchedEntries.MAGIC).writeInt(-1));
+        // More records than the entry can hold
+        assertCorrupted(Unpooled.buffer().writeInt(BatchedEntries.MAGIC).writeInt(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testCorruptedRecords() {
+        // Truncated record header
+        ByteBuf entry = pack("a", "b");
+        assertCorrupted(entry.slice(0, entry.readableBytes() - 3));
+        // Truncated record data
+        entry = pack("a", "bbbb");
+        assertCorrupted(entry.slice(0, entry.readableBytes() - 2));
+        // Negative length
+        entry = pack("a");
+        entry.setInt(BatchedEntries.HEADER_SIZE, -1);
+        assertCorrupted(entry);
+        // Length beyond the end of the entry
+        entry = pack("a");
+        entry.setInt(BatchedEntries.HEADER_SIZE, 2);
+        assertCorrupted(entry);
+        // Trailing bytes after the last record
+        entry = pack("a");
+        assertCorrupted(Unpooled.wrappedBuffer(entry, Unpooled.wrappedBuffer(new byte[]{0})));
+    }
+
+    @Test
+    public void testReadRecords() throws Exception {
+        ReadHandle handle = mock(ReadHandle.class);
+        List<LedgerEntry> entries = new ArrayList<>();
+        entries.add(LedgerEntryImpl.create(1, 3, 0, pack("a", "b")));
+        entries.add(LedgerEntryImpl.create(1, 4, 0, pack("c")));
+        when(handle.readAsync(3, 4)).thenReturn(CompletableFuture.completedFuture(LedgerEntriesImpl.create(entries)));
+
+        List<BatchedRecord> records = BatchedReadHandle.of(handle).readRecords(3, 4);
+        assertEquals(Arrays.asList("a", "b", "c"), values(records));
+        assertEquals(4, records.get(2).getEntryId());
+        assertEquals(0, records.get(2).getIndex());
+    }
+
+    @Test
+    public void testReadCorruptedRecords() throws Exception {
+        ReadHandle handle = mock(ReadHandle.class);
+        ByteBuf corrupted = Unpooled.wrappedBuffer("not a batch".getBytes(UTF_8));
+        LedgerEntries entries = LedgerEntriesImpl.create(Arrays.asList(LedgerEntryImpl.create(1, 0, 0, corrupted)));
+        when(handle.readAsync(0, 0)).thenReturn(CompletableFuture.completedFuture(entries));
+
+        try {
+            BatchedReadHandle.of(handle).readRecords(0, 0);
+            fail("Reading a corrupted entry should fail");
+        } catch (BKException e) {
+            assertEquals(BKUnexpectedConditionException.class, e.getClass());
+        }
+        // The entries are released
+        assertEquals(0, corrupted.refCnt());
+    }
+}
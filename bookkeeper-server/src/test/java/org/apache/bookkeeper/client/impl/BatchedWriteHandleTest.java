@@ -0,0 +1,362 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client.impl;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.bookkeeper.client.BKException.BKLedgerClosedException;
+import org.apache.bookkeeper.client.BKException.BKWriteException;
+import org.apache.bookkeeper.client.api.BatchedRecord;
+import org.apache.bookkeeper.client.api.BatchedWriteHandle;
+import org.apache.bookkeeper.client.api.RecordPosition;
+import org.apache.bookkeeper.client.api.WriteHandle;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests of {@link BatchedWriteHandleImpl}, appending to a fake write handle.
+ */
+public class BatchedWriteHandleTest {
+
+    private ScheduledExecutorService scheduler;
+    private FakeWriteHandle fake;
+
+    @Before
+    public void setup() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        fake = new FakeWriteHandle();
+    }
+
+    @After
+    public void teardown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Write handle that keeps the appended entries, assigning the entry ids in the order of the appends.
+     */
+    private static class FakeWriteHandle {
+        final WriteHandle handle = mock(WriteHandle.class);
+        final List<byte[]> entries = Collections.synchronizedList(new ArrayList<>());
+        final List<CompletableFuture<Long>> pending = Collections.synchronizedList(new ArrayList<>());
+        final AtomicBoolean appendedUnderLock = new AtomicBoolean();
+        final AtomicReference<Object> batchedHandle = new AtomicReference<>();
+        volatile boolean autoComplete = true;
+
+        FakeWriteHandle() {
+            when(handle.appendAsync(any(ByteBuf.class))).thenAnswer(invocation -> {
+                Object batched = batchedHandle.get();
+                if (batched != null && Thread.holdsLock(batched)) {
+                    appendedUnderLock.set(true);
+                }
+                ByteBuf entry = invocation.getArgument(0);
+                byte[] data = new byte[entry.readableBytes()];
+                entry.getBytes(entry.readerIndex(), data);
+                entry.release();
+
+                CompletableFuture<Long> future = new CompletableFuture<>();
+                synchronized (this) {
+                    long entryId = entries.size();
+                    entries.add(data);
+                    if (autoComplete) {
+                        future.complete(entryId);
+                    } else {
+                        pending.add(future);
+                    }
+                }
+                return future;
+            });
+            when(handle.closeAsync()).thenReturn(FutureUtils.Void());
+        }
+
+        List<BatchedRecord> records(long entryId) throws Exception {
+            return BatchedEntries.unpack(entryId, Unpooled.wrappedBuffer(entries.get((int) entryId)));
+        }
+    }
+
+    private BatchedWriteHandle newBatchedHandle(int maxBatchSize, int maxBatchRecords, long lingerMs) {
+        BatchedWriteHandle batched = BatchedWriteHandle.of(fake.handle, maxBatchSize, maxBatchRecords, lingerMs,
+                TimeUnit.MILLISECONDS, scheduler);
+        fake.batchedHandle.set(batched);
+        return batched;
+    }
+
+    private static ByteBuf record(String value) {
+        return Unpooled.wrappedBuffer(value.getBytes(UTF_8));
+    }
+
+    private static void assertPosition(long entryId, int index, RecordPosition position) {
+        assertEquals(entryId, position.getEntryId());
+        assertEquals(index, position.getIndex());
+    }
+
+    @Test
+    public void testPositionsAcrossBatchesAndFlush() throws Exception {
+        BatchedWriteHandle batched = newBatchedHandle(1024 * 1024, 3, 0);
+
+        List<CompletableFuture<RecordPosition>> futures = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            futures.add(batched.appendAsync(record("record-" + i)));
+        }
+
+        // Only the full batches are appended
+        assertEquals(2, fake.entries.size());
+        assertFalse(futures.get(6).isDone());
+
+        batched.flush();
+        assertEquals(3, fake.entries.size());
+        for (int i = 0; i < 7; i++) {
+            assertPosition(i / 3, i % 3, futures.get(i).get());
+        }
+
+        for (int i = 0; i < 7; i++) {
+            BatchedRecord record = fake.records(i / 3).get(i % 3);
+            assertPosition(i / 3, i % 3, record);
+            assertEquals("record-" + i, new String(record.getRecordBytes(), UTF_8));
+        }
+        assertEquals(1, fake.records(2).size());
+
+        // Flushing without pending records does not append an empty batch
+        batched.flush();
+        assertEquals(3, fake.entries.size());
+        assertFalse(fake.appendedUnderLock.get());
+    }
+
+    @Test
+    public void testMaxBatchSize() throws Exception {
+        // Room for exactly two records of 10 bytes
+        int maxBatchSize = BatchedEntries.HEADER_SIZE + 2 * (BatchedEntries.RECORD_HEADER_SIZE + 10);
+        BatchedWriteHandle batched = newBatchedHandle(maxBatchSize, 100, 0);
+
+        CompletableFuture<RecordPosition> r0 = batched.appendAsync(record("0123456789"));
+        CompletableFuture<RecordPosition> r1 = batched.appendAsync(record("0123456789"));
+        // A record bigger than a batch is appended alone, after the current batch
+        CompletableFuture<RecordPosition> big = batched.appendAsync(record(new String(new char[100])));
+        CompletableFuture<RecordPosition> r2 = batched.appendAsync(record("0123456789"));
+        batched.flush();
+
+        assertPosition(0, 0, r0.get());
+        assertPosition(0, 1, r1.get());
+        assertPosition(1, 0, big.get());
+        assertPosition(2, 0, r2.get());
+        assertEquals(100, fake.records(1).get(0).getRecordBytes().length);
+    }
+
+    @Test
+    public void testLinger() throws Exception {
+        BatchedWriteHandle batched = newBatchedHandle(1024 * 1024, 100, 20);
+
+        CompletableFuture<RecordPosition> r0 = batched.appendAsync(record("a"));
+        CompletableFuture<RecordPosition> r1 = batched.appendAsync(record("b"));
+
+        // The batch is appended when the linger time expires, without flushing
+        assertPosition(0, 0, r0.get(10, TimeUnit.SECONDS));
+        assertPosition(0, 1, r1.get(10, TimeUnit.SECONDS));
+
+        CompletableFuture<RecordPosition> r2 = batched.appendAsync(record("c"));
+        assertPosition(1, 0, r2.get(10, TimeUnit.SECONDS));
+        assertEquals(2, fake.entries.size());
+        assertFalse(fake.appendedUnderLock.get());
+    }
+
+    @Test
+    public void testLingerTaskOfAppendedBatchIsIgnored() throws Exception {
+        BatchedWriteHandle batched = newBatchedHandle(1024 * 1024, 2, 50);
+
+        // The batch is full before the linger time expires
+        batched.appendAsync(record("a"));
+        batched.appendAsync(record("b"));
+        assertEquals(1, fake.entries.size());
+        CompletableFuture<RecordPosition> r2 = batched.appendAsync(record("c"));
+
+        // The linger task of the first batch does not append the second one early, it is appended by its own
+        assertPosition(1, 0, r2.get(10, TimeUnit.SECONDS));
+        assertEquals(2, fake.entries.size());
+    }
+
+    @Test
+    public void testConcurrentAppendsKeepTheirOrder() throws Exception {
+        BatchedWriteHandle batched = newBatchedHandle(1024 * 1024, 7, 1);
+        int numThreads = 4;
+        int numRecords = 2000;
+
+        List<List<CompletableFuture<RecordPosition>>> futures = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < numThreads; t++) {
+            final int thread = t;
+            List<CompletableFuture<RecordPosition>> threadFutures = new ArrayList<>();
+            futures.add(threadFutures);
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < numRecords; i++) {
+                    threadFutures.add(batched.appendAsync(record(thread + "-" + i)));
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        batched.flush();
+
+        for (int t = 0; t < numThreads; t++) {
+            RecordPosition previous = null;
+            for (int i = 0; i < numRecords; i++) {
+                RecordPosition position = futures.get(t).get(i).get();
+                // The records of a thread get increasing positions, and are stored at their position
+                if (previous != null) {
+                    assertTrue(position.getEntryId() > previous.getEntryId()
+                            || (position.getEntryId() == previous.getEntryId()
+                                && position.getIndex() > previous.getIndex()));
+                }
+                BatchedRecord record = fake.records(position.getEntryId()).get(position.getIndex());
+                assertEquals(t + "-" + i, new String(record.getRecordBytes(), UTF_8));
+                previous = position;
+            }
+        }
+        assertFalse(fake.appendedUnderLock.get());
+    }
+
+    @Test
+    public void testCloseWaitsForBatchesInFlight() throws Exception {
+        fake.autoComplete = false;
+        BatchedWriteHandle batched = newBatchedHandle(1024 * 1024, 2, 0);
+
+        List<CompletableFuture<RecordPosition>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(batched.appendAsync(record("record-" + i)));
+        }
+        assertEquals(2, fake.entries.size());
+
+        // Closing appends the last batch, and waits for all of them before closing the underlying handle
+        CompletableFuture<Void> closeFuture = batched.closeAsync();
+        assertEquals(3, fake.entries.size());
+        assertFalse(closeFuture.isDone());
+        verify(fake.handle, never()).closeAsync();
+
+        // The handle does not accept records anymore
+        ByteBuf rejected = record("rejected");
+        try {
+            batched.appendAsync(rejected).get();
+            fail("Appending to a closed handle should fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof BKLedgerClosedException);
+        }
+        assertEquals(0, rejected.refCnt());
+
+        completePendingInOrder();
+        closeFuture.get(10, TimeUnit.SECONDS);
+        verify(fake.handle, times(1)).closeAsync();
+        for (int i = 0; i < 5; i++) {
+            assertPosition(i / 2, i % 2, futures.get(i).get());
+        }
+    }
+
+    @Test
+    public void testCloseWithoutRecords() throws Exception {
+        BatchedWriteHandle batched = newBatchedHandle(1024 * 1024, 2, 0);
+        batched.close();
+        verify(fake.handle, times(1)).closeAsync();
+        assertEquals(0, fake.entries.size());
+    }
+
+    @Test
+    public void testFailedAppend() throws Exception {
+        fake.autoComplete = false;
+        BatchedWriteHandle batched = newBatchedHandle(1024 * 1024, 2, 0);
+
+        List<CompletableFuture<RecordPosition>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(batched.appendAsync(record("record-" + i)));
+        }
+        assertEquals(2, fake.pending.size());
+
+        // All the records of the failed batch fail with the cause of the failure
+        BKWriteException cause = new BKWriteException();
+        fake.pending.get(0).completeExceptionally(cause);
+        fake.pending.get(1).complete(1L);
+        for (int i = 0; i < 2; i++) {
+            try {
+                futures.get(i).get();
+                fail("The records of the failed batch should fail");
+            } catch (ExecutionException e) {
+                assertSame(cause, e.getCause());
+            }
+        }
+        assertPosition(1, 0, futures.get(2).get());
+        assertPosition(1, 1, futures.get(3).get());
+    }
+
+    @Test
+    public void testAppendThrows() throws Exception {
+        when(fake.handle.appendAsync(any(ByteBuf.class))).thenThrow(new IllegalStateException("append failed"));
+        BatchedWriteHandle batched = newBatchedHandle(1024 * 1024, 2, 0);
+
+        CompletableFuture<RecordPosition> r0 = batched.appendAsync(record("a"));
+        CompletableFuture<RecordPosition> r1 = batched.appendAsync(record("b"));
+        try {
+            r0.get();
+            fail("The record should fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertTrue(r1.isCompletedExceptionally());
+
+        // Flushing reports the failure of the last batch
+        assertTrue(batched.flushAsync().isCompletedExceptionally());
+    }
+
+    private void completePendingInOrder() {
+        List<CompletableFuture<Long>> pending;
+        synchronized (fake) {
+            pending = new ArrayList<>(fake.pending);
+            fake.pending.clear();
+        }
+        for (int i = 0; i < pending.size(); i++) {
+            pending.get(i).complete((long) i);
+        }
+    }
+}
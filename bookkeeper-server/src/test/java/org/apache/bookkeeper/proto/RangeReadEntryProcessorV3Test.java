@@ -0,0 +1,169 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.LedgerStorage.EntryConsumer;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeReadRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.RangeReadResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit tests of the limits of the range reads served by {@link RangeReadEntryProcessorV3}.
+ */
+public class RangeReadEntryProcessorV3Test {
+
+    private static final long LEDGER_ID = 1;
+    private static final int ENTRY_SIZE = 100;
+    // Size accounted for an entry in a response
+    private static final int ACCOUNTED_SIZE = ENTRY_SIZE + 16;
+
+    private final ServerConfiguration conf = new ServerConfiguration();
+    private final Bookie bookie = mock(Bookie.class);
+    private final BookieRequestProcessor requestProcessor = mock(BookieRequestProcessor.class);
+    // Number of the entries 0..n-1 stored by the bookie
+    private int numEntries = 10;
+
+    @Before
+    public void setup() throws Exception {
+        when(requestProcessor.getServerCfg()).thenReturn(conf);
+        when(requestProcessor.getBookie()).thenReturn(bookie);
+        when(requestProcessor.getRequestStats()).thenReturn(new RequestStats(NullStatsLogger.INSTANCE));
+        when(bookie.readLastAddConfirmed(LEDGER_ID)).thenAnswer(invocation -> (long) numEntries - 1);
+        doAnswer(invocation -> {
+            long firstEntryId = invocation.getArgument(1);
+            long lastEntryId = invocation.getArgument(2);
+            EntryConsumer consumer = invocation.getArgument(4);
+            if (firstEntryId >= numEntries) {
+                throw new Bookie.NoEntryException(LEDGER_ID, firstEntryId);
+            }
+            long count = 0;
+            for (long entryId = firstEntryId; entryId <= lastEntryId && entryId < numEntries; entryId++) {
+                count++;
+                if (!consumer.accept(entryId, newEntry(entryId))) {
+                    break;
+                }
+            }
+            return count;
+        }).when(bookie).readEntries(anyLong(), anyLong(), anyLong(), anyLong(), any());
+    }
+
+    private static ByteBuf newEntry(long entryId) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writeLong(LEDGER_ID);
+        entry.writeLong(entryId);
+        entry.writeZero(ENTRY_SIZE - 16);
+        return entry;
+    }
+
+    private RangeReadResponse rangeRead(long firstEntryId, int maxCount, long maxSize) {
+        Request request = Request.newBuilder()
+                .setHeader(BKPacketHeader.newBuilder()
+                        .setVersion(ProtocolVersion.VERSION_THREE)
+                        .setOperation(OperationType.RANGE_READ_ENTRY)
+                        .setTxnId(1))
+                .setRangeReadRequest(RangeReadRequest.newBuilder()
+                        .setLedgerId(LEDGER_ID)
+                        .setFirstEntryId(firstEntryId)
+                        .setMaxCount(maxCount)
+                        .setMaxSize(maxSize))
+                .build();
+        return new RangeReadEntryProcessorV3(request, mock(Channel.class), requestProcessor).getRangeReadResponse();
+    }
+
+    private static void assertEntries(RangeReadResponse response, long firstEntryId, int count) {
+        assertEquals(StatusCode.EOK, response.getStatus());
+        List<Long> entryIds = new ArrayList<>();
+        List<Long> expectedIds = new ArrayList<>();
+        for (int i = 0; i < response.getBodiesCount(); i++) {
+            assertEquals(ENTRY_SIZE, response.getBodies(i).size());
+            entryIds.add(response.getBodies(i).asReadOnlyByteBuffer().getLong(8));
+        }
+        for (int i = 0; i < count; i++) {
+            expectedIds.add(firstEntryId + i);
+        }
+        assertEquals(expectedIds, entryIds);
+    }
+
+    @Test
+    public void testCountLimit() {
+        RangeReadResponse response = rangeRead(2, 3, Long.MAX_VALUE);
+        assertEntries(response, 2, 3);
+        assertEquals(9, response.getMaxLAC());
+
+        assertEntries(rangeRead(0, 1, Long.MAX_VALUE), 0, 1);
+    }
+
+    @Test
+    public void testSizeLimit() {
+        assertEntries(rangeRead(0, 10, 3 * ACCOUNTED_SIZE), 0, 3);
+        assertEntries(rangeRead(0, 10, 3 * ACCOUNTED_SIZE - 1), 0, 2);
+        // The first entry is always returned
+        assertEntries(rangeRead(5, 10, 1), 5, 1);
+    }
+
+    @Test
+    public void testFrameSizeLimit() {
+        // The frame leaves 1024 bytes for the response header
+        conf.setNettyMaxFrameSizeBytes(1024 + 4 * ACCOUNTED_SIZE);
+        assertEntries(rangeRead(0, 10, Long.MAX_VALUE), 0, 4);
+        assertEntries(rangeRead(0, 10, 2 * ACCOUNTED_SIZE), 0, 2);
+    }
+
+    @Test
+    public void testStopsAtLastStoredEntry() {
+        numEntries = 5;
+        RangeReadResponse response = rangeRead(3, 10, Long.MAX_VALUE);
+        assertEntries(response, 3, 2);
+        assertEquals(4, response.getMaxLAC());
+    }
+
+    @Test
+    public void testErrors() {
+        RangeReadResponse response = rangeRead(10, 10, Long.MAX_VALUE);
+        assertEquals(StatusCode.ENOENTRY, response.getStatus());
+        assertEquals(0, response.getBodiesCount());
+
+        assertEquals(StatusCode.EBADREQ, rangeRead(0, 0, Long.MAX_VALUE).getStatus());
+        assertEquals(StatusCode.EBADREQ, rangeRead(-1, 10, Long.MAX_VALUE).getStatus());
+    }
+}
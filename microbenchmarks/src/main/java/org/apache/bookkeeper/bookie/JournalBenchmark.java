@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Microbenchmarks of the add path of the {@link Journal}, i.e. the journal thread, the
+ * {@link JournalChannel} and its {@link BufferedChannel}, and the force write thread.
+ *
+ * <p>Each benchmark thread is a writer adding entries of its own ledger, with up to
+ * {@code maxOutstandingAdds} adds waiting for their callback, like the requests of many clients.
+ * The number of writers is set with the JMH {@code -t} option. The primary result is the rate of
+ * adds, the {@code bytes} secondary result is the rate of payload bytes. Run with {@code -prof gc}
+ * to report the allocation rate.
+ *
+ * <p>The journal is written under {@code journalDir}, e.g. {@code -p journalDir=/dev/shm} to use a
+ * tmpfs. With {@code syncMode=NO_SYNC} the journal uses the {@link NoSyncFileChannelProvider}, so the
+ * results are not bound by the sync latency of the device.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(4)
+@Fork(1)
+@Warmup(iterations = 1, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+public class JournalBenchmark {
+
+    /**
+     * Whether the journal syncs its writes to the device.
+     */
+    public enum SyncMode {
+        SYNC,
+        NO_SYNC
+    }
+
+    private static final AtomicLong NEXT_LEDGER_ID = new AtomicLong();
+
+    /**
+     * State holder of the test.
+     */
+    @State(Scope.Benchmark)
+    public static class JournalState {
+        @Param({"128", "1024", "16384"})
+        private int entrySize;
+
+        @Param({"SYNC", "NO_SYNC"})
+        private SyncMode syncMode;
+
+        @Param({"0", "2"})
+        private long journalMaxGroupWaitMSec;
+
+        @Param({"1000"})
+        private int maxOutstandingAdds;
+
+        // parent directory of the journal, the default temporary directory if empty
+        @Param({""})
+        private String journalDir;
+
+        private File directory;
+        private Journal journal;
+        private ByteBufAllocator allocator;
+        private byte[] payload;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            directory = journalDir.isEmpty()
+                    ? Files.createTempDirectory("journal-benchmark").toFile()
+                    : Files.createTempDirectory(new File(journalDir).toPath(), "journal-benchmark").toFile();
+            ServerConfiguration conf = new ServerConfiguration();
+            conf.setJournalDirName(directory.getPath());
+            conf.setLedgerDirNames(new String[] { directory.getPath() });
+            conf.setJournalMaxGroupWaitMSec(journalMaxGroupWaitMSec);
+            conf.setMaxBackupJournals(0);
+            if (syncMode == SyncMode.NO_SYNC) {
+                conf.setJournalChannelProvider(NoSyncFileChannelProvider.class.getName());
+            }
+
+            File currentDir = BookieImpl.getCurrentDirectory(directory);
+            BookieImpl.checkDirectoryStructure(currentDir);
+            LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                    new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+            allocator = PooledByteBufAllocator.DEFAULT;
+            journal = new Journal(0, currentDir, conf, ledgerDirsManager, NullStatsLogger.INSTANCE, allocator);
+            journal.start();
+
+            payload = new byte[entrySize];
+            ThreadLocalRandom.current().nextBytes(payload);
+        }
+
+        @Setup(Level.Iteration)
+        public void checkpoint() throws Exception {
+            // let the journal garbage collect the files written by the previous iterations
+            journal.checkpointComplete(journal.newCheckpoint(), true);
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() throws Exception {
+            journal.shutdown();
+            FileUtils.deleteDirectory(directory);
+        }
+    }
+
+    /**
+     * Ledger and outstanding adds of a writer.
+     */
+    @State(Scope.Thread)
+    public static class WriterState {
+        private final long ledgerId = NEXT_LEDGER_ID.incrementAndGet();
+        private long nextEntryId = 0;
+        private int maxOutstandingAdds;
+        private Semaphore outstandingAdds;
+        private WriteCallback callback;
+
+        @Setup(Level.Trial)
+        public void setup(JournalState s) {
+            maxOutstandingAdds = s.maxOutstandingAdds;
+            outstandingAdds = new Semaphore(maxOutstandingAdds);
+            callback = (rc, ledgerId, entryId, addr, ctx) -> outstandingAdds.release();
+        }
+
+        @TearDown(Level.Iteration)
+        public void drain() throws InterruptedException {
+            // wait for the adds of the iteration to complete
+            outstandingAdds.acquire(maxOutstandingAdds);
+            outstandingAdds.release(maxOutstandingAdds);
+        }
+    }
+
+    /**
+     * Payload bytes counter reported by JMH.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class ByteCounters {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    @Benchmark
+    public void addEntry(JournalState s, WriterState w, ByteCounters counters) throws InterruptedException {
+        w.outstandingAdds.acquire();
+        long entryId = w.nextEntryId++;
+        // entry as decoded from an add request: ledger id, entry id, then the rest of the payload
+        ByteBuf entry = s.allocator.directBuffer(16 + s.entrySize, 16 + s.entrySize);
+        entry.writeLong(w.ledgerId);
+        entry.writeLong(entryId);
+        entry.writeBytes(s.payload);
+        try {
+            s.journal.logAddEntry(w.ledgerId, entryId, entry, false /* ackBeforeSync */, w.callback, null);
+        } finally {
+            entry.release();
+        }
+        counters.bytes += s.entrySize;
+    }
+}
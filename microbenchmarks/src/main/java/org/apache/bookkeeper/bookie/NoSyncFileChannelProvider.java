@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+
+/**
+ * A {@link FileChannelProvider} whose channels skip the fsyncs, so the journal benchmarks can
+ * measure the journal code path without being bound by the sync latency of the device.
+ */
+public class NoSyncFileChannelProvider implements FileChannelProvider {
+
+    @Override
+    public BookieFileChannel open(File file, ServerConfiguration configuration) throws IOException {
+        return new NoSyncBookieFileChannel(file);
+    }
+
+    @Override
+    public void close(BookieFileChannel bookieFileChannel) throws IOException {
+        bookieFileChannel.close();
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private static class NoSyncBookieFileChannel implements BookieFileChannel {
+        private final File file;
+        private RandomAccessFile randomAccessFile;
+        private FileChannel fileChannel;
+
+        NoSyncBookieFileChannel(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public synchronized FileChannel getFileChannel() throws IOException {
+            if (randomAccessFile == null) {
+                randomAccessFile = new RandomAccessFile(file, "rw");
+                fileChannel = new NoSyncFileChannel(randomAccessFile.getChannel());
+            }
+            return fileChannel;
+        }
+
+        @Override
+        public boolean fileExists(File file) {
+            return file.exists();
+        }
+
+        @Override
+        public synchronized FileDescriptor getFD() throws IOException {
+            if (randomAccessFile == null) {
+                throw new IOException("randomAccessFile is null, please initialize it by calling getFileChannel");
+            }
+            return randomAccessFile.getFD();
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (randomAccessFile != null) {
+                randomAccessFile.close();
+            }
+        }
+    }
+
+    /**
+     * A FileChannel forwarding all the operations but {@link #force(boolean)}.
+     */
+    private static class NoSyncFileChannel extends FileChannel {
+        private final FileChannel fc;
+
+        NoSyncFileChannel(FileChannel fc) {
+            this.fc = fc;
+        }
+
+        @Override
+        public void force(boolean metaData) {
+            // skip the sync
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return fc.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return fc.read(dsts, offset, length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            return fc.write(src);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            return fc.write(srcs, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return fc.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            fc.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return fc.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            fc.truncate(size);
+            return this;
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return fc.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return fc.transferFrom(src, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return fc.read(dst, position);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            return fc.write(src, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return fc.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return fc.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return fc.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            fc.close();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Microbenchmarks comparing the {@link ReadCache} eviction policies on a mixed trace.
+ *
+ * <p>The trace mixes reads of a hot working set, i.e. the recent entries of a few ledgers read by
+ * several readers, with catch-up reads that scan a cold ledger sequentially. On a miss the entry is
+ * inserted in the cache, as DbLedgerStorage does after reading it from the entry logs. The hit and
+ * miss counters of the hot working set are reported as secondary results.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(4)
+@Fork(1)
+@Warmup(iterations = 1, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+public class ReadCacheBenchmark {
+
+    private static final long SCAN_LEDGER_ID = Long.MAX_VALUE;
+
+    /**
+     * State holder of the test.
+     */
+    @State(Scope.Benchmark)
+    public static class TestState {
+        @Param({"FIFO", "SEGMENTED"})
+        private ReadCache.EvictionPolicy evictionPolicy;
+
+        // percentage of the reads that are catch-up reads
+        @Param({"50", "80"})
+        private int scanPercentage;
+
+        @Param({"64"})
+        private int cacheSizeMb;
+
+        @Param({"16"})
+        private int hotLedgers;
+
+        @Param({"1000"})
+        private int hotEntriesPerLedger;
+
+        @Param({"1024"})
+        private int entrySize;
+
+        private ReadCache readCache;
+        private ByteBuf entry;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            readCache = new ReadCache(ByteBufAllocator.DEFAULT, cacheSizeMb * 1024L * 1024L, 4 * 1024 * 1024,
+                    evictionPolicy, 0.5);
+            entry = Unpooled.directBuffer(entrySize, entrySize);
+            entry.writerIndex(entrySize);
+        }
+
+        @TearDown(Level.Trial)
+        public void teardown() {
+            readCache.close();
+            entry.release();
+        }
+    }
+
+    /**
+     * Position of the catch-up reader of each thread.
+     */
+    @State(Scope.Thread)
+    public static class ScanState {
+        private long nextEntryId = ThreadLocalRandom.current().nextLong(1L << 40);
+    }
+
+    /**
+     * Hit and miss counters reported by JMH.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class HitCounters {
+        public long hotHits;
+        public long hotMisses;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            hotHits = 0;
+            hotMisses = 0;
+        }
+    }
+
+    @Benchmark
+    public void mixedTrace(TestState s, ScanState scan, HitCounters counters) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextInt(100) < s.scanPercentage) {
+            // Catch-up read of the next entry of a cold ledger
+            read(s, SCAN_LEDGER_ID, scan.nextEntryId++);
+        } else {
+            long ledgerId = random.nextInt(s.hotLedgers);
+            long entryId = random.nextInt(s.hotEntriesPerLedger);
+            if (read(s, ledgerId, entryId)) {
+                counters.hotHits++;
+            } else {
+                counters.hotMisses++;
+            }
+        }
+    }
+
+    private static boolean read(TestState s, long ledgerId, long entryId) {
+        ByteBuf cached = s.readCache.get(ledgerId, entryId);
+        if (cached != null) {
+            cached.release();
+            return true;
+        }
+        s.readCache.put(ledgerId, entryId, s.entry);
+        return false;
+    }
+}